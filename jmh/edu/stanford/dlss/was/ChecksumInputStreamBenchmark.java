@@ -0,0 +1,51 @@
+package edu.stanford.dlss.was;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * WasapiValidator.checksumInputStream over a WARC file on disk, as when validating an existing download.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChecksumInputStreamBenchmark {
+  @Param({"1", "100", "1024"})
+  public int payloadMB;
+
+  @Param({"md5", "sha1"})
+  public String algorithm;
+
+  private File warcFile;
+
+  @Setup
+  public void setUp() throws IOException {
+    warcFile = SyntheticData.warcFile(payloadMB * SyntheticData.BYTES_PER_MB);
+  }
+
+  @TearDown
+  public void tearDown() {
+    warcFile.delete();
+  }
+
+  @Benchmark
+  public byte[] checksumFile() throws IOException, NoSuchAlgorithmException {
+    MessageDigest digest = WasapiValidator.newMessageDigest(algorithm);
+    WasapiValidator.checksumInputStream(new FileInputStream(warcFile), digest);
+    return digest.digest();
+  }
+}
@@ -0,0 +1,57 @@
+package edu.stanford.dlss.was;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * DownloadResponseHandler writing a WARC response body to disk while computing its checksum, without the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DownloadResponseHandlerBenchmark {
+  @Param({"1", "100", "1024"})
+  public int payloadMB;
+
+  private File outputFile;
+
+  @Setup
+  public void setUp() throws IOException {
+    outputFile = File.createTempFile("wasapi-benchmark", ".warc");
+    outputFile.deleteOnExit();
+  }
+
+  @TearDown
+  public void tearDown() {
+    outputFile.delete();
+  }
+
+  @Benchmark
+  public byte[] handleResponse() throws IOException, NoSuchAlgorithmException {
+    long numBytes = payloadMB * SyntheticData.BYTES_PER_MB;
+    HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+    response.setEntity(new InputStreamEntity(SyntheticData.warcPayload(numBytes), numBytes));
+    MessageDigest digest = WasapiValidator.newMessageDigest("md5");
+    new DownloadResponseHandler(outputFile.getPath(), digest).handleResponse(response);
+    return digest.digest();
+  }
+}
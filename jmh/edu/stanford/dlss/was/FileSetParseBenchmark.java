@@ -0,0 +1,39 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * WasapiResponseParser.parse on generated FileSet listings, from a single file up to a whole collection in one page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileSetParseBenchmark {
+  @Param({"1", "100", "10000", "100000"})
+  public int numFiles;
+
+  private byte[] fileSetJson;
+  private WasapiResponseParser parser;
+
+  @Setup
+  public void setUp() {
+    fileSetJson = SyntheticData.fileSetJson(numFiles);
+    parser = new WasapiResponseParser();
+  }
+
+  @Benchmark
+  public WasapiResponse parse() throws IOException {
+    return parser.parse(new ByteArrayInputStream(fileSetJson));
+  }
+}
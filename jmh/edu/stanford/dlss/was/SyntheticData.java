@@ -0,0 +1,134 @@
+package edu.stanford.dlss.was;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generated inputs for the benchmarks: WASAPI FileSet listings of any number of files, and WARC-like payloads of any
+ * size, so the benchmarks can run at production sizes without production data.
+ */
+@SuppressWarnings("checkstyle:HideUtilityClassConstructor")
+final class SyntheticData {
+  static final long BYTES_PER_MB = 1024L * 1024L;
+
+  // roughly how Archive-It groups WARCs: a crawl produces many files
+  private static final int FILES_PER_CRAWL = 50;
+  private static final int FIRST_CRAWL_ID = 286007;
+  private static final String WARC_RECORD = "WARC/1.0\r\n"
+      + "WARC-Type: response\r\n"
+      + "WARC-Target-URI: https://example.org/index.html\r\n"
+      + "WARC-Date: 2017-03-25T01:09:32Z\r\n"
+      + "Content-Type: application/http; msgtype=response\r\n"
+      + "Content-Length: 96\r\n\r\n"
+      + "HTTP/1.1 200 OK\r\nContent-Type: text/html\r\n\r\n"
+      + "<html><body>synthetic benchmark payload</body></html>\r\n\r\n";
+
+  private SyntheticData() { }
+
+  static WasapiFile[] wasapiFiles(int numFiles) {
+    WasapiFile[] files = new WasapiFile[numFiles];
+    for (int i = 0; i < numFiles; i++) {
+      WasapiFile file = new WasapiFile();
+      file.setCrawlId(FIRST_CRAWL_ID + i / FILES_PER_CRAWL);
+      file.setFilename(filename(i));
+      file.setLocations(new String[]{"https://partner.archive-it.org/webdatafile/" + filename(i)});
+      Map<String, String> checksums = new HashMap<String, String>();
+      checksums.put("md5", "e9e0af4faede27524f4160621cc68880");
+      file.setChecksums(checksums);
+      files[i] = file;
+    }
+    return files;
+  }
+
+  /**
+   * @return a FileSet listing of numFiles files, laid out like the Archive-It WASAPI endpoint's responses
+   */
+  static byte[] fileSetJson(int numFiles) {
+    StringBuilder json = new StringBuilder("{\"count\": ").append(numFiles)
+        .append(", \"includes-extra\": false, \"next\": null, \"previous\": null, ")
+        .append("\"request-url\": \"https://partner.archive-it.org/wasapi/v1/webdata\", \"files\": [");
+    for (int i = 0; i < numFiles; i++) {
+      if (i > 0)
+        json.append(", ");
+      json.append("{\"locations\": [\"https://partner.archive-it.org/webdatafile/")
+          .append(filename(i)).append("\"], ")
+          .append("\"crawl\": ").append(FIRST_CRAWL_ID + i / FILES_PER_CRAWL).append(", \"filetype\": \"warc\", ")
+          .append("\"filename\": \"").append(filename(i)).append("\", ")
+          .append("\"crawl-start\": \"2017-03-23T18:19:38Z\", \"crawl-time\": \"2014-07-31T04:18:21Z\", ")
+          .append("\"collection\": 5425, \"account\": 925, ")
+          .append("\"checksums\": {\"sha1\": \"c2249d64523d19e346660ec9300b94ad96b12f1c\", ")
+          .append("\"md5\": \"e9e0af4faede27524f4160621cc68880\"}, \"size\": 1002599987}");
+    }
+    return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return a stream of numBytes bytes of repeated WARC records, generated as it is read
+   */
+  static InputStream warcPayload(long numBytes) {
+    return new WarcPayloadInputStream(numBytes);
+  }
+
+  /**
+   * @return a temporary file of numBytes bytes of repeated WARC records, deleted when the JVM exits
+   */
+  static File warcFile(long numBytes) throws IOException {
+    File file = File.createTempFile("wasapi-benchmark", ".warc");
+    file.deleteOnExit();
+    InputStream payload = warcPayload(numBytes);
+    OutputStream fouts = new FileOutputStream(file);
+    try {
+      byte[] buffer = new byte[(int) BYTES_PER_MB];
+      for (int n = payload.read(buffer); n != -1; n = payload.read(buffer))
+        fouts.write(buffer, 0, n);
+    } finally {
+      fouts.close();
+    }
+    return file;
+  }
+
+  private static String filename(int i) {
+    int crawlId = FIRST_CRAWL_ID + i / FILES_PER_CRAWL;
+    return "ARCHIVEIT-5425-MONTHLY-JOB" + crawlId + "-20170325010932686-" + i + ".warc.gz";
+  }
+
+  private static class WarcPayloadInputStream extends InputStream {
+    private static final byte[] RECORD = WARC_RECORD.getBytes(StandardCharsets.UTF_8);
+
+    private long remaining;
+    private int recordOffset;
+
+    WarcPayloadInputStream(long numBytes) {
+      this.remaining = numBytes;
+    }
+
+    @Override
+    public int read() {
+      if (remaining == 0)
+        return -1;
+      int nextByte = RECORD[recordOffset];
+      recordOffset = (recordOffset + 1) % RECORD.length;
+      remaining--;
+      return nextByte; // WARC_RECORD is ASCII, so no sign extension to undo
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      if (remaining == 0)
+        return -1;
+      int numRead = (int) Math.min(length, remaining);
+      for (int i = 0; i < numRead; i++) {
+        buffer[offset + i] = RECORD[recordOffset];
+        recordOffset = (recordOffset + 1) % RECORD.length;
+      }
+      remaining -= numRead;
+      return numRead;
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package edu.stanford.dlss.was;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Grouping a listing's files by crawl and selecting them, as downloadSelectedWarcs does for each page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WasapiCrawlSelectorBenchmark {
+  @Param({"1", "1000", "100000"})
+  public int numFiles;
+
+  private WasapiFile[] files;
+
+  @Setup
+  public void setUp() {
+    files = SyntheticData.wasapiFiles(numFiles);
+  }
+
+  @Benchmark
+  public void groupAndSelectAllCrawls(Blackhole blackhole) {
+    WasapiCrawlSelector crawlSelector = new WasapiCrawlSelector(files);
+    for (Integer crawlId : crawlSelector.getSelectedCrawlIds(0)) {
+      List<WasapiFile> crawlFiles = crawlSelector.getFilesForCrawl(crawlId);
+      blackhole.consume(crawlFiles);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-page cost of parsing test/fixtures/webdata_response.json, with a new ObjectMapper per page (as parse used to do)
+ * and with WasapiResponseParser's shared ObjectReader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WasapiResponseParserBenchmark {
+  private static final char SEP = File.separatorChar;
+
+  private byte[] page;
+  private WasapiResponseParser parser;
+
+  @Setup
+  public void setUp() throws IOException {
+    page = Files.readAllBytes(Paths.get("test" + SEP + "fixtures" + SEP + "webdata_response.json"));
+    parser = new WasapiResponseParser();
+  }
+
+  @Benchmark
+  public WasapiResponse newObjectMapperPerPage() throws IOException {
+    return new ObjectMapper().readValue(new ByteArrayInputStream(page), WasapiResponse.class);
+  }
+
+  @Benchmark
+  public WasapiResponse sharedObjectReader() throws IOException {
+    return parser.parse(new ByteArrayInputStream(page));
+  }
+}
@@ -0,0 +1,162 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * A WasapiClient that sends its requests through HttpAsyncClient: all connections are multiplexed over a few I/O
+ * reactor threads (one per CPU), and downloads are written to disk by those threads as their bodies arrive.  Chosen
+ * with httpTransport=async.
+ *
+ * execute still waits for its request to finish, since the download stage (retries, checksums, moving files into
+ * place) is written as one call per file on a worker thread.  So each transfer in flight has a worker waiting on it:
+ * a platform thread, unless virtualThreads=true, where the waiting virtual threads hold no platform thread.  Running
+ * hundreds of transfers on a handful of threads therefore takes both settings.
+ *
+ * Logging in, cookies and the connection settings work as for the blocking client, except idleConnectionSeconds.
+ */
+public class AsyncWasapiClient extends WasapiClient {
+  protected CloseableHttpAsyncClient asyncClient;     // Protected for easier testing
+  // resumes downloads paused for maxBytesPerSecond, so the reactor threads never sleep
+  private ScheduledExecutorService inputResumer;
+
+  public AsyncWasapiClient(WasapiDownloaderSettings settings) throws IOException {
+    super(settings);
+  }
+
+  @Override
+  protected void sendLoginRequest() throws IOException {
+    Completion<HttpResponse> completion = new Completion<HttpResponse>();
+    HttpResponse response = completion.await(asyncClient.execute(createLoginRequest(settings), completion));
+    EntityUtils.consume(response.getEntity());
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      asyncClient.close();
+    } finally {
+      inputResumer.shutdownNow();
+    }
+  }
+
+  /**
+   * StreamingResponseHandlers (i.e. downloads) are fed the response body as it arrives.  Other handlers, e.g. for the
+   * JSON listing pages, are given the response once its body has been read into memory.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  protected <T> T send(HttpGet request, ResponseHandler<? extends T> rh) throws IOException {
+    BasicHttpContext requestContext = new BasicHttpContext(wasapiContext);
+    if (rh instanceof StreamingResponseHandler) {
+      StreamingResponseConsumer consumer =
+          new StreamingResponseConsumer((StreamingResponseHandler) rh, inputResumer);
+      Completion<Boolean> completion = new Completion<Boolean>();
+      return (T) completion.await(
+          asyncClient.execute(HttpAsyncMethods.create(request), consumer, requestContext, completion));
+    }
+
+    Completion<HttpResponse> completion = new Completion<HttpResponse>();
+    HttpResponse response = completion.await(asyncClient.execute(request, requestContext, completion));
+    try {
+      return rh.handleResponse(response);
+    } finally {
+      EntityUtils.consumeQuietly(response.getEntity());
+    }
+  }
+
+  /**
+   * Builds the async client in place of the blocking one, which this class never creates.
+   *
+   * @return null, since there is no blocking client
+   */
+  @Override
+  protected CloseableHttpClient initializeClient() {
+    cookieStore = new BasicCookieStore();
+    asyncClient = HttpAsyncClients.custom()
+        .setDefaultCookieStore(cookieStore)
+        .setMaxConnPerRoute(maxConnectionsPerHost())
+        .setMaxConnTotal(maxConnections())
+        .setDefaultRequestConfig(buildRequestConfig())
+        .setKeepAliveStrategy(buildKeepAliveStrategy())
+        .setRedirectStrategy(buildRedirectStrategy())
+        .build();
+    asyncClient.start();
+    inputResumer = newInputResumer();
+
+    wasapiContext = HttpClientContext.create();
+    wasapiContext.setCookieStore(cookieStore);
+    return null;
+  }
+
+  private static ScheduledExecutorService newInputResumer() {
+    return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "wasapi-input-resumer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Waits for a request to finish on a CountDownLatch rather than in HttpCore's Future.get, whose Object.wait would
+   * pin a virtual thread to its carrier thread for the whole transfer.
+   */
+  private static class Completion<T> implements FutureCallback<T> {
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    @Override
+    public void completed(T result) {
+      done.countDown();
+    }
+
+    @Override
+    public void failed(Exception e) {
+      done.countDown();
+    }
+
+    @Override
+    public void cancelled() {
+      done.countDown();
+    }
+
+    // waits for the request to finish, rethrowing its failure as the blocking client would have thrown it
+    T await(Future<T> result) throws IOException {
+      try {
+        done.await();
+        return result.get(); // already done, so doesn't wait
+      } catch (InterruptedException e) {
+        result.cancel(true);
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while waiting for response");
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException)
+          throw (IOException) e.getCause();
+        if (e.getCause() instanceof RuntimeException)
+          throw (RuntimeException) e.getCause();
+        throw new IOException("request failed", e.getCause());
+      }
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Replaces the files we keep between runs (throughput history, crawl watermarks, cached listing pages, cookies) as a
+ * whole: the new content is written alongside the old file and then moved over it, so that a crash can't leave a
+ * half-written file behind.  The temp file is created readable by its owner only, and so is the file it becomes.
+ */
+public final class AtomicFileWriter {
+
+  private AtomicFileWriter() {
+  }
+
+  /**
+   * Replaces (or creates) path with what content writes.  If writing fails, path is left as it was.
+   */
+  public static void replace(Path path, Content content) throws IOException {
+    Path tempPath = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+    try {
+      OutputStream out = Files.newOutputStream(tempPath);
+      try {
+        content.writeTo(out);
+      } finally {
+        out.close();
+      }
+      Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  /**
+   * Replaces (or creates) path with properties, in Properties.store format.
+   */
+  public static void replace(Path path, final Properties properties, final String comments) throws IOException {
+    replace(path, new Content() {
+      @Override
+      public void writeTo(OutputStream out) throws IOException {
+        properties.store(out, comments);
+      }
+    });
+  }
+
+  /**
+   * Writes the new content of a file.
+   */
+  public interface Content {
+    /**
+     * @param out  closed by AtomicFileWriter afterwards, so anything wrapping it need only be flushed
+     */
+    void writeTo(OutputStream out) throws IOException;
+  }
+}
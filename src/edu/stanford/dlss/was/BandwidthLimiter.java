@@ -0,0 +1,126 @@
+package edu.stanford.dlss.was;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Token bucket shared by every download in the process, so that together they read no more than maxBytesPerSecond.
+ *
+ * Readers reserve the bytes they have just read, which pushes back the time at which the bucket refills; a reader
+ * only sleeps when its reservations have run ahead of the clock.  Reservation is a little arithmetic under a lock,
+ * so concurrent downloads interleave smoothly, and the sleeping happens outside the lock.
+ */
+public class BandwidthLimiter {
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  // how much unused allowance an idle bucket keeps, so short stalls don't cost throughput but rates can't spike
+  private static final long MAX_BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  // shorter waits are carried forward to the next read, rather than paying for a sleep per buffer
+  private static final long MIN_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final double nanosPerByte;
+  private long refilledAtNanos; // when the bucket will have refilled for every byte reserved so far
+
+  public BandwidthLimiter(long maxBytesPerSecond) {
+    nanosPerByte = (double) NANOS_PER_SECOND / maxBytesPerSecond;
+    refilledAtNanos = System.nanoTime() - MAX_BURST_NANOS;
+  }
+
+  /**
+   * Blocks until numBytes more bytes fit within the limit.
+   */
+  public void acquire(int numBytes) throws InterruptedIOException {
+    long waitNanos = reserve(numBytes, System.nanoTime());
+    if (waitNanos < MIN_SLEEP_NANOS)
+      return;
+    try {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for download bandwidth");
+    }
+  }
+
+  /**
+   * For readers that mustn't block, e.g. a non-blocking transport's I/O threads: reserves numBytes more bytes without
+   * waiting for them.
+   *
+   * @return how long the reader should stop reading to stay within the limit (0 for not at all)
+   */
+  public long reserve(int numBytes) {
+    long waitNanos = reserve(numBytes, System.nanoTime());
+    return waitNanos < MIN_SLEEP_NANOS ? 0 : waitNanos;
+  }
+
+  /**
+   * @return entity whose content is read within the limit
+   */
+  public HttpEntity throttle(HttpEntity entity) {
+    return new ThrottledEntity(entity);
+  }
+
+  /**
+   * @return how long the caller must wait before going past numBytes more bytes
+   */
+  // package level method for testing
+  synchronized long reserve(int numBytes, long nowNanos) {
+    long earliestRefill = nowNanos - MAX_BURST_NANOS;
+    if (refilledAtNanos - earliestRefill < 0) // nanoTime may wrap, so compare differences
+      refilledAtNanos = earliestRefill;
+    refilledAtNanos += (long) (numBytes * nanosPerByte);
+    return refilledAtNanos - nowNanos;
+  }
+
+  private class ThrottledInputStream extends FilterInputStream {
+    ThrottledInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1)
+        acquire(1);
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int n = super.read(buffer, offset, length);
+      if (n > 0)
+        acquire(n);
+      return n;
+    }
+  }
+
+  private class ThrottledEntity extends HttpEntityWrapper {
+    private static final int BUFFER_LENGTH = 8192;
+
+    ThrottledEntity(HttpEntity wrappedEntity) {
+      super(wrappedEntity);
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      return new ThrottledInputStream(super.getContent());
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+      InputStream ins = getContent();
+      try {
+        byte[] buffer = new byte[BUFFER_LENGTH];
+        for (int n = ins.read(buffer); n != -1; n = ins.read(buffer))
+          outStream.write(buffer, 0, n);
+      } finally {
+        ins.close();
+      }
+    }
+  }
+}
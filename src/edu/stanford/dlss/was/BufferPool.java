@@ -0,0 +1,36 @@
+package edu.stanford.dlss.was;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Direct buffers of one size, reused across downloads so that large buffers are only allocated once per concurrent
+ * download rather than once per file.  Buffers are created as needed, so the pool never holds more than the peak number
+ * of downloads that ran at once.
+ */
+public class BufferPool {
+  private final int bufferSize;
+  private final Queue<ByteBuffer> idleBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+  public BufferPool(int bufferSize) {
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * @return a cleared buffer, to be given back with release() when the caller is done with it
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer buffer = idleBuffers.poll();
+    return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+  }
+
+  public void release(ByteBuffer buffer) {
+    buffer.clear();
+    idleBuffers.offer(buffer);
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+}
@@ -0,0 +1,53 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Like JsonResponseHandler, but for a listing page request made conditional with a ListingCache: a 304 is answered
+ * with the cached page, and a page the server sends is kept in the cache along with its ETag and Last-Modified.
+ */
+public class CachingJsonResponseHandler implements ResponseHandler<WasapiResponse> {
+  private static final WasapiResponseParser PARSER = new WasapiResponseParser();
+
+  private final ListingCache listingCache;
+  private final String requestURL;
+  private final ListingCache.CachedPage cachedPage;
+
+  /**
+   * @param cachedPage  the page the request's validators came from (null if there was none, so the request wasn't
+   *   conditional)
+   */
+  public CachingJsonResponseHandler(ListingCache listingCache, String requestURL, ListingCache.CachedPage cachedPage) {
+    this.listingCache = listingCache;
+    this.requestURL = requestURL;
+    this.cachedPage = cachedPage;
+  }
+
+  @Override
+  public WasapiResponse handleResponse(final HttpResponse response)
+      throws ClientProtocolException, HttpResponseException, IOException {
+    if (cachedPage != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED)
+      return cachedPage.parse();
+
+    WasapiValidator.validateResponse(response);
+    byte[] body = EntityUtils.toByteArray(response.getEntity());
+    listingCache.put(requestURL, headerValue(response, HttpHeaders.ETAG),
+        headerValue(response, HttpHeaders.LAST_MODIFIED), body);
+    return PARSER.parse(new ByteArrayInputStream(body));
+  }
+
+  private static String headerValue(HttpResponse response, String name) {
+    Header header = response.getFirstHeader(name);
+    return header == null ? null : header.getValue();
+  }
+}
@@ -0,0 +1,139 @@
+package edu.stanford.dlss.was;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.cookie.ClientCookie;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.cookie.BasicClientCookie;
+
+/**
+ * Keeps the login cookies between runs, so that a run can reuse the last run's session instead of logging in again.
+ *
+ * The file is in the Netscape cookie file format that curl and wget also use: a line per cookie, with the domain,
+ * whether subdomains match, path, whether it's secure, its expiry (in seconds since the epoch, or 0 for a session
+ * cookie), name and value, separated by tabs.  It is only readable by its owner, since it holds a live session.
+ */
+public class CookieFile {
+  private static final String HEADER = "# Netscape HTTP Cookie File";
+  private static final String FIELD_SEPARATOR = "\t";
+  private static final String TRUE_FLAG = "TRUE";
+  private static final int NUM_FIELDS = 7;
+  private static final int SUBDOMAINS_FIELD = 1;
+  private static final int PATH_FIELD = 2;
+  private static final int SECURE_FIELD = 3;
+  private static final int EXPIRY_FIELD = 4;
+  private static final int NAME_FIELD = 5;
+  private static final int VALUE_FIELD = 6;
+
+  private final Path path;
+
+  public CookieFile(String path) {
+    this.path = Paths.get(path);
+  }
+
+  /**
+   * Adds the file's unexpired cookies to cookieStore.
+   *
+   * @return true if there were any, false if there's no file, it can't be read, or its cookies have all expired
+   */
+  public boolean load(CookieStore cookieStore) {
+    List<Cookie> cookies;
+    try {
+      cookies = read(new Date());
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (IOException e) {
+      System.err.println("WARNING: unable to read saved cookies (will log in): " + path + " (" + e.getMessage() + ")");
+      return false;
+    }
+    for (Cookie cookie : cookies)
+      cookieStore.addCookie(cookie);
+    return !cookies.isEmpty();
+  }
+
+  /**
+   * Replaces the file with cookieStore's current cookies.
+   */
+  public void save(final CookieStore cookieStore) throws IOException {
+    AtomicFileWriter.replace(path, new AtomicFileWriter.Content() {
+      @Override
+      public void writeTo(OutputStream out) throws IOException {
+        write(cookieStore, out);
+      }
+    });
+  }
+
+  private static void write(CookieStore cookieStore, OutputStream out) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writer.write(HEADER);
+    writer.newLine();
+    for (Cookie cookie : cookieStore.getCookies()) {
+      writer.write(toLine(cookie));
+      writer.newLine();
+    }
+    writer.flush();
+  }
+
+  private List<Cookie> read(Date now) throws IOException {
+    List<Cookie> cookies = new ArrayList<Cookie>();
+    BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+    try {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (line.isEmpty() || line.startsWith("#"))
+          continue;
+        Cookie cookie = fromLine(line);
+        if (!cookie.isExpired(now))
+          cookies.add(cookie);
+      }
+    } finally {
+      reader.close();
+    }
+    return cookies;
+  }
+
+  private static String toLine(Cookie cookie) {
+    long expirySeconds = cookie.getExpiryDate() == null ? 0 :
+        TimeUnit.MILLISECONDS.toSeconds(cookie.getExpiryDate().getTime());
+    // a cookie set with a Domain attribute is sent to subdomains too; otherwise only to the host that set it
+    boolean includeSubdomains = cookie instanceof ClientCookie &&
+        ((ClientCookie) cookie).containsAttribute(ClientCookie.DOMAIN_ATTR);
+    return cookie.getDomain() + FIELD_SEPARATOR + toFlag(includeSubdomains) + FIELD_SEPARATOR + cookie.getPath() +
+        FIELD_SEPARATOR + toFlag(cookie.isSecure()) + FIELD_SEPARATOR + expirySeconds + FIELD_SEPARATOR +
+        cookie.getName() + FIELD_SEPARATOR + cookie.getValue();
+  }
+
+  private static String toFlag(boolean value) {
+    return value ? TRUE_FLAG : "FALSE";
+  }
+
+  private static Cookie fromLine(String line) throws IOException {
+    String[] fields = line.split(FIELD_SEPARATOR, NUM_FIELDS);
+    if (fields.length != NUM_FIELDS || !fields[EXPIRY_FIELD].matches("\\d{1,18}"))
+      throw new IOException("not a cookie file line: " + line);
+    BasicClientCookie cookie = new BasicClientCookie(fields[NAME_FIELD], fields[VALUE_FIELD]);
+    String domain = fields[0].startsWith(".") ? fields[0].substring(1) : fields[0];
+    cookie.setDomain(domain);
+    if (TRUE_FLAG.equals(fields[SUBDOMAINS_FIELD]))
+      cookie.setAttribute(ClientCookie.DOMAIN_ATTR, domain);
+    cookie.setPath(fields[PATH_FIELD]);
+    cookie.setSecure(TRUE_FLAG.equals(fields[SECURE_FIELD]));
+    long expirySeconds = Long.parseLong(fields[EXPIRY_FIELD]);
+    if (expirySeconds > 0)
+      cookie.setExpiryDate(new Date(TimeUnit.SECONDS.toMillis(expirySeconds)));
+    return cookie;
+  }
+}
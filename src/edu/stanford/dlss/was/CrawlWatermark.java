@@ -0,0 +1,207 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * For incremental runs: the newest crawl that has been fully downloaded, such that every crawl that started before it
+ * has been too, kept between runs for one account and collection.
+ *
+ * Crawls are ordered by crawl-start, then crawl id.  Each run asks the server only for crawls started after the
+ * watermark's date (less a day, since the endpoint only takes dates, in no particular time zone), and skips the
+ * crawls from that day up to the watermark itself.  A crawl with a failed file holds the watermark back, so that
+ * the next run tries it again.  So does a crawl started less than settleDays ago, since it may still be running and
+ * gain files that a run skipping it would never list.
+ */
+public class CrawlWatermark {
+  private static final String CRAWL_ID_KEY = "crawlId";
+  private static final String CRAWL_START_KEY = "crawlStart";
+  private static final String ALL = "all";
+
+  private final Path path;
+  private final long settleMillis;
+  private Integer crawlId;
+  private String crawlStartDateStr;
+  // crawl-start by crawl id, of the crawls selected this run
+  private final Map<Integer, String> selectedCrawls = new LinkedHashMap<Integer, String>();
+
+  /**
+   * Reads the watermark saved by earlier runs from path, if it's there.
+   *
+   * @param settleDays  how many days after its crawl-start a crawl is taken to have stopped gaining files
+   */
+  public CrawlWatermark(String path, int settleDays) {
+    this.path = Paths.get(path);
+    this.settleMillis = TimeUnit.DAYS.toMillis(settleDays);
+    try {
+      load();
+    } catch (NoSuchFileException e) {
+      // no crawls downloaded yet
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println("WARNING: unable to read crawl watermark (will download every crawl): " + path);
+      crawlId = null;
+      crawlStartDateStr = null;
+    }
+  }
+
+  /**
+   * @return e.g. ".wasapi-downloader-watermark-account-all-collection-8001.properties" (for outputBaseDir)
+   */
+  public static String fileName(String accountId, String collectionId) {
+    return ".wasapi-downloader-watermark-account-" + (accountId == null ? ALL : accountId) + "-collection-" +
+        (collectionId == null ? ALL : collectionId) + ".properties";
+  }
+
+  public Integer getCrawlId() {
+    return crawlId;
+  }
+
+  public String getCrawlStartDateStr() {
+    return crawlStartDateStr;
+  }
+
+  /**
+   * @param configuredCrawlStartAfter  the crawlStartAfter setting, as yyyy-MM-dd (null if not set)
+   * @return the crawl-start-after date to ask the server for: the later of the setting and the day before the
+   *   watermark's crawl-start (null if neither is set)
+   */
+  public String crawlStartAfter(String configuredCrawlStartAfter) {
+    if (crawlStartDateStr == null)
+      return configuredCrawlStartAfter;
+    Calendar dayBefore = WasapiValidator.parseIso8601(crawlStartDateStr);
+    dayBefore.add(Calendar.DAY_OF_MONTH, -1);
+    SimpleDateFormat wasapiFormat = new SimpleDateFormat("yyyy-MM-dd");
+    wasapiFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    String watermarkCrawlStartAfter = wasapiFormat.format(dayBefore.getTime());
+    if (configuredCrawlStartAfter != null && configuredCrawlStartAfter.compareTo(watermarkCrawlStartAfter) > 0)
+      return configuredCrawlStartAfter;
+    return watermarkCrawlStartAfter;
+  }
+
+  /**
+   * @return true if the crawl comes after the watermark, i.e. hasn't been fully downloaded yet
+   */
+  public boolean isAfter(int otherCrawlId, String otherCrawlStartDateStr) {
+    return crawlId == null || compare(otherCrawlStartDateStr, otherCrawlId, crawlStartDateStr, crawlId) > 0;
+  }
+
+  /**
+   * @return crawlIds without the crawls up to the watermark, which the server lists because it is only asked for
+   *   crawls from the day before the watermark on
+   */
+  public List<Integer> crawlsAfter(List<Integer> crawlIds, WasapiCrawlSelector crawlSelector) {
+    List<Integer> crawlsAfter = new ArrayList<Integer>();
+    for (Integer otherCrawlId : crawlIds) {
+      if (isAfter(otherCrawlId, crawlSelector.getCrawlStartDateStr(otherCrawlId)))
+        crawlsAfter.add(otherCrawlId);
+    }
+    return crawlsAfter;
+  }
+
+  /**
+   * Notes that file's crawl was selected for download this run.
+   */
+  public synchronized void recordSelected(WasapiFile file) {
+    selectedCrawls.put(file.getCrawlId(), file.getCrawlStartDateStr());
+  }
+
+  /**
+   * Once the run's downloads are done, moves the watermark up to the newest selected crawl that has settled and has no
+   * failed files, with no failed or unsettled crawl before it, and saves it.  Failing to save only warns, since the
+   * next run then just lists more.
+   */
+  public void advance(Collection<WasapiFile> failedFiles) {
+    advance(failedFiles, System.currentTimeMillis());
+  }
+
+  // package level method for testing
+  synchronized void advance(Collection<WasapiFile> failedFiles, long nowMillis) {
+    Map.Entry<Integer, String> newest = newestCompletedCrawl(failedFiles, nowMillis - settleMillis);
+    if (newest == null || !isAfter(newest.getKey(), newest.getValue()))
+      return;
+    crawlId = newest.getKey();
+    crawlStartDateStr = newest.getValue();
+    try {
+      save();
+      System.out.println("crawls up to " + crawlId + " (started " + crawlStartDateStr + ") fully downloaded");
+    } catch (IOException e) {
+      System.err.println("WARNING: unable to save crawl watermark: " + path + " (" + e.getMessage() + ")");
+    }
+  }
+
+  // crawls are in crawl-start order, so the first crawl started after settledByMillis ends the settled ones
+  private Map.Entry<Integer, String> newestCompletedCrawl(Collection<WasapiFile> failedFiles, long settledByMillis) {
+    Set<Integer> failedCrawlIds = new HashSet<Integer>();
+    for (WasapiFile file : failedFiles)
+      failedCrawlIds.add(file.getCrawlId());
+    Map.Entry<Integer, String> newest = null;
+    for (Map.Entry<Integer, String> crawl : selectedCrawlsInOrder()) {
+      if (failedCrawlIds.contains(crawl.getKey()) || startMillis(crawl.getValue()) > settledByMillis)
+        break;
+      newest = crawl;
+    }
+    return newest;
+  }
+
+  private List<Map.Entry<Integer, String>> selectedCrawlsInOrder() {
+    List<Map.Entry<Integer, String>> crawls = new ArrayList<Map.Entry<Integer, String>>(selectedCrawls.entrySet());
+    Collections.sort(crawls, new Comparator<Map.Entry<Integer, String>>() {
+      @Override
+      public int compare(Map.Entry<Integer, String> crawl1, Map.Entry<Integer, String> crawl2) {
+        return CrawlWatermark.compare(crawl1.getValue(), crawl1.getKey(), crawl2.getValue(), crawl2.getKey());
+      }
+    });
+    return crawls;
+  }
+
+  // orders crawls by crawl-start (missing ones first), then crawl id
+  private static int compare(String crawlStart1, int crawlId1, String crawlStart2, int crawlId2) {
+    int byStart = Long.compare(startMillis(crawlStart1), startMillis(crawlStart2));
+    return byStart != 0 ? byStart : Integer.compare(crawlId1, crawlId2);
+  }
+
+  private static long startMillis(String crawlStartDateStr) {
+    return crawlStartDateStr == null ? Long.MIN_VALUE :
+        WasapiValidator.parseIso8601(crawlStartDateStr).getTimeInMillis();
+  }
+
+  private void load() throws IOException {
+    Properties watermark = new Properties();
+    InputStream in = Files.newInputStream(path);
+    try {
+      watermark.load(in);
+    } finally {
+      in.close();
+    }
+    crawlId = Integer.valueOf(watermark.getProperty(CRAWL_ID_KEY));
+    crawlStartDateStr = watermark.getProperty(CRAWL_START_KEY);
+    startMillis(crawlStartDateStr); // so that an unparseable date fails now
+  }
+
+  private void save() throws IOException {
+    Properties watermark = new Properties();
+    watermark.setProperty(CRAWL_ID_KEY, crawlId.toString());
+    if (crawlStartDateStr != null)
+      watermark.setProperty(CRAWL_START_KEY, crawlStartDateStr);
+    AtomicFileWriter.replace(path, watermark, "newest crawl fully downloaded, with every crawl started before it");
+  }
+}
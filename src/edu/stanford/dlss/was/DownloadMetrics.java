@@ -0,0 +1,144 @@
+package edu.stanford.dlss.was;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms for a run of the downloader, updated concurrently by the download workers and the pager.
+ * They can be read over JMX (see registerMBean), or written out in Prometheus text format by PrometheusTextfileWriter.
+ */
+public class DownloadMetrics implements DownloadMetricsMBean {
+  public static final String MBEAN_NAME = "edu.stanford.dlss.was:type=DownloadMetrics";
+
+  private static final String PREFIX = "wasapi_downloader_";
+  // bucket bounds in seconds: listing pages take well under a second, while WARCs are often a GB or more
+  private static final double[] PAGE_FETCH_BUCKETS = {0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+  private static final double[] FILE_TRANSFER_BUCKETS = {1, 5, 15, 30, 60, 120, 300, 600, 1800, 3600};
+  private static final double[] CHECKSUM_BUCKETS = {0.1, 0.5, 1, 2.5, 5, 10, 30, 60, 300};
+
+  private final AtomicLong bytesDownloaded = new AtomicLong();
+  private final AtomicLong filesDownloaded = new AtomicLong();
+  private final AtomicLong filesFailed = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final LatencyHistogram pageFetchSeconds = new LatencyHistogram(PAGE_FETCH_BUCKETS);
+  private final LatencyHistogram fileTransferSeconds = new LatencyHistogram(FILE_TRANSFER_BUCKETS);
+  private final LatencyHistogram checksumSeconds = new LatencyHistogram(CHECKSUM_BUCKETS);
+
+  /**
+   * Counts bytes as they are written to disk, by every download attempt (including ones that go on to fail), so that
+   * throughput can be followed while a large file is still transferring.
+   */
+  public void recordBytesDownloaded(long numBytes) {
+    bytesDownloaded.addAndGet(numBytes);
+  }
+
+  /**
+   * @param nanos  time taken by the download attempt that succeeded
+   */
+  public void recordFileDownloaded(long nanos) {
+    filesDownloaded.incrementAndGet();
+    fileTransferSeconds.record(nanos);
+  }
+
+  // a file that could not be downloaded and validated, after all its retries
+  public void recordFileFailed() {
+    filesFailed.incrementAndGet();
+  }
+
+  public void recordRetry() {
+    retries.incrementAndGet();
+  }
+
+  public void recordPageFetch(long nanos) {
+    pageFetchSeconds.record(nanos);
+  }
+
+  // time spent reading a file back from disk to checksum it
+  public void recordChecksum(long nanos) {
+    checksumSeconds.record(nanos);
+  }
+
+  @Override
+  public long getBytesDownloaded() {
+    return bytesDownloaded.get();
+  }
+
+  @Override
+  public long getFilesDownloaded() {
+    return filesDownloaded.get();
+  }
+
+  @Override
+  public long getFilesFailed() {
+    return filesFailed.get();
+  }
+
+  @Override
+  public long getRetries() {
+    return retries.get();
+  }
+
+  @Override
+  public long getPageFetches() {
+    return pageFetchSeconds.getCount();
+  }
+
+  @Override
+  public double getMeanPageFetchSeconds() {
+    return pageFetchSeconds.getMeanSeconds();
+  }
+
+  @Override
+  public double getMeanFileTransferSeconds() {
+    return fileTransferSeconds.getMeanSeconds();
+  }
+
+  @Override
+  public double getMeanChecksumSeconds() {
+    return checksumSeconds.getMeanSeconds();
+  }
+
+  /**
+   * @return every metric, in the Prometheus text exposition format read by node-exporter's textfile collector
+   */
+  public String toPrometheusText() {
+    StringBuilder out = new StringBuilder();
+    appendCounter(out, "bytes_total", "Bytes written to disk by download attempts, as they arrive.", bytesDownloaded);
+    appendCounter(out, "files_downloaded_total", "Files downloaded and validated.", filesDownloaded);
+    appendCounter(out, "files_failed_total", "Files not downloaded or validated after all retries.", filesFailed);
+    appendCounter(out, "retries_total", "Download attempts after a file's first.", retries);
+    fileTransferSeconds.appendPrometheusText(out, PREFIX + "file_transfer_seconds",
+        "Time to download a file, for the attempt that succeeded.");
+    checksumSeconds.appendPrometheusText(out, PREFIX + "checksum_seconds",
+        "Time to read a file back from disk to checksum it.");
+    pageFetchSeconds.appendPrometheusText(out, PREFIX + "page_fetch_seconds",
+        "Time to fetch a page of the WASAPI file listing.");
+    return out.toString();
+  }
+
+  /**
+   * Registers these metrics with the platform MBean server, replacing any registered earlier in this JVM.
+   * Metrics are not essential to downloading, so a failure is only reported.
+   */
+  public void registerMBean() {
+    try {
+      MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(MBEAN_NAME);
+      if (mbeanServer.isRegistered(name))
+        mbeanServer.unregisterMBean(name);
+      mbeanServer.registerMBean(this, name);
+    } catch (JMException e) {
+      System.err.println("WARNING: unable to register download metrics over JMX: " + e.getMessage());
+    }
+  }
+
+  private static void appendCounter(StringBuilder out, String name, String help, AtomicLong counter) {
+    out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(PREFIX).append(name).append(" counter\n");
+    out.append(PREFIX).append(name).append(' ').append(counter.get()).append('\n');
+  }
+}
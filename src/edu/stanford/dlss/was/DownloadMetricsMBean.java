@@ -0,0 +1,22 @@
+package edu.stanford.dlss.was;
+
+/**
+ * The download metrics exposed over JMX, as registered under DownloadMetrics.MBEAN_NAME.
+ */
+public interface DownloadMetricsMBean {
+  long getBytesDownloaded();
+
+  long getFilesDownloaded();
+
+  long getFilesFailed();
+
+  long getRetries();
+
+  long getPageFetches();
+
+  double getMeanPageFetchSeconds();
+
+  double getMeanFileTransferSeconds();
+
+  double getMeanChecksumSeconds();
+}
@@ -0,0 +1,121 @@
+package edu.stanford.dlss.was;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a download would fetch, for --plan: how many of the selected files there are and how big they are, per
+ * collection and crawl, and how much of that is already in outputBaseDir.
+ */
+public class DownloadPlan {
+  private static final String[] UNITS = {"B", "KB", "MB", "GB", "TB", "PB"};
+  private static final double BYTES_PER_UNIT = 1024;
+  private static final long SECONDS_PER_MINUTE = TimeUnit.MINUTES.toSeconds(1);
+  private static final long SECONDS_PER_HOUR = TimeUnit.HOURS.toSeconds(1);
+
+  // totals by collection id, then crawl id
+  private final SortedMap<Integer, SortedMap<Integer, Totals>> crawlTotals =
+      new TreeMap<Integer, SortedMap<Integer, Totals>>();
+  private final Totals overallTotals = new Totals();
+
+  /**
+   * @param alreadyPresent  whether the file is already at its output location (and the size WASAPI gives for it)
+   */
+  public void add(WasapiFile file, boolean alreadyPresent) {
+    SortedMap<Integer, Totals> collectionTotals = crawlTotals.get(file.getCollectionId());
+    if (collectionTotals == null) {
+      collectionTotals = new TreeMap<Integer, Totals>();
+      crawlTotals.put(file.getCollectionId(), collectionTotals);
+    }
+    Totals totals = collectionTotals.get(file.getCrawlId());
+    if (totals == null) {
+      totals = new Totals();
+      collectionTotals.put(file.getCrawlId(), totals);
+    }
+    totals.add(file.getSize(), alreadyPresent);
+    overallTotals.add(file.getSize(), alreadyPresent);
+  }
+
+  public int getNumFiles() {
+    return overallTotals.numFiles;
+  }
+
+  public long getBytes() {
+    return overallTotals.bytes;
+  }
+
+  public long getPresentBytes() {
+    return overallTotals.presentBytes;
+  }
+
+  public long getBytesToDownload() {
+    return overallTotals.bytes - overallTotals.presentBytes;
+  }
+
+  /**
+   * Prints a line per collection and crawl, then the totals, whether they'll fit in usableBytes, and how long
+   * downloading them should take at the throughput in history.
+   */
+  public void print(PrintStream out, long usableBytes, ThroughputHistory history) {
+    for (Map.Entry<Integer, SortedMap<Integer, Totals>> collection : crawlTotals.entrySet()) {
+      for (Map.Entry<Integer, Totals> crawl : collection.getValue().entrySet())
+        out.println("collection " + collection.getKey() + ", crawl " + crawl.getKey() + ": " + crawl.getValue());
+    }
+    out.println("total: " + overallTotals + "; " + formatBytes(getBytesToDownload()) + " to download");
+    out.println("free space in outputBaseDir: " + formatBytes(usableBytes) +
+        (usableBytes < getBytesToDownload() ? " (NOT ENOUGH)" : ""));
+    long seconds = history.estimatedSeconds(getBytesToDownload());
+    if (seconds < 0)
+      out.println("estimated time: unknown (no download throughput measured yet)");
+    else
+      out.println("estimated time: " + formatDuration(seconds) + " at " +
+          formatBytes((long) history.bytesPerSecond()) + "/s (measured over previous runs)");
+  }
+
+  // package level method for testing
+  // e.g. "1.5 GB"
+  static String formatBytes(long numBytes) {
+    double value = numBytes;
+    int unit = 0;
+    while (value >= BYTES_PER_UNIT && unit < UNITS.length - 1) {
+      value /= BYTES_PER_UNIT;
+      unit++;
+    }
+    return unit == 0 ? numBytes + " B" : String.format(Locale.ROOT, "%.1f %s", value, UNITS[unit]);
+  }
+
+  // package level method for testing
+  // e.g. "26h 03m 09s"
+  static String formatDuration(long seconds) {
+    return String.format(Locale.ROOT, "%dh %02dm %02ds", seconds / SECONDS_PER_HOUR,
+        seconds % SECONDS_PER_HOUR / SECONDS_PER_MINUTE, seconds % SECONDS_PER_MINUTE);
+  }
+
+  private static final class Totals {
+    private static final String FILES = " files, ";
+
+    private int numFiles;
+    private long bytes;
+    private int numPresent;
+    private long presentBytes;
+
+    void add(long size, boolean alreadyPresent) {
+      numFiles++;
+      bytes += size;
+      if (alreadyPresent) {
+        numPresent++;
+        presentBytes += size;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return numFiles + FILES + formatBytes(bytes) + " (" + numPresent + FILES + formatBytes(presentBytes) +
+          " already present)";
+    }
+  }
+}
@@ -1,32 +1,122 @@
 package edu.stanford.dlss.was;
 
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 
-import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpResponseException;
-import org.apache.http.client.ResponseHandler;
 
-public class DownloadResponseHandler implements ResponseHandler<Boolean> {
+public class DownloadResponseHandler implements StreamingResponseHandler {
   private String outputPath;
+  private long resumeOffset;
+  private MessageDigest[] digests;
+  private FileChannelWriter fileWriter;
 
-  public DownloadResponseHandler(String outPath) {
+  private boolean partialFileDigested;
+
+  // set up by start
+  private FileChannel outputChannel;
+  private long endOfData;
+
+  /**
+   * @param digests  updated with every byte written to outPath, so the caller can validate the download
+   *   without reading the file back from disk
+   */
+  public DownloadResponseHandler(String outPath, MessageDigest... digests) {
+    this(outPath, 0, digests);
+  }
+
+  /**
+   * @param resumeOffset  length of the partial file at outPath, which the request asked the server to skip.
+   *   if the server honors the Range request, the response is appended to outPath; otherwise outPath is overwritten.
+   */
+  public DownloadResponseHandler(String outPath, long resumeOffset, MessageDigest... digests) {
+    this(outPath, resumeOffset, new FileChannelWriter(), digests);
+  }
+
+  /**
+   * @param fileWriter  writes the response into outPath (shared by concurrent downloads, for its buffers and limits)
+   */
+  public DownloadResponseHandler(String outPath, long resumeOffset, FileChannelWriter fileWriter,
+                                 MessageDigest... digests) {
     this.outputPath = outPath;
+    this.resumeOffset = resumeOffset;
+    this.fileWriter = fileWriter;
+    this.digests = digests;
   }
 
   @Override
   public Boolean handleResponse(final HttpResponse response)
       throws ClientProtocolException, HttpResponseException, IOException {
-    HttpEntity entity = response.getEntity();
+    try {
+      if (!start(response))
+        return false;
+      endOfData += fileWriter.write(response.getEntity(), outputChannel, endOfData, digests);
+      return finish();
+    } finally {
+      close();
+    }
+  }
 
-    if (WasapiValidator.validateResponse(response.getStatusLine(), entity == null)) {
-      FileOutputStream fouts = new FileOutputStream(outputPath, false);
-      entity.writeTo(fouts);
-      fouts.close();
-      return true;
+  /**
+   * Updates the digests with the partial file being resumed, so that they cover the whole file, not just the bytes in
+   * the response.  Callers making a resume request call this before sending it, so that a non-blocking transport's
+   * I/O thread isn't left reading what may be gigabytes from disk; otherwise start does it.
+   */
+  public void digestPartialFile() throws IOException {
+    WasapiValidator.checksumInputStream(new FileInputStream(outputPath), digests);
+    partialFileDigested = true;
+  }
+
+  /**
+   * Opens outPath for the response's content: positioned at its end if the server honored the Range request (after
+   * updating the digests with the bytes already there, if digestPartialFile hasn't), otherwise truncated.
+   */
+  @Override
+  public boolean start(HttpResponse response) throws ClientProtocolException, HttpResponseException, IOException {
+    boolean append = resumeOffset > 0 && WasapiValidator.validatePartialResponse(response, resumeOffset);
+    if (!append) {
+      if (partialFileDigested) { // the server is sending the whole file after all
+        for (MessageDigest digest : digests)
+          digest.reset();
+      }
+      if (!WasapiValidator.validateResponse(response))
+        return false;
     }
-    else return false;
+    else if (!partialFileDigested)
+      digestPartialFile();
+
+    OpenOption truncateOrKeep = append ? StandardOpenOption.WRITE : StandardOpenOption.TRUNCATE_EXISTING;
+    outputChannel = FileChannel.open(Paths.get(outputPath),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, truncateOrKeep);
+    endOfData = append ? outputChannel.size() : 0;
+    return true;
+  }
+
+  @Override
+  public long write(ByteBuffer content) throws IOException {
+    int numBytes = content.remaining();
+    endOfData += fileWriter.write(content, outputChannel, endOfData, digests);
+    return fileWriter.pauseNanos(numBytes);
+  }
+
+  @Override
+  public Boolean finish() {
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (outputChannel == null)
+      return;
+    outputChannel.close();
+    outputChannel = null;
   }
 }
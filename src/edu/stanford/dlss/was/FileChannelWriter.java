@@ -0,0 +1,113 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+
+import org.apache.http.HttpEntity;
+
+/**
+ * Writes response bodies into files through large pooled buffers: each buffer is filled from the response before it
+ * is written, so a multi-GB WARC takes far fewer write calls than with HttpCore's small copy buffer.
+ *
+ * One FileChannelWriter is shared by all the downloads made through a WasapiConnection, and counts the bytes they
+ * write in its DownloadMetrics as each buffer is written.
+ */
+public class FileChannelWriter {
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  private final BufferPool bufferPool;
+  private final BandwidthLimiter bandwidthLimiter;
+  private final DownloadMetrics metrics;
+
+  public FileChannelWriter() {
+    this(new BufferPool(DEFAULT_BUFFER_SIZE), null);
+  }
+
+  /**
+   * @param bandwidthLimiter  shared limit on how fast to read responses (null for no limit)
+   */
+  public FileChannelWriter(BufferPool bufferPool, BandwidthLimiter bandwidthLimiter) {
+    this(bufferPool, bandwidthLimiter, null);
+  }
+
+  /**
+   * @param metrics  updated with the bytes written (null to not count them)
+   */
+  public FileChannelWriter(BufferPool bufferPool, BandwidthLimiter bandwidthLimiter, DownloadMetrics metrics) {
+    this.bufferPool = bufferPool;
+    this.bandwidthLimiter = bandwidthLimiter;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Copies the entity's content into outputChannel, starting at position, using positional writes only (so that
+   * several segments of one file can be written concurrently).
+   *
+   * @param digests  updated with every byte written
+   * @return the number of bytes written
+   */
+  public long write(HttpEntity entity, FileChannel outputChannel, long position, MessageDigest... digests)
+      throws IOException {
+    HttpEntity content = bandwidthLimiter == null ? entity : bandwidthLimiter.throttle(entity);
+    ReadableByteChannel inputChannel = Channels.newChannel(content.getContent());
+    ByteBuffer buffer = bufferPool.acquire();
+    long written = 0;
+    try {
+      while (fill(inputChannel, buffer)) {
+        buffer.flip();
+        written += writeBuffer(buffer, outputChannel, position + written, digests);
+        buffer.clear();
+      }
+    } finally {
+      bufferPool.release(buffer);
+      inputChannel.close();
+    }
+    return written;
+  }
+
+  /**
+   * Writes all of content's remaining bytes into outputChannel at position, for callers that are handed the response
+   * a buffer at a time instead of reading it (see StreamingResponseHandler).  Doesn't wait for the bandwidth limit:
+   * see pauseNanos.
+   *
+   * @param digests  updated with every byte written
+   * @return the number of bytes written
+   */
+  public long write(ByteBuffer content, FileChannel outputChannel, long position, MessageDigest... digests)
+      throws IOException {
+    return writeBuffer(content, outputChannel, position, digests);
+  }
+
+  /**
+   * Counts numBytes just received against the bandwidth limit, for callers that mustn't block.
+   *
+   * @return how long the caller should stop receiving to stay within the limit (0 for not at all)
+   */
+  public long pauseNanos(int numBytes) {
+    return bandwidthLimiter == null ? 0 : bandwidthLimiter.reserve(numBytes);
+  }
+
+  private long writeBuffer(ByteBuffer content, FileChannel outputChannel, long position, MessageDigest... digests)
+      throws IOException {
+    for (MessageDigest digest : digests)
+      digest.update(content.duplicate());
+    long written = 0;
+    while (content.hasRemaining())
+      written += outputChannel.write(content, position + written);
+    if (metrics != null)
+      metrics.recordBytesDownloaded(written);
+    return written;
+  }
+
+  // reads until the buffer is full or the input ends; returns false once there is nothing left to write
+  private static boolean fill(ReadableByteChannel inputChannel, ByteBuffer buffer) throws IOException {
+    int numRead = 0;
+    while (buffer.hasRemaining() && numRead != -1)
+      numRead = inputChannel.read(buffer);
+    return buffer.position() > 0;
+  }
+}
@@ -0,0 +1,108 @@
+package edu.stanford.dlss.was;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A MessageDigest for each checksum algorithm asked for (as named by WASAPI, e.g. md5 and sha1), all updated from the
+ * same buffers as a file is downloaded or read, so that the file is only read once however many checksums are wanted.
+ */
+public class FileDigests {
+  /** the checksum algorithms we can compute, as named by WASAPI */
+  public static final List<String> SUPPORTED_ALGORITHMS = Collections.unmodifiableList(Arrays.asList("md5", "sha1"));
+
+  private final Map<String, MessageDigest> digestsByAlgorithm = new LinkedHashMap<String, MessageDigest>();
+
+  public FileDigests(Collection<String> algorithms) throws NoSuchAlgorithmException {
+    for (String algorithm : algorithms)
+      digestsByAlgorithm.put(algorithm, WasapiValidator.newMessageDigest(algorithm));
+  }
+
+  /**
+   * @param configuredAlgorithms  the checksumAlgorithm setting: each must have a checksum from WASAPI that matches
+   * @param expectedChecksums  the checksums WASAPI gave for the file, by algorithm (may be null)
+   * @return digests for configuredAlgorithms, plus any other supported algorithm WASAPI gave a checksum for, so that
+   *   every checksum we can check is checked
+   */
+  public static FileDigests forFile(Collection<String> configuredAlgorithms, Map<String, String> expectedChecksums)
+      throws NoSuchAlgorithmException {
+    Collection<String> algorithms = new LinkedHashSet<String>(configuredAlgorithms);
+    for (String algorithm : SUPPORTED_ALGORITHMS) {
+      if (expectedChecksums != null && expectedChecksums.containsKey(algorithm))
+        algorithms.add(algorithm);
+    }
+    return new FileDigests(algorithms);
+  }
+
+  public MessageDigest get(String algorithm) {
+    return digestsByAlgorithm.get(algorithm);
+  }
+
+  /**
+   * @return a copy of the digest for algorithm, to be finished (e.g. by WasapiValidator.validateDigest) without
+   *   resetting ours, so the checksums can still be reported afterwards
+   */
+  public MessageDigest copyOf(String algorithm) {
+    return copyOf(digestsByAlgorithm.get(algorithm));
+  }
+
+  /**
+   * @return the digests, to be updated together, e.g. by FileChannelWriter or WasapiValidator.checksumInputStream
+   */
+  public MessageDigest[] toArray() {
+    return digestsByAlgorithm.values().toArray(new MessageDigest[digestsByAlgorithm.size()]);
+  }
+
+  /**
+   * @return the algorithms to validate the file with: all of ours, so that a file is rejected if WASAPI gave no
+   *   checksum for one of them
+   */
+  public List<String> algorithms() {
+    return new ArrayList<String>(digestsByAlgorithm.keySet());
+  }
+
+  /**
+   * @return the checksum computed so far for each algorithm, in lower case hex.  Doesn't reset the digests, so it can
+   *   be called before or after they are validated.
+   */
+  public Map<String, String> checksums() {
+    Map<String, String> checksums = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, MessageDigest> entry : digestsByAlgorithm.entrySet()) {
+      byte[] checksum = copyOf(entry.getValue()).digest();
+      checksums.put(entry.getKey(), WasapiValidator.bytesToHex(checksum));
+    }
+    return checksums;
+  }
+
+  /**
+   * @return e.g. "md5: 5d41402abc4b2a76b9719d911017c592, sha1: aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d"
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, String> entry : checksums().entrySet()) {
+      if (sb.length() > 0)
+        sb.append(", ");
+      sb.append(entry.getKey()).append(": ").append(entry.getValue());
+    }
+    return sb.toString();
+  }
+
+  private static MessageDigest copyOf(MessageDigest digest) {
+    try {
+      return (MessageDigest) digest.clone();
+    } catch (CloneNotSupportedException e) {
+      // the JDK's MD5 and SHA digests can all be cloned
+      throw new IllegalStateException("unable to copy " + digest.getAlgorithm() + " digest", e);
+    }
+  }
+}
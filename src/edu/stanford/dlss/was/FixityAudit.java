@@ -0,0 +1,183 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Checks files already downloaded against the checksums WASAPI gives for them, without downloading anything.
+ *
+ * The files on each volume are hashed by a fork/join pool of their own, threadsPerVolume threads in size, so each disk
+ * has as many concurrent readers as it copes with, and a slow one doesn't hold up the others.  The pools are kept
+ * between calls to audit, so a listing can be audited a page at a time; close() shuts them down.
+ */
+public class FixityAudit {
+  private final Collection<String> algorithms;
+  private final int threadsPerVolume;
+  private final FixityReport report = new FixityReport();
+  private final Map<FileStore, ForkJoinPool> poolsByVolume = new HashMap<FileStore, ForkJoinPool>();
+
+  /**
+   * @param algorithms  checksum algorithms to hash each file with, as named by WASAPI, e.g. md5 and sha1
+   * @throws NoSuchAlgorithmException  if one of algorithms isn't supported
+   */
+  public FixityAudit(Collection<String> algorithms, int threadsPerVolume) throws NoSuchAlgorithmException {
+    new FileDigests(algorithms); // fail now, rather than in every worker
+    this.algorithms = algorithms;
+    this.threadsPerVolume = threadsPerVolume;
+  }
+
+  /**
+   * Hashes the files that are there, and waits for them all to be checked.
+   *
+   * @param filesByPath  the files to check, by the path each was downloaded to
+   * @return the report, with the outcome of these files added to those of earlier calls
+   */
+  public FixityReport audit(Map<String, WasapiFile> filesByPath) {
+    List<ForkJoinTask<Void>> volumeTasks = new ArrayList<ForkJoinTask<Void>>();
+    for (Map.Entry<FileStore, List<AuditedFile>> volume : filesByVolume(filesByPath).entrySet()) {
+      ForkJoinPool pool = poolsByVolume.get(volume.getKey());
+      if (pool == null) {
+        pool = new ForkJoinPool(threadsPerVolume);
+        poolsByVolume.put(volume.getKey(), pool);
+      }
+      List<AuditedFile> files = volume.getValue();
+      volumeTasks.add(pool.submit(new AuditTask(files, 0, files.size())));
+    }
+    for (ForkJoinTask<Void> volumeTask : volumeTasks)
+      volumeTask.join();
+    return report;
+  }
+
+  public FixityReport getReport() {
+    return report;
+  }
+
+  public void close() {
+    for (ForkJoinPool pool : poolsByVolume.values())
+      pool.shutdownNow();
+  }
+
+  // files that aren't there are reported as missing straight away
+  private Map<FileStore, List<AuditedFile>> filesByVolume(Map<String, WasapiFile> filesByPath) {
+    Map<FileStore, List<AuditedFile>> filesByVolume = new HashMap<FileStore, List<AuditedFile>>();
+    for (Map.Entry<String, WasapiFile> entry : filesByPath.entrySet()) {
+      Path path = Paths.get(entry.getKey());
+      if (!Files.isRegularFile(path)) {
+        report.recordMissing(entry.getKey());
+        continue;
+      }
+      try {
+        FileStore volume = Files.getFileStore(path);
+        if (!filesByVolume.containsKey(volume))
+          filesByVolume.put(volume, new ArrayList<AuditedFile>());
+        filesByVolume.get(volume).add(new AuditedFile(path, entry.getValue()));
+      } catch (IOException e) {
+        report.recordUnreadable(entry.getKey(), e.toString());
+      }
+    }
+    return filesByVolume;
+  }
+
+  /**
+   * @return what doesn't match, e.g. "md5 expected ..., got ...", or null if the file matches every checksum we
+   *   computed (see FileDigests.forFile)
+   */
+  // package level method for testing
+  static String mismatch(WasapiFile file, FileDigests digests) {
+    Map<String, String> computed = digests.checksums();
+    for (String algorithm : digests.algorithms()) {
+      String expected = file.getChecksums() == null ? null : file.getChecksums().get(algorithm);
+      if (expected == null)
+        return "no " + algorithm + " checksum from WASAPI";
+      if (!expected.equalsIgnoreCase(computed.get(algorithm)))
+        return expectedButGot(algorithm, expected, computed.get(algorithm));
+    }
+    return null;
+  }
+
+  private static String expectedButGot(String what, Object expected, Object actual) {
+    return what + " expected " + expected + ", got " + actual;
+  }
+
+  private static final class AuditedFile {
+    private final Path path;
+    private final WasapiFile file;
+
+    AuditedFile(Path path, WasapiFile file) {
+      this.path = path;
+      this.file = file;
+    }
+  }
+
+  /**
+   * Audits files[from, to) of one volume, splitting the range in half until each task has one file to hash.
+   */
+  private class AuditTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<AuditedFile> files;
+    private final int from;
+    private final int to;
+
+    AuditTask(List<AuditedFile> files, int from, int to) {
+      this.files = files;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= 1) {
+        if (to > from)
+          audit(files.get(from));
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new AuditTask(files, from, middle), new AuditTask(files, middle, to));
+    }
+
+    private void audit(AuditedFile auditedFile) {
+      String path = auditedFile.path.toString();
+      try {
+        long size = Files.size(auditedFile.path);
+        String mismatch = size == auditedFile.file.getSize() ? mismatch(auditedFile.file, hash(auditedFile)) :
+            expectedButGot("size", auditedFile.file.getSize(), size);
+        if (mismatch == null)
+          report.recordMatch();
+        else
+          report.recordMismatch(path, mismatch);
+      } catch (IOException e) {
+        report.recordUnreadable(path, e.toString());
+      }
+    }
+
+    private FileDigests hash(AuditedFile auditedFile) throws IOException {
+      FileDigests digests;
+      try {
+        digests = FileDigests.forFile(algorithms, auditedFile.file.getChecksums());
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("checked by the FixityAudit constructor", e);
+      }
+      InputStream inputStream = Files.newInputStream(auditedFile.path);
+      try {
+        WasapiValidator.checksumInputStream(inputStream, digests.toArray());
+      } finally {
+        inputStream.close();
+      }
+      return digests;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package edu.stanford.dlss.was;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The outcome of a FixityAudit: how many files matched their WASAPI checksums, and which didn't, weren't there, or
+ * couldn't be read.  Filled in concurrently by the audit's workers.
+ */
+public class FixityReport {
+  private int numMatched;
+  // path to what didn't match, e.g. "md5 expected ..., got ..."
+  private final SortedMap<String, String> mismatched = new TreeMap<String, String>();
+  private final SortedSet<String> missing = new TreeSet<String>();
+  // path to the reason it couldn't be read
+  private final SortedMap<String, String> unreadable = new TreeMap<String, String>();
+
+  synchronized void recordMatch() {
+    numMatched++;
+  }
+
+  synchronized void recordMismatch(String path, String detail) {
+    mismatched.put(path, detail);
+  }
+
+  synchronized void recordMissing(String path) {
+    missing.add(path);
+  }
+
+  synchronized void recordUnreadable(String path, String reason) {
+    unreadable.put(path, reason);
+  }
+
+  public synchronized int getNumMatched() {
+    return numMatched;
+  }
+
+  public synchronized SortedMap<String, String> getMismatched() {
+    return new TreeMap<String, String>(mismatched);
+  }
+
+  public synchronized SortedSet<String> getMissing() {
+    return new TreeSet<String>(missing);
+  }
+
+  public synchronized SortedMap<String, String> getUnreadable() {
+    return new TreeMap<String, String>(unreadable);
+  }
+
+  /**
+   * @return true if every file audited was there and matched its checksums
+   */
+  public synchronized boolean isClean() {
+    return mismatched.isEmpty() && missing.isEmpty() && unreadable.isEmpty();
+  }
+
+  /**
+   * Prints a line for each file that failed the audit, in path order, then a line of totals.
+   */
+  public synchronized void print(PrintStream out) {
+    printWithReasons(out, "MISMATCH", mismatched);
+    for (String path : missing)
+      out.println("MISSING: " + path);
+    printWithReasons(out, "UNREADABLE", unreadable);
+    int numAudited = numMatched + mismatched.size() + missing.size() + unreadable.size();
+    out.println("fixity audit of " + numAudited + " files: " + numMatched + " matched, " + mismatched.size() +
+        " mismatched, " + missing.size() + " missing, " + unreadable.size() + " unreadable");
+  }
+
+  private static void printWithReasons(PrintStream out, String label, Map<String, String> reasonsByPath) {
+    for (Map.Entry<String, String> entry : reasonsByPath.entrySet())
+      out.println(label + ": " + entry.getKey() + " (" + entry.getValue() + ")");
+  }
+}
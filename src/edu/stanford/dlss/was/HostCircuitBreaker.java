@@ -0,0 +1,161 @@
+package edu.stanford.dlss.was;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pauses downloads from a host once most of its recent attempts have failed, so that all the workers wait for a
+ * degraded server to recover together, instead of each of them retrying against it.  Shared by all download workers.
+ *
+ * After the pause, a single attempt is let through as a probe (half-open), while the other workers keep waiting: if it
+ * fails, the host is paused again straight away, and if it succeeds, the circuit closes and they all go ahead.  A probe
+ * that reports neither (e.g. a checksum mismatch) lets the next worker probe once it has been out for a pause's length.
+ *
+ * Waits use a ReentrantLock rather than synchronized, so that virtual thread workers don't pin their carrier threads.
+ */
+public class HostCircuitBreaker {
+  // how many of a host's most recent attempts its error rate is taken over
+  static final int WINDOW_SIZE = 20;
+  // fewer attempts than this are too few to judge a host by
+  static final int MIN_ATTEMPTS = 10;
+  private static final double PERCENT = 100.0;
+
+  private final double maxErrorRate;
+  private final long pauseNanos;
+  private final Map<String, HostState> statesByHost = new HashMap<String, HostState>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition hostStateChanged = lock.newCondition();
+
+  /**
+   * @param maxErrorPercent  pause a host when more than this percentage of its recent attempts failed
+   * @param pauseMillis  how long to pause it for
+   */
+  public HostCircuitBreaker(int maxErrorPercent, long pauseMillis) {
+    this.maxErrorRate = maxErrorPercent / PERCENT;
+    this.pauseNanos = TimeUnit.MILLISECONDS.toNanos(pauseMillis);
+  }
+
+  /**
+   * Blocks until location's host isn't paused and, if it's half-open, no other attempt is probing it.  The caller is
+   * then the probe.
+   */
+  public void awaitHost(String location) throws InterruptedException {
+    lock.lock();
+    try {
+      HostState state = statesByHost.get(WasapiLocationSelector.hostOf(location));
+      if (state == null)
+        return;
+      long remainingNanos = state.nanosUntilAdmitted(System.nanoTime());
+      while (remainingNanos > 0) {
+        hostStateChanged.awaitNanos(remainingNanos);
+        remainingNanos = state.nanosUntilAdmitted(System.nanoTime());
+      }
+      if (state.halfOpen)
+        state.probeUntilNanos = System.nanoTime() + pauseNanos;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void recordSuccess(String location) {
+    lock.lock();
+    try {
+      HostState state = stateFor(location);
+      state.record(false);
+      if (state.halfOpen) {
+        state.halfOpen = false;
+        hostStateChanged.signalAll(); // let the workers waiting on the probe go ahead
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return true if this failure paused the host
+   */
+  public boolean recordFailure(String location) {
+    lock.lock();
+    try {
+      HostState state = stateFor(location);
+      if (isPaused(state))
+        return false; // an attempt that started before the pause
+      state.record(true);
+      if (!state.halfOpen && (state.numAttempts < MIN_ATTEMPTS || state.errorRate() <= maxErrorRate))
+        return false;
+      state.pausedUntilNanos = System.nanoTime() + pauseNanos;
+      state.probeUntilNanos = state.pausedUntilNanos;
+      state.halfOpen = true;
+      state.reset();
+      hostStateChanged.signalAll(); // so that the workers waiting on a failed probe wait out the new pause
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean isPaused(String location) {
+    lock.lock();
+    try {
+      HostState state = statesByHost.get(WasapiLocationSelector.hostOf(location));
+      return state != null && isPaused(state);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static boolean isPaused(HostState state) {
+    return state.pausedUntilNanos - System.nanoTime() > 0;
+  }
+
+  private HostState stateFor(String location) {
+    String host = WasapiLocationSelector.hostOf(location);
+    HostState state = statesByHost.get(host);
+    if (state == null) {
+      state = new HostState();
+      state.pausedUntilNanos = System.nanoTime();
+      statesByHost.put(host, state);
+    }
+    return state;
+  }
+
+  // the outcomes of a host's last WINDOW_SIZE attempts, as a ring buffer
+  private static class HostState {
+    private final boolean[] failed = new boolean[WINDOW_SIZE];
+    private int next;
+    private int numAttempts;
+    private int numFailures;
+    private long pausedUntilNanos;
+    private boolean halfOpen;
+    // while half-open, when the probe's turn runs out, if it hasn't reported by then
+    private long probeUntilNanos;
+
+    long nanosUntilAdmitted(long nowNanos) {
+      long untilUnpaused = pausedUntilNanos - nowNanos;
+      return halfOpen ? Math.max(untilUnpaused, probeUntilNanos - nowNanos) : untilUnpaused;
+    }
+
+    void record(boolean attemptFailed) {
+      if (numAttempts == WINDOW_SIZE && failed[next])
+        numFailures--;
+      failed[next] = attemptFailed;
+      if (attemptFailed)
+        numFailures++;
+      next = (next + 1) % WINDOW_SIZE;
+      numAttempts = Math.min(numAttempts + 1, WINDOW_SIZE);
+    }
+
+    double errorRate() {
+      return (double) numFailures / numAttempts;
+    }
+
+    void reset() {
+      next = 0;
+      numAttempts = 0;
+      numFailures = 0;
+    }
+  }
+}
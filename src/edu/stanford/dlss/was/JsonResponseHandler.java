@@ -9,13 +9,14 @@ import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
 
 public class JsonResponseHandler implements ResponseHandler<WasapiResponse> {
+  private static final WasapiResponseParser PARSER = new WasapiResponseParser();
 
   @Override
   public WasapiResponse handleResponse(final HttpResponse response)
       throws ClientProtocolException, HttpResponseException, IOException {
     HttpEntity entity = response.getEntity();
-    if (WasapiValidator.validateResponse(response.getStatusLine(), entity == null))
-      return new WasapiResponseParser().parse(entity.getContent());
+    if (WasapiValidator.validateResponse(response))
+      return PARSER.parse(entity.getContent());
     else return null;
   }
 }
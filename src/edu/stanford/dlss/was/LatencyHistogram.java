@@ -0,0 +1,73 @@
+package edu.stanford.dlss.was;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of durations by bucket, in the shape of a Prometheus histogram.  Safe to record from many threads at once.
+ */
+public class LatencyHistogram {
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final double[] bucketBoundsSeconds;
+  // one count per bucket bound, plus one for durations past the last bound; not cumulative, unlike the exported counts
+  private final AtomicLongArray bucketCounts;
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sumNanos = new AtomicLong();
+
+  /**
+   * @param bucketBoundsSeconds  upper bounds of the buckets, inclusive, in ascending order
+   */
+  public LatencyHistogram(double... bucketBoundsSeconds) {
+    this.bucketBoundsSeconds = bucketBoundsSeconds.clone();
+    this.bucketCounts = new AtomicLongArray(bucketBoundsSeconds.length + 1);
+  }
+
+  public void record(long nanos) {
+    double seconds = nanos / NANOS_PER_SECOND;
+    int bucket = 0;
+    while (bucket < bucketBoundsSeconds.length && seconds > bucketBoundsSeconds[bucket])
+      bucket++;
+    bucketCounts.incrementAndGet(bucket);
+    sumNanos.addAndGet(nanos);
+    count.incrementAndGet();
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public double getSumSeconds() {
+    return sumNanos.get() / NANOS_PER_SECOND;
+  }
+
+  /**
+   * @return 0 if nothing has been recorded
+   */
+  public double getMeanSeconds() {
+    long numRecorded = count.get();
+    return numRecorded == 0 ? 0 : getSumSeconds() / numRecorded;
+  }
+
+  /**
+   * Appends the histogram's cumulative buckets, sum and count in the Prometheus text exposition format.
+   */
+  public void appendPrometheusText(StringBuilder out, String name, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(" histogram\n");
+    long cumulativeCount = 0;
+    for (int bucket = 0; bucket < bucketBoundsSeconds.length; bucket++) {
+      cumulativeCount += bucketCounts.get(bucket);
+      appendBucket(out, name, String.valueOf(bucketBoundsSeconds[bucket]), cumulativeCount);
+    }
+    cumulativeCount += bucketCounts.get(bucketBoundsSeconds.length);
+    appendBucket(out, name, "+Inf", cumulativeCount);
+    out.append(name).append("_sum ").append(getSumSeconds()).append('\n');
+    out.append(name).append("_count ").append(cumulativeCount).append('\n');
+  }
+
+  private static void appendBucket(StringBuilder out, String name, String upperBound, long cumulativeCount) {
+    out.append(name).append("_bucket{le=\"").append(upperBound).append("\"} ").append(cumulativeCount).append('\n');
+  }
+}
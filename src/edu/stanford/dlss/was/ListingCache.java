@@ -0,0 +1,135 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpGet;
+
+/**
+ * Keeps the listing pages (webdata responses) fetched by earlier runs on disk, a file per request URL, along with the
+ * ETag and Last-Modified the server sent with each.  WasapiConnection sends those back as If-None-Match and
+ * If-Modified-Since, and on a 304 parses the kept page instead of downloading it again.
+ *
+ * Each file holds the request URL, the ETag and Last-Modified values (empty if the server sent none), and the page's
+ * JSON, written with DataOutputStream.  Files are named for the SHA-1 of the URL.
+ */
+public class ListingCache {
+  private static final String FILE_SUFFIX = ".page";
+
+  private final Path dir;
+
+  public ListingCache(String dir) {
+    this.dir = Paths.get(dir);
+  }
+
+  /**
+   * @return the page kept for requestURL, or null if there is none (or it can't be read)
+   */
+  public CachedPage get(String requestURL) {
+    Path path = pathFor(requestURL);
+    try {
+      DataInputStream in = new DataInputStream(Files.newInputStream(path));
+      try {
+        CachedPage page = new CachedPage(in.readUTF(), in.readUTF(), in.readUTF(), new byte[in.readInt()]);
+        in.readFully(page.body);
+        return requestURL.equals(page.requestURL) ? page : null;
+      } finally {
+        in.close();
+      }
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      System.err.println("WARNING: unable to read cached listing page (will fetch it again): " + path);
+      return null;
+    }
+  }
+
+  /**
+   * Keeps body as the page for requestURL, if the server sent a validator to check it with next time.  Failing to
+   * write it only warns, since the page itself was fetched fine.
+   */
+  public void put(String requestURL, String etag, String lastModified, byte[] body) {
+    if (etag == null && lastModified == null)
+      return;
+    Path path = pathFor(requestURL);
+    final CachedPage page = new CachedPage(requestURL, emptyIfNull(etag), emptyIfNull(lastModified), body);
+    try {
+      AtomicFileWriter.replace(path, new AtomicFileWriter.Content() {
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+          write(page, out);
+        }
+      });
+    } catch (IOException e) {
+      System.err.println("WARNING: unable to cache listing page: " + path + " (" + e.getMessage() + ")");
+    }
+  }
+
+  private static void write(CachedPage page, OutputStream outputStream) throws IOException {
+    DataOutputStream out = new DataOutputStream(outputStream);
+    out.writeUTF(page.requestURL);
+    out.writeUTF(page.etag);
+    out.writeUTF(page.lastModified);
+    out.writeInt(page.body.length);
+    out.write(page.body);
+    out.flush();
+  }
+
+  // package level method for testing
+  Path pathFor(String requestURL) {
+    MessageDigest sha1;
+    try {
+      sha1 = WasapiValidator.newMessageDigest("sha1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("every JDK has SHA-1", e);
+    }
+    byte[] hash = sha1.digest(requestURL.getBytes(StandardCharsets.UTF_8));
+    return dir.resolve(WasapiValidator.bytesToHex(hash) + FILE_SUFFIX);
+  }
+
+  private static String emptyIfNull(String value) {
+    return value == null ? "" : value;
+  }
+
+  /**
+   * A listing page from an earlier run, and the validators to ask the server whether it has changed since.
+   */
+  public static final class CachedPage {
+    private final String requestURL;
+    private final String etag;
+    private final String lastModified;
+    private final byte[] body;
+
+    CachedPage(String requestURL, String etag, String lastModified, byte[] body) {
+      this.requestURL = requestURL;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.body = body;
+    }
+
+    /**
+     * Makes request conditional: the server answers 304 if the page hasn't changed since it was kept.
+     */
+    public void addValidators(HttpGet request) {
+      if (!etag.isEmpty())
+        request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+      if (!lastModified.isEmpty())
+        request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+    }
+
+    public WasapiResponse parse() throws IOException {
+      return new WasapiResponseParser().parse(new ByteArrayInputStream(body));
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes DownloadMetrics to a .prom file for node-exporter's textfile collector, so long runs can be
+ * graphed and alerted on while they are still going.
+ */
+public class PrometheusTextfileWriter {
+  private static final long WRITE_INTERVAL_SECONDS = 15;
+
+  private final DownloadMetrics metrics;
+  private final Path textfile;
+  private ScheduledExecutorService scheduler;
+
+  public PrometheusTextfileWriter(DownloadMetrics metrics, String textfilePath) {
+    this.metrics = metrics;
+    this.textfile = Paths.get(textfilePath);
+  }
+
+  /**
+   * Starts writing the metrics every WRITE_INTERVAL_SECONDS, beginning now.
+   */
+  public void start() {
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable writeMetrics) {
+        Thread writerThread = new Thread(writeMetrics, "prometheus-textfile-writer");
+        writerThread.setDaemon(true); // don't keep the JVM alive if close() is never called
+        return writerThread;
+      }
+    });
+    scheduler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        writeOrWarn();
+      }
+    }, 0, WRITE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stops the periodic writes, then writes the final values of the metrics.
+   */
+  public void close() {
+    if (scheduler != null)
+      scheduler.shutdownNow();
+    writeOrWarn();
+  }
+
+  /**
+   * Writes to a temporary file next to the textfile and renames it into place, so that node-exporter never reads a
+   * partly written file.
+   */
+  public void write() throws IOException {
+    Path tempFile = textfile.resolveSibling(textfile.getFileName() + ".tmp");
+    Files.write(tempFile, metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8));
+    Files.move(tempFile, textfile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private synchronized void writeOrWarn() {
+    try {
+      write();
+    } catch (IOException e) {
+      System.err.println("WARNING: unable to write download metrics to " + textfile + ": " + e.getMessage());
+    }
+  }
+}
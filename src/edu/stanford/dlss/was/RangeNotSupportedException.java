@@ -0,0 +1,15 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+
+/**
+ * Signals that the server answered a byte range request with the whole file, so the range can't be downloaded on its
+ * own.  Not a ClientProtocolException, so that the connection is dropped rather than drained of the unwanted body.
+ */
+public class RangeNotSupportedException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  public RangeNotSupportedException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,101 @@
+package edu.stanford.dlss.was;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Slows down every request in the process while the server is throttling us.  Shared by all workers, through their
+ * WasapiClient.
+ *
+ * A throttled response (see ThrottledResponseException) pauses all requests until the server's Retry-After delay is
+ * up, and doubles the gap kept between the starts of requests; each successful request narrows the gap again, so the
+ * run slows down while the server is busy and speeds back up once it copes.  As in BandwidthLimiter, requests reserve
+ * their start times under a lock, and sleep outside it.
+ */
+public class RateController {
+  // how many times a throttled file or listing page is retried before giving up on it
+  static final int MAX_THROTTLED_RETRIES = 10;
+  // the pause when a throttled response doesn't say how long to wait
+  static final long DEFAULT_RETRY_AFTER_MILLIS = 1000;
+  static final long MIN_GAP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  static final long MAX_GAP_NANOS = TimeUnit.SECONDS.toNanos(10);
+  // each successful request narrows the gap by this fraction of it
+  private static final int GAP_RECOVERY_DIVISOR = 10;
+  // shorter waits aren't worth a sleep
+  private static final long MIN_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final long maxRetryAfterNanos;
+  private long pausedUntilNanos;
+  private long nextStartNanos; // the earliest the next request may start, gapNanos after the last one
+  private long gapNanos; // 0 until the server throttles us
+
+  /**
+   * @param maxRetryAfterMillis  the longest pause, however long the server asks us to wait
+   */
+  public RateController(long maxRetryAfterMillis) {
+    maxRetryAfterNanos = TimeUnit.MILLISECONDS.toNanos(maxRetryAfterMillis);
+    pausedUntilNanos = System.nanoTime();
+    nextStartNanos = pausedUntilNanos;
+  }
+
+  /**
+   * Blocks until a request may start.
+   */
+  public void acquire() throws InterruptedIOException {
+    long waitNanos = reserve(System.nanoTime());
+    try {
+      while (waitNanos >= MIN_SLEEP_NANOS) {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+        waitNanos = remainingPauseNanos(System.nanoTime()); // in case the server throttled us while we slept
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for the server to stop throttling requests");
+    }
+  }
+
+  public void recordThrottled(long retryAfterMillis) {
+    recordThrottled(retryAfterMillis, System.nanoTime());
+  }
+
+  public synchronized void recordSuccess() {
+    gapNanos -= gapNanos / GAP_RECOVERY_DIVISOR;
+    if (gapNanos < MIN_SLEEP_NANOS)
+      gapNanos = 0;
+  }
+
+  /**
+   * @return how long the caller must wait before starting its request
+   */
+  // package level method for testing
+  synchronized long reserve(long nowNanos) {
+    long startNanos = nowNanos;
+    if (pausedUntilNanos - startNanos > 0) // nanoTime may wrap, so compare differences
+      startNanos = pausedUntilNanos;
+    if (nextStartNanos - startNanos > 0)
+      startNanos = nextStartNanos;
+    nextStartNanos = startNanos + gapNanos;
+    return startNanos - nowNanos;
+  }
+
+  /**
+   * @param retryAfterMillis  the delay the server asked for (-1 if it didn't say)
+   */
+  // package level method for testing
+  synchronized void recordThrottled(long retryAfterMillis, long nowNanos) {
+    long pauseMillis = retryAfterMillis < 0 ? DEFAULT_RETRY_AFTER_MILLIS : retryAfterMillis;
+    long resumeNanos = nowNanos + Math.min(TimeUnit.MILLISECONDS.toNanos(pauseMillis), maxRetryAfterNanos);
+    if (resumeNanos - pausedUntilNanos > 0)
+      pausedUntilNanos = resumeNanos;
+    gapNanos = Math.min(MAX_GAP_NANOS, Math.max(MIN_GAP_NANOS, gapNanos * 2));
+  }
+
+  // package level method for testing
+  synchronized long gapNanos() {
+    return gapNanos;
+  }
+
+  private synchronized long remainingPauseNanos(long nowNanos) {
+    return pausedUntilNanos - nowNanos;
+  }
+}
@@ -0,0 +1,50 @@
+package edu.stanford.dlss.was;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How long to wait before retrying a download: exponential backoff with "full jitter", i.e. a random delay of up to
+ * baseMillis * 2^(retry - 1), capped at maxMillis, so that workers whose downloads failed together don't all retry
+ * together.
+ */
+public class RetryBackoff {
+  private final long baseMillis;
+  private final long maxMillis;
+  private final Random random;
+
+  /**
+   * @param baseMillis  the longest wait before the first retry (0 to retry immediately)
+   * @param maxMillis  the longest wait before any retry
+   */
+  public RetryBackoff(long baseMillis, long maxMillis) {
+    this(baseMillis, maxMillis, null);
+  }
+
+  // package level constructor for testing; a null random uses ThreadLocalRandom
+  RetryBackoff(long baseMillis, long maxMillis, Random random) {
+    this.baseMillis = baseMillis;
+    this.maxMillis = maxMillis;
+    this.random = random;
+  }
+
+  /**
+   * @param retry  1 for the first retry, 2 for the second, ...
+   */
+  public long delayMillis(int retry) {
+    if (baseMillis == 0)
+      return 0;
+    long ceiling = maxMillis;
+    int doublings = retry - 1;
+    if (doublings < Long.numberOfLeadingZeros(baseMillis) - 1) // baseMillis << doublings doesn't overflow
+      ceiling = Math.min(maxMillis, baseMillis << doublings);
+    Random jitter = random == null ? ThreadLocalRandom.current() : random;
+    return (long) (jitter.nextDouble() * (ceiling + 1));
+  }
+
+  public void sleepBeforeRetry(int retry) throws InterruptedException {
+    long delay = delayMillis(retry);
+    if (delay > 0)
+      Thread.sleep(delay);
+  }
+}
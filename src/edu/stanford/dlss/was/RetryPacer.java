@@ -0,0 +1,77 @@
+package edu.stanford.dlss.was;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when each download attempt may go ahead: retries wait for an exponential backoff with jitter, and, with
+ * circuitBreakerErrorPercent set, no attempt is made on a host that has been paused for failing too often.
+ * Shared by all download workers.
+ */
+public class RetryPacer {
+  private final RetryBackoff retryBackoff;
+  private final HostCircuitBreaker circuitBreaker;
+
+  /**
+   * @param circuitBreaker  null to never pause hosts
+   */
+  public RetryPacer(RetryBackoff retryBackoff, HostCircuitBreaker circuitBreaker) {
+    this.retryBackoff = retryBackoff;
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  public static RetryPacer fromSettings(WasapiDownloaderSettings settings) {
+    RetryBackoff retryBackoff = new RetryBackoff(
+        WasapiDownloaderSettings.intValueOrDefault(settings.retryBackoffMillis(), 0),
+        WasapiDownloaderSettings.intValueOrDefault(settings.maxRetryBackoffMillis(),
+            WasapiDownloaderSettings.DEFAULT_MAX_RETRY_BACKOFF_MILLIS));
+    if (settings.circuitBreakerErrorPercent() == null)
+      return new RetryPacer(retryBackoff, null);
+    int pauseSeconds = WasapiDownloaderSettings.intValueOrDefault(settings.circuitBreakerPauseSeconds(),
+        WasapiDownloaderSettings.DEFAULT_CIRCUIT_BREAKER_PAUSE_SECONDS);
+    HostCircuitBreaker circuitBreaker = new HostCircuitBreaker(
+        Integer.parseInt(settings.circuitBreakerErrorPercent()), TimeUnit.SECONDS.toMillis(pauseSeconds));
+    return new RetryPacer(retryBackoff, circuitBreaker);
+  }
+
+  /**
+   * Waits out the backoff before a retry, then any pause on location's host.
+   *
+   * @param attempt  0 for a file's first attempt, 1 for its first retry, ...
+   * @return false if interrupted while waiting (the interrupt status is kept)
+   */
+  public boolean awaitAttempt(int attempt, String location) {
+    try {
+      if (attempt > 0)
+        retryBackoff.sleepBeforeRetry(attempt);
+      if (circuitBreaker != null)
+        circuitBreaker.awaitHost(location);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  public void recordSuccess(String location) {
+    if (circuitBreaker != null)
+      circuitBreaker.recordSuccess(location);
+  }
+
+  /**
+   * Counts a failed attempt against location's host, e.g. a network error.
+   */
+  public void recordFailure(String location) {
+    if (circuitBreaker != null && circuitBreaker.recordFailure(location))
+      System.err.println("WARNING: too many failed downloads from " + WasapiLocationSelector.hostOf(location) +
+          ", pausing downloads from it");
+  }
+
+  /**
+   * Counts an HTTP error response against location's host if it was a server error (5xx); other errors, such as 404,
+   * say nothing about the host's health.
+   */
+  public void recordHttpError(String location, int statusCode) {
+    if (WasapiValidator.isServerError(statusCode))
+      recordFailure(location);
+  }
+}
@@ -0,0 +1,126 @@
+package edu.stanford.dlss.was;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The order in which selected files are handed to the download workers.
+ *
+ * LISTING starts downloading as soon as the first page of the listing arrives; the other policies need the whole
+ * listing before the first download starts, since they order files across every page.
+ */
+public enum SchedulingPolicy {
+  /** crawls in the order they first appear in the listing, and each crawl's files in listing order */
+  LISTING("listing") {
+    @Override
+    public List<WasapiFile> schedule(WasapiCrawlSelector crawlSelector, List<Integer> crawlIds) {
+      List<WasapiFile> files = new ArrayList<WasapiFile>();
+      for (Integer crawlId : crawlIds)
+        files.addAll(crawlSelector.getFilesForCrawl(crawlId));
+      return files;
+    }
+  },
+
+  /** many small files finish early, rather than waiting behind a large one */
+  SMALLEST_FIRST("smallest-first") {
+    @Override
+    public List<WasapiFile> schedule(WasapiCrawlSelector crawlSelector, List<Integer> crawlIds) {
+      List<WasapiFile> files = LISTING.schedule(crawlSelector, crawlIds);
+      Collections.sort(files, BY_SIZE);
+      return files;
+    }
+  },
+
+  /** the largest files start while every worker is busy, so no one file is left running alone at the end of the run */
+  LARGEST_FIRST("largest-first") {
+    @Override
+    public List<WasapiFile> schedule(WasapiCrawlSelector crawlSelector, List<Integer> crawlIds) {
+      List<WasapiFile> files = LISTING.schedule(crawlSelector, crawlIds);
+      Collections.sort(files, Collections.reverseOrder(BY_SIZE));
+      return files;
+    }
+  },
+
+  /** one file from each crawl in turn, so every crawl makes progress */
+  ROUND_ROBIN("round-robin") {
+    @Override
+    public List<WasapiFile> schedule(WasapiCrawlSelector crawlSelector, List<Integer> crawlIds) {
+      List<WasapiFile> files = new ArrayList<WasapiFile>();
+      boolean filesLeft = true;
+      for (int round = 0; filesLeft; round++) {
+        filesLeft = false;
+        for (Integer crawlId : crawlIds) {
+          List<WasapiFile> crawlFiles = crawlSelector.getFilesForCrawl(crawlId);
+          if (round < crawlFiles.size()) {
+            files.add(crawlFiles.get(round));
+            filesLeft = true;
+          }
+        }
+      }
+      return files;
+    }
+  },
+
+  /** whole crawls, earliest crawl start first, so complete crawls are ready as early as possible */
+  OLDEST_CRAWL_FIRST("oldest-crawl-first") {
+    @Override
+    public List<WasapiFile> schedule(final WasapiCrawlSelector crawlSelector, List<Integer> crawlIds) {
+      List<Integer> oldestFirst = new ArrayList<Integer>(crawlIds);
+      Collections.sort(oldestFirst, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer crawlId1, Integer crawlId2) {
+          int byStart = compareNullsLast(crawlSelector.getCrawlStartDateStr(crawlId1),
+                                         crawlSelector.getCrawlStartDateStr(crawlId2));
+          return byStart != 0 ? byStart : crawlId1.compareTo(crawlId2);
+        }
+      });
+      return LISTING.schedule(crawlSelector, oldestFirst);
+    }
+  };
+
+  private static final Comparator<WasapiFile> BY_SIZE = new Comparator<WasapiFile>() {
+    @Override
+    public int compare(WasapiFile file1, WasapiFile file2) {
+      return Long.compare(file1.getSize(), file2.getSize());
+    }
+  };
+
+  private final String settingValue;
+
+  SchedulingPolicy(String settingValue) {
+    this.settingValue = settingValue;
+  }
+
+  /**
+   * @return the files for crawlIds, in the order they should be downloaded
+   */
+  public abstract List<WasapiFile> schedule(WasapiCrawlSelector crawlSelector, List<Integer> crawlIds);
+
+  public String getSettingValue() {
+    return settingValue;
+  }
+
+  /**
+   * @return the policy named by a schedulingPolicy setting, LISTING if the setting is null, or null if it is unknown
+   */
+  public static SchedulingPolicy fromSettingValue(String settingValue) {
+    if (settingValue == null)
+      return LISTING;
+    for (SchedulingPolicy policy : values()) {
+      if (policy.settingValue.equals(settingValue))
+        return policy;
+    }
+    return null;
+  }
+
+  // ISO 8601 date strings in the same format sort chronologically
+  private static int compareNullsLast(String dateStr1, String dateStr2) {
+    if (dateStr1 == null)
+      return dateStr2 == null ? 0 : 1;
+    if (dateStr2 == null)
+      return -1;
+    return dateStr1.compareTo(dateStr2);
+  }
+}
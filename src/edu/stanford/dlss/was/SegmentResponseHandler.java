@@ -0,0 +1,89 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+
+/**
+ * Writes one byte range of a segmented download into its place in the output file.  Several handlers may write to
+ * the same FileChannel concurrently, since each only uses positional writes.
+ */
+public class SegmentResponseHandler implements StreamingResponseHandler {
+  private FileChannel outputChannel;
+  private long firstByte;
+  private long lastByte;
+  private FileChannelWriter fileWriter;
+
+  // set up by start
+  private long startPosition;
+  private long expectedLength;
+  private long written;
+
+  /**
+   * @param firstByte  first byte of the range requested, inclusive
+   * @param lastByte  last byte of the range requested, inclusive
+   */
+  public SegmentResponseHandler(FileChannel outputChannel, long firstByte, long lastByte) {
+    this(outputChannel, firstByte, lastByte, new FileChannelWriter());
+  }
+
+  /**
+   * @param fileWriter  writes the response into outputChannel (shared by all the segments, for its buffers and limits)
+   */
+  public SegmentResponseHandler(FileChannel outputChannel, long firstByte, long lastByte,
+                                FileChannelWriter fileWriter) {
+    this.outputChannel = outputChannel;
+    this.firstByte = firstByte;
+    this.lastByte = lastByte;
+    this.fileWriter = fileWriter;
+  }
+
+  /**
+   * @return true once the range is written
+   * @throws RangeNotSupportedException  if the server ignores the Range header and sends the whole file, which every
+   *   segment would otherwise write in full
+   * @throws IOException  if the response ends before the whole range has been received
+   */
+  @Override
+  public Boolean handleResponse(final HttpResponse response)
+      throws ClientProtocolException, HttpResponseException, IOException {
+    if (!start(response))
+      return false;
+    written = fileWriter.write(response.getEntity(), outputChannel, startPosition);
+    return finish();
+  }
+
+  @Override
+  public boolean start(HttpResponse response) throws ClientProtocolException, HttpResponseException, IOException {
+    if (!WasapiValidator.validatePartialResponse(response, firstByte)) {
+      WasapiValidator.validateResponse(response);
+      throw new RangeNotSupportedException("Server sent the whole file instead of bytes " + firstByte + "-" + lastByte);
+    }
+    startPosition = firstByte;
+    expectedLength = lastByte - firstByte + 1;
+    return true;
+  }
+
+  @Override
+  public long write(ByteBuffer content) throws IOException {
+    int numBytes = content.remaining();
+    written += fileWriter.write(content, outputChannel, startPosition + written);
+    return fileWriter.pauseNanos(numBytes);
+  }
+
+  @Override
+  public Boolean finish() throws IOException {
+    if (written != expectedLength)
+      throw new IOException("Received " + written + " of " + expectedLength + " bytes starting at byte " + firstByte);
+    return true;
+  }
+
+  // the output channel is shared with the other segments, and closed by SegmentedDownload
+  @Override
+  public void close() {
+  }
+}
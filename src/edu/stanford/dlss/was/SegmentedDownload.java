@@ -0,0 +1,107 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpGet;
+
+/**
+ * Downloads one file as several byte ranges, each requested on its own thread and written straight into its place in
+ * the output file, for files too big for a single connection to fetch quickly.
+ */
+public class SegmentedDownload {
+  private final WasapiClient wasapiClient;
+  private final String downloadURL;
+  private final int numSegments;
+  private final FileChannelWriter fileWriter;
+
+  public SegmentedDownload(WasapiClient wasapiClient, String downloadURL, int numSegments) {
+    this(wasapiClient, downloadURL, numSegments, new FileChannelWriter());
+  }
+
+  /**
+   * @param fileWriter  shared by all the segments
+   */
+  public SegmentedDownload(WasapiClient wasapiClient, String downloadURL, int numSegments,
+                           FileChannelWriter fileWriter) {
+    this.wasapiClient = wasapiClient;
+    this.downloadURL = downloadURL;
+    this.numSegments = numSegments;
+    this.fileWriter = fileWriter;
+  }
+
+  /**
+   * Preallocates outputPath to fileSize, then fills it in with the downloaded segments.
+   *
+   * @throws RangeNotSupportedException  if the server doesn't support byte ranges for this file
+   * @throws IOException  if any segment fails, after the other segments have been stopped
+   */
+  public void downloadTo(String outputPath, long fileSize) throws IOException {
+    RandomAccessFile outputFile = new RandomAccessFile(outputPath, "rw");
+    try {
+      outputFile.setLength(fileSize);
+      downloadSegments(outputFile.getChannel(), fileSize);
+    } finally {
+      outputFile.close();
+    }
+  }
+
+  private void downloadSegments(FileChannel outputChannel, long fileSize) throws IOException {
+    long segmentSize = (fileSize + numSegments - 1) / numSegments;
+    ExecutorService segmentPool = Executors.newFixedThreadPool(numSegments);
+    try {
+      List<Future<Boolean>> segments = new ArrayList<Future<Boolean>>();
+      for (long firstByte = 0; firstByte < fileSize; firstByte += segmentSize) {
+        long lastByte = Math.min(firstByte + segmentSize, fileSize) - 1;
+        segments.add(segmentPool.submit(new SegmentRequest(outputChannel, firstByte, lastByte)));
+      }
+      for (Future<Boolean> segment : segments)
+        waitForSegment(segment);
+    } finally {
+      segmentPool.shutdownNow(); // stop the other segments if one failed
+    }
+  }
+
+  private void waitForSegment(Future<Boolean> segment) throws IOException {
+    try {
+      segment.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for download segments to finish");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IllegalStateException("unexpected error downloading segment", e.getCause());
+    }
+  }
+
+  private class SegmentRequest implements Callable<Boolean> {
+    private final FileChannel outputChannel;
+    private final long firstByte;
+    private final long lastByte;
+
+    SegmentRequest(FileChannel outputChannel, long firstByte, long lastByte) {
+      this.outputChannel = outputChannel;
+      this.firstByte = firstByte;
+      this.lastByte = lastByte;
+    }
+
+    @Override
+    public Boolean call() throws IOException {
+      HttpGet segmentRequest = new HttpGet(downloadURL);
+      segmentRequest.setHeader(HttpHeaders.RANGE, "bytes=" + firstByte + "-" + lastByte);
+      SegmentResponseHandler handler = new SegmentResponseHandler(outputChannel, firstByte, lastByte, fileWriter);
+      return wasapiClient.execute(segmentRequest, handler);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Feeds a response to a StreamingResponseHandler on the I/O reactor's threads, so the body goes to disk as it arrives
+ * without a thread waiting on each connection.
+ *
+ * Nothing here may block, since a reactor thread services many connections: when the handler asks for a pause (for
+ * maxBytesPerSecond), reading from the connection is suspended and a timer resumes it, rather than sleeping.
+ */
+public class StreamingResponseConsumer extends AsyncByteConsumer<Boolean> {
+  // read from the connection this much at a time; per in-flight response, so kept smaller than writeBufferKB
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final StreamingResponseHandler handler;
+  private final ScheduledExecutorService inputResumer;
+  private boolean writingBody;
+
+  /**
+   * @param inputResumer  resumes reading the response once a pause the handler asked for is over
+   */
+  public StreamingResponseConsumer(StreamingResponseHandler handler, ScheduledExecutorService inputResumer) {
+    super(BUFFER_SIZE);
+    this.handler = handler;
+    this.inputResumer = inputResumer;
+  }
+
+  @Override
+  protected void onResponseReceived(HttpResponse response) throws IOException {
+    writingBody = handler.start(response);
+  }
+
+  @Override
+  protected void onByteReceived(ByteBuffer content, final IOControl ioControl) throws IOException {
+    if (!writingBody)
+      return;
+    long pauseNanos = handler.write(content);
+    if (pauseNanos > 0) {
+      ioControl.suspendInput();
+      inputResumer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          ioControl.requestInput();
+        }
+      }, pauseNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  protected Boolean buildResult(HttpContext context) throws IOException {
+    if (!writingBody)
+      return false;
+    return handler.finish();
+  }
+
+  // called after the response completes or fails
+  @Override
+  protected void releaseResources() {
+    super.releaseResources();
+    try {
+      handler.close();
+    } catch (IOException e) {
+      System.err.println("WARNING: unable to close download output: " + e.getMessage());
+    }
+  }
+}
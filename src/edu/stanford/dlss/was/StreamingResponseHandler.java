@@ -0,0 +1,42 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+
+/**
+ * A ResponseHandler that writes the response body to disk, in steps that a non-blocking transport can call as the
+ * body arrives, rather than handing the handler a stream to read (see AsyncWasapiClient).
+ *
+ * handleResponse must behave like calling start, write for all of the body, finish and close in turn.
+ */
+public interface StreamingResponseHandler extends ResponseHandler<Boolean> {
+  /**
+   * Checks the response's status and headers, and opens the output for the body.
+   *
+   * @return false if the body should not be written (handleResponse returns false)
+   */
+  boolean start(HttpResponse response) throws IOException;
+
+  /**
+   * Writes the next part of the body: all of content's remaining bytes.  Must not block (e.g. for a bandwidth limit),
+   * since it may be called on an I/O thread shared by every connection.
+   *
+   * @return how long the transport should stop receiving the body before passing the next part (0 for not at all)
+   */
+  long write(ByteBuffer content) throws IOException;
+
+  /**
+   * Called once the whole body has been written.
+   *
+   * @return the handler's result
+   */
+  Boolean finish() throws IOException;
+
+  /**
+   * Releases the output, whether or not the whole body was written.  Safe to call more than once.
+   */
+  void close() throws IOException;
+}
@@ -0,0 +1,25 @@
+package edu.stanford.dlss.was;
+
+import org.apache.http.client.HttpResponseException;
+
+/**
+ * Signals that the server asked us to slow down (429 Too Many Requests, or 503 Service Unavailable with a Retry-After
+ * header), rather than that the request failed: it should be retried once the server's delay is up.
+ */
+public class ThrottledResponseException extends HttpResponseException {
+  private static final long serialVersionUID = 1L;
+
+  private final long retryAfterMillis;
+
+  /**
+   * @param retryAfterMillis  how long the server asked us to wait, from its Retry-After header (-1 if it didn't say)
+   */
+  public ThrottledResponseException(int statusCode, String reasonPhrase, long retryAfterMillis) {
+    super(statusCode, reasonPhrase);
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+}
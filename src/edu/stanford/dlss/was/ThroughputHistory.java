@@ -0,0 +1,101 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the bytes downloaded, and the time the runs took to download them, summed over every run, so that --plan can
+ * estimate how long a download will take at the throughput we've actually had from the server.
+ */
+public class ThroughputHistory {
+  // kept in outputBaseDir, alongside the downloads it measured
+  public static final String FILE_NAME = ".wasapi-downloader-throughput.properties";
+  private static final String BYTES_KEY = "bytes";
+  private static final String NANOS_KEY = "nanos";
+
+  private final Path path;
+  private long bytes;
+  private long nanos;
+
+  /**
+   * Reads the totals so far from path, if it's there.
+   */
+  public ThroughputHistory(String path) {
+    this.path = Paths.get(path);
+    try {
+      load();
+    } catch (NoSuchFileException e) {
+      // no runs measured yet
+    } catch (IOException | NumberFormatException e) {
+      System.err.println("WARNING: unable to read download throughput history (will start again): " + path);
+      bytes = 0;
+      nanos = 0;
+    }
+  }
+
+  /**
+   * @return bytes per second over every run so far, or 0 if nothing has been downloaded yet
+   */
+  public double bytesPerSecond() {
+    if (bytes == 0 || nanos == 0)
+      return 0;
+    return bytes / (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+  }
+
+  /**
+   * @return how many seconds downloading numBytes would take at bytesPerSecond(), or -1 if that isn't known yet
+   */
+  public long estimatedSeconds(long numBytes) {
+    double bytesPerSecond = bytesPerSecond();
+    if (bytesPerSecond == 0)
+      return -1;
+    return (long) Math.ceil(numBytes / bytesPerSecond);
+  }
+
+  /**
+   * Adds a run that downloaded numBytes in runNanos to the totals, and saves them.  Runs that downloaded nothing
+   * (e.g. when everything was already there) aren't counted, since they say nothing about the server's throughput.
+   * Failing to save only warns, since it shouldn't fail the download.
+   */
+  public void record(long numBytes, long runNanos) {
+    if (numBytes <= 0 || runNanos <= 0)
+      return;
+    bytes += numBytes;
+    nanos += runNanos;
+    try {
+      save();
+    } catch (IOException e) {
+      System.err.println("WARNING: unable to save download throughput history: " + path + " (" + e.getMessage() + ")");
+    }
+  }
+
+  private void load() throws IOException {
+    Properties totals = new Properties();
+    InputStream in = Files.newInputStream(path);
+    try {
+      totals.load(in);
+    } finally {
+      in.close();
+    }
+    bytes = readTotal(totals, BYTES_KEY);
+    nanos = readTotal(totals, NANOS_KEY);
+  }
+
+  private static long readTotal(Properties totals, String key) {
+    String total = totals.getProperty(key);
+    return total == null ? 0 : Long.parseLong(total);
+  }
+
+  private void save() throws IOException {
+    Properties totals = new Properties();
+    totals.setProperty(BYTES_KEY, Long.toString(bytes));
+    totals.setProperty(NANOS_KEY, Long.toString(nanos));
+    AtomicFileWriter.replace(path, totals, "download throughput summed over every run");
+  }
+}
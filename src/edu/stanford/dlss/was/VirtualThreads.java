@@ -0,0 +1,63 @@
+package edu.stanford.dlss.was;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Java 21's virtual threads, for virtualThreads=true.  They are looked up reflectively, so that the downloader still
+ * builds for (and runs on) older JVMs, where isSupported is false.
+ */
+public final class VirtualThreads {
+  private static final String UNSUPPORTED_MESSAGE = "virtual threads need Java 21 or later";
+  private static final Method NEW_EXECUTOR = findMethod(Executors.class, "newVirtualThreadPerTaskExecutor");
+  private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+
+  private VirtualThreads() {
+  }
+
+  public static boolean isSupported() {
+    return NEW_EXECUTOR != null && OF_VIRTUAL != null;
+  }
+
+  /**
+   * @return an executor that starts a new virtual thread for each task
+   * @throws UnsupportedOperationException  if this JVM has no virtual threads
+   */
+  public static ExecutorService newThreadPerTaskExecutor() {
+    return (ExecutorService) invoke(NEW_EXECUTOR, null);
+  }
+
+  /**
+   * @return a factory for virtual threads
+   * @throws UnsupportedOperationException  if this JVM has no virtual threads
+   */
+  public static ThreadFactory factory() {
+    Object builder = invoke(OF_VIRTUAL, null);
+    try {
+      return (ThreadFactory) invoke(Class.forName("java.lang.Thread$Builder").getMethod("factory"), builder);
+    } catch (ClassNotFoundException | NoSuchMethodException e) {
+      throw new UnsupportedOperationException(UNSUPPORTED_MESSAGE, e);
+    }
+  }
+
+  private static Object invoke(Method method, Object target) {
+    if (method == null)
+      throw new UnsupportedOperationException(UNSUPPORTED_MESSAGE);
+    try {
+      return method.invoke(target);
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException("unable to create virtual threads", e);
+    }
+  }
+
+  private static Method findMethod(Class<?> owner, String name) {
+    try {
+      return owner.getMethod(name);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
@@ -2,40 +2,72 @@ package edu.stanford.dlss.was;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
+import org.apache.http.ProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.RedirectStrategy;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultRedirectStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 
+@SuppressWarnings({"checkstyle:ClassDataAbstractionCoupling", "checkstyle:ClassFanOutComplexity"})
 public class WasapiClient {
+  // HttpClient's default pool size
+  private static final int DEFAULT_MAX_CONNECTIONS = 20;
+
   protected CloseableHttpClient wasapiClient;     // Protected for easier testing
+  protected PoolingHttpClientConnectionManager connManager;
   protected HttpClientContext wasapiContext;
   protected BasicCookieStore cookieStore;
   protected WasapiDownloaderSettings settings;
+  protected RateController rateController;
+  protected CookieFile cookieFile; // null unless cookies are kept between runs
+
+  private final Object loginLock = new Object();
+  private volatile int sessionNumber; // counts logins, so that workers rejected by the same session share a re-login
 
   public WasapiClient(WasapiDownloaderSettings settings) throws IOException {
     this.settings = settings;
+    if (settings.cookieFile() != null)
+      cookieFile = new CookieFile(settings.cookieFile());
+    int maxRetryAfterSeconds = WasapiDownloaderSettings.intValueOrDefault(settings.maxRetryAfterSeconds(),
+        WasapiDownloaderSettings.DEFAULT_MAX_RETRY_AFTER_SECONDS);
+    rateController = new RateController(TimeUnit.SECONDS.toMillis(maxRetryAfterSeconds));
     wasapiClient = initializeClient();
   }
 
+  /**
+   * Reuses the cookies saved by an earlier run, if there are any that haven't expired; otherwise logs in.  If the
+   * server no longer accepts the saved session, the first request it rejects logs in again.
+   */
   public void login() throws IOException {
-    HttpPost loginRequest = createLoginRequest(settings);
-    CloseableHttpResponse response = wasapiClient.execute(loginRequest);
-    HttpEntity entity = response.getEntity();
-    EntityUtils.consume(entity);
-    response.close();
+    if (cookieFile != null && cookieFile.load(cookieStore))
+      return;
+    loginAndSaveCookies();
   }
 
 
@@ -44,14 +76,92 @@ public class WasapiClient {
   }
 
 
+  /**
+   * When the server rejects the session (a 401, 403 or redirect to the login page, e.g. once the session has expired
+   * partway through a long run), logs in again and resends the request, once.  Workers whose requests are rejected
+   * at the same time wait for a single login.
+   */
   public <T> T execute(HttpGet request, ResponseHandler<? extends T> rh) throws IOException {
-    return wasapiClient.execute(request, rh, wasapiContext);
+    int requestSession = sessionNumber;
+    try {
+      return pacedSend(request, rh);
+    } catch (HttpResponseException e) {
+      if (!isSessionRejected(e.getStatusCode()))
+        throw e;
+      relogin(requestSession);
+      return pacedSend(request, rh);
+    }
+  }
+
+
+  /**
+   * Logs in again, unless another worker already has since rejectedSession's request was sent.
+   */
+  // package level method for testing
+  void relogin(int rejectedSession) throws IOException {
+    synchronized (loginLock) {
+      if (sessionNumber != rejectedSession)
+        return;
+      System.err.println("WARNING: login session rejected by server, logging in again");
+      cookieStore.clear();
+      loginAndSaveCookies();
+      sessionNumber++;
+    }
+  }
+
+
+  /**
+   * Waits for rateController before sending the request, and tells it how the server responded: a
+   * ThrottledResponseException from rh slows down every request made through this client.
+   */
+  private <T> T pacedSend(HttpGet request, ResponseHandler<? extends T> rh) throws IOException {
+    rateController.acquire();
+    try {
+      T result = send(request, rh);
+      rateController.recordSuccess();
+      return result;
+    } catch (ThrottledResponseException e) {
+      rateController.recordThrottled(e.getRetryAfterMillis());
+      throw e;
+    }
   }
 
 
+  /**
+   * Each request gets its own child of wasapiContext, so that concurrent requests share the login cookies
+   * without clobbering each other's per-request attributes (route, redirect locations, etc).
+   */
+  protected <T> T send(HttpGet request, ResponseHandler<? extends T> rh) throws IOException {
+    return wasapiClient.execute(request, rh, new BasicHttpContext(wasapiContext));
+  }
+
+
+  protected void sendLoginRequest() throws IOException {
+    HttpPost loginRequest = createLoginRequest(settings);
+    CloseableHttpResponse response = wasapiClient.execute(loginRequest);
+    HttpEntity entity = response.getEntity();
+    EntityUtils.consume(entity);
+    response.close();
+  }
+
+
+  /**
+   * All requests (listing pages and downloads, from every worker) share one pool of connections, sized from
+   * the connection settings.
+   */
   protected CloseableHttpClient initializeClient() {
     cookieStore = new BasicCookieStore();
-    HttpClientBuilder builder = HttpClientBuilder.create().setDefaultCookieStore(cookieStore);
+    connManager = buildConnectionManager();
+    HttpClientBuilder builder = HttpClientBuilder.create()
+        .setDefaultCookieStore(cookieStore)
+        .setConnectionManager(connManager)
+        .setDefaultRequestConfig(buildRequestConfig())
+        .setKeepAliveStrategy(buildKeepAliveStrategy())
+        .setRedirectStrategy(buildRedirectStrategy());
+    if (settings.idleConnectionSeconds() != null) {
+      long idleSeconds = Long.parseLong(settings.idleConnectionSeconds());
+      builder.evictExpiredConnections().evictIdleConnections(idleSeconds, TimeUnit.SECONDS);
+    }
 
     wasapiContext = HttpClientContext.create();
     wasapiContext.setCookieStore(cookieStore);
@@ -59,8 +169,76 @@ public class WasapiClient {
     return builder.build();
   }
 
+  protected PoolingHttpClientConnectionManager buildConnectionManager() {
+    PoolingHttpClientConnectionManager poolingConnManager = new PoolingHttpClientConnectionManager();
+    poolingConnManager.setDefaultMaxPerRoute(maxConnectionsPerHost());
+    poolingConnManager.setMaxTotal(maxConnections());
+    return poolingConnManager;
+  }
 
-  private HttpPost createLoginRequest(WasapiDownloaderSettings settings) throws UnsupportedEncodingException {
+  // one connection per download worker (or per segment, for segmented downloads), plus one for fetching listing
+  // pages; HttpClient's default is 2
+  protected int maxConnectionsPerHost() {
+    int downloadThreads = WasapiDownloaderSettings.intValueOrDefault(settings.downloadThreads(), 1);
+    if (settings.segmentThresholdMB() != null)
+      downloadThreads *= WasapiDownloaderSettings.intValueOrDefault(settings.segmentsPerFile(),
+          WasapiDownloaderSettings.DEFAULT_SEGMENTS_PER_FILE);
+    return WasapiDownloaderSettings.intValueOrDefault(settings.maxConnectionsPerHost(),
+        Math.max(2, downloadThreads + 1));
+  }
+
+  protected int maxConnections() {
+    return WasapiDownloaderSettings.intValueOrDefault(settings.maxConnections(),
+        Math.max(DEFAULT_MAX_CONNECTIONS, maxConnectionsPerHost()));
+  }
+
+  // unset timeouts are left at -1, the system default (usually no timeout)
+  protected RequestConfig buildRequestConfig() {
+    return RequestConfig.custom()
+        .setConnectTimeout(millisOrDefault(settings.connectTimeoutSeconds()))
+        .setSocketTimeout(millisOrDefault(settings.socketTimeoutSeconds()))
+        .build();
+  }
+
+  protected ConnectionKeepAliveStrategy buildKeepAliveStrategy() {
+    if (settings.keepAliveSeconds() == null)
+      return DefaultConnectionKeepAliveStrategy.INSTANCE;
+    return new CappedKeepAliveStrategy(TimeUnit.SECONDS.toMillis(Long.parseLong(settings.keepAliveSeconds())));
+  }
+
+  protected RedirectStrategy buildRedirectStrategy() {
+    if (settings.authUrlString() == null)
+      return DefaultRedirectStrategy.INSTANCE;
+    return new LoginRedirectStrategy(URI.create(settings.authUrlString()));
+  }
+
+  // failing to save the cookies only warns, since the login itself worked: the next run just logs in again
+  private void loginAndSaveCookies() throws IOException {
+    sendLoginRequest();
+    if (cookieFile == null)
+      return;
+    try {
+      cookieFile.save(cookieStore);
+    } catch (IOException e) {
+      System.err.println("WARNING: unable to save cookies: " + settings.cookieFile() + " (" + e.getMessage() + ")");
+    }
+  }
+
+  // a redirect is only left unfollowed when it's to the login page (see LoginRedirectStrategy)
+  private static boolean isSessionRejected(int statusCode) {
+    if (statusCode == HttpStatus.SC_UNAUTHORIZED || statusCode == HttpStatus.SC_FORBIDDEN)
+      return true;
+    boolean isRedirect = statusCode >= HttpStatus.SC_MULTIPLE_CHOICES && statusCode < HttpStatus.SC_BAD_REQUEST;
+    return isRedirect && statusCode != HttpStatus.SC_NOT_MODIFIED;
+  }
+
+  private static int millisOrDefault(String seconds) {
+    if (seconds == null)
+      return -1;
+    return (int) TimeUnit.SECONDS.toMillis(Integer.parseInt(seconds));
+  }
+
+  protected HttpPost createLoginRequest(WasapiDownloaderSettings settings) throws UnsupportedEncodingException {
     HttpPost httpPost = new HttpPost(settings.authUrlString());
     List <NameValuePair> nvps = new ArrayList <NameValuePair>();
     nvps.add(new BasicNameValuePair("username", settings.username()));
@@ -68,4 +246,45 @@ public class WasapiClient {
     httpPost.setEntity(new UrlEncodedFormEntity(nvps));
     return httpPost;
   }
+
+  /**
+   * Follows redirects as usual, except to the login page: a request redirected there was rejected for want of a
+   * session, so its redirect response is handed back to be treated as such, rather than the login page being
+   * downloaded in place of the file.
+   */
+  private static class LoginRedirectStrategy extends DefaultRedirectStrategy {
+    private final URI authUri;
+
+    LoginRedirectStrategy(URI authUri) {
+      this.authUri = authUri;
+    }
+
+    @Override
+    public boolean isRedirected(HttpRequest request, HttpResponse response, HttpContext context)
+        throws ProtocolException {
+      if (!super.isRedirected(request, response, context))
+        return false;
+      URI location = getLocationURI(request, response, context);
+      return !(authUri.getHost().equalsIgnoreCase(location.getHost()) && authUri.getPath().equals(location.getPath()));
+    }
+  }
+
+  /**
+   * Keeps connections for as long as the server's Keep-Alive header allows, but never longer than maxKeepAliveMillis.
+   */
+  private static class CappedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+    private final long maxKeepAliveMillis;
+
+    CappedKeepAliveStrategy(long maxKeepAliveMillis) {
+      this.maxKeepAliveMillis = maxKeepAliveMillis;
+    }
+
+    @Override
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+      long serverKeepAliveMillis = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+      if (serverKeepAliveMillis > 0 && serverKeepAliveMillis < maxKeepAliveMillis)
+        return serverKeepAliveMillis;
+      return maxKeepAliveMillis;
+    }
+  }
 }
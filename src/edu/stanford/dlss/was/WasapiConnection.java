@@ -1,23 +1,68 @@
 package edu.stanford.dlss.was;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.util.List;
 import java.util.LinkedList;
+import java.util.concurrent.ThreadFactory;
 
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
 
+@SuppressWarnings({"checkstyle:ClassDataAbstractionCoupling", "checkstyle:ClassFanOutComplexity"})
 public class WasapiConnection {
+  // how many fetched pages a pager may hold while its caller works through earlier pages
+  private static final int PAGER_BUFFER_SIZE = 2;
+
   private WasapiClient wasapiClient;
+  private FileChannelWriter fileWriter = new FileChannelWriter();
+  private DownloadMetrics metrics = new DownloadMetrics();
+  private ThreadFactory pageFetchThreadFactory;
+  private ListingCache listingCache; // null unless listing pages are kept between runs
 
   public WasapiConnection(WasapiClient wasapiClient) throws IOException {
     this.wasapiClient = wasapiClient;
     this.wasapiClient.login();
   }
 
+  /**
+   * @param fileWriter  writes every download made through this connection, sharing its buffers and bandwidth limit
+   * @param metrics  updated with the time taken by page fetches and checksums
+   */
+  public WasapiConnection(WasapiClient wasapiClient, FileChannelWriter fileWriter, DownloadMetrics metrics)
+      throws IOException {
+    this(wasapiClient);
+    this.fileWriter = fileWriter;
+    this.metrics = metrics;
+  }
+
+  /**
+   * @param pageFetchThreadFactory  makes pagers' fetching threads (null for daemon platform threads)
+   */
+  public WasapiConnection(WasapiClient wasapiClient, FileChannelWriter fileWriter, DownloadMetrics metrics,
+                          ThreadFactory pageFetchThreadFactory) throws IOException {
+    this(wasapiClient, fileWriter, metrics);
+    this.pageFetchThreadFactory = pageFetchThreadFactory;
+  }
+
+  /**
+   * @param listingCache  keeps listing pages between runs, so that jsonQuery only downloads pages that have changed
+   */
+  public void setListingCache(ListingCache listingCache) {
+    this.listingCache = listingCache;
+  }
 
   /**
+   * A page the server throttled is fetched again, up to RateController.MAX_THROTTLED_RETRIES times, once the client
+   * lets requests through again.  With a listing cache, the request is made conditional on the cached page (if any),
+   * which is used instead when the server says it hasn't changed.
+   *
    * @return null when requestURL is null (for callers that just page through responses' "next" links)
    */
   public WasapiResponse jsonQuery(String requestURL) throws IOException {
@@ -25,7 +70,17 @@ public class WasapiConnection {
       return null;
 
     HttpGet jsonRequest = new HttpGet(requestURL);
-    return wasapiClient.execute(jsonRequest, new JsonResponseHandler());
+    ResponseHandler<WasapiResponse> jsonHandler = new JsonResponseHandler();
+    if (listingCache != null) {
+      ListingCache.CachedPage cachedPage = listingCache.get(requestURL);
+      if (cachedPage != null)
+        cachedPage.addValidators(jsonRequest);
+      jsonHandler = new CachingJsonResponseHandler(listingCache, requestURL, cachedPage);
+    }
+    long startNanos = System.nanoTime();
+    WasapiResponse wasapiResp = executeJsonRequest(jsonRequest, jsonHandler);
+    metrics.recordPageFetch(System.nanoTime() - startNanos);
+    return wasapiResp;
   }
 
   public List<WasapiResponse> pagedJsonQuery(String requestURL) throws IOException {
@@ -40,14 +95,88 @@ public class WasapiConnection {
     return wasapiRespList;
   }
 
-  public Boolean downloadQuery(String downloadURL, final String outputPath)
+  /**
+   * Like pagedJsonQuery, but returns as soon as the query starts: pages are fetched in the background, a few pages
+   * ahead of the caller, so callers can start on the first page's files before the last page has been fetched.
+   */
+  public WasapiResponsePager pagedJsonPager(String requestURL) {
+    return new WasapiResponsePager(this, requestURL, PAGER_BUFFER_SIZE, pageFetchThreadFactory);
+  }
+
+  /**
+   * @param digests  updated with the downloaded bytes as they are written to outputPath
+   */
+  public Boolean downloadQuery(String downloadURL, final String outputPath, MessageDigest... digests)
       throws ClientProtocolException, HttpResponseException, IOException {
     HttpGet fileRequest = new HttpGet(downloadURL);
-    return wasapiClient.execute(fileRequest, new DownloadResponseHandler(outputPath));
+    return wasapiClient.execute(fileRequest, new DownloadResponseHandler(outputPath, 0, fileWriter, digests));
   }
 
+  /**
+   * Continues an interrupted download by requesting only the bytes past the end of the partial file at outputPath.
+   * Falls back to downloading the whole file if there is no partial file, or if the server ignores the Range request.
+   *
+   * @param digests  updated with the whole file's content, including the bytes already on disk
+   */
+  public Boolean resumeDownloadQuery(String downloadURL, final String outputPath, MessageDigest... digests)
+      throws ClientProtocolException, HttpResponseException, IOException {
+    long partialLength = new File(outputPath).length();
+    if (partialLength == 0)
+      return downloadQuery(downloadURL, outputPath, digests);
+
+    HttpGet fileRequest = new HttpGet(downloadURL);
+    fileRequest.setHeader(HttpHeaders.RANGE, "bytes=" + partialLength + "-");
+    try {
+      DownloadResponseHandler resumeHandler =
+          new DownloadResponseHandler(outputPath, partialLength, fileWriter, digests);
+      resumeHandler.digestPartialFile();
+      return wasapiClient.execute(fileRequest, resumeHandler);
+    } catch (HttpResponseException e) {
+      if (e.getStatusCode() != HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE)
+        throw e;
+      // the partial file is no longer a prefix of the server's copy, so start over
+      return downloadQuery(downloadURL, outputPath, digests);
+    }
+  }
+
+  /**
+   * Downloads a file of fileSize bytes as numSegments byte ranges, requested concurrently and each written into its
+   * place in outputPath, which is first preallocated to fileSize.  Falls back to a single downloadQuery if the server
+   * ignores the Range requests.
+   *
+   * @param digests  updated from the assembled file, once every segment has been written
+   */
+  @SuppressWarnings("checkstyle:ParameterNumber")
+  public Boolean segmentedDownloadQuery(String downloadURL, final String outputPath, long fileSize, int numSegments,
+                                        MessageDigest... digests)
+      throws ClientProtocolException, HttpResponseException, IOException {
+    try {
+      new SegmentedDownload(wasapiClient, downloadURL, numSegments, fileWriter).downloadTo(outputPath, fileSize);
+    } catch (RangeNotSupportedException e) {
+      System.err.println("WARNING: " + e.getMessage() + ", downloading it in one piece: " + downloadURL);
+      return downloadQuery(downloadURL, outputPath, digests);
+    }
+    long startNanos = System.nanoTime();
+    WasapiValidator.checksumInputStream(new FileInputStream(outputPath), digests);
+    metrics.recordChecksum(System.nanoTime() - startNanos);
+    return true;
+  }
 
   public void close() throws IOException {
     wasapiClient.close();
   }
+
+  private WasapiResponse executeJsonRequest(HttpGet jsonRequest, ResponseHandler<WasapiResponse> jsonHandler)
+      throws IOException {
+    int retries = 0;
+    while (true) {
+      try {
+        return wasapiClient.execute(jsonRequest, jsonHandler);
+      } catch (ThrottledResponseException e) {
+        if (retries++ >= RateController.MAX_THROTTLED_RETRIES)
+          throw e;
+        System.err.println("WARNING: server is throttling requests (will retry): " + jsonRequest.getURI());
+      }
+    }
+  }
 }
@@ -1,13 +1,14 @@
 package edu.stanford.dlss.was;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class WasapiCrawlSelector {
 
-  protected Map<Integer, List<WasapiFile>> crawlIdToFiles = new HashMap<Integer, List<WasapiFile>>();
+  // crawls stay in the order they first appear in the listing
+  protected Map<Integer, List<WasapiFile>> crawlIdToFiles = new LinkedHashMap<Integer, List<WasapiFile>>();
 
   public WasapiCrawlSelector(WasapiFile[] candidateFiles) {
     addCandidateFiles(candidateFiles);
@@ -36,6 +37,13 @@ public class WasapiCrawlSelector {
     return crawlIdToFiles.get(crawlId);
   }
 
+  /**
+   * @return the crawl-start date of the crawl's first file (every file from a crawl has the same one)
+   */
+  public String getCrawlStartDateStr(Integer crawlId) {
+    return crawlIdToFiles.get(crawlId).get(0).getCrawlStartDateStr();
+  }
+
   private void addCandidateFiles(WasapiFile[] candidateFiles) {
     for (WasapiFile file : candidateFiles) {
       Integer crawlIdInteger = Integer.valueOf(file.getCrawlId());
@@ -1,27 +1,64 @@
 package edu.stanford.dlss.was;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.validator.routines.IntegerValidator;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpResponseException;
 
-@SuppressWarnings("checkstyle:MultipleStringLiterals")
+@SuppressWarnings({"checkstyle:ClassDataAbstractionCoupling", "checkstyle:ClassFanOutComplexity",
+    "checkstyle:MultipleStringLiterals", "checkstyle:MethodCount"})
 public class WasapiDownloader {
   public static final String SETTINGS_FILE_LOCATION = "config/settings.properties";
   private static final char SEP = File.separatorChar;
+  private static final int BYTES_PER_KB = 1024;
+  private static final long BYTES_PER_MB = 1024L * BYTES_PER_KB;
+  // downloads are written next to their final path with this suffix, and only renamed once their checksum validates
+  static final String PART_FILE_SUFFIX = ".part";
 
   public WasapiDownloaderSettings settings;
 
   private WasapiConnection wasapiConn;
 
+  private final WasapiLocationSelector locationSelector = new WasapiLocationSelector();
+
+  private final DownloadMetrics metrics = new DownloadMetrics();
+
+  private final RetryPacer retryPacer;
+
+  private final CrawlWatermark crawlWatermark; // null unless downloading incrementally
+
+  // files that could not be downloaded and validated, appended to concurrently by download workers
+  private final List<WasapiFile> failedFiles = Collections.synchronizedList(new ArrayList<WasapiFile>());
 
   public WasapiDownloader(String settingsFileLocation, String[] args) throws SettingsLoadException {
     settings = new WasapiDownloaderSettings(settingsFileLocation, args);
+    retryPacer = RetryPacer.fromSettings(settings);
+    crawlWatermark = settings.shouldDownloadIncrementally() ? new CrawlWatermark(settings.outputBaseDir() +
+        CrawlWatermark.fileName(settings.accountId(), settings.collectionId()),
+        WasapiDownloaderSettings.intValueOrDefault(settings.incrementalSettleDays(),
+            WasapiDownloaderSettings.DEFAULT_INCREMENTAL_SETTLE_DAYS)) : null;
   }
 
   public void executeFromCmdLine() throws IOException, NoSuchAlgorithmException {
@@ -30,108 +67,403 @@ public class WasapiDownloader {
       return;
     }
 
+    if (settings.shouldPlan()) {
+      long usableBytes = new File(settings.outputBaseDir()).getUsableSpace();
+      planSelectedWarcs().print(System.out, usableBytes, throughputHistory());
+      return;
+    }
+    if (settings.shouldVerifyOnly()) {
+      verifySelectedWarcs().print(System.out);
+      return;
+    }
+    metrics.registerMBean();
     downloadSelectedWarcs();
   }
 
   // package level method for testing
   void downloadSelectedWarcs() throws IOException, NoSuchAlgorithmException {
     // System.out.println("DEBUG: about to request " + getFileSetRequestUrl());
-    List<WasapiResponse> wasapiRespList = getWasapiConn().pagedJsonQuery(getFileSetRequestUrl());
-    // System.out.println(wasapiResp.toString());
-
-    if (wasapiRespList != null && wasapiRespList.get(0) != null) {
-      WasapiCrawlSelector crawlSelector = new WasapiCrawlSelector(wasapiRespList);
-      for (Integer crawlId : desiredCrawlIds(crawlSelector)) {
-        for (WasapiFile file : crawlSelector.getFilesForCrawl(crawlId)) {
-          downloadAndValidateFile(file);
+    long startNanos = System.nanoTime();
+    PrometheusTextfileWriter metricsWriter = startMetricsWriter();
+    WasapiResponsePager pager = getWasapiConn().pagedJsonPager(getFileSetRequestUrl());
+    try {
+      int numSelectedFiles = downloadFiles(pager);
+      printFailureSummary(numSelectedFiles);
+      if (crawlWatermark != null)
+        crawlWatermark.advance(new ArrayList<WasapiFile>(failedFiles));
+      throughputHistory().record(metrics.getBytesDownloaded(), System.nanoTime() - startNanos);
+    } finally {
+      pager.close();
+      if (metricsWriter != null)
+        metricsWriter.close();
+    }
+  }
+
+  /**
+   * For plan: totals up the selected files per collection and crawl, noting those already at their output location
+   * with the size WASAPI gives (their checksums aren't checked, so planning stays quick).
+   */
+  // package level method for testing
+  DownloadPlan planSelectedWarcs() throws IOException {
+    DownloadPlan plan = new DownloadPlan();
+    WasapiResponsePager pager = getWasapiConn().pagedJsonPager(getFileSetRequestUrl());
+    try {
+      for (WasapiResponse page = pager.nextPage(); page != null; page = pager.nextPage()) {
+        for (WasapiFile file : selectedFiles(page)) {
+          File outputFile = new File(outputFilePath(file));
+          plan.add(file, outputFile.isFile() && outputFile.length() == file.getSize());
         }
       }
+    } finally {
+      pager.close();
+    }
+    return plan;
+  }
+
+  // package level method for testing
+  // each download run's throughput is recorded here, for plan's estimates
+  ThroughputHistory throughputHistory() {
+    return new ThroughputHistory(settings.outputBaseDir() + ThroughputHistory.FILE_NAME);
+  }
+
+  /**
+   * For verifyOnly: checks the selected files already under outputBaseDir against their WASAPI checksums, a page of the
+   * listing at a time, without downloading anything.
+   */
+  // package level method for testing
+  FixityReport verifySelectedWarcs() throws IOException, NoSuchAlgorithmException {
+    int threadsPerVolume = WasapiDownloaderSettings.intValueOrDefault(settings.verifyThreadsPerVolume(),
+        WasapiDownloaderSettings.DEFAULT_VERIFY_THREADS_PER_VOLUME);
+    FixityAudit audit = new FixityAudit(settings.checksumAlgorithms(), threadsPerVolume);
+    WasapiResponsePager pager = getWasapiConn().pagedJsonPager(getFileSetRequestUrl());
+    try {
+      for (WasapiResponse page = pager.nextPage(); page != null; page = pager.nextPage()) {
+        Map<String, WasapiFile> filesByPath = new LinkedHashMap<String, WasapiFile>();
+        for (WasapiFile file : selectedFiles(page))
+          filesByPath.put(outputFilePath(file), file);
+        audit.audit(filesByPath);
+      }
+    } finally {
+      pager.close();
+      audit.close();
+    }
+    return audit.getReport();
+  }
+
+  // package level method for testing
+  DownloadMetrics getMetrics() {
+    return metrics;
+  }
+
+  private PrometheusTextfileWriter startMetricsWriter() {
+    if (settings.metricsFile() == null)
+      return null;
+    PrometheusTextfileWriter metricsWriter = new PrometheusTextfileWriter(metrics, settings.metricsFile());
+    metricsWriter.start();
+    return metricsWriter;
+  }
+
+  /**
+   * Runs downloadAndValidateFile for the selected files, downloadThreads at a time, and waits for all of them to
+   * finish: on a fixed-size pool of downloadThreads workers, or with virtualThreads, each on its own virtual thread.
+   * With the default scheduling policy, each page's files are downloaded while later pages are still being fetched;
+   * other policies order the files from every page first.
+   *
+   * @return the number of files selected for download
+   */
+  private int downloadFiles(WasapiResponsePager pager) throws IOException, NoSuchAlgorithmException {
+    int numThreads = WasapiDownloaderSettings.intValueOrDefault(settings.downloadThreads(), 1);
+    ExecutorService workerPool = settings.shouldUseVirtualThreads() ?
+        VirtualThreads.newThreadPerTaskExecutor() : Executors.newFixedThreadPool(numThreads);
+    DownloadSubmitter downloads = new DownloadSubmitter(workerPool, numThreads);
+    SchedulingPolicy policy = SchedulingPolicy.fromSettingValue(settings.schedulingPolicy());
+    try {
+      if (policy == SchedulingPolicy.LISTING) {
+        for (WasapiResponse page = pager.nextPage(); page != null; page = pager.nextPage())
+          downloads.submit(selectedFiles(page));
+      }
+      else
+        downloads.submit(scheduledFiles(pager, policy));
+      downloads.waitForAll();
+    } finally {
+      workerPool.shutdownNow();
+    }
+    return downloads.numSubmitted;
+  }
+
+  private List<WasapiFile> selectedFiles(WasapiResponse page) {
+    WasapiCrawlSelector crawlSelector = new WasapiCrawlSelector(page.getFiles());
+    return SchedulingPolicy.LISTING.schedule(crawlSelector, desiredCrawlIds(crawlSelector));
+  }
+
+  // the selected files from every page, in the order the policy downloads them
+  private List<WasapiFile> scheduledFiles(WasapiResponsePager pager, SchedulingPolicy policy) throws IOException {
+    List<WasapiResponse> pages = new ArrayList<WasapiResponse>();
+    for (WasapiResponse page = pager.nextPage(); page != null; page = pager.nextPage())
+      pages.add(page);
+    WasapiCrawlSelector crawlSelector = new WasapiCrawlSelector(pages);
+    return policy.schedule(crawlSelector, desiredCrawlIds(crawlSelector));
+  }
+
+  private void printFailureSummary(int numSelectedFiles) {
+    synchronized (failedFiles) {
+      if (failedFiles.isEmpty())
+        return;
+      String numFailed = failedFiles.size() + " of " + numSelectedFiles;
+      System.err.println(numFailed + " files not retrieved or unable to validate checksum:");
+      for (WasapiFile file : failedFiles)
+        System.err.println("  " + file.getLocations()[0]);
     }
   }
 
   // package level method for testing
-  WasapiConnection getWasapiConn() throws IOException {
-    if (wasapiConn == null)
-      wasapiConn = new WasapiConnection(new WasapiClient(settings));
+  synchronized WasapiConnection getWasapiConn() throws IOException {
+    if (wasapiConn == null) {
+      wasapiConn = new WasapiConnection(buildClient(), buildFileWriter(), metrics, pageFetchThreadFactory());
+      if (settings.listingCacheDir() != null)
+        wasapiConn.setListingCache(new ListingCache(settings.listingCacheDir()));
+    }
     return wasapiConn;
   }
 
+  // null for the pager's default daemon thread
+  private ThreadFactory pageFetchThreadFactory() {
+    return settings.shouldUseVirtualThreads() ? VirtualThreads.factory() : null;
+  }
+
+  private WasapiClient buildClient() throws IOException {
+    if (WasapiDownloaderSettings.ASYNC_HTTP_TRANSPORT.equals(settings.httpTransport()))
+      return new AsyncWasapiClient(settings);
+    return new WasapiClient(settings);
+  }
+
+  // one writer for the whole run, so that concurrent downloads share its buffer pool and maxBytesPerSecond, and
+  // all the bytes they write are counted in metrics
+  private FileChannelWriter buildFileWriter() {
+    int bufferSize = WasapiDownloaderSettings.intValueOrDefault(settings.writeBufferKB(),
+        FileChannelWriter.DEFAULT_BUFFER_SIZE / BYTES_PER_KB) * BYTES_PER_KB;
+    BandwidthLimiter bandwidthLimiter = null;
+    if (settings.maxBytesPerSecond() != null)
+      bandwidthLimiter = new BandwidthLimiter(Long.parseLong(settings.maxBytesPerSecond()));
+    return new FileChannelWriter(new BufferPool(bufferSize), bandwidthLimiter, metrics);
+  }
+
+  /**
+   * Tries each of the file's locations in turn, starting with the one on the fastest host so far, until the download
+   * validates or the retries run out.  A location that gives an error retrying won't fix is not tried again.
+   *
+   * Each attempt waits for retryPacer first: retries back off, and no attempt is made on a paused host.  Server errors
+   * (5xx) are retried like network errors.  When the server throttles us, the client has already paused every request
+   * for as long as it asked, so up to RateController.MAX_THROTTLED_RETRIES throttled attempts don't use up a retry.
+   *
+   * The file is downloaded to fullFilePath + PART_FILE_SUFFIX, and only moved to fullFilePath once its checksum has
+   * validated, so that a file at fullFilePath is always complete, even after a crash.
+   */
   // package level method for testing
-  @SuppressWarnings("checkstyle:MethodLength")
+  @SuppressWarnings({"checkstyle:MethodLength", "checkstyle:ExecutableStatementCount",
+      "checkstyle:CyclomaticComplexity", "checkstyle:JavaNCSS"})
   void downloadAndValidateFile(WasapiFile file) throws NoSuchAlgorithmException {
     String fullFilePath = prepareOutputLocation(file);
-    if (fullFilePath == null) {
-      // should never get here, except in testing
-      System.err.println("fullFilePath is null - can't retrieve file");
+    if (!shouldDownload(file, fullFilePath))
       return;
-    }
+    String partFilePath = fullFilePath + PART_FILE_SUFFIX;
+    List<String> locations = locationSelector.orderLocations(file.getLocations());
     int numRetries = Integer.parseInt(settings.retries());
     int attempts = 0;
+    int throttledRetries = 0;
     boolean checksumValidated = false;
+    boolean resumePartial = false;
     do {
+      String location = locations.get(attempts % locations.size());
+      if (attempts > 0)
+        metrics.recordRetry();
+      if (!retryPacer.awaitAttempt(attempts, location))
+        break; // interrupted, e.g. the run is being shut down
       attempts++;
       try {
-        boolean downloadSuccess = getWasapiConn().downloadQuery(file.getLocations()[0], fullFilePath);
-        if (downloadSuccess && checksumValidate(settings.checksumAlgorithm(), file, fullFilePath)) {
-          System.out.println("file retrieved successfully: " + file.getLocations()[0]);
+        FileDigests digests = FileDigests.forFile(settings.checksumAlgorithms(), file.getChecksums());
+        long startNanos = System.nanoTime();
+        boolean downloadSuccess = downloadQuery(file, location, partFilePath, resumePartial, digests.toArray());
+        resumePartial = false;
+        if (downloadSuccess && checksumsValidate(file, digests)) {
+          moveIntoPlace(partFilePath, fullFilePath);
+          long elapsedNanos = System.nanoTime() - startNanos;
+          locationSelector.recordSuccess(location, file.getSize(), elapsedNanos);
+          retryPacer.recordSuccess(location);
+          metrics.recordFileDownloaded(elapsedNanos);
+          System.out.println("file retrieved successfully: " + location + " (" + digests + ")");
           checksumValidated = true; // break out of loop
         }
+        else
+          locationSelector.recordFailure(location);
+      } catch (ThrottledResponseException e) {
+        if (throttledRetries++ < RateController.MAX_THROTTLED_RETRIES)
+          numRetries++;
+        System.err.println("WARNING: server is throttling downloads (will retry): " + location +
+            "\n HTTP ResponseCode was " + e.getStatusCode());
       } catch (HttpResponseException e) {
-        String prefix = "ERROR: HttpResponseException (" + e.getMessage() + ") downloading file (will not retry): ";
-        System.err.println(prefix + file.getLocations()[0]);
-        System.err.println(" HTTP ResponseCode was " + e.getStatusCode());
-        attempts = numRetries + 1;  // no more attempts
+        retryPacer.recordHttpError(location, e.getStatusCode());
+        String prefix = "ERROR: HttpResponseException (" + e.getMessage() + ") downloading file";
+        String suffix = "\n HTTP ResponseCode was " + e.getStatusCode();
+        if (WasapiValidator.isServerError(e.getStatusCode())) {
+          locationSelector.recordFailure(location);
+          System.err.println(prefix + " (will retry): " + location + suffix);
+        }
+        else
+          dropLocation(locations, location, prefix, suffix);
       } catch (ClientProtocolException e) {
-        String prefix = "ERROR: ClientProtocolException (" + e.getMessage() + ") downloading file (will not retry): ";
-        System.err.println(prefix + file.getLocations()[0]);
-        attempts = numRetries + 1;  // no more attempts
+        String prefix = "ERROR: ClientProtocolException (" + e.getMessage() + ") downloading file";
+        dropLocation(locations, location, prefix, "");
       } catch (IOException e) {
         // swallow exception and try again - it may be a network issue
-        System.err.println("WARNING: exception downloading file (will retry): " + file.getLocations()[0]);
-        e.printStackTrace(System.err);
+        locationSelector.recordFailure(location);
+        retryPacer.recordFailure(location);
+        resumePartial = true; // keep what was written, and ask for the rest on the next attempt
+        synchronized (System.err) { // keep the warning and its stack trace together when other workers are logging
+          System.err.println("WARNING: exception downloading file (will retry): " + location);
+          e.printStackTrace(System.err);
+        }
       }
-    } while (attempts <= numRetries && !checksumValidated);
+    } while (attempts <= numRetries && !checksumValidated && !locations.isEmpty());
 
-    if (attempts == numRetries + 1) // RE-tries, not number of attempts
+    if (!checksumValidated) {
       System.err.println("file not retrieved or unable to validate checksum: " + file.getLocations()[0]);
+      failedFiles.add(file);
+      metrics.recordFileFailed();
+      new File(partFilePath).delete();
+    }
   }
 
   // package level method for testing
-  String prepareOutputLocation(WasapiFile file) {
-    String outputPath = settings.outputBaseDir() + "AIT_" + file.getCollectionId() +
-        SEP + file.getCrawlId() + SEP + file.getCrawlStartDateStr();
-    new File(outputPath).mkdirs();
-    return outputPath + SEP + file.getFilename();
+  // the part file is in the same directory as fullFilePath, so the move is a rename on every filesystem we expect
+  void moveIntoPlace(String partFilePath, String fullFilePath) throws IOException {
+    try {
+      Files.move(Paths.get(partFilePath), Paths.get(fullFilePath), StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(Paths.get(partFilePath), Paths.get(fullFilePath), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  // after an error that retrying location won't fix, e.g. a 404, so that only the file's other locations are retried
+  private void dropLocation(List<String> locations, String location, String errorPrefix, String errorSuffix) {
+    locationSelector.recordFailure(location);
+    locations.remove(location);
+    String retryNote = locations.isEmpty() ? " (will not retry): " : " (will try another location): ";
+    System.err.println(errorPrefix + retryNote + location + errorSuffix);
   }
 
+  private boolean shouldDownload(WasapiFile file, String fullFilePath) throws NoSuchAlgorithmException {
+    if (fullFilePath == null) {
+      // should never get here, except in testing
+      System.err.println("fullFilePath is null - can't retrieve file");
+      return false;
+    }
+    if (settings.shouldSkipExisting() && isAlreadyDownloaded(file, fullFilePath)) {
+      System.out.println("file already retrieved and validated, skipping: " + file.getLocations()[0]);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return true if fullFilePath already holds a file with the expected size and checksum.  the size is compared first,
+   *   so that the file is only read for the checksum when it could be complete.
+   */
   // package level method for testing
-  boolean checksumValidate(String algorithm, WasapiFile file, String fullFilePath)
-      throws NoSuchAlgorithmException, IOException {
-    String checksum = file.getChecksums().get(algorithm);
-    if (checksum == null) {
-      System.err.println("No checksum of type: " + algorithm + " available: " + file.getChecksums().toString());
+  boolean isAlreadyDownloaded(WasapiFile file, String fullFilePath) throws NoSuchAlgorithmException {
+    File existingFile = new File(fullFilePath);
+    if (!existingFile.isFile() || existingFile.length() != file.getSize())
+      return false;
+    try {
+      long startNanos = System.nanoTime();
+      FileDigests digests = FileDigests.forFile(settings.checksumAlgorithms(), file.getChecksums());
+      WasapiValidator.checksumInputStream(new FileInputStream(fullFilePath), digests.toArray());
+      boolean validated = checksumsValidate(file, digests);
+      metrics.recordChecksum(System.nanoTime() - startNanos);
+      return validated;
+    } catch (IOException e) {
+      System.err.println("WARNING: unable to read existing file (will download again): " + fullFilePath);
       return false;
     }
+  }
+
+  @SuppressWarnings("checkstyle:ParameterNumber")
+  private boolean downloadQuery(WasapiFile file, String location, String fullFilePath, boolean resumePartial,
+                                MessageDigest... digests) throws IOException {
+    if (shouldSegment(file)) {
+      int numSegments = WasapiDownloaderSettings.intValueOrDefault(settings.segmentsPerFile(),
+          WasapiDownloaderSettings.DEFAULT_SEGMENTS_PER_FILE);
+      return getWasapiConn().segmentedDownloadQuery(location, fullFilePath, file.getSize(), numSegments, digests);
+    }
+    if (resumePartial)
+      return getWasapiConn().resumeDownloadQuery(location, fullFilePath, digests);
+    return getWasapiConn().downloadQuery(location, fullFilePath, digests);
+  }
 
-    if ("md5".equals(algorithm))
-      return WasapiValidator.validateMd5(checksum, fullFilePath);
-    else if ("sha1".equals(algorithm))
-      return WasapiValidator.validateSha1(checksum, fullFilePath);
-    else {
-      System.err.println("Unsupported checksum algorithm: " + algorithm + ".  Options are 'md5' or 'sha1'");
+  // package level method for testing
+  // retries of a segmented download download all the segments again, since the output file is preallocated
+  boolean shouldSegment(WasapiFile file) {
+    if (settings.segmentThresholdMB() == null)
       return false;
+    return file.getSize() >= Long.parseLong(settings.segmentThresholdMB()) * BYTES_PER_MB;
+  }
+
+  // package level method for testing
+  String prepareOutputLocation(WasapiFile file) {
+    String outputFilePath = outputFilePath(file);
+    new File(outputFilePath).getParentFile().mkdirs();
+    return outputFilePath;
+  }
+
+  // package level method for testing
+  // where file is downloaded to, without creating its directory
+  String outputFilePath(WasapiFile file) {
+    return settings.outputBaseDir() + "AIT_" + file.getCollectionId() +
+        SEP + file.getCrawlId() + SEP + file.getCrawlStartDateStr() + SEP + file.getFilename();
+  }
+
+  /**
+   * Checks every checksum digests computed (see FileDigests.forFile), so a file is only accepted if WASAPI gave a
+   * checksum for each checksumAlgorithm, and every checksum it gave that we support matches.
+   */
+  // package level method for testing
+  boolean checksumsValidate(WasapiFile file, FileDigests digests) {
+    for (String algorithm : digests.algorithms()) {
+      if (!checksumValidate(algorithm, file, digests.copyOf(algorithm)))
+        return false;
     }
+    return true;
+  }
+
+  // package level method for testing
+  // computedDigest is updated by downloadQuery as the file is written, so the file needn't be read again
+  boolean checksumValidate(String algorithm, WasapiFile file, MessageDigest computedDigest) {
+    String checksum = expectedChecksum(algorithm, file);
+    if (checksum == null)
+      return false;
+    return WasapiValidator.validateDigest(checksum, computedDigest);
+  }
+
+  private String expectedChecksum(String algorithm, WasapiFile file) {
+    String checksum = file.getChecksums().get(algorithm);
+    if (checksum == null)
+      System.err.println("No checksum of type: " + algorithm + " available: " + file.getChecksums().toString());
+    return checksum;
   }
 
   private List<Integer> desiredCrawlIds(WasapiCrawlSelector crawlSelector) {
     // TODO: want cleaner grab of int from settings: wasapi-downloader#83
     Integer myInteger = IntegerValidator.getInstance().validate(settings.crawlIdLowerBound());
+    List<Integer> crawlIds;
     if (myInteger != null) {
       int crawlsAfter = myInteger.intValue();
-      return crawlSelector.getSelectedCrawlIds(crawlsAfter);
+      crawlIds = crawlSelector.getSelectedCrawlIds(crawlsAfter);
     }
     else
-      return crawlSelector.getSelectedCrawlIds(0); // all returns all crawl ids from FileSet
+      crawlIds = crawlSelector.getSelectedCrawlIds(0); // all returns all crawl ids from FileSet
+    if (crawlWatermark != null)
+      crawlIds = crawlWatermark.crawlsAfter(crawlIds, crawlSelector);
+    return crawlIds;
   }
 
   private String getFileSetRequestUrl() {
@@ -157,8 +489,8 @@ public class WasapiDownloader {
 
     if (settings.collectionId() != null)
       params.add("collection=" + settings.collectionId());
-    if (settings.crawlStartAfter() != null)
-      params.add("crawl-start-after=" + settings.crawlStartAfter());
+    if (crawlStartAfter() != null)
+      params.add("crawl-start-after=" + crawlStartAfter());
     if (settings.crawlStartBefore()!= null)
       params.add("crawl-start-before=" + settings.crawlStartBefore());
     if (settings.crawlId() != null)
@@ -166,9 +498,91 @@ public class WasapiDownloader {
     return params;
   }
 
+  // package level method for testing
+  // incremental runs only ask for crawls from the day before the watermark on (or crawlStartAfter, if that's later)
+  String crawlStartAfter() {
+    if (crawlWatermark == null)
+      return settings.crawlStartAfter();
+    return crawlWatermark.crawlStartAfter(settings.crawlStartAfter());
+  }
+
   @SuppressWarnings("checkstyle:UncommentedMain")
   public static void main(String[] args) throws SettingsLoadException, IOException, NoSuchAlgorithmException {
     WasapiDownloader downloader = new WasapiDownloader(SETTINGS_FILE_LOCATION, args);
     downloader.executeFromCmdLine();
   }
+
+  /**
+   * Hands files to the workers in order, only submitting more when a worker is about to need them, so the number of
+   * files waiting to be downloaded stays bounded.
+   */
+  private class DownloadSubmitter {
+    private final CompletionService<Void> completionService;
+    // caps the downloads actually running, since a virtual thread per task executor starts every task it is given
+    private final Semaphore downloadPermits;
+    private final int maxInFlight;
+    private int numInFlight;
+    private int numSubmitted;
+
+    DownloadSubmitter(ExecutorService workerPool, int numThreads) {
+      completionService = new ExecutorCompletionService<Void>(workerPool);
+      downloadPermits = new Semaphore(numThreads);
+      maxInFlight = 2 * numThreads; // enough queued to keep every worker busy
+    }
+
+    void submit(List<WasapiFile> files) throws NoSuchAlgorithmException {
+      for (WasapiFile file : files) {
+        if (numInFlight == maxInFlight) {
+          waitForDownload();
+          numInFlight--;
+        }
+        if (crawlWatermark != null)
+          crawlWatermark.recordSelected(file);
+        completionService.submit(new DownloadTask(file, downloadPermits));
+        numInFlight++;
+        numSubmitted++;
+      }
+    }
+
+    void waitForAll() throws NoSuchAlgorithmException {
+      while (numInFlight > 0) {
+        waitForDownload();
+        numInFlight--;
+      }
+    }
+
+    private void waitForDownload() throws NoSuchAlgorithmException {
+      try {
+        completionService.take().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while waiting for downloads to finish", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof NoSuchAlgorithmException)
+          throw (NoSuchAlgorithmException) e.getCause();
+        throw new IllegalStateException("unexpected error downloading file", e.getCause());
+      }
+    }
+  }
+
+  private class DownloadTask implements Callable<Void> {
+    private final WasapiFile file;
+    private final Semaphore downloadPermits;
+
+    DownloadTask(WasapiFile file, Semaphore downloadPermits) {
+      this.file = file;
+      this.downloadPermits = downloadPermits;
+    }
+
+    @Override
+    public Void call() throws NoSuchAlgorithmException, InterruptedException {
+      downloadPermits.acquire();
+      try {
+        downloadAndValidateFile(file);
+      } finally {
+        downloadPermits.release();
+      }
+      return null;
+    }
+  }
 }
@@ -9,10 +9,10 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.HashSet;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Properties;
-import javax.xml.bind.DatatypeConverter;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -24,7 +24,7 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.validator.routines.IntegerValidator;
 import org.apache.commons.validator.routines.UrlValidator;
 
-@SuppressWarnings({"checkstyle:ClassDataAbstractionCoupling", "checkstyle:ClassFanOutComplexity", "checkstyle:LineLength"})
+@SuppressWarnings({"checkstyle:ClassDataAbstractionCoupling", "checkstyle:ClassFanOutComplexity", "checkstyle:LineLength", "checkstyle:MethodCount"})
 public class WasapiDownloaderSettings {
   // to add a new setting:
   // * add a String constant for the setting/arg name
@@ -36,17 +36,57 @@ public class WasapiDownloaderSettings {
   public static final String ACCCOUNT_ID_PARAM_NAME = "accountId";
   public static final String AUTH_URL_PARAM_NAME = "authurl";
   public static final String BASE_URL_PARAM_NAME = "baseurl";
+  public static final String CIRCUIT_BREAKER_ERROR_PERCENT_PARAM_NAME = "circuitBreakerErrorPercent";
+  public static final String CIRCUIT_BREAKER_PAUSE_PARAM_NAME = "circuitBreakerPauseSeconds";
   public static final String CHECKSUM_ALGORITHM_PARAM_NAME = "checksumAlgorithm";
   public static final String COLLECTION_ID_PARAM_NAME = "collectionId";
+  public static final String CONNECT_TIMEOUT_PARAM_NAME = "connectTimeoutSeconds";
+  public static final String COOKIE_FILE_PARAM_NAME = "cookieFile";
   public static final String CRAWL_ID_PARAM_NAME = "crawlId";
   public static final String CRAWL_ID_LOWER_BOUND_PARAM_NAME = "crawlIdLowerBound";
   public static final String CRAWL_START_AFTER_PARAM_NAME = "crawlStartAfter";
   public static final String CRAWL_START_BEFORE_PARAM_NAME = "crawlStartBefore";
+  public static final String DOWNLOAD_THREADS_PARAM_NAME = "downloadThreads";
   public static final String FILENAME_PARAM_NAME = "filename";
+  public static final String HTTP_TRANSPORT_PARAM_NAME = "httpTransport";
+  public static final String IDLE_CONNECTION_TIMEOUT_PARAM_NAME = "idleConnectionSeconds";
+  public static final String INCREMENTAL_PARAM_NAME = "incremental";
+  public static final String INCREMENTAL_SETTLE_DAYS_PARAM_NAME = "incrementalSettleDays";
+  public static final String KEEP_ALIVE_PARAM_NAME = "keepAliveSeconds";
+  public static final String LISTING_CACHE_DIR_PARAM_NAME = "listingCacheDir";
+  public static final String MAX_BYTES_PER_SECOND_PARAM_NAME = "maxBytesPerSecond";
+  public static final String MAX_CONNECTIONS_PARAM_NAME = "maxConnections";
+  public static final String MAX_CONNECTIONS_PER_HOST_PARAM_NAME = "maxConnectionsPerHost";
+  public static final String METRICS_FILE_PARAM_NAME = "metricsFile";
   public static final String OUTPUT_BASE_DIR_PARAM_NAME = "outputBaseDir";
   public static final String PASSWORD_PARAM_NAME = "password";
+  public static final String PLAN_PARAM_NAME = "plan";
   public static final String RETRIES_PARAM_NAME = "retries";
+  public static final String RETRY_BACKOFF_PARAM_NAME = "retryBackoffMillis";
+  public static final String MAX_RETRY_BACKOFF_PARAM_NAME = "maxRetryBackoffMillis";
+  public static final String MAX_RETRY_AFTER_PARAM_NAME = "maxRetryAfterSeconds";
+  public static final String SCHEDULING_POLICY_PARAM_NAME = "schedulingPolicy";
+  public static final String SEGMENT_THRESHOLD_PARAM_NAME = "segmentThresholdMB";
+  public static final String SEGMENTS_PER_FILE_PARAM_NAME = "segmentsPerFile";
+  public static final String SKIP_EXISTING_PARAM_NAME = "skipExisting";
+  public static final String SOCKET_TIMEOUT_PARAM_NAME = "socketTimeoutSeconds";
   public static final String USERNAME_PARAM_NAME = "username";
+  public static final String VERIFY_ONLY_PARAM_NAME = "verifyOnly";
+  public static final String VERIFY_THREADS_PER_VOLUME_PARAM_NAME = "verifyThreadsPerVolume";
+  public static final String VIRTUAL_THREADS_PARAM_NAME = "virtualThreads";
+  public static final String WRITE_BUFFER_KB_PARAM_NAME = "writeBufferKB";
+
+  public static final int DEFAULT_SEGMENTS_PER_FILE = 4;
+  private static final int MIN_WRITE_BUFFER_KB = 4;
+  public static final int DEFAULT_MAX_RETRY_BACKOFF_MILLIS = 60000;
+  public static final int DEFAULT_CIRCUIT_BREAKER_PAUSE_SECONDS = 30;
+  public static final int DEFAULT_INCREMENTAL_SETTLE_DAYS = 7;
+  public static final int DEFAULT_MAX_RETRY_AFTER_SECONDS = 300;
+  public static final int DEFAULT_VERIFY_THREADS_PER_VOLUME = 2;
+  private static final int MAX_PERCENT = 100;
+
+  public static final String BLOCKING_HTTP_TRANSPORT = "blocking";
+  public static final String ASYNC_HTTP_TRANSPORT = "async";
 
   protected PrintStream errStream = System.err;
   protected Properties settings;
@@ -60,17 +100,45 @@ public class WasapiDownloaderSettings {
     buildArgOption(ACCCOUNT_ID_PARAM_NAME, "limit files to this account (e.g. when multiple accounts per username)"),
     buildArgOption(AUTH_URL_PARAM_NAME, "WASAPI server URL for login credentials"),
     buildArgOption(BASE_URL_PARAM_NAME, "base URL of WASAPI server (expects ending slash)"),
-    buildArgOption(CHECKSUM_ALGORITHM_PARAM_NAME, "checksum algorithm to use (md5 or sha1"),
+    buildArgOption(CIRCUIT_BREAKER_ERROR_PERCENT_PARAM_NAME, "pause all downloads from a host when more than this % of its recent attempts failed (unset never does)"),
+    buildArgOption(CIRCUIT_BREAKER_PAUSE_PARAM_NAME, "how many seconds to pause a failing host for (defaults to 30)"),
+    buildArgOption(CHECKSUM_ALGORITHM_PARAM_NAME, "checksum algorithm(s) to validate with: md5, sha1, or md5,sha1 to compute both in one pass"),
     buildArgOption(COLLECTION_ID_PARAM_NAME, "limit files to this collection"),
+    buildArgOption(CONNECT_TIMEOUT_PARAM_NAME, "seconds to wait for a connection to the WASAPI server (0 waits forever)"),
+    buildArgOption(COOKIE_FILE_PARAM_NAME, "file to keep login cookies in, so later runs can reuse the session (unset logs in every run)"),
     buildArgOption(CRAWL_ID_PARAM_NAME, "limit files to this crawl id"),
     buildArgOption(CRAWL_ID_LOWER_BOUND_PARAM_NAME, "\"last crawl downloaded\": limit files to crawls with a higher crawl ID (not inclusive)"),
     buildArgOption(CRAWL_START_AFTER_PARAM_NAME, "limit files to crawls started after this date"),
     buildArgOption(CRAWL_START_BEFORE_PARAM_NAME, "limit files to crawls started before this date"),
+    buildArgOption(DOWNLOAD_THREADS_PARAM_NAME, "how many files to download concurrently (defaults to 1)"),
     buildArgOption(FILENAME_PARAM_NAME, "name of single file to download"),
+    buildArgOption(HTTP_TRANSPORT_PARAM_NAME, "blocking (a thread per transfer) or async (non-blocking I/O) HTTP client (defaults to blocking)"),
+    buildArgOption(IDLE_CONNECTION_TIMEOUT_PARAM_NAME, "close pooled connections that have been idle this many seconds (unset keeps them)"),
+    buildFlagOption(INCREMENTAL_PARAM_NAME, "only list and download crawls newer than the last one fully downloaded for this account and collection"),
+    buildArgOption(INCREMENTAL_SETTLE_DAYS_PARAM_NAME, "with incremental, only count crawls started at least this many days ago as fully downloaded, since newer ones may still gain files (defaults to 7)"),
+    buildArgOption(KEEP_ALIVE_PARAM_NAME, "most seconds to keep a connection open for reuse (unset uses the server's Keep-Alive header)"),
+    buildArgOption(LISTING_CACHE_DIR_PARAM_NAME, "directory to keep listing pages in, so later runs only download pages that have changed (unset keeps none)"),
+    buildArgOption(MAX_BYTES_PER_SECOND_PARAM_NAME, "most bytes per second to download, across all files being downloaded (unset is unlimited)"),
+    buildArgOption(MAX_CONNECTIONS_PARAM_NAME, "most connections to keep open in total (defaults to 20, or maxConnectionsPerHost if that's more)"),
+    buildArgOption(MAX_CONNECTIONS_PER_HOST_PARAM_NAME, "most connections to keep open to any one host (defaults to downloadThreads + 1, and at least 2)"),
+    buildArgOption(METRICS_FILE_PARAM_NAME, "node-exporter textfile (ending in .prom) to keep updated with download metrics (unset writes none)"),
     buildArgOption(OUTPUT_BASE_DIR_PARAM_NAME, "destination directory for downloaded files (expects ending slash)"),
     buildArgOption(PASSWORD_PARAM_NAME, "password for WASAPI server login"),
+    buildFlagOption(PLAN_PARAM_NAME, "download nothing: print the selected files' counts and sizes per collection and crawl, how much is already in outputBaseDir, and an estimated time"),
     buildArgOption(RETRIES_PARAM_NAME, "how many times to retry a download for each file (retries + 1 = total tries)"),
-    buildArgOption(USERNAME_PARAM_NAME, "username for WASAPI server login")
+    buildArgOption(RETRY_BACKOFF_PARAM_NAME, "wait up to this many ms before the first retry, doubling for each retry after (unset retries at once)"),
+    buildArgOption(MAX_RETRY_BACKOFF_PARAM_NAME, "most ms to wait before any retry (defaults to 60000)"),
+    buildArgOption(MAX_RETRY_AFTER_PARAM_NAME, "most seconds to pause all requests when the server throttles us, whatever its Retry-After says (defaults to 300)"),
+    buildArgOption(SCHEDULING_POLICY_PARAM_NAME, "order to download files in: " + schedulingPolicyNames() + " (defaults to listing)"),
+    buildArgOption(SEGMENT_THRESHOLD_PARAM_NAME, "download files of at least this many MB as several concurrent byte ranges (unset never does)"),
+    buildArgOption(SEGMENTS_PER_FILE_PARAM_NAME, "how many byte ranges to split files of at least segmentThresholdMB into (defaults to 4)"),
+    buildFlagOption(SKIP_EXISTING_PARAM_NAME, "don't download files already at their output location with the expected size and checksum"),
+    buildArgOption(SOCKET_TIMEOUT_PARAM_NAME, "seconds to wait for more data on an open connection before giving up (0 waits forever)"),
+    buildArgOption(USERNAME_PARAM_NAME, "username for WASAPI server login"),
+    buildFlagOption(VERIFY_ONLY_PARAM_NAME, "download nothing: check the selected files already in outputBaseDir against their checksums, and report mismatched and missing files"),
+    buildArgOption(VERIFY_THREADS_PER_VOLUME_PARAM_NAME, "with verifyOnly, how many files to read at once from each volume (defaults to 2)"),
+    buildFlagOption(VIRTUAL_THREADS_PARAM_NAME, "download each file and fetch listing pages on virtual threads, downloadThreads at a time (Java 21+)"),
+    buildArgOption(WRITE_BUFFER_KB_PARAM_NAME, "size in KB of the buffers downloads are written to disk through (defaults to 1024)")
   };
 
   static {
@@ -103,6 +171,30 @@ public class WasapiDownloaderSettings {
     return settings.getProperty(HELP_PARAM_NAME) != null;
   }
 
+  public boolean shouldDownloadIncrementally() {
+    return Boolean.parseBoolean(settings.getProperty(INCREMENTAL_PARAM_NAME));
+  }
+
+  public String incrementalSettleDays() {
+    return settings.getProperty(INCREMENTAL_SETTLE_DAYS_PARAM_NAME);
+  }
+
+  public boolean shouldPlan() {
+    return Boolean.parseBoolean(settings.getProperty(PLAN_PARAM_NAME));
+  }
+
+  public boolean shouldSkipExisting() {
+    return Boolean.parseBoolean(settings.getProperty(SKIP_EXISTING_PARAM_NAME));
+  }
+
+  public boolean shouldVerifyOnly() {
+    return Boolean.parseBoolean(settings.getProperty(VERIFY_ONLY_PARAM_NAME));
+  }
+
+  public boolean shouldUseVirtualThreads() {
+    return Boolean.parseBoolean(settings.getProperty(VIRTUAL_THREADS_PARAM_NAME));
+  }
+
   public String accountId() {
     return settings.getProperty(ACCCOUNT_ID_PARAM_NAME);
   }
@@ -115,10 +207,32 @@ public class WasapiDownloaderSettings {
     return settings.getProperty(BASE_URL_PARAM_NAME);
   }
 
+  public String circuitBreakerErrorPercent() {
+    return settings.getProperty(CIRCUIT_BREAKER_ERROR_PERCENT_PARAM_NAME);
+  }
+
+  public String circuitBreakerPauseSeconds() {
+    return settings.getProperty(CIRCUIT_BREAKER_PAUSE_PARAM_NAME);
+  }
+
   public String checksumAlgorithm() {
     return settings.getProperty(CHECKSUM_ALGORITHM_PARAM_NAME);
   }
 
+  /**
+   * @return the algorithms listed in checksumAlgorithm, e.g. [md5, sha1] for md5,sha1
+   */
+  public List<String> checksumAlgorithms() {
+    List<String> algorithms = new LinkedList<String>();
+    if (checksumAlgorithm() == null)
+      return algorithms;
+    for (String algorithm : checksumAlgorithm().split(",")) {
+      if (!algorithm.trim().isEmpty())
+        algorithms.add(algorithm.trim());
+    }
+    return algorithms;
+  }
+
   public String collectionId() {
     return settings.getProperty(COLLECTION_ID_PARAM_NAME);
   }
@@ -141,10 +255,54 @@ public class WasapiDownloaderSettings {
     return settings.getProperty(CRAWL_START_BEFORE_PARAM_NAME);
   }
 
+  public String connectTimeoutSeconds() {
+    return settings.getProperty(CONNECT_TIMEOUT_PARAM_NAME);
+  }
+
+  public String cookieFile() {
+    return settings.getProperty(COOKIE_FILE_PARAM_NAME);
+  }
+
+  public String downloadThreads() {
+    return settings.getProperty(DOWNLOAD_THREADS_PARAM_NAME);
+  }
+
   public String filename() {
     return settings.getProperty(FILENAME_PARAM_NAME);
   }
 
+  public String idleConnectionSeconds() {
+    return settings.getProperty(IDLE_CONNECTION_TIMEOUT_PARAM_NAME);
+  }
+
+  public String httpTransport() {
+    return settings.getProperty(HTTP_TRANSPORT_PARAM_NAME);
+  }
+
+  public String keepAliveSeconds() {
+    return settings.getProperty(KEEP_ALIVE_PARAM_NAME);
+  }
+
+  public String listingCacheDir() {
+    return settings.getProperty(LISTING_CACHE_DIR_PARAM_NAME);
+  }
+
+  public String maxBytesPerSecond() {
+    return settings.getProperty(MAX_BYTES_PER_SECOND_PARAM_NAME);
+  }
+
+  public String maxConnections() {
+    return settings.getProperty(MAX_CONNECTIONS_PARAM_NAME);
+  }
+
+  public String maxConnectionsPerHost() {
+    return settings.getProperty(MAX_CONNECTIONS_PER_HOST_PARAM_NAME);
+  }
+
+  public String metricsFile() {
+    return settings.getProperty(METRICS_FILE_PARAM_NAME);
+  }
+
   public String outputBaseDir() {
     return settings.getProperty(OUTPUT_BASE_DIR_PARAM_NAME);
   }
@@ -157,10 +315,46 @@ public class WasapiDownloaderSettings {
     return settings.getProperty(RETRIES_PARAM_NAME);
   }
 
+  public String retryBackoffMillis() {
+    return settings.getProperty(RETRY_BACKOFF_PARAM_NAME);
+  }
+
+  public String maxRetryBackoffMillis() {
+    return settings.getProperty(MAX_RETRY_BACKOFF_PARAM_NAME);
+  }
+
+  public String maxRetryAfterSeconds() {
+    return settings.getProperty(MAX_RETRY_AFTER_PARAM_NAME);
+  }
+
+  public String schedulingPolicy() {
+    return settings.getProperty(SCHEDULING_POLICY_PARAM_NAME);
+  }
+
+  public String segmentThresholdMB() {
+    return settings.getProperty(SEGMENT_THRESHOLD_PARAM_NAME);
+  }
+
+  public String segmentsPerFile() {
+    return settings.getProperty(SEGMENTS_PER_FILE_PARAM_NAME);
+  }
+
+  public String socketTimeoutSeconds() {
+    return settings.getProperty(SOCKET_TIMEOUT_PARAM_NAME);
+  }
+
   public String username() {
     return settings.getProperty(USERNAME_PARAM_NAME);
   }
 
+  public String verifyThreadsPerVolume() {
+    return settings.getProperty(VERIFY_THREADS_PER_VOLUME_PARAM_NAME);
+  }
+
+  public String writeBufferKB() {
+    return settings.getProperty(WRITE_BUFFER_KB_PARAM_NAME);
+  }
+
 
   public String getHelpAndSettingsMessage() {
     if (helpAndSettingsMessage == null)
@@ -206,8 +400,8 @@ public class WasapiDownloaderSettings {
       errMessages.add(PASSWORD_PARAM_NAME + " is required");
     if (isNullOrEmpty(outputBaseDir()) || !isDirWritable(outputBaseDir()))
       errMessages.add(OUTPUT_BASE_DIR_PARAM_NAME + " is required (and must be an extant, writable directory)");
-    if (isNullOrEmpty(checksumAlgorithm()) || !("md5".equals(checksumAlgorithm())) || "sha1".equals(checksumAlgorithm()))
-      errMessages.add(CHECKSUM_ALGORITHM_PARAM_NAME + " is required and must be md5 or sha1");
+    if (!hasValidChecksumAlgorithms())
+      errMessages.add(CHECKSUM_ALGORITHM_PARAM_NAME + " is required and must be md5, sha1, or md5,sha1");
     if (isNullOrEmpty(retries()) || !intValidator.isValid(retries()) || !intValidator.minValue(Integer.valueOf(retries()), 0))
       errMessages.add(RETRIES_PARAM_NAME + " is required and must be an integer >= 0");
 
@@ -224,14 +418,108 @@ public class WasapiDownloaderSettings {
       errMessages.add(CRAWL_START_AFTER_PARAM_NAME + " must be a valid ISO 8601 date string (if specified)");
     if (!isNullOrEmpty(crawlIdLowerBound()) && !intValidator.isValid(crawlIdLowerBound()))
       errMessages.add(CRAWL_ID_LOWER_BOUND_PARAM_NAME + " must be an integer (if specified)");
+    if (!isNullOrEmpty(settings.getProperty(SKIP_EXISTING_PARAM_NAME)) && !isBooleanString(settings.getProperty(SKIP_EXISTING_PARAM_NAME)))
+      errMessages.add(SKIP_EXISTING_PARAM_NAME + " must be true or false (if specified)");
+    if (!isNullOrEmpty(settings.getProperty(VERIFY_ONLY_PARAM_NAME)) && !isBooleanString(settings.getProperty(VERIFY_ONLY_PARAM_NAME)))
+      errMessages.add(VERIFY_ONLY_PARAM_NAME + " must be true or false (if specified)");
+    if (!isNullOrEmpty(settings.getProperty(PLAN_PARAM_NAME)) && !isBooleanString(settings.getProperty(PLAN_PARAM_NAME)))
+      errMessages.add(PLAN_PARAM_NAME + " must be true or false (if specified)");
+    if (!isNullOrEmpty(settings.getProperty(INCREMENTAL_PARAM_NAME)) && !isBooleanString(settings.getProperty(INCREMENTAL_PARAM_NAME)))
+      errMessages.add(INCREMENTAL_PARAM_NAME + " must be true or false (if specified)");
+    else if (shouldDownloadIncrementally() && (!isNullOrEmpty(filename()) || !isNullOrEmpty(crawlId())))
+      errMessages.add(INCREMENTAL_PARAM_NAME + " can't be used with " + FILENAME_PARAM_NAME + " or " + CRAWL_ID_PARAM_NAME);
+    addTuningErrors(errMessages);
 
     return errMessages;
   }
 
+  // optional download tuning settings, validate if specified
+  @SuppressWarnings({"checkstyle:CyclomaticComplexity", "checkstyle:NPathComplexity", "checkstyle:MethodLength",
+      "checkstyle:MultipleStringLiterals"})
+  private void addTuningErrors(List<String> errMessages) {
+    addErrorIfNotIntAtLeast(errMessages, DOWNLOAD_THREADS_PARAM_NAME, 1);
+    addErrorIfNotIntAtLeast(errMessages, MAX_CONNECTIONS_PARAM_NAME, 1);
+    addErrorIfNotIntAtLeast(errMessages, MAX_CONNECTIONS_PER_HOST_PARAM_NAME, 1);
+    addErrorIfNotIntAtLeast(errMessages, CONNECT_TIMEOUT_PARAM_NAME, 0);
+    if (!isNullOrEmpty(cookieFile()) && !isDirWritable(new File(cookieFile()).getAbsoluteFile().getParent()))
+      errMessages.add(COOKIE_FILE_PARAM_NAME + " must be in a writable directory (if specified)");
+    if (!isNullOrEmpty(listingCacheDir()) && !isDirWritable(listingCacheDir()))
+      errMessages.add(LISTING_CACHE_DIR_PARAM_NAME + " must be an extant, writable directory (if specified)");
+    addErrorIfNotIntAtLeast(errMessages, SOCKET_TIMEOUT_PARAM_NAME, 0);
+    addErrorIfNotIntAtLeast(errMessages, KEEP_ALIVE_PARAM_NAME, 1);
+    addErrorIfNotIntAtLeast(errMessages, IDLE_CONNECTION_TIMEOUT_PARAM_NAME, 1);
+    addErrorIfNotIntAtLeast(errMessages, SEGMENT_THRESHOLD_PARAM_NAME, 1);
+    addErrorIfNotIntAtLeast(errMessages, SEGMENTS_PER_FILE_PARAM_NAME, 2);
+    addErrorIfNotIntAtLeast(errMessages, MAX_BYTES_PER_SECOND_PARAM_NAME, 1);
+    addErrorIfNotIntAtLeast(errMessages, WRITE_BUFFER_KB_PARAM_NAME, MIN_WRITE_BUFFER_KB);
+    addErrorIfNotIntAtLeast(errMessages, RETRY_BACKOFF_PARAM_NAME, 0);
+    addErrorIfNotIntAtLeast(errMessages, MAX_RETRY_BACKOFF_PARAM_NAME, 1);
+    addErrorIfNotIntAtLeast(errMessages, MAX_RETRY_AFTER_PARAM_NAME, 0);
+    addErrorIfNotIntAtLeast(errMessages, CIRCUIT_BREAKER_PAUSE_PARAM_NAME, 1);
+    addErrorIfNotIntAtLeast(errMessages, VERIFY_THREADS_PER_VOLUME_PARAM_NAME, 1);
+    addErrorIfNotIntAtLeast(errMessages, INCREMENTAL_SETTLE_DAYS_PARAM_NAME, 0);
+    Integer errorPercent = IntegerValidator.getInstance().validate(circuitBreakerErrorPercent());
+    if (!isNullOrEmpty(circuitBreakerErrorPercent()) && (errorPercent == null || errorPercent < 1 || errorPercent > MAX_PERCENT))
+      errMessages.add(CIRCUIT_BREAKER_ERROR_PERCENT_PARAM_NAME + " must be an integer from 1 to 100 (if specified)");
+    if (!isNullOrEmpty(settings.getProperty(VIRTUAL_THREADS_PARAM_NAME)) && !isBooleanString(settings.getProperty(VIRTUAL_THREADS_PARAM_NAME)))
+      errMessages.add(VIRTUAL_THREADS_PARAM_NAME + " must be true or false (if specified)");
+    else if (shouldUseVirtualThreads() && !VirtualThreads.isSupported())
+      errMessages.add(VIRTUAL_THREADS_PARAM_NAME + " needs Java 21 or later (running on Java " + System.getProperty("java.version") + ")");
+    if (!isNullOrEmpty(httpTransport()) && !BLOCKING_HTTP_TRANSPORT.equals(httpTransport()) && !ASYNC_HTTP_TRANSPORT.equals(httpTransport()))
+      errMessages.add(HTTP_TRANSPORT_PARAM_NAME + " must be " + BLOCKING_HTTP_TRANSPORT + " or " + ASYNC_HTTP_TRANSPORT + " (if specified)");
+    if (!isNullOrEmpty(schedulingPolicy()) && SchedulingPolicy.fromSettingValue(schedulingPolicy()) == null)
+      errMessages.add(SCHEDULING_POLICY_PARAM_NAME + " must be one of " + schedulingPolicyNames() + " (if specified)");
+    if (!isNullOrEmpty(metricsFile()) && !metricsFile().endsWith(".prom"))
+      errMessages.add(METRICS_FILE_PARAM_NAME + " must end in .prom, for node-exporter's textfile collector (if specified)");
+  }
+
+  private static String schedulingPolicyNames() {
+    StringBuilder names = new StringBuilder();
+    for (SchedulingPolicy policy : SchedulingPolicy.values()) {
+      if (names.length() > 0)
+        names.append(", ");
+      names.append(policy.getSettingValue());
+    }
+    return names.toString();
+  }
+
+  private boolean hasValidChecksumAlgorithms() {
+    List<String> algorithms = checksumAlgorithms();
+    if (algorithms.isEmpty() || new HashSet<String>(algorithms).size() < algorithms.size())
+      return false;
+    for (String algorithm : algorithms) {
+      if (!FileDigests.SUPPORTED_ALGORITHMS.contains(algorithm))
+        return false;
+    }
+    return true;
+  }
+
+  // for optional integer settings
+  private void addErrorIfNotIntAtLeast(List<String> errMessages, String settingName, int minValue) {
+    String value = settings.getProperty(settingName);
+    IntegerValidator intValidator = IntegerValidator.getInstance();
+    if (!isNullOrEmpty(value) && (!intValidator.isValid(value) || !intValidator.minValue(Integer.valueOf(value), minValue)))
+      errMessages.add(settingName + " must be an integer >= " + minValue + " (if specified)");
+  }
+
   protected static boolean isNullOrEmpty(String str) {
     return str == null || str.isEmpty();
   }
 
+  protected static boolean isBooleanString(String str) {
+    return "true".equalsIgnoreCase(str) || "false".equalsIgnoreCase(str);
+  }
+
+  /**
+   * @return the int value of an optional integer setting, or defaultValue if the setting is unspecified.
+   *   expects the setting to have been validated by getSettingsErrorMessages()
+   */
+  protected static int intValueOrDefault(String settingValue, int defaultValue) {
+    if (isNullOrEmpty(settingValue))
+      return defaultValue;
+    return Integer.parseInt(settingValue);
+  }
+
   protected static boolean isDirWritable(String dirPath) {
     File outputBaseDirFile = new File(dirPath);
     return outputBaseDirFile.exists() && outputBaseDirFile.isDirectory() && outputBaseDirFile.canWrite();
@@ -270,10 +558,10 @@ public class WasapiDownloaderSettings {
   private static String normalizeIso8601StringForEndpoint(String rawDateStr) throws IllegalArgumentException {
     // neither the java.util. Date and Calendar classes, nor the apache commons
     // validator classes provide an easy way to parse or validate ISO 8601 date strings.
-    // but javax.xml.bind.DatatypeConverter does it, since xsd:dateTime is ISO 8601.
+    // but javax.xml.datatype does it, since xsd:dateTime is ISO 8601.
     // https://www.w3.org/TR/xmlschema11-2/#dateTime
-    // https://docs.oracle.com/javase/7/docs/api/javax/xml/bind/DatatypeConverter.html
-    Calendar cal = DatatypeConverter.parseDateTime(rawDateStr);
+    // https://docs.oracle.com/javase/7/docs/api/javax/xml/datatype/DatatypeFactory.html
+    Calendar cal = WasapiValidator.parseIso8601(rawDateStr);
     SimpleDateFormat wasapiFormat = new SimpleDateFormat("yyyy-MM-dd");
     return wasapiFormat.format(cal.getTime());
   }
@@ -317,16 +605,19 @@ public class WasapiDownloaderSettings {
     return Option.builder().hasArg().longOpt(optionName).desc(description).build();
   }
 
+  private static Option buildFlagOption(String optionName, String description) {
+    return Option.builder().longOpt(optionName).desc(description).build();
+  }
+
   private void addParsedArgsToSettings(CommandLine parsedArgs) {
     for (Option opt : parsedArgs.getOptions()) {
       String optName = opt.getLongOpt();
       String optValue = parsedArgs.getOptionValue(optName);
       if (optValue != null)
         settings.setProperty(optName, optValue);
+      else if (!opt.hasArg()) // flags, e.g. help, are turned on just by being present
+        settings.setProperty(optName, Boolean.TRUE.toString());
     }
-
-    if (parsedArgs.hasOption(HELP_PARAM_NAME))
-      settings.setProperty(HELP_PARAM_NAME, "true");
   }
 
   private void parseArgsIntoSettings(String[] args) throws ParseException {
@@ -0,0 +1,96 @@
+package edu.stanford.dlss.was;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of how downloads from each host have gone during this run, so that files offered at several locations
+ * can be fetched from the host that has been fastest, and retries can move on to another location when one fails.
+ * Shared by all download workers.
+ */
+public class WasapiLocationSelector {
+  // weight of the newest measurement in a host's throughput estimate
+  private static final double SMOOTHING = 0.3;
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final Map<String, HostStats> statsByHost = new HashMap<String, HostStats>();
+
+  /**
+   * @return the locations in the order they should be tried: hosts that have been downloaded from without a failure
+   *   since, fastest first; then hosts not yet tried, in their original order; then hosts whose last download failed.
+   */
+  public synchronized List<String> orderLocations(String[] locations) {
+    List<String> orderedLocations = new ArrayList<String>(Arrays.asList(locations));
+    Collections.sort(orderedLocations, new Comparator<String>() {
+      @Override
+      public int compare(String location1, String location2) {
+        return Double.compare(rank(location2), rank(location1));
+      }
+    });
+    return orderedLocations;
+  }
+
+  public synchronized void recordSuccess(String location, long numBytes, long elapsedNanos) {
+    HostStats stats = statsFor(location);
+    double bytesPerSecond = numBytes / Math.max(elapsedNanos / NANOS_PER_SECOND, Double.MIN_NORMAL);
+    if (stats.bytesPerSecond == 0)
+      stats.bytesPerSecond = bytesPerSecond;
+    else
+      stats.bytesPerSecond = SMOOTHING * bytesPerSecond + (1 - SMOOTHING) * stats.bytesPerSecond;
+    stats.lastAttemptFailed = false;
+  }
+
+  public synchronized void recordFailure(String location) {
+    statsFor(location).lastAttemptFailed = true;
+  }
+
+  /**
+   * @return estimated throughput from location's host in bytes per second, or 0 if nothing has been downloaded from it
+   */
+  public synchronized double bytesPerSecond(String location) {
+    HostStats stats = statsByHost.get(hostOf(location));
+    return stats == null ? 0 : stats.bytesPerSecond;
+  }
+
+  // higher is better: untried hosts rank 0, failed hosts below that, healthy hosts by throughput above it
+  private double rank(String location) {
+    HostStats stats = statsByHost.get(hostOf(location));
+    if (stats == null)
+      return 0;
+    if (stats.lastAttemptFailed)
+      return -1;
+    return stats.bytesPerSecond;
+  }
+
+  private HostStats statsFor(String location) {
+    String host = hostOf(location);
+    HostStats stats = statsByHost.get(host);
+    if (stats == null) {
+      stats = new HostStats();
+      statsByHost.put(host, stats);
+    }
+    return stats;
+  }
+
+  // locations that aren't URLs with a host are treated as their own host
+  static String hostOf(String location) {
+    try {
+      String host = URI.create(location).getHost();
+      return host == null ? location : host;
+    } catch (IllegalArgumentException e) {
+      return location;
+    }
+  }
+
+  private static class HostStats {
+    private double bytesPerSecond;
+    private boolean lastAttemptFailed;
+  }
+}
@@ -0,0 +1,112 @@
+package edu.stanford.dlss.was;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Pages through the responses to a WASAPI query, following "next" links on a background thread so that callers can
+ * work on the files from earlier pages while later pages are still being fetched.
+ *
+ * At most bufferSize fetched pages are held waiting for the caller; the fetching thread blocks until the caller
+ * catches up, so memory use stays flat no matter how many pages the query has.
+ */
+public class WasapiResponsePager {
+  // marks the end of the pages (or a fetch failure) in the queue, since a BlockingQueue can't hold null
+  private static final WasapiResponse END_OF_PAGES = new WasapiResponse();
+
+  private final BlockingQueue<WasapiResponse> fetchedPages;
+  private final Thread fetchThread;
+  // an IOException or RuntimeException
+  private volatile Exception fetchException;
+
+  public WasapiResponsePager(WasapiConnection wasapiConn, String requestURL, int bufferSize) {
+    this(wasapiConn, requestURL, bufferSize, null);
+  }
+
+  /**
+   * @param threadFactory  makes the thread that fetches the pages, e.g. a virtual thread (null for a daemon thread)
+   */
+  public WasapiResponsePager(WasapiConnection wasapiConn, String requestURL, int bufferSize,
+                             ThreadFactory threadFactory) {
+    fetchedPages = new ArrayBlockingQueue<WasapiResponse>(bufferSize);
+    PageFetcher pageFetcher = new PageFetcher(wasapiConn, requestURL);
+    if (threadFactory == null) {
+      fetchThread = new Thread(pageFetcher, "wasapi-response-pager");
+      fetchThread.setDaemon(true);
+    }
+    else
+      fetchThread = threadFactory.newThread(pageFetcher);
+    fetchThread.start();
+  }
+
+  /**
+   * Blocks until the next page has been fetched.
+   *
+   * @return null when there are no more pages
+   * @throws IOException  if fetching the next page failed
+   * @throws RuntimeException  if fetching the next page failed unexpectedly, e.g. on a malformed "next" URL
+   */
+  public WasapiResponse nextPage() throws IOException {
+    WasapiResponse page;
+    try {
+      page = fetchedPages.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while waiting for next page", e);
+    }
+
+    if (page != END_OF_PAGES)
+      return page;
+    fetchedPages.offer(END_OF_PAGES); // so later calls also see the end
+    if (fetchException instanceof RuntimeException)
+      throw (RuntimeException) fetchException;
+    if (fetchException != null)
+      throw (IOException) fetchException;
+    return null;
+  }
+
+  /**
+   * Stops fetching pages, e.g. when the caller gives up before reaching the last page.
+   */
+  public void close() {
+    fetchThread.interrupt();
+  }
+
+  private class PageFetcher implements Runnable {
+    private final WasapiConnection wasapiConn;
+    private final String requestURL;
+
+    PageFetcher(WasapiConnection wasapiConn, String requestURL) {
+      this.wasapiConn = wasapiConn;
+      this.requestURL = requestURL;
+    }
+
+    @Override
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    public void run() {
+      try {
+        try {
+          fetchPages();
+        } catch (IOException | RuntimeException e) {
+          // rethrown to the caller when it reaches the end of the fetched pages, rather than ending this thread
+          // without marking the end, which would leave the caller waiting forever
+          fetchException = e;
+        }
+        fetchedPages.put(END_OF_PAGES);
+      } catch (InterruptedException e) {
+        // closed by the caller; nobody is waiting for more pages
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void fetchPages() throws IOException, InterruptedException {
+      WasapiResponse page = wasapiConn.jsonQuery(requestURL);
+      while (page != null) {
+        fetchedPages.put(page);
+        page = wasapiConn.jsonQuery(page.getNext());
+      }
+    }
+  }
+}
@@ -4,14 +4,18 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+/**
+ * Thread-safe: all instances share one ObjectReader, so Jackson introspects WasapiResponse once rather than per page.
+ */
 public class WasapiResponseParser {
+  private static final ObjectReader RESPONSE_READER = new ObjectMapper().readerFor(WasapiResponse.class);
 
   public WasapiResponseParser() { }
 
   public WasapiResponse parse(InputStream jsonData) throws IOException {
-    ObjectMapper objectMapper = new ObjectMapper();
-    WasapiResponse responseObject = objectMapper.readValue(jsonData, WasapiResponse.class);
+    WasapiResponse responseObject = RESPONSE_READER.readValue(jsonData);
     return responseObject;
   }
 }
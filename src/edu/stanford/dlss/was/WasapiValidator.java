@@ -2,21 +2,34 @@ package edu.stanford.dlss.was;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
-import javax.xml.bind.DatatypeConverter;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
 
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.utils.DateUtils;
 
 @SuppressWarnings("checkstyle:HideUtilityClassConstructor")
 public class WasapiValidator {
+  private static final String MD5_ALGORITHM = "MD5";
+  private static final String SHA1_ALGORITHM = "SHA-1";
+  private static final String NO_CONTENT_MESSAGE = "Response contains no content";
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+  private static final int MAX_SERVER_ERROR = 599;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+  private static final int BITS_PER_HEX_DIGIT = 4;
+  private static final int HEX_DIGIT_MASK = 0xf;
 
   public static boolean validateResponse(StatusLine statusLine, boolean entityIsNull)
       throws ClientProtocolException, HttpResponseException {
@@ -24,52 +37,122 @@ public class WasapiValidator {
       throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
     }
     if (entityIsNull) {
-      throw new ClientProtocolException("Response contains no content");
+      throw new ClientProtocolException(NO_CONTENT_MESSAGE);
     }
     return true;
   }
 
-  public static boolean validateMd5(String expectedChecksum, String filePath)
-      throws NoSuchAlgorithmException, IOException {
-    return validateChecksum("MD5", expectedChecksum, filePath);
+  /**
+   * Like validateResponse(StatusLine, boolean), but throws a ThrottledResponseException when the server asked us to
+   * slow down, so that the request can be retried after the delay it asked for.
+   */
+  public static boolean validateResponse(HttpResponse response)
+      throws ClientProtocolException, HttpResponseException {
+    StatusLine statusLine = response.getStatusLine();
+    int statusCode = statusLine.getStatusCode();
+    long retryAfterMillis = retryAfterMillis(response);
+    boolean unavailableForNow = statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE && retryAfterMillis >= 0;
+    if (statusCode == SC_TOO_MANY_REQUESTS || unavailableForNow)
+      throw new ThrottledResponseException(statusCode, statusLine.getReasonPhrase(), retryAfterMillis);
+    return validateResponse(statusLine, response.getEntity() == null);
   }
 
-  public static boolean validateSha1(String expectedChecksum, String filePath)
-      throws NoSuchAlgorithmException, IOException {
-    return validateChecksum("SHA-1", expectedChecksum, filePath);
+  /**
+   * @return true for a 5xx status, i.e. an error that may well go away if the request is retried
+   */
+  public static boolean isServerError(int statusCode) {
+    return statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR && statusCode <= MAX_SERVER_ERROR;
   }
 
   /**
-   * convert byte array to a hexadecimal string. Note that this generates hexadecimal in lower case.
+   * @return the delay asked for by response's Retry-After header, given either in seconds or as an HTTP date
+   *   (-1 if there is no such header, or it can't be parsed)
+   */
+  // package level method for testing
+  static long retryAfterMillis(HttpResponse response) {
+    Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+    if (retryAfter == null)
+      return -1;
+    String value = retryAfter.getValue().trim();
+    if (value.matches("\\d{1,18}"))
+      return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+    Date retryDate = DateUtils.parseDate(value);
+    if (retryDate == null)
+      return -1;
+    return Math.max(0, retryDate.getTime() - System.currentTimeMillis());
+  }
+
+  /**
+   * @param expectedOffset - the first byte requested in the Range header
+   * @return true for a 206 Partial Content response whose content starts at expectedOffset, false for any other
+   *   status (e.g. when the server ignored the Range header and sent the whole file)
    */
-  private static String bytesToHex(byte[] byteArray) {
-    return DatatypeConverter.printHexBinary(byteArray).toLowerCase();
+  public static boolean validatePartialResponse(HttpResponse response, long expectedOffset)
+      throws ClientProtocolException {
+    if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT)
+      return false;
+    if (response.getEntity() == null)
+      throw new ClientProtocolException(NO_CONTENT_MESSAGE);
+    Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+    if (contentRange == null || !contentRange.getValue().startsWith("bytes " + expectedOffset + "-"))
+      throw new ClientProtocolException("Partial content does not start at requested byte " + expectedOffset);
+    return true;
   }
 
   /**
-   * @param algorithm - checksum algorithm to use, per
-        https://docs.oracle.com/javase/7/docs/technotes/guides/security/StandardNames.html#MessageDigest
+   * @param computedDigest - a digest that has already been updated with the file's content, e.g. while downloading it
    */
-  private static boolean validateChecksum(String algorithm, String expectedChecksum, String filePath)
-      throws NoSuchAlgorithmException, IOException {
-    Path path = Paths.get(filePath);
-    MessageDigest digest = MessageDigest.getInstance(algorithm);
-    InputStream inputStream = Files.newInputStream(path);
-    checksumInputStream(digest, inputStream);
-    byte[] computedChecksumBytes = digest.digest();
-    String computedChecksumString = bytesToHex(computedChecksumBytes);
+  public static boolean validateDigest(String expectedChecksum, MessageDigest computedDigest) {
+    String computedChecksumString = bytesToHex(computedDigest.digest());
     return expectedChecksum.toLowerCase().compareTo(computedChecksumString) == 0;
   }
 
   /**
-    * @param digest
-    *         A {@link MessageDigest} instance.
+   * @param checksumAlgorithm - checksum algorithm as named by WASAPI, e.g. md5 or sha1
+   */
+  public static MessageDigest newMessageDigest(String checksumAlgorithm) throws NoSuchAlgorithmException {
+    if ("md5".equals(checksumAlgorithm))
+      return MessageDigest.getInstance(MD5_ALGORITHM);
+    else if ("sha1".equals(checksumAlgorithm))
+      return MessageDigest.getInstance(SHA1_ALGORITHM);
+    else
+      return MessageDigest.getInstance(checksumAlgorithm);
+  }
+
+  /**
+   * convert byte array to a hexadecimal string. Note that this generates hexadecimal in lower case.
+   */
+  static String bytesToHex(byte[] byteArray) {
+    char[] hex = new char[byteArray.length * 2];
+    for (int i = 0; i < byteArray.length; i++) {
+      hex[i * 2] = HEX_DIGITS[(byteArray[i] >> BITS_PER_HEX_DIGIT) & HEX_DIGIT_MASK];
+      hex[i * 2 + 1] = HEX_DIGITS[byteArray[i] & HEX_DIGIT_MASK];
+    }
+    return new String(hex);
+  }
+
+  /**
+   * Parses an ISO 8601 date or date-time (as xsd:dateTime, xsd:date, etc.), e.g. "2017-03-14" or
+   * "2017-03-14T10:00:00Z".  Uses javax.xml.datatype, which (unlike javax.xml.bind) is still in the JDK after Java 8.
+   * @throws IllegalArgumentException  if dateStr isn't one
+   */
+  static Calendar parseIso8601(String dateStr) {
+    try {
+      return DatatypeFactory.newInstance().newXMLGregorianCalendar(dateStr.trim()).toGregorianCalendar();
+    } catch (DatatypeConfigurationException e) {
+      throw new IllegalStateException("every JDK has a javax.xml.datatype implementation", e);
+    }
+  }
+
+  /**
     * @param inputStream
-    *         An open input stream to update the digest with.
+    *         An open input stream to update the digests with.  It is closed once fully read.
+    * @param digests
+    *         {@link MessageDigest} instances, each updated from the same buffer.
     * @throws IOException
     *         If an error occurs while reading from the input stream.
     */
-  private static void checksumInputStream(MessageDigest digest, InputStream inputStream)
+  static void checksumInputStream(InputStream inputStream, MessageDigest... digests)
       throws IOException {
     byte[] buffer = new byte[MESSAGEDIGEST_BUFFER_LENGTH];
     int n = 0;
@@ -78,7 +161,8 @@ public class WasapiValidator {
       while (n != -1) {
         n = inputStream.read(buffer);
         if (n > 0) {
-          digest.update(buffer, 0, n);
+          for (MessageDigest digest : digests)
+            digest.update(buffer, 0, n);
         }
       }
       success = true;
@@ -91,7 +175,7 @@ public class WasapiValidator {
   }
 
   /**
-    * @see {link #checksumInputStream(MessageDigest, InputStreeam)}
+    * @see {link #checksumInputStream(InputStream, MessageDigest...)}
     */
   private static final int MESSAGEDIGEST_BUFFER_LENGTH = 8192;
 
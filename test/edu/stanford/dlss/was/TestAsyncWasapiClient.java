@@ -0,0 +1,168 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TestAsyncWasapiClient {
+  private static final String OUTPUT_FILE_PATH = "test" + File.separatorChar + "testAsyncWasapiClient.output";
+  private static final String HELLO_MD5 = "5d41402abc4b2a76b9719d911017c592";
+  private static final String SESSION_COOKIE = "sessionid=abc123";
+
+  private final AtomicInteger numLogins = new AtomicInteger();
+  private HttpServer server;
+  private String serverUrl;
+  private AsyncWasapiClient testClient;
+
+  @Before
+  public void setUp() throws IOException {
+    startServer();
+    WasapiDownloaderSettings mockSettings = mock(WasapiDownloaderSettings.class);
+    when(mockSettings.authUrlString()).thenReturn(serverUrl + "login");
+    when(mockSettings.username()).thenReturn("user");
+    when(mockSettings.password()).thenReturn("pass");
+    testClient = new AsyncWasapiClient(mockSettings);
+  }
+
+  // a WASAPI server stand-in: files are only served to clients with the session cookie set at login
+  @SuppressWarnings("checkstyle:MethodLength")
+  private void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/login", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        if ("POST".equals(exchange.getRequestMethod()))
+          numLogins.incrementAndGet();
+        exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "; Path=/");
+        respond(exchange, 200, "logged in");
+      }
+    });
+    server.createContext("/files/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+        boolean loggedIn = cookie != null && cookie.contains(SESSION_COOKIE);
+        if (!loggedIn && exchange.getRequestURI().getQuery() != null) { // ?redirect: send to the login page instead
+          exchange.getResponseHeaders().add("Location", serverUrl + "login");
+          respond(exchange, 302, "");
+        }
+        else if (!loggedIn || exchange.getRequestURI().getPath().endsWith("forbidden.warc.gz"))
+          respond(exchange, 403, "log in first");
+        else if (exchange.getRequestURI().getPath().endsWith("hello.warc.gz"))
+          respond(exchange, 200, "hello");
+        else
+          respond(exchange, 404, "no such file");
+      }
+    });
+    server.start();
+    serverUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    testClient.close();
+    server.stop(0);
+    new File(OUTPUT_FILE_PATH).delete();
+  }
+
+  @Test
+  public void constructorInitializesCorrectly() {
+    assertNotNull(testClient.asyncClient);
+    assertNotNull(testClient.wasapiContext);
+    assertNotNull(testClient.cookieStore);
+    assertNull("no blocking client", testClient.wasapiClient);
+  }
+
+  @Test
+  public void downloadIsStreamedToDiskWithLoginCookie() throws IOException, NoSuchAlgorithmException {
+    testClient.login();
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+
+    DownloadResponseHandler handler = new DownloadResponseHandler(OUTPUT_FILE_PATH, md5);
+    assertTrue("return value incorrect", testClient.execute(new HttpGet(serverUrl + "files/hello.warc.gz"), handler));
+    assertEquals("hello", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+    assertTrue("digest should cover the streamed bytes", WasapiValidator.validateDigest(HELLO_MD5, md5));
+  }
+
+  @Test
+  public void executeLogsInWhenSessionIsRejected() throws IOException, NoSuchAlgorithmException {
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+    assertTrue(testClient.execute(new HttpGet(serverUrl + "files/hello.warc.gz"), new DownloadResponseHandler(OUTPUT_FILE_PATH, MessageDigest.getInstance("MD5"))));
+    assertEquals("hello", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+    assertEquals(1, numLogins.get());
+  }
+
+  @Test
+  public void executeLogsInWhenRedirectedToLoginPage() throws IOException, NoSuchAlgorithmException {
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+    assertTrue(testClient.execute(new HttpGet(serverUrl + "files/hello.warc.gz?redirect"), new DownloadResponseHandler(OUTPUT_FILE_PATH, MessageDigest.getInstance("MD5"))));
+    assertEquals("the file, not the login page", "hello", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+    assertEquals(1, numLogins.get());
+  }
+
+  @Test
+  public void executeLogsInAgainOnlyOnce() throws IOException, NoSuchAlgorithmException {
+    testClient.login();
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+    try {
+      testClient.execute(new HttpGet(serverUrl + "files/forbidden.warc.gz"), new DownloadResponseHandler(OUTPUT_FILE_PATH, MessageDigest.getInstance("MD5")));
+      fail("expected HttpResponseException");
+    } catch (HttpResponseException e) {
+      assertEquals(403, e.getStatusCode());
+    }
+    assertEquals("logged in, then once more", 2, numLogins.get());
+  }
+
+  @Test
+  public void downloadErrorIsThrownAsForBlockingClient() throws IOException, NoSuchAlgorithmException {
+    testClient.login();
+    try {
+      testClient.execute(new HttpGet(serverUrl + "files/missing.warc.gz"), new DownloadResponseHandler(OUTPUT_FILE_PATH, MessageDigest.getInstance("MD5")));
+      fail("expected HttpResponseException");
+    } catch (HttpResponseException e) {
+      assertEquals(404, e.getStatusCode());
+    }
+  }
+
+  @Test
+  public void otherHandlersGetWholeResponse() throws IOException {
+    testClient.login();
+    String body = testClient.execute(new HttpGet(serverUrl + "files/hello.warc.gz"), new ResponseHandler<String>() {
+      @Override
+      public String handleResponse(HttpResponse response) throws IOException {
+        return EntityUtils.toString(response.getEntity());
+      }
+    });
+    assertEquals("hello", body);
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes("UTF-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream responseBody = exchange.getResponseBody();
+    responseBody.write(bytes);
+    responseBody.close();
+  }
+}
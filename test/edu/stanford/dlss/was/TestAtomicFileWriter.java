@@ -0,0 +1,69 @@
+package edu.stanford.dlss.was;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestAtomicFileWriter {
+  private static final String OUTPUT_DIRECTORY = "test" + File.separatorChar + "testAtomicFileWriter";
+  private static final Path OUTPUT_PATH = Paths.get(OUTPUT_DIRECTORY, "saved.properties");
+
+  @Before
+  public void setUp() {
+    new File(OUTPUT_DIRECTORY).mkdir();
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : new File(OUTPUT_DIRECTORY).listFiles())
+      file.delete();
+    new File(OUTPUT_DIRECTORY).delete();
+  }
+
+  @Test
+  public void replace_writesPropertiesOverOldFile() throws IOException {
+    Files.write(OUTPUT_PATH, "old".getBytes(StandardCharsets.UTF_8));
+    Properties properties = new Properties();
+    properties.setProperty("key", "value");
+
+    AtomicFileWriter.replace(OUTPUT_PATH, properties, "comment");
+
+    Properties saved = new Properties();
+    InputStream in = Files.newInputStream(OUTPUT_PATH);
+    try {
+      saved.load(in);
+    } finally {
+      in.close();
+    }
+    assertEquals(properties, saved);
+    assertEquals("temp file should have been moved into place", 1, new File(OUTPUT_DIRECTORY).list().length);
+  }
+
+  @Test
+  public void replace_failureLeavesOldFileAndNoTempFile() throws IOException {
+    Files.write(OUTPUT_PATH, "old".getBytes(StandardCharsets.UTF_8));
+    try {
+      AtomicFileWriter.replace(OUTPUT_PATH, new AtomicFileWriter.Content() {
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+          out.write("half".getBytes(StandardCharsets.UTF_8));
+          throw new IOException("disk full");
+        }
+      });
+      fail("the write failure should be thrown");
+    } catch (IOException e) {
+      assertEquals("disk full", e.getMessage());
+    }
+    assertEquals("old", new String(Files.readAllBytes(OUTPUT_PATH), StandardCharsets.UTF_8));
+    assertEquals("temp file should have been deleted", 1, new File(OUTPUT_DIRECTORY).list().length);
+  }
+}
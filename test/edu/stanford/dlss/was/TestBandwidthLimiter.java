@@ -0,0 +1,100 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestBandwidthLimiter {
+  private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void reserve_idleBucketAllowsShortBurst() {
+    BandwidthLimiter limiter = new BandwidthLimiter(1000); // 1 byte per ms
+    long now = System.nanoTime();
+    assertTrue("100ms of idle allowance: no wait", limiter.reserve(100, now) <= 0);
+    assertEquals("allowance used up: wait for the next 10 bytes", 10 * MILLIS, limiter.reserve(10, now));
+  }
+
+  @Test
+  public void reserve_withoutWaitingReportsPause() {
+    BandwidthLimiter limiter = new BandwidthLimiter(1000); // 1 byte per ms
+    assertEquals("within the idle allowance: no pause", 0, limiter.reserve(50));
+    long pauseNanos = limiter.reserve(1000);
+    assertTrue("about a second over the allowance: " + pauseNanos, pauseNanos > 800 * MILLIS && pauseNanos <= 1000 * MILLIS);
+  }
+
+  @Test
+  public void reserve_concurrentReservationsQueueUp() {
+    BandwidthLimiter limiter = new BandwidthLimiter(1000);
+    long now = System.nanoTime();
+    limiter.reserve(100, now);
+    assertEquals(50 * MILLIS, limiter.reserve(50, now));
+    assertEquals("second reader waits behind the first", 100 * MILLIS, limiter.reserve(50, now));
+  }
+
+  @Test
+  public void reserve_idleTimeRefillsOnlyUpToBurst() {
+    BandwidthLimiter limiter = new BandwidthLimiter(1000);
+    long now = System.nanoTime();
+    limiter.reserve(100, now);
+    long anHourLater = now + TimeUnit.HOURS.toNanos(1);
+    assertTrue("burst allowance is back", limiter.reserve(100, anHourLater) <= 0);
+    assertEquals("but no more than the burst allowance", 10 * MILLIS, limiter.reserve(10, anHourLater));
+  }
+
+  @Test
+  public void throttledEntity_hasSameContent() throws IOException {
+    byte[] content = "some WARC content".getBytes();
+    HttpEntity throttled = new BandwidthLimiter(1000000).throttle(new ByteArrayEntity(content));
+
+    ByteArrayOutputStream written = new ByteArrayOutputStream();
+    throttled.writeTo(written);
+    assertArrayEquals(content, written.toByteArray());
+    InputStream ins = throttled.getContent();
+    assertEquals("single byte reads are throttled too", 's', ins.read());
+    assertEquals(content.length, throttled.getContentLength());
+  }
+
+  @Test
+  public void throttledEntities_shareLimit() throws Exception {
+    BandwidthLimiter limiter = new BandwidthLimiter(100000); // 100 bytes per ms
+    ExecutorService pool = Executors.newFixedThreadPool(3);
+    List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+    long start = System.nanoTime();
+    for (int i = 0; i < 3; i++)
+      readers.add(pool.submit(throttledRead(limiter, 10000)));
+    for (Future<Integer> reader : readers)
+      assertEquals(Integer.valueOf(10000), reader.get());
+    pool.shutdown();
+
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertTrue("30000 bytes at 100000 bytes/sec, less the 100ms burst, took " + elapsedMillis + "ms", elapsedMillis >= 190);
+  }
+
+  private Callable<Integer> throttledRead(final BandwidthLimiter limiter, final int numBytes) {
+    return new Callable<Integer>() {
+      @Override
+      public Integer call() throws IOException {
+        HttpEntity entity = new InputStreamEntity(new ByteArrayInputStream(new byte[numBytes]), numBytes);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        limiter.throttle(entity).writeTo(written);
+        return written.size();
+      }
+    };
+  }
+}
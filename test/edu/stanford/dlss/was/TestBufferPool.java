@@ -0,0 +1,29 @@
+package edu.stanford.dlss.was;
+
+import java.nio.ByteBuffer;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestBufferPool {
+  @Test
+  public void acquire_allocatesDirectBuffersOfPoolSize() {
+    ByteBuffer buffer = new BufferPool(4096).acquire();
+    assertTrue(buffer.isDirect());
+    assertEquals(4096, buffer.capacity());
+    assertEquals(4096, buffer.remaining());
+  }
+
+  @Test
+  public void acquire_reusesReleasedBuffersCleared() {
+    BufferPool pool = new BufferPool(4096);
+    ByteBuffer buffer = pool.acquire();
+    buffer.put(new byte[100]);
+    pool.release(buffer);
+
+    ByteBuffer reused = pool.acquire();
+    assertSame(buffer, reused);
+    assertEquals("released buffer should be cleared", 4096, reused.remaining());
+    assertNotSame("pool is empty again, so a new buffer is allocated", reused, pool.acquire());
+  }
+}
@@ -0,0 +1,66 @@
+package edu.stanford.dlss.was;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestCachingJsonResponseHandler {
+  private static final String CACHE_DIR = "test" + File.separatorChar + "testCachingJsonResponseHandler";
+  private static final String PAGE_URL = "https://example.org/webdata?collection=8001";
+  private static final String PAGE_JSON = "{\"count\": 5, \"next\": null, \"previous\": null, \"files\": []}";
+  private static final String ETAG = "\"abc123\"";
+
+  private ListingCache listingCache;
+
+  @Before
+  public void setUp() {
+    new File(CACHE_DIR).mkdir();
+    listingCache = new ListingCache(CACHE_DIR);
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = new File(CACHE_DIR).listFiles();
+    if (files != null) {
+      for (File file : files)
+        file.delete();
+    }
+    new File(CACHE_DIR).delete();
+  }
+
+  @Test
+  public void handleResponse_cachesPageWithItsEtag() throws IOException {
+    HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+    response.setEntity(new StringEntity(PAGE_JSON, StandardCharsets.UTF_8));
+    response.setHeader(HttpHeaders.ETAG, ETAG);
+
+    WasapiResponse page = new CachingJsonResponseHandler(listingCache, PAGE_URL, null).handleResponse(response);
+    assertEquals(5, page.getCount());
+    assertEquals("cached page parses the same", 5, listingCache.get(PAGE_URL).parse().getCount());
+  }
+
+  @Test
+  public void handleResponse_usesCachedPageWhenNotModified() throws IOException {
+    listingCache.put(PAGE_URL, ETAG, null, PAGE_JSON.getBytes(StandardCharsets.UTF_8));
+    HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 304, "Not Modified");
+
+    CachingJsonResponseHandler handler = new CachingJsonResponseHandler(listingCache, PAGE_URL, listingCache.get(PAGE_URL));
+    assertEquals(5, handler.handleResponse(response).getCount());
+  }
+
+  @Test(expected = HttpResponseException.class)
+  public void handleResponse_notModifiedWithoutCachedPageThrows() throws IOException {
+    HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 304, "Not Modified");
+    new CachingJsonResponseHandler(listingCache, PAGE_URL, null).handleResponse(response);
+  }
+}
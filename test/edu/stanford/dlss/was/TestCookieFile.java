@@ -0,0 +1,109 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Date;
+import java.util.Set;
+
+import org.apache.http.cookie.ClientCookie;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.cookie.BasicClientCookie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestCookieFile {
+  private static final String COOKIE_FILE_PATH = "test" + File.separatorChar + "testCookieFile.txt";
+  private static final long HOUR_MILLIS = 3600 * 1000L;
+
+  @After
+  public void tearDown() {
+    new File(COOKIE_FILE_PATH).delete();
+  }
+
+  @Test
+  public void saveThenLoad_keepsCookies() throws IOException {
+    BasicClientCookie session = new BasicClientCookie("sessionid", "abc123");
+    session.setDomain("partner.archive-it.org");
+    session.setPath("/");
+    session.setSecure(true);
+    Date expiry = new Date((System.currentTimeMillis() + HOUR_MILLIS) / 1000 * 1000); // the file keeps whole seconds
+    session.setExpiryDate(expiry);
+
+    Cookie loaded = saveAndLoad(session);
+    assertEquals("sessionid", loaded.getName());
+    assertEquals("abc123", loaded.getValue());
+    assertEquals("partner.archive-it.org", loaded.getDomain());
+    assertEquals("/", loaded.getPath());
+    assertTrue(loaded.isSecure());
+    assertEquals(expiry, loaded.getExpiryDate());
+    assertFalse("only sent to the host that set it", ((ClientCookie) loaded).containsAttribute(ClientCookie.DOMAIN_ATTR));
+  }
+
+  @Test
+  public void saveThenLoad_keepsSessionCookiesForSubdomains() throws IOException {
+    BasicClientCookie csrf = new BasicClientCookie("csrftoken", "xyz");
+    csrf.setDomain("archive-it.org");
+    csrf.setAttribute(ClientCookie.DOMAIN_ATTR, "archive-it.org");
+    csrf.setPath("/");
+
+    Cookie loaded = saveAndLoad(csrf);
+    assertEquals("xyz", loaded.getValue());
+    assertNull("session cookie", loaded.getExpiryDate());
+    assertTrue("sent to subdomains", ((ClientCookie) loaded).containsAttribute(ClientCookie.DOMAIN_ATTR));
+  }
+
+  @Test
+  public void load_skipsExpiredCookies() throws IOException {
+    String lines = "# Netscape HTTP Cookie File\n" +
+        "example.org\tFALSE\t/\tFALSE\t" + (System.currentTimeMillis() / 1000 - 60) + "\tsessionid\tstale\n";
+    Files.write(Paths.get(COOKIE_FILE_PATH), lines.getBytes(StandardCharsets.UTF_8));
+
+    BasicCookieStore cookieStore = new BasicCookieStore();
+    assertFalse("nothing worth reusing", new CookieFile(COOKIE_FILE_PATH).load(cookieStore));
+    assertTrue(cookieStore.getCookies().isEmpty());
+  }
+
+  @Test
+  public void load_withoutFile() {
+    assertFalse(new CookieFile(COOKIE_FILE_PATH).load(new BasicCookieStore()));
+  }
+
+  @Test
+  public void load_warnsAboutUnreadableFile() throws IOException {
+    Files.write(Paths.get(COOKIE_FILE_PATH), "not cookies\n".getBytes(StandardCharsets.UTF_8));
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+
+    assertFalse(new CookieFile(COOKIE_FILE_PATH).load(new BasicCookieStore()));
+    assertTrue(errContent.toString().startsWith("WARNING: unable to read saved cookies (will log in): " + COOKIE_FILE_PATH));
+  }
+
+  @Test
+  public void save_onlyOwnerCanReadFile() throws IOException {
+    Assume.assumeTrue(Files.getFileStore(Paths.get("test")).supportsFileAttributeView("posix"));
+    new CookieFile(COOKIE_FILE_PATH).save(new BasicCookieStore());
+
+    Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(Paths.get(COOKIE_FILE_PATH));
+    assertEquals(PosixFilePermissions.fromString("rw-------"), permissions);
+  }
+
+  private static Cookie saveAndLoad(Cookie cookie) throws IOException {
+    BasicCookieStore savedStore = new BasicCookieStore();
+    savedStore.addCookie(cookie);
+    new CookieFile(COOKIE_FILE_PATH).save(savedStore);
+
+    BasicCookieStore loadedStore = new BasicCookieStore();
+    assertTrue(new CookieFile(COOKIE_FILE_PATH).load(loadedStore));
+    assertEquals(1, loadedStore.getCookies().size());
+    return loadedStore.getCookies().get(0);
+  }
+}
@@ -0,0 +1,139 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestCrawlWatermark {
+  private static final String WATERMARK_FILE_PATH = "test" + File.separatorChar + "testCrawlWatermark.properties";
+  private static final int SETTLE_DAYS = 7;
+
+  @Before
+  public void setUp() {
+    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+  }
+
+  @After
+  public void tearDown() {
+    new File(WATERMARK_FILE_PATH).delete();
+  }
+
+  @Test
+  public void fileName_perAccountAndCollection() {
+    assertEquals(".wasapi-downloader-watermark-account-1-collection-8001.properties", CrawlWatermark.fileName("1", "8001"));
+    assertEquals(".wasapi-downloader-watermark-account-all-collection-all.properties", CrawlWatermark.fileName(null, null));
+  }
+
+  @Test
+  public void withoutWatermark_everyCrawlIsAfter() {
+    CrawlWatermark watermark = new CrawlWatermark(WATERMARK_FILE_PATH, SETTLE_DAYS);
+    assertNull(watermark.getCrawlId());
+    assertTrue(watermark.isAfter(1, "2017-01-01T00:00:00Z"));
+    assertNull(watermark.crawlStartAfter(null));
+    assertEquals("2016-01-01", watermark.crawlStartAfter("2016-01-01"));
+  }
+
+  @Test
+  public void advance_stopsAtFirstCrawlWithFailedFiles() {
+    CrawlWatermark watermark = new CrawlWatermark(WATERMARK_FILE_PATH, SETTLE_DAYS);
+    WasapiFile failedFile = wasapiFile(9, "2017-03-01T10:00:00Z");
+    watermark.recordSelected(failedFile);
+    watermark.recordSelected(wasapiFile(3, "2017-02-01T10:00:00Z"));
+    watermark.recordSelected(wasapiFile(5, "2017-01-01T10:00:00Z"));
+    watermark.recordSelected(wasapiFile(12, "2017-04-01T10:00:00Z"));
+    watermark.advance(Collections.singletonList(failedFile));
+
+    CrawlWatermark nextRun = new CrawlWatermark(WATERMARK_FILE_PATH, SETTLE_DAYS);
+    assertEquals("newest crawl before the failed one, by crawl-start", Integer.valueOf(3), nextRun.getCrawlId());
+    assertEquals("2017-02-01T10:00:00Z", nextRun.getCrawlStartDateStr());
+    assertEquals("the day before, as the endpoint only takes dates", "2017-01-31", nextRun.crawlStartAfter(null));
+    assertEquals("later crawlStartAfter setting wins", "2017-06-01", nextRun.crawlStartAfter("2017-06-01"));
+    assertEquals("2017-01-31", nextRun.crawlStartAfter("2016-06-01"));
+  }
+
+  @Test
+  public void advance_doesNothingWhenFirstCrawlFailed() {
+    CrawlWatermark watermark = new CrawlWatermark(WATERMARK_FILE_PATH, SETTLE_DAYS);
+    WasapiFile failedFile = wasapiFile(5, "2017-01-01T10:00:00Z");
+    watermark.recordSelected(failedFile);
+    watermark.recordSelected(wasapiFile(6, "2017-02-01T10:00:00Z"));
+    watermark.advance(Collections.singletonList(failedFile));
+
+    assertNull(watermark.getCrawlId());
+    assertFalse("nothing saved", new File(WATERMARK_FILE_PATH).exists());
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void advance_leavesUnsettledCrawlToGainFilesForNextRun() {
+    long nowMillis = WasapiValidator.parseIso8601("2017-03-03T10:00:00Z").getTimeInMillis();
+    CrawlWatermark watermark = new CrawlWatermark(WATERMARK_FILE_PATH, SETTLE_DAYS);
+    watermark.recordSelected(wasapiFile(5, "2017-01-01T10:00:00Z"));
+    watermark.recordSelected(wasapiFile(6, "2017-03-01T10:00:00Z")); // started 2 days ago, so may still be running
+    watermark.advance(Collections.<WasapiFile>emptyList(), nowMillis);
+
+    // crawl 6 gains a file after the watermark is saved
+    CrawlWatermark nextRun = new CrawlWatermark(WATERMARK_FILE_PATH, SETTLE_DAYS);
+    assertEquals("watermark stops before the unsettled crawl", Integer.valueOf(5), nextRun.getCrawlId());
+    WasapiFile[] files = { wasapiFile(6, "2017-03-01T10:00:00Z"), wasapiFile(6, "2017-03-01T10:00:00Z") };
+    WasapiCrawlSelector crawlSelector = new WasapiCrawlSelector(files);
+    assertEquals("so its new file is still listed", Arrays.asList(6), nextRun.crawlsAfter(crawlSelector.getSelectedCrawlIds(0), crawlSelector));
+
+    nextRun.recordSelected(files[1]);
+    nextRun.advance(Collections.<WasapiFile>emptyList(), nowMillis + TimeUnit.DAYS.toMillis(SETTLE_DAYS));
+    assertEquals("once settled, the crawl is counted", Integer.valueOf(6), nextRun.getCrawlId());
+  }
+
+  @Test
+  public void isAfter_comparesCrawlStartThenCrawlId() {
+    CrawlWatermark watermark = new CrawlWatermark(WATERMARK_FILE_PATH, SETTLE_DAYS);
+    watermark.recordSelected(wasapiFile(5, "2017-02-01T10:00:00Z"));
+    watermark.advance(Collections.<WasapiFile>emptyList());
+
+    assertFalse("earlier crawl", watermark.isAfter(7, "2017-01-01T10:00:00Z"));
+    assertFalse("the watermark itself", watermark.isAfter(5, "2017-02-01T10:00:00Z"));
+    assertTrue("same start, higher id", watermark.isAfter(6, "2017-02-01T10:00:00Z"));
+    assertTrue("later crawl", watermark.isAfter(2, "2017-02-01T11:00:00Z"));
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void crawlsAfter_dropsCrawlsUpToWatermark() {
+    CrawlWatermark watermark = new CrawlWatermark(WATERMARK_FILE_PATH, SETTLE_DAYS);
+    watermark.recordSelected(wasapiFile(5, "2017-02-01T10:00:00Z"));
+    watermark.advance(Collections.<WasapiFile>emptyList());
+
+    WasapiFile[] files = { wasapiFile(4, "2017-02-01T09:00:00Z"), wasapiFile(5, "2017-02-01T10:00:00Z"), wasapiFile(6, "2017-02-01T12:00:00Z") };
+    WasapiCrawlSelector crawlSelector = new WasapiCrawlSelector(files);
+    assertEquals(Arrays.asList(6), watermark.crawlsAfter(crawlSelector.getSelectedCrawlIds(0), crawlSelector));
+  }
+
+  @Test
+  public void constructor_warnsAboutUnreadableFile() throws IOException {
+    Files.write(Paths.get(WATERMARK_FILE_PATH), "crawlId=5\ncrawlStart=last tuesday\n".getBytes(StandardCharsets.UTF_8));
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+
+    CrawlWatermark watermark = new CrawlWatermark(WATERMARK_FILE_PATH, SETTLE_DAYS);
+    assertNull(watermark.getCrawlId());
+    assertTrue(watermark.isAfter(1, "2017-01-01T00:00:00Z"));
+    assertTrue(errContent.toString().startsWith("WARNING: unable to read crawl watermark"));
+  }
+
+  private WasapiFile wasapiFile(int crawlId, String crawlStart) {
+    WasapiFile file = new WasapiFile();
+    file.setCrawlId(crawlId);
+    file.setCrawlStartDateStr(crawlStart);
+    return file;
+  }
+}
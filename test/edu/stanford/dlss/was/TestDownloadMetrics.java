@@ -0,0 +1,80 @@
+package edu.stanford.dlss.was;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class TestDownloadMetrics {
+  @Test
+  public void recordMethods_updateMetrics() {
+    DownloadMetrics metrics = new DownloadMetrics();
+    metrics.recordFileDownloaded(TimeUnit.SECONDS.toNanos(4));
+    metrics.recordFileDownloaded(TimeUnit.SECONDS.toNanos(2));
+    metrics.recordFileFailed();
+    metrics.recordRetry();
+    metrics.recordRetry();
+    metrics.recordPageFetch(TimeUnit.MILLISECONDS.toNanos(200));
+    metrics.recordChecksum(TimeUnit.SECONDS.toNanos(1));
+
+    assertEquals(2, metrics.getFilesDownloaded());
+    assertEquals(1, metrics.getFilesFailed());
+    assertEquals(2, metrics.getRetries());
+    assertEquals(1, metrics.getPageFetches());
+    assertEquals(0.2, metrics.getMeanPageFetchSeconds(), 0.0001);
+    assertEquals(3, metrics.getMeanFileTransferSeconds(), 0.0001);
+    assertEquals(1, metrics.getMeanChecksumSeconds(), 0.0001);
+  }
+
+  @Test
+  public void recordBytesDownloaded_countsBytesBeforeAnyFileCompletes() {
+    DownloadMetrics metrics = new DownloadMetrics();
+    metrics.recordBytesDownloaded(1000);
+    metrics.recordBytesDownloaded(500);
+    assertEquals(1500, metrics.getBytesDownloaded());
+    assertEquals(0, metrics.getFilesDownloaded());
+  }
+
+  @Test
+  public void toPrometheusText_hasCountersAndHistograms() {
+    DownloadMetrics metrics = new DownloadMetrics();
+    metrics.recordBytesDownloaded(1000);
+    metrics.recordFileDownloaded(TimeUnit.SECONDS.toNanos(4));
+    metrics.recordPageFetch(TimeUnit.MILLISECONDS.toNanos(200));
+
+    String text = metrics.toPrometheusText();
+    assertThat(text, containsString("# TYPE wasapi_downloader_bytes_total counter\nwasapi_downloader_bytes_total 1000\n"));
+    assertThat(text, containsString("wasapi_downloader_files_downloaded_total 1\n"));
+    assertThat(text, containsString("wasapi_downloader_files_failed_total 0\n"));
+    assertThat(text, containsString("wasapi_downloader_retries_total 0\n"));
+    assertThat(text, containsString("# TYPE wasapi_downloader_file_transfer_seconds histogram\n"));
+    assertThat(text, containsString("wasapi_downloader_file_transfer_seconds_count 1\n"));
+    assertThat(text, containsString("# TYPE wasapi_downloader_checksum_seconds histogram\n"));
+    assertThat(text, containsString("wasapi_downloader_page_fetch_seconds_bucket{le=\"0.25\"} 1\n"));
+    assertTrue("ends with a newline, as the text format requires", text.endsWith("\n"));
+  }
+
+  @Test
+  public void registerMBean_exposesMetricsOverJmx() throws Exception {
+    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(DownloadMetrics.MBEAN_NAME);
+    DownloadMetrics firstMetrics = new DownloadMetrics();
+    firstMetrics.registerMBean();
+    DownloadMetrics metrics = new DownloadMetrics();
+    metrics.recordBytesDownloaded(1000);
+    metrics.recordFileDownloaded(TimeUnit.SECONDS.toNanos(4));
+    metrics.registerMBean(); // replaces the first registration
+
+    try {
+      assertEquals(1000L, mbeanServer.getAttribute(name, "BytesDownloaded"));
+      assertEquals(4.0, mbeanServer.getAttribute(name, "MeanFileTransferSeconds"));
+    } finally {
+      mbeanServer.unregisterMBean(name);
+    }
+  }
+}
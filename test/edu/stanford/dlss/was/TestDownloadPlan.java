@@ -0,0 +1,79 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestDownloadPlan {
+  private static final String HISTORY_FILE_PATH = "test" + File.separatorChar + "testDownloadPlanThroughput.properties";
+
+  @After
+  public void tearDown() {
+    new File(HISTORY_FILE_PATH).delete();
+  }
+
+  @Test
+  public void add_totalsPerCollectionAndCrawl() {
+    DownloadPlan plan = new DownloadPlan();
+    plan.add(wasapiFile(8001, 2, 1000), false);
+    plan.add(wasapiFile(8001, 2, 2000), true);
+    plan.add(wasapiFile(8001, 1, 500), false);
+    assertEquals(3, plan.getNumFiles());
+    assertEquals(3500, plan.getBytes());
+    assertEquals(2000, plan.getPresentBytes());
+    assertEquals(1500, plan.getBytesToDownload());
+  }
+
+  @Test
+  public void print_listsCrawlsInOrderWithTotalsAndEstimate() {
+    DownloadPlan plan = new DownloadPlan();
+    plan.add(wasapiFile(8001, 2, 3 * 1024 * 1024), false);
+    plan.add(wasapiFile(8001, 2, 1024), true);
+    plan.add(wasapiFile(7000, 5, 500), false);
+    ThroughputHistory history = new ThroughputHistory(HISTORY_FILE_PATH);
+    history.record(1024 * 1024, 1000000000L); // 1 MB/s
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    plan.print(new PrintStream(out), 1024, history);
+    String expected = "collection 7000, crawl 5: 1 files, 500 B (0 files, 0 B already present)\n" +
+        "collection 8001, crawl 2: 2 files, 3.0 MB (1 files, 1.0 KB already present)\n" +
+        "total: 3 files, 3.0 MB (1 files, 1.0 KB already present); 3.0 MB to download\n" +
+        "free space in outputBaseDir: 1.0 KB (NOT ENOUGH)\n" +
+        "estimated time: 0h 00m 04s at 1.0 MB/s (measured over previous runs)\n";
+    assertEquals(expected, out.toString());
+  }
+
+  @Test
+  public void print_estimateUnknownWithoutHistory() {
+    DownloadPlan plan = new DownloadPlan();
+    plan.add(wasapiFile(8001, 2, 1000), false);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    plan.print(new PrintStream(out), 1024 * 1024, new ThroughputHistory(HISTORY_FILE_PATH));
+    assertTrue(out.toString().endsWith("free space in outputBaseDir: 1.0 MB\nestimated time: unknown (no download throughput measured yet)\n"));
+  }
+
+  @Test
+  public void formatBytes_usesLargestWholeUnit() {
+    assertEquals("0 B", DownloadPlan.formatBytes(0));
+    assertEquals("1023 B", DownloadPlan.formatBytes(1023));
+    assertEquals("1.5 KB", DownloadPlan.formatBytes(1536));
+    assertEquals("2.0 TB", DownloadPlan.formatBytes(2L * 1024 * 1024 * 1024 * 1024));
+  }
+
+  @Test
+  public void formatDuration_hoursMinutesAndSeconds() {
+    assertEquals("0h 00m 00s", DownloadPlan.formatDuration(0));
+    assertEquals("26h 03m 09s", DownloadPlan.formatDuration(26 * 3600 + 3 * 60 + 9));
+  }
+
+  private WasapiFile wasapiFile(int collectionId, int crawlId, long size) {
+    WasapiFile file = new WasapiFile();
+    file.setCollectionId(collectionId);
+    file.setCrawlId(crawlId);
+    file.setSize(size);
+    return file;
+  }
+}
@@ -1,28 +1,35 @@
 package edu.stanford.dlss.was;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicStatusLine;
 
 import org.junit.*;
 import static org.junit.Assert.*;
 import org.mockito.*;
-import org.mockito.invocation.*;
-import org.mockito.stubbing.*;
 
 public class TestDownloadResponseHandler {
   private static final char SEP = File.separatorChar;
   private static final String OUTPUT_DIRECTORY = new String("test" + SEP + "tmp");
   private static final String OUTPUT_FILE_PATH = new String(OUTPUT_DIRECTORY + SEP + "testDownloadResponseHandler.output");
   private static final StatusLine VALID_STATUS_LINE = new BasicStatusLine(new ProtocolVersion("HTTP 1/1", 1, 1), 200, "OK");
+  private static final StatusLine PARTIAL_STATUS_LINE = new BasicStatusLine(new ProtocolVersion("HTTP 1/1", 1, 1), 206, "Partial Content");
+  private static final String HELLO_MD5 = "5d41402abc4b2a76b9719d911017c592";
 
   @Before
   public void setUp() {
@@ -52,17 +59,109 @@ public class TestDownloadResponseHandler {
     HttpEntity mockEntity = Mockito.mock(HttpEntity.class);
     Mockito.when(mockResponse.getEntity()).thenReturn(mockEntity);
     Mockito.when(mockResponse.getStatusLine()).thenReturn(VALID_STATUS_LINE);
-
-    Mockito.doAnswer(new Answer<Void>() {
-      @Override
-      public Void answer(InvocationOnMock invocation) throws IOException {
-        new File(OUTPUT_FILE_PATH).createNewFile();
-        return null;
-      }
-    }).when(mockEntity).writeTo(ArgumentMatchers.<FileOutputStream>any(FileOutputStream.class));
+    Mockito.when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(new byte[0]));
 
     boolean returnValue = handler.handleResponse(mockResponse);
     assertEquals("return value incorrect", true, returnValue);
     assertEquals("output file path should exist", true, new File(OUTPUT_FILE_PATH).exists());
   }
+
+  @Test
+  public void validResponseUpdatesDigestsWithWrittenBytes() throws IOException, NoSuchAlgorithmException {
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+    MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+    DownloadResponseHandler handler = new DownloadResponseHandler(OUTPUT_FILE_PATH, md5, sha1);
+    HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+    Mockito.when(mockResponse.getEntity()).thenReturn(new StringEntity("hello"));
+    Mockito.when(mockResponse.getStatusLine()).thenReturn(VALID_STATUS_LINE);
+
+    assertTrue("return value incorrect", handler.handleResponse(mockResponse));
+    assertEquals("output file should contain the entity", "hello", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+    assertTrue("md5 should be computed from written bytes", WasapiValidator.validateDigest(HELLO_MD5, md5));
+    assertTrue("sha1 should be computed from written bytes", WasapiValidator.validateDigest("aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d", sha1));
+  }
+
+  @Test
+  public void bandwidthLimitedResponseWritesWholeEntity() throws IOException, NoSuchAlgorithmException {
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+    FileChannelWriter bandwidthLimitedWriter = new FileChannelWriter(new BufferPool(4096), new BandwidthLimiter(1000000));
+    DownloadResponseHandler handler = new DownloadResponseHandler(OUTPUT_FILE_PATH, 0, bandwidthLimitedWriter, md5);
+    HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+    Mockito.when(mockResponse.getEntity()).thenReturn(new StringEntity("hello"));
+    Mockito.when(mockResponse.getStatusLine()).thenReturn(VALID_STATUS_LINE);
+
+    assertTrue("return value incorrect", handler.handleResponse(mockResponse));
+    assertEquals("output file should contain the entity", "hello", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+    assertTrue("md5 should be computed from written bytes", WasapiValidator.validateDigest(HELLO_MD5, md5));
+  }
+
+  @Test
+  public void partialResponseIsAppendedAndDigestCoversWholeFile() throws IOException, NoSuchAlgorithmException {
+    Files.write(Paths.get(OUTPUT_FILE_PATH), "he".getBytes());
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+    DownloadResponseHandler handler = new DownloadResponseHandler(OUTPUT_FILE_PATH, 2, md5);
+    HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+    Mockito.when(mockResponse.getEntity()).thenReturn(new StringEntity("llo"));
+    Mockito.when(mockResponse.getStatusLine()).thenReturn(PARTIAL_STATUS_LINE);
+    Mockito.when(mockResponse.getFirstHeader(HttpHeaders.CONTENT_RANGE)).thenReturn(new BasicHeader(HttpHeaders.CONTENT_RANGE, "bytes 2-4/5"));
+
+    assertTrue("return value incorrect", handler.handleResponse(mockResponse));
+    assertEquals("partial content should be appended", "hello", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+    assertTrue("md5 should cover the whole file", WasapiValidator.validateDigest(HELLO_MD5, md5));
+  }
+
+  @Test
+  public void fullResponseToResumeRequestOverwritesPartialFile() throws IOException, NoSuchAlgorithmException {
+    Files.write(Paths.get(OUTPUT_FILE_PATH), "he".getBytes());
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+    DownloadResponseHandler handler = new DownloadResponseHandler(OUTPUT_FILE_PATH, 2, md5);
+    HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+    Mockito.when(mockResponse.getEntity()).thenReturn(new StringEntity("hello"));
+    Mockito.when(mockResponse.getStatusLine()).thenReturn(VALID_STATUS_LINE);
+
+    assertTrue("return value incorrect", handler.handleResponse(mockResponse));
+    assertEquals("server ignored Range, so file should be replaced", "hello", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+    assertTrue("md5 should cover the whole file", WasapiValidator.validateDigest(HELLO_MD5, md5));
+  }
+
+  @Test
+  public void partialFileDigestedBeforeRequestIsNotDigestedAgain() throws IOException, NoSuchAlgorithmException {
+    Files.write(Paths.get(OUTPUT_FILE_PATH), "he".getBytes());
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+    DownloadResponseHandler handler = new DownloadResponseHandler(OUTPUT_FILE_PATH, 2, md5);
+    handler.digestPartialFile();
+    HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+    Mockito.when(mockResponse.getEntity()).thenReturn(new StringEntity("llo"));
+    Mockito.when(mockResponse.getStatusLine()).thenReturn(PARTIAL_STATUS_LINE);
+    Mockito.when(mockResponse.getFirstHeader(HttpHeaders.CONTENT_RANGE)).thenReturn(new BasicHeader(HttpHeaders.CONTENT_RANGE, "bytes 2-4/5"));
+
+    assertTrue("return value incorrect", handler.handleResponse(mockResponse));
+    assertTrue("md5 should cover the whole file once", WasapiValidator.validateDigest(HELLO_MD5, md5));
+  }
+
+  @Test
+  public void partialFileDigestedBeforeRequestIsForgottenWhenServerSendsWholeFile() throws IOException, NoSuchAlgorithmException {
+    Files.write(Paths.get(OUTPUT_FILE_PATH), "he".getBytes());
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+    DownloadResponseHandler handler = new DownloadResponseHandler(OUTPUT_FILE_PATH, 2, md5);
+    handler.digestPartialFile();
+    HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+    Mockito.when(mockResponse.getEntity()).thenReturn(new StringEntity("hello"));
+    Mockito.when(mockResponse.getStatusLine()).thenReturn(VALID_STATUS_LINE);
+
+    assertTrue("return value incorrect", handler.handleResponse(mockResponse));
+    assertTrue("md5 should cover only the new copy", WasapiValidator.validateDigest(HELLO_MD5, md5));
+  }
+
+  @Test(expected = ClientProtocolException.class)
+  public void partialResponseAtWrongOffsetThrowsException() throws IOException, NoSuchAlgorithmException {
+    Files.write(Paths.get(OUTPUT_FILE_PATH), "he".getBytes());
+    DownloadResponseHandler handler = new DownloadResponseHandler(OUTPUT_FILE_PATH, 2, MessageDigest.getInstance("MD5"));
+    HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+    Mockito.when(mockResponse.getEntity()).thenReturn(new StringEntity("hello"));
+    Mockito.when(mockResponse.getStatusLine()).thenReturn(PARTIAL_STATUS_LINE);
+    Mockito.when(mockResponse.getFirstHeader(HttpHeaders.CONTENT_RANGE)).thenReturn(new BasicHeader(HttpHeaders.CONTENT_RANGE, "bytes 0-4/5"));
+
+    handler.handleResponse(mockResponse);
+  }
 }
@@ -0,0 +1,99 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestFileChannelWriter {
+  private static final String OUTPUT_FILE_PATH = "test" + File.separatorChar + "testFileChannelWriter.output";
+  private static final String HELLO_MD5 = "5d41402abc4b2a76b9719d911017c592";
+
+  private RandomAccessFile outputFile;
+
+  @Before
+  public void setUp() throws IOException {
+    outputFile = new RandomAccessFile(OUTPUT_FILE_PATH, "rw");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    outputFile.close();
+    new File(OUTPUT_FILE_PATH).delete();
+  }
+
+  @Test
+  public void write_copiesEntityAtPositionAndUpdatesDigests() throws IOException, NoSuchAlgorithmException {
+    outputFile.write("he".getBytes());
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+
+    long written = new FileChannelWriter().write(new StringEntity("llo"), outputFile.getChannel(), 2, md5);
+    assertEquals(3, written);
+    assertEquals("hello", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+    MessageDigest expected = MessageDigest.getInstance("MD5");
+    expected.update("llo".getBytes());
+    assertArrayEquals("digest covers the bytes written", expected.digest(), md5.digest());
+  }
+
+  @Test
+  public void write_handlesEntitiesLargerThanBuffer() throws IOException, NoSuchAlgorithmException {
+    byte[] content = new byte[10000];
+    for (int i = 0; i < content.length; i++)
+      content[i] = (byte) i;
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+    FileChannelWriter writer = new FileChannelWriter(new BufferPool(4096), null);
+
+    assertEquals(content.length, writer.write(new ByteArrayEntity(content), outputFile.getChannel(), 0, md5));
+    assertArrayEquals(content, Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH)));
+    assertArrayEquals(MessageDigest.getInstance("MD5").digest(content), md5.digest());
+  }
+
+  @Test
+  public void write_isBandwidthLimited() throws IOException, NoSuchAlgorithmException {
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+    FileChannelWriter writer = new FileChannelWriter(new BufferPool(4096), new BandwidthLimiter(1000000));
+
+    assertEquals(5, writer.write(new StringEntity("hello"), outputFile.getChannel(), 0, md5));
+    assertTrue(WasapiValidator.validateDigest(HELLO_MD5, md5));
+  }
+
+  @Test
+  public void write_countsBytesAsWrittenEvenIfTransferFails() throws IOException, NoSuchAlgorithmException {
+    DownloadMetrics metrics = new DownloadMetrics();
+    FileChannelWriter writer = new FileChannelWriter(new BufferPool(4096), null, metrics);
+    InputStream failsAfter8192Bytes = new SequenceInputStream(new ByteArrayInputStream(new byte[8192]), new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("connection reset");
+      }
+    });
+
+    try {
+      writer.write(new InputStreamEntity(failsAfter8192Bytes), outputFile.getChannel(), 0, MessageDigest.getInstance("MD5"));
+      fail("the transfer should fail");
+    } catch (IOException e) {
+      assertEquals("connection reset", e.getMessage());
+    }
+    assertEquals("two full buffers were written before the failure", 8192, metrics.getBytesDownloaded());
+  }
+
+  @Test
+  public void pauseNanos_onlyWithBandwidthLimit() {
+    assertEquals(0, new FileChannelWriter().pauseNanos(1000000));
+    FileChannelWriter limitedWriter = new FileChannelWriter(new BufferPool(4096), new BandwidthLimiter(1000));
+    assertTrue(limitedWriter.pauseNanos(1000) > 0);
+  }
+}
@@ -0,0 +1,54 @@
+package edu.stanford.dlss.was;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestFileDigests {
+  private static final String HELLO_MD5 = "5d41402abc4b2a76b9719d911017c592";
+  private static final String HELLO_SHA1 = "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d";
+
+  @Test
+  public void checksums_computedFromTheSameBuffers() throws NoSuchAlgorithmException {
+    FileDigests digests = helloDigests();
+    assertEquals(HELLO_MD5, digests.checksums().get("md5"));
+    assertEquals(HELLO_SHA1, digests.checksums().get("sha1"));
+    assertEquals("doesn't reset the digests", HELLO_MD5, digests.checksums().get("md5"));
+    assertEquals("md5: " + HELLO_MD5 + ", sha1: " + HELLO_SHA1, digests.toString());
+  }
+
+  @Test
+  public void copyOf_leavesDigestUnfinished() throws NoSuchAlgorithmException {
+    FileDigests digests = helloDigests();
+    assertTrue(WasapiValidator.validateDigest(HELLO_SHA1, digests.copyOf("sha1")));
+    assertEquals(HELLO_SHA1, digests.checksums().get("sha1"));
+  }
+
+  @Test
+  public void forFile_addsSupportedAlgorithmsWasapiGave() throws NoSuchAlgorithmException {
+    Map<String, String> expected = new HashMap<String, String>();
+    expected.put("sha1", HELLO_SHA1);
+    expected.put("sha256", "unsupported, so not computed");
+    assertEquals(Arrays.asList("md5", "sha1"), FileDigests.forFile(Collections.singletonList("md5"), expected).algorithms());
+  }
+
+  @Test
+  public void forFile_keepsConfiguredAlgorithmsWasapiDidntGive() throws NoSuchAlgorithmException {
+    Map<String, String> expected = Collections.singletonMap("md5", HELLO_MD5);
+    assertEquals(Arrays.asList("md5", "sha1"), FileDigests.forFile(Arrays.asList("md5", "sha1"), expected).algorithms());
+    assertEquals(Arrays.asList("sha1"), FileDigests.forFile(Arrays.asList("sha1"), null).algorithms());
+  }
+
+  private FileDigests helloDigests() throws NoSuchAlgorithmException {
+    FileDigests digests = new FileDigests(Arrays.asList("md5", "sha1"));
+    for (MessageDigest digest : digests.toArray())
+      digest.update("hello".getBytes());
+    return digests;
+  }
+}
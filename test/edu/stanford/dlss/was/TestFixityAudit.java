@@ -0,0 +1,103 @@
+package edu.stanford.dlss.was;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestFixityAudit {
+  private static final String FIXTURE_WARC_PATH = "test" + File.separatorChar + "fixtures" + File.separatorChar + "small-file.warc.gz";
+  private static final String FIXTURE_MD5 = "f08b0bf60733b61216e288cb7620bd4a";
+  private static final String WRONG_SHA1 = "666";
+  private static final String CHANGED_FILE_PATH = "test" + File.separatorChar + "testFixityAuditChanged.warc.gz";
+
+  @After
+  public void tearDown() {
+    new File(CHANGED_FILE_PATH).delete();
+  }
+
+  @Test
+  public void audit_reportsMatchedMismatchedAndMissingFiles() throws NoSuchAlgorithmException, IOException {
+    long fixtureSize = new File(FIXTURE_WARC_PATH).length();
+    Files.write(Paths.get(CHANGED_FILE_PATH), new byte[(int) fixtureSize]); // same size, different content
+    Map<String, WasapiFile> filesByPath = new LinkedHashMap<String, WasapiFile>();
+    filesByPath.put(FIXTURE_WARC_PATH, wasapiFile(fixtureSize, FIXTURE_MD5));
+    filesByPath.put(CHANGED_FILE_PATH, wasapiFile(fixtureSize, FIXTURE_MD5));
+    filesByPath.put(FIXTURE_WARC_PATH + ".missing", wasapiFile(fixtureSize, FIXTURE_MD5));
+
+    FixityAudit audit = new FixityAudit(Collections.singletonList("md5"), 2);
+    try {
+      FixityReport report = audit.audit(filesByPath);
+      assertEquals(1, report.getNumMatched());
+      assertEquals(Collections.singleton(CHANGED_FILE_PATH), report.getMismatched().keySet());
+      assertTrue(report.getMismatched().get(CHANGED_FILE_PATH).startsWith("md5 expected " + FIXTURE_MD5 + ", got "));
+      assertEquals(Collections.singleton(FIXTURE_WARC_PATH + ".missing"), report.getMissing());
+      assertFalse(report.isClean());
+    } finally {
+      audit.close();
+    }
+  }
+
+  @Test
+  public void audit_addsEachBatchToTheReport() throws NoSuchAlgorithmException {
+    long fixtureSize = new File(FIXTURE_WARC_PATH).length();
+    FixityAudit audit = new FixityAudit(Collections.singletonList("md5"), 1);
+    try {
+      audit.audit(Collections.singletonMap(FIXTURE_WARC_PATH, wasapiFile(fixtureSize, FIXTURE_MD5)));
+      audit.audit(Collections.singletonMap(FIXTURE_WARC_PATH + ".missing", wasapiFile(fixtureSize, FIXTURE_MD5)));
+      assertEquals(1, audit.getReport().getNumMatched());
+      assertEquals(1, audit.getReport().getMissing().size());
+    } finally {
+      audit.close();
+    }
+  }
+
+  @Test
+  public void audit_wrongSizeIsMismatchedWithoutHashing() throws NoSuchAlgorithmException {
+    long fixtureSize = new File(FIXTURE_WARC_PATH).length();
+    FixityAudit audit = new FixityAudit(Collections.singletonList("md5"), 1);
+    try {
+      FixityReport report = audit.audit(Collections.singletonMap(FIXTURE_WARC_PATH, wasapiFile(fixtureSize + 1, FIXTURE_MD5)));
+      assertEquals("size expected " + (fixtureSize + 1) + ", got " + fixtureSize, report.getMismatched().get(FIXTURE_WARC_PATH));
+    } finally {
+      audit.close();
+    }
+  }
+
+  @Test
+  public void mismatch_checksEveryAlgorithmComputed() throws NoSuchAlgorithmException {
+    WasapiFile file = wasapiFile(5, "5d41402abc4b2a76b9719d911017c592");
+    assertNull("md5 configured and given, and it matches", FixityAudit.mismatch(file, helloDigests(file, "md5")));
+    file.getChecksums().put("sha1", WRONG_SHA1);
+    assertEquals("sha1 given, so checked too", "sha1 expected " + WRONG_SHA1 + ", got aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d",
+        FixityAudit.mismatch(file, helloDigests(file, "md5")));
+    file.getChecksums().remove("sha1");
+    assertEquals("no sha1 checksum from WASAPI", FixityAudit.mismatch(file, helloDigests(file, "md5", "sha1")));
+  }
+
+  private FileDigests helloDigests(WasapiFile file, String... configuredAlgorithms) throws NoSuchAlgorithmException {
+    FileDigests digests = FileDigests.forFile(Arrays.asList(configuredAlgorithms), file.getChecksums());
+    for (MessageDigest digest : digests.toArray())
+      digest.update("hello".getBytes());
+    return digests;
+  }
+
+  private WasapiFile wasapiFile(long size, String md5) {
+    WasapiFile file = new WasapiFile();
+    file.setSize(size);
+    HashMap<String, String> checksums = new HashMap<String, String>();
+    checksums.put("md5", md5);
+    file.setChecksums(checksums);
+    return file;
+  }
+}
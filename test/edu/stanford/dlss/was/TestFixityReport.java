@@ -0,0 +1,38 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestFixityReport {
+  @Test
+  public void print_listsFailuresInPathOrderThenTotals() {
+    FixityReport report = new FixityReport();
+    report.recordMatch();
+    report.recordMatch();
+    report.recordMissing("b.warc.gz");
+    report.recordMismatch("d.warc.gz", "md5 expected 1, got 2");
+    report.recordMissing("a.warc.gz");
+    report.recordUnreadable("c.warc.gz", "java.io.IOException: oops");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    report.print(new PrintStream(out));
+    String expected = "MISMATCH: d.warc.gz (md5 expected 1, got 2)\n" +
+        "MISSING: a.warc.gz\n" +
+        "MISSING: b.warc.gz\n" +
+        "UNREADABLE: c.warc.gz (java.io.IOException: oops)\n" +
+        "fixity audit of 6 files: 2 matched, 1 mismatched, 2 missing, 1 unreadable\n";
+    assertEquals(expected, out.toString());
+    assertFalse(report.isClean());
+  }
+
+  @Test
+  public void isClean_whenEveryFileMatched() {
+    FixityReport report = new FixityReport();
+    assertTrue("nothing audited yet", report.isClean());
+    report.recordMatch();
+    assertTrue(report.isClean());
+  }
+}
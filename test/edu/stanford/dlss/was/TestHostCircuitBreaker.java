@@ -0,0 +1,109 @@
+package edu.stanford.dlss.was;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestHostCircuitBreaker {
+  private static final String LOCATION = "https://warcs.example.org/1.warc.gz";
+  private static final String SAME_HOST_LOCATION = "https://warcs.example.org/2.warc.gz";
+  private static final String OTHER_LOCATION = "https://mirror.example.org/1.warc.gz";
+
+  @Test
+  public void recordFailure_pausesHostOverErrorRate() {
+    HostCircuitBreaker breaker = new HostCircuitBreaker(50, 60000);
+    for (int i = 0; i < HostCircuitBreaker.MIN_ATTEMPTS / 2; i++)
+      breaker.recordSuccess(LOCATION);
+    for (int i = 0; i < HostCircuitBreaker.MIN_ATTEMPTS / 2; i++)
+      assertFalse("error rate not over 50% yet", breaker.recordFailure(LOCATION));
+    assertTrue("error rate now over 50%", breaker.recordFailure(SAME_HOST_LOCATION));
+    assertTrue(breaker.isPaused(LOCATION));
+    assertFalse("other hosts aren't paused", breaker.isPaused(OTHER_LOCATION));
+  }
+
+  @Test
+  public void recordFailure_needsMinAttempts() {
+    HostCircuitBreaker breaker = new HostCircuitBreaker(50, 60000);
+    for (int i = 0; i < HostCircuitBreaker.MIN_ATTEMPTS - 1; i++)
+      assertFalse(breaker.recordFailure(LOCATION));
+    assertTrue(breaker.recordFailure(LOCATION));
+  }
+
+  @Test
+  public void oldFailuresAgeOut() {
+    HostCircuitBreaker breaker = new HostCircuitBreaker(50, 60000);
+    for (int i = 0; i < HostCircuitBreaker.MIN_ATTEMPTS - 1; i++)
+      breaker.recordFailure(LOCATION);
+    for (int i = 0; i < HostCircuitBreaker.WINDOW_SIZE; i++)
+      breaker.recordSuccess(LOCATION);
+    assertFalse("only 1 of the last WINDOW_SIZE attempts failed", breaker.recordFailure(LOCATION));
+  }
+
+  @Test
+  public void awaitHost_waitsOutPauseThenFirstFailurePausesAgain() throws InterruptedException {
+    HostCircuitBreaker breaker = new HostCircuitBreaker(50, 100);
+    for (int i = 0; i < HostCircuitBreaker.MIN_ATTEMPTS; i++)
+      breaker.recordFailure(LOCATION);
+    long startNanos = System.nanoTime();
+    breaker.awaitHost(LOCATION);
+    assertTrue("waited for the pause", System.nanoTime() - startNanos >= 90 * 1000000L);
+    assertFalse(breaker.isPaused(LOCATION));
+
+    assertTrue("one failure after a pause pauses the host again", breaker.recordFailure(LOCATION));
+  }
+
+  @Test
+  public void recordSuccess_afterPauseClosesCircuit() throws InterruptedException {
+    HostCircuitBreaker breaker = new HostCircuitBreaker(50, 10);
+    for (int i = 0; i < HostCircuitBreaker.MIN_ATTEMPTS; i++)
+      breaker.recordFailure(LOCATION);
+    breaker.awaitHost(LOCATION);
+    breaker.recordSuccess(LOCATION);
+    assertFalse("back to needing MIN_ATTEMPTS", breaker.recordFailure(LOCATION));
+  }
+
+  @Test
+  public void awaitHost_admitsOneProbeWhileHalfOpen() throws InterruptedException {
+    HostCircuitBreaker breaker = new HostCircuitBreaker(50, 200);
+    for (int i = 0; i < HostCircuitBreaker.MIN_ATTEMPTS; i++)
+      breaker.recordFailure(LOCATION);
+    breaker.awaitHost(LOCATION); // the probe
+    Thread waiter = startAwaitingHost(breaker, SAME_HOST_LOCATION);
+    waiter.join(50);
+    assertTrue("should wait for the probe", waiter.isAlive());
+
+    breaker.recordSuccess(LOCATION);
+    waiter.join(100);
+    assertFalse("probe's success should let it through", waiter.isAlive());
+  }
+
+  @Test
+  public void awaitHost_probeThatNeverReportsLetsNextProbeThroughAfterPause() throws InterruptedException {
+    HostCircuitBreaker breaker = new HostCircuitBreaker(50, 100);
+    for (int i = 0; i < HostCircuitBreaker.MIN_ATTEMPTS; i++)
+      breaker.recordFailure(LOCATION);
+    breaker.awaitHost(LOCATION);
+    long startNanos = System.nanoTime();
+    breaker.awaitHost(SAME_HOST_LOCATION);
+    assertTrue("waited for the first probe's turn to run out", System.nanoTime() - startNanos >= 90 * 1000000L);
+  }
+
+  @Test
+  public void awaitHost_returnsAtOnceForUnknownHost() throws InterruptedException {
+    new HostCircuitBreaker(50, 60000).awaitHost(OTHER_LOCATION);
+  }
+
+  private static Thread startAwaitingHost(final HostCircuitBreaker breaker, final String location) {
+    Thread waiter = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          breaker.awaitHost(location);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    waiter.start();
+    return waiter;
+  }
+}
@@ -0,0 +1,40 @@
+package edu.stanford.dlss.was;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class TestLatencyHistogram {
+  @Test
+  public void record_updatesCountAndMean() {
+    LatencyHistogram histogram = new LatencyHistogram(1, 10);
+    assertEquals("mean of nothing", 0, histogram.getMeanSeconds(), 0);
+
+    histogram.record(TimeUnit.SECONDS.toNanos(1));
+    histogram.record(TimeUnit.SECONDS.toNanos(3));
+    assertEquals(2, histogram.getCount());
+    assertEquals(4, histogram.getSumSeconds(), 0.0001);
+    assertEquals(2, histogram.getMeanSeconds(), 0.0001);
+  }
+
+  @Test
+  public void appendPrometheusText_hasCumulativeBuckets() {
+    LatencyHistogram histogram = new LatencyHistogram(1, 10);
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(500));
+    histogram.record(TimeUnit.SECONDS.toNanos(1)); // bounds are inclusive
+    histogram.record(TimeUnit.SECONDS.toNanos(5));
+    histogram.record(TimeUnit.SECONDS.toNanos(60));
+
+    StringBuilder out = new StringBuilder();
+    histogram.appendPrometheusText(out, "test_seconds", "Test durations.");
+    String text = out.toString();
+    assertThat(text, containsString("# HELP test_seconds Test durations.\n# TYPE test_seconds histogram\n"));
+    assertThat(text, containsString("test_seconds_bucket{le=\"1.0\"} 2\n"));
+    assertThat(text, containsString("test_seconds_bucket{le=\"10.0\"} 3\n"));
+    assertThat(text, containsString("test_seconds_bucket{le=\"+Inf\"} 4\n"));
+    assertThat(text, containsString("test_seconds_sum 66.5\n"));
+    assertThat(text, containsString("test_seconds_count 4\n"));
+  }
+}
@@ -0,0 +1,86 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpGet;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestListingCache {
+  private static final String CACHE_DIR = "test" + File.separatorChar + "testListingCache";
+  private static final String PAGE_URL = "https://example.org/webdata?collection=8001";
+  private static final String PAGE_JSON = "{\"count\": 5, \"next\": null, \"previous\": null, \"files\": []}";
+  private static final String ETAG = "\"abc123\"";
+  private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+  @Before
+  public void setUp() {
+    new File(CACHE_DIR).mkdir();
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = new File(CACHE_DIR).listFiles();
+    if (files != null) {
+      for (File file : files)
+        file.delete();
+    }
+    new File(CACHE_DIR).delete();
+  }
+
+  @Test
+  public void put_keepsPageAndValidatorsForLaterRuns() throws IOException {
+    new ListingCache(CACHE_DIR).put(PAGE_URL, ETAG, LAST_MODIFIED, PAGE_JSON.getBytes(StandardCharsets.UTF_8));
+
+    ListingCache.CachedPage page = new ListingCache(CACHE_DIR).get(PAGE_URL);
+    assertEquals(5, page.parse().getCount());
+    HttpGet request = new HttpGet(PAGE_URL);
+    page.addValidators(request);
+    assertEquals(ETAG, request.getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+    assertEquals(LAST_MODIFIED, request.getFirstHeader(HttpHeaders.IF_MODIFIED_SINCE).getValue());
+  }
+
+  @Test
+  public void put_onlyAddsValidatorsTheServerSent() {
+    ListingCache cache = new ListingCache(CACHE_DIR);
+    cache.put(PAGE_URL, null, LAST_MODIFIED, PAGE_JSON.getBytes(StandardCharsets.UTF_8));
+
+    HttpGet request = new HttpGet(PAGE_URL);
+    cache.get(PAGE_URL).addValidators(request);
+    assertNull(request.getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+    assertEquals(LAST_MODIFIED, request.getFirstHeader(HttpHeaders.IF_MODIFIED_SINCE).getValue());
+  }
+
+  @Test
+  public void put_keepsNothingWithoutValidators() {
+    ListingCache cache = new ListingCache(CACHE_DIR);
+    cache.put(PAGE_URL, null, null, PAGE_JSON.getBytes(StandardCharsets.UTF_8));
+    assertNull(cache.get(PAGE_URL));
+    assertEquals(0, new File(CACHE_DIR).list().length);
+  }
+
+  @Test
+  public void get_nullForOtherUrls() {
+    ListingCache cache = new ListingCache(CACHE_DIR);
+    cache.put(PAGE_URL, ETAG, null, PAGE_JSON.getBytes(StandardCharsets.UTF_8));
+    assertNull(cache.get(PAGE_URL + "&page=2"));
+  }
+
+  @Test
+  public void get_warnsAboutUnreadablePage() throws IOException {
+    ListingCache cache = new ListingCache(CACHE_DIR);
+    Files.write(cache.pathFor(PAGE_URL), new byte[] {1, 2, 3});
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+
+    assertNull(cache.get(PAGE_URL));
+    assertTrue(errContent.toString().startsWith("WARNING: unable to read cached listing page (will fetch it again): "));
+  }
+}
@@ -0,0 +1,45 @@
+package edu.stanford.dlss.was;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class TestPrometheusTextfileWriter {
+  private static final String TEXTFILE_PATH = "test" + File.separatorChar + "testPrometheusTextfileWriter.prom";
+
+  @After
+  public void tearDown() {
+    new File(TEXTFILE_PATH).delete();
+  }
+
+  @Test
+  public void write_replacesTextfileWithCurrentMetrics() throws IOException {
+    DownloadMetrics metrics = new DownloadMetrics();
+    PrometheusTextfileWriter writer = new PrometheusTextfileWriter(metrics, TEXTFILE_PATH);
+    writer.write();
+    metrics.recordBytesDownloaded(1000);
+    metrics.recordFileDownloaded(TimeUnit.SECONDS.toNanos(4));
+    writer.write();
+
+    String text = new String(Files.readAllBytes(new File(TEXTFILE_PATH).toPath()), "UTF-8");
+    assertEquals(metrics.toPrometheusText(), text);
+    assertFalse("temporary file should have been renamed into place", new File(TEXTFILE_PATH + ".tmp").exists());
+  }
+
+  @Test
+  public void startThenClose_writesMetricsWhileRunningAndAtEnd() throws IOException {
+    DownloadMetrics metrics = new DownloadMetrics();
+    PrometheusTextfileWriter writer = new PrometheusTextfileWriter(metrics, TEXTFILE_PATH);
+    writer.start();
+    metrics.recordFileFailed();
+    writer.close();
+
+    String text = new String(Files.readAllBytes(new File(TEXTFILE_PATH).toPath()), "UTF-8");
+    assertThat("final write should have the latest values", text, containsString("wasapi_downloader_files_failed_total 1\n"));
+  }
+}
@@ -0,0 +1,82 @@
+package edu.stanford.dlss.was;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestRateController {
+  private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  // a little after any controller the test makes, so its start-up time doesn't delay requests
+  private final long now = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void reserve_doesNotWaitUntilThrottled() {
+    RateController controller = new RateController(60000);
+    assertEquals(0, controller.reserve(now));
+    assertEquals(0, controller.reserve(now));
+  }
+
+  @Test
+  public void recordThrottled_pausesForRetryAfter() {
+    RateController controller = new RateController(60000);
+    controller.recordThrottled(5000, now);
+    assertEquals(5000 * MILLI, controller.reserve(now));
+  }
+
+  @Test
+  public void recordThrottled_defaultsWithoutRetryAfter() {
+    RateController controller = new RateController(60000);
+    controller.recordThrottled(-1, now);
+    assertEquals(RateController.DEFAULT_RETRY_AFTER_MILLIS * MILLI, controller.reserve(now));
+  }
+
+  @Test
+  public void recordThrottled_capsRetryAfter() {
+    RateController controller = new RateController(10000);
+    controller.recordThrottled(TimeUnit.HOURS.toMillis(1), now);
+    assertEquals(10000 * MILLI, controller.reserve(now));
+  }
+
+  @Test
+  public void recordThrottled_spacesOutLaterRequests() {
+    RateController controller = new RateController(60000);
+    controller.recordThrottled(0, now);
+    assertEquals(RateController.MIN_GAP_NANOS, controller.gapNanos());
+    controller.recordThrottled(0, now);
+    assertEquals("gap doubles", 2 * RateController.MIN_GAP_NANOS, controller.gapNanos());
+
+    assertEquals(0, controller.reserve(now));
+    assertEquals(controller.gapNanos(), controller.reserve(now));
+    assertEquals(2 * controller.gapNanos(), controller.reserve(now));
+  }
+
+  @Test
+  public void recordThrottled_gapIsCapped() {
+    RateController controller = new RateController(60000);
+    for (int i = 0; i < 20; i++)
+      controller.recordThrottled(0, now);
+    assertEquals(RateController.MAX_GAP_NANOS, controller.gapNanos());
+  }
+
+  @Test
+  public void recordSuccess_narrowsGapToNothing() {
+    RateController controller = new RateController(60000);
+    controller.recordThrottled(0, now);
+    controller.recordSuccess();
+    assertTrue("narrower gap", controller.gapNanos() < RateController.MIN_GAP_NANOS);
+    for (int i = 0; i < 100; i++)
+      controller.recordSuccess();
+    assertEquals(0, controller.gapNanos());
+  }
+
+  @Test
+  public void acquire_waitsOutPause() throws Exception {
+    RateController controller = new RateController(60000);
+    controller.recordThrottled(100);
+    long startNanos = System.nanoTime();
+    controller.acquire();
+    assertTrue("waited for the pause", System.nanoTime() - startNanos >= 90 * MILLI);
+  }
+}
@@ -0,0 +1,46 @@
+package edu.stanford.dlss.was;
+
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestRetryBackoff {
+  // always picks the top of the jitter range
+  private static final Random MAX_JITTER = new Random() {
+    @Override
+    public double nextDouble() {
+      return 0.9999999;
+    }
+  };
+
+  @Test
+  public void delayMillis_doublesForEachRetry() {
+    RetryBackoff backoff = new RetryBackoff(100, 60000, MAX_JITTER);
+    assertEquals(100, backoff.delayMillis(1));
+    assertEquals(200, backoff.delayMillis(2));
+    assertEquals(400, backoff.delayMillis(3));
+  }
+
+  @Test
+  public void delayMillis_cappedAtMax() {
+    RetryBackoff backoff = new RetryBackoff(100, 1000, MAX_JITTER);
+    assertEquals(1000, backoff.delayMillis(5));
+    assertEquals("no overflow for many retries", 1000, backoff.delayMillis(200));
+  }
+
+  @Test
+  public void delayMillis_isJittered() {
+    RetryBackoff backoff = new RetryBackoff(1000, 60000, new Random(42));
+    long delay = backoff.delayMillis(1);
+    assertTrue("delay within [0, base]", delay >= 0 && delay <= 1000);
+    assertNotEquals("jitter varies the delay", delay, backoff.delayMillis(1));
+  }
+
+  @Test
+  public void delayMillis_zeroBaseRetriesAtOnce() {
+    RetryBackoff backoff = new RetryBackoff(0, 60000);
+    assertEquals(0, backoff.delayMillis(1));
+    assertEquals(0, backoff.delayMillis(10));
+  }
+}
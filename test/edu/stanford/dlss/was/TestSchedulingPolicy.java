@@ -0,0 +1,70 @@
+package edu.stanford.dlss.was;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public class TestSchedulingPolicy {
+  private WasapiFile bigOld = file(1, "2015-01-01T00:00:00Z", 300);
+  private WasapiFile smallOld = file(1, "2015-01-01T00:00:00Z", 100);
+  private WasapiFile smallNew = file(2, "2017-01-01T00:00:00Z", 50);
+  private WasapiFile mediumNew = file(2, "2017-01-01T00:00:00Z", 200);
+  private WasapiFile midOnly = file(3, "2016-01-01T00:00:00Z", 150);
+  // listing order: crawl 2, crawl 1, crawl 3
+  private WasapiCrawlSelector crawlSelector = new WasapiCrawlSelector(new WasapiFile[] {
+      smallNew, bigOld, mediumNew, smallOld, midOnly});
+  private List<Integer> crawlIds = crawlSelector.getSelectedCrawlIds(0);
+
+  @Test
+  public void listing_keepsListingOrderGroupedByCrawl() {
+    assertEquals(Arrays.asList(smallNew, mediumNew, bigOld, smallOld, midOnly),
+                 SchedulingPolicy.LISTING.schedule(crawlSelector, crawlIds));
+  }
+
+  @Test
+  public void smallestFirst_ordersBySize() {
+    assertEquals(Arrays.asList(smallNew, smallOld, midOnly, mediumNew, bigOld),
+                 SchedulingPolicy.SMALLEST_FIRST.schedule(crawlSelector, crawlIds));
+  }
+
+  @Test
+  public void largestFirst_ordersBySizeDescending() {
+    assertEquals(Arrays.asList(bigOld, mediumNew, midOnly, smallOld, smallNew),
+                 SchedulingPolicy.LARGEST_FIRST.schedule(crawlSelector, crawlIds));
+  }
+
+  @Test
+  public void roundRobin_takesOneFileFromEachCrawlInTurn() {
+    assertEquals(Arrays.asList(smallNew, bigOld, midOnly, mediumNew, smallOld),
+                 SchedulingPolicy.ROUND_ROBIN.schedule(crawlSelector, crawlIds));
+  }
+
+  @Test
+  public void oldestCrawlFirst_ordersWholeCrawlsByCrawlStart() {
+    assertEquals(Arrays.asList(bigOld, smallOld, midOnly, smallNew, mediumNew),
+                 SchedulingPolicy.OLDEST_CRAWL_FIRST.schedule(crawlSelector, crawlIds));
+  }
+
+  @Test
+  public void schedule_onlyIncludesGivenCrawls() {
+    assertEquals("crawl 2 wasn't selected", Arrays.asList(bigOld, midOnly, smallOld),
+                 SchedulingPolicy.LARGEST_FIRST.schedule(crawlSelector, Arrays.asList(1, 3)));
+  }
+
+  @Test
+  public void fromSettingValue() {
+    assertEquals("unset means listing order", SchedulingPolicy.LISTING, SchedulingPolicy.fromSettingValue(null));
+    assertEquals(SchedulingPolicy.ROUND_ROBIN, SchedulingPolicy.fromSettingValue("round-robin"));
+    assertNull("unknown policy", SchedulingPolicy.fromSettingValue("random"));
+  }
+
+  private static WasapiFile file(int crawlId, String crawlStart, long size) {
+    WasapiFile file = new WasapiFile();
+    file.setCrawlId(crawlId);
+    file.setCrawlStartDateStr(crawlStart);
+    file.setSize(size);
+    return file;
+  }
+}
@@ -0,0 +1,115 @@
+package edu.stanford.dlss.was;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.mockito.*;
+
+public class TestSegmentResponseHandler {
+  private static final char SEP = File.separatorChar;
+  private static final String OUTPUT_DIRECTORY = new String("test" + SEP + "tmp");
+  private static final String OUTPUT_FILE_PATH = new String(OUTPUT_DIRECTORY + SEP + "testSegmentResponseHandler.output");
+  private static final StatusLine VALID_STATUS_LINE = new BasicStatusLine(new ProtocolVersion("HTTP 1/1", 1, 1), 200, "OK");
+  private static final StatusLine PARTIAL_STATUS_LINE = new BasicStatusLine(new ProtocolVersion("HTTP 1/1", 1, 1), 206, "Partial Content");
+  private static final StatusLine NOT_FOUND_STATUS_LINE = new BasicStatusLine(new ProtocolVersion("HTTP 1/1", 1, 1), 404, "Not Found");
+
+  private RandomAccessFile outputFile;
+
+  @Before
+  public void setUp() throws IOException {
+    new File(OUTPUT_DIRECTORY).mkdir();
+    outputFile = new RandomAccessFile(OUTPUT_FILE_PATH, "rw");
+    outputFile.setLength(5);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    outputFile.close();
+    new File(OUTPUT_FILE_PATH).delete();
+    new File(OUTPUT_DIRECTORY).delete();
+  }
+
+  @Test
+  public void partialResponseIsWrittenAtItsOffset() throws IOException {
+    SegmentResponseHandler handler = new SegmentResponseHandler(outputFile.getChannel(), 2, 4);
+
+    assertTrue("return value incorrect", handler.handleResponse(partialResponse("llo", "bytes 2-4/5")));
+    outputFile.close();
+    assertEquals("segment should be written after the 2 preallocated bytes", "\0\0llo", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+  }
+
+  @Test(expected = IOException.class)
+  public void shortPartialResponseThrowsException() throws IOException {
+    SegmentResponseHandler handler = new SegmentResponseHandler(outputFile.getChannel(), 2, 4);
+    handler.handleResponse(partialResponse("ll", "bytes 2-4/5"));
+  }
+
+  @Test
+  public void streamedPartialResponseIsWrittenAtItsOffset() throws IOException {
+    SegmentResponseHandler handler = new SegmentResponseHandler(outputFile.getChannel(), 2, 4);
+
+    assertTrue("start should accept the partial response", handler.start(partialResponse("llo", "bytes 2-4/5")));
+    handler.write(ByteBuffer.wrap("l".getBytes()));
+    handler.write(ByteBuffer.wrap("lo".getBytes()));
+    assertTrue("return value incorrect", handler.finish());
+    outputFile.close();
+    assertEquals("streamed segment should be written after the 2 preallocated bytes", "\0\0llo", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+  }
+
+  @Test(expected = IOException.class)
+  public void shortStreamedPartialResponseThrowsException() throws IOException {
+    SegmentResponseHandler handler = new SegmentResponseHandler(outputFile.getChannel(), 2, 4);
+    handler.start(partialResponse("llo", "bytes 2-4/5"));
+    handler.write(ByteBuffer.wrap("ll".getBytes()));
+    handler.finish();
+  }
+
+  @Test
+  public void fullResponseIsRejectedWithoutWriting() throws IOException {
+    SegmentResponseHandler handler = new SegmentResponseHandler(outputFile.getChannel(), 2, 4);
+    HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+    Mockito.when(mockResponse.getEntity()).thenReturn(new StringEntity("hello"));
+    Mockito.when(mockResponse.getStatusLine()).thenReturn(VALID_STATUS_LINE);
+
+    try {
+      handler.handleResponse(mockResponse);
+      fail("server ignored Range, so the response should be rejected");
+    } catch (RangeNotSupportedException e) {
+      outputFile.close();
+      assertEquals("nothing should be written", "\0\0\0\0\0", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+    }
+  }
+
+  @Test(expected = HttpResponseException.class)
+  public void errorResponseThrowsException() throws IOException {
+    SegmentResponseHandler handler = new SegmentResponseHandler(outputFile.getChannel(), 2, 4);
+    HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+    Mockito.when(mockResponse.getEntity()).thenReturn(new StringEntity("not found"));
+    Mockito.when(mockResponse.getStatusLine()).thenReturn(NOT_FOUND_STATUS_LINE);
+
+    handler.handleResponse(mockResponse);
+  }
+
+  private HttpResponse partialResponse(String content, String contentRange) throws IOException {
+    HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+    Mockito.when(mockResponse.getEntity()).thenReturn(new StringEntity(content));
+    Mockito.when(mockResponse.getStatusLine()).thenReturn(PARTIAL_STATUS_LINE);
+    Mockito.when(mockResponse.getFirstHeader(HttpHeaders.CONTENT_RANGE)).thenReturn(new BasicHeader(HttpHeaders.CONTENT_RANGE, contentRange));
+    return mockResponse;
+  }
+}
@@ -0,0 +1,118 @@
+package edu.stanford.dlss.was;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.mockito.Mockito.*;
+import org.mockito.ArgumentMatchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestSegmentedDownload {
+  private static final char SEP = File.separatorChar;
+  private static final String OUTPUT_FILE_PATH = "test" + SEP + "testSegmentedDownload.output";
+  private static final String DOWNLOAD_URL = "https://example.org/file.warc.gz";
+  private static final byte[] CONTENT = "0123456789".getBytes();
+
+  @After
+  public void tearDown() {
+    new File(OUTPUT_FILE_PATH).delete();
+  }
+
+  @Test
+  public void downloadTo_requestsEachRangeAndAssemblesFile() throws IOException {
+    WasapiClient mockClient = mock(WasapiClient.class);
+    final List<String> requestedRanges = Collections.synchronizedList(new ArrayList<String>());
+    when(mockClient.execute(ArgumentMatchers.<HttpGet>any(HttpGet.class), ArgumentMatchers.<SegmentResponseHandler>any(SegmentResponseHandler.class)))
+        .thenAnswer(new Answer<Boolean>() {
+          @Override
+          public Boolean answer(InvocationOnMock invocation) throws Throwable {
+            requestedRanges.add(((HttpGet) invocation.getArgument(0)).getFirstHeader(HttpHeaders.RANGE).getValue());
+            return serveRanges(CONTENT).answer(invocation);
+          }
+        });
+
+    new SegmentedDownload(mockClient, DOWNLOAD_URL, 3).downloadTo(OUTPUT_FILE_PATH, CONTENT.length);
+
+    assertEquals("file should be assembled from the segments", "0123456789", new String(Files.readAllBytes(Paths.get(OUTPUT_FILE_PATH))));
+    assertEquals(3, requestedRanges.size());
+    assertThat(requestedRanges, hasItems("bytes=0-3", "bytes=4-7", "bytes=8-9"));
+  }
+
+  @Test
+  public void downloadTo_preallocatesFile() throws IOException {
+    WasapiClient mockClient = mock(WasapiClient.class);
+    new SegmentedDownload(mockClient, DOWNLOAD_URL, 2).downloadTo(OUTPUT_FILE_PATH, 1000);
+    assertEquals(1000, new File(OUTPUT_FILE_PATH).length());
+  }
+
+  @Test(expected = IOException.class)
+  public void downloadTo_throwsSegmentFailure() throws IOException {
+    WasapiClient mockClient = mock(WasapiClient.class);
+    when(mockClient.execute(ArgumentMatchers.<HttpGet>any(HttpGet.class), ArgumentMatchers.<SegmentResponseHandler>any(SegmentResponseHandler.class)))
+        .thenAnswer(serveRanges(CONTENT))
+        .thenThrow(new IOException("connection reset"));
+
+    new SegmentedDownload(mockClient, DOWNLOAD_URL, 2).downloadTo(OUTPUT_FILE_PATH, CONTENT.length);
+  }
+
+  @Test(expected = RangeNotSupportedException.class)
+  public void downloadTo_throwsWhenServerIgnoresRange() throws IOException {
+    WasapiClient mockClient = mock(WasapiClient.class);
+    when(mockClient.execute(ArgumentMatchers.<HttpGet>any(HttpGet.class), ArgumentMatchers.<SegmentResponseHandler>any(SegmentResponseHandler.class)))
+        .thenAnswer(serveWholeFile(CONTENT));
+
+    new SegmentedDownload(mockClient, DOWNLOAD_URL, 2).downloadTo(OUTPUT_FILE_PATH, CONTENT.length);
+  }
+
+  /**
+   * @return an Answer for WasapiClient.execute that passes the handler a 200 response with all of content, as from a
+   *   server that ignores Range headers
+   */
+  static Answer<Boolean> serveWholeFile(final byte[] content) {
+    return new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws IOException {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(content));
+        ResponseHandler<Boolean> handler = invocation.getArgument(1);
+        return handler.handleResponse(response);
+      }
+    };
+  }
+
+  /**
+   * @return an Answer for WasapiClient.execute that passes the handler a 206 response with the requested range of content
+   */
+  static Answer<Boolean> serveRanges(final byte[] content) {
+    return new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws IOException {
+        String[] range = ((HttpGet) invocation.getArgument(0)).getFirstHeader(HttpHeaders.RANGE).getValue().substring("bytes=".length()).split("-");
+        int firstByte = Integer.parseInt(range[0]);
+        int lastByte = Integer.parseInt(range[1]);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 206, "Partial Content");
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + firstByte + "-" + lastByte + "/" + content.length);
+        response.setEntity(new ByteArrayEntity(content, firstByte, lastByte - firstByte + 1));
+        ResponseHandler<Boolean> handler = invocation.getArgument(1);
+        return handler.handleResponse(response);
+      }
+    };
+  }
+}
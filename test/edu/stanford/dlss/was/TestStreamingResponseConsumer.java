@@ -0,0 +1,57 @@
+package edu.stanford.dlss.was;
+
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.nio.IOControl;
+
+import org.junit.*;
+
+public class TestStreamingResponseConsumer {
+  private ScheduledExecutorService inputResumer;
+
+  @Before
+  public void setUp() {
+    inputResumer = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    inputResumer.shutdownNow();
+  }
+
+  @Test
+  public void onByteReceived_suspendsInputForPauseInsteadOfSleeping() throws IOException {
+    StreamingResponseHandler handler = mock(StreamingResponseHandler.class);
+    when(handler.start(any(HttpResponse.class))).thenReturn(true);
+    when(handler.write(any(ByteBuffer.class))).thenReturn(TimeUnit.MILLISECONDS.toNanos(200));
+    IOControl ioControl = mock(IOControl.class);
+    StreamingResponseConsumer consumer = new StreamingResponseConsumer(handler, inputResumer);
+
+    consumer.onResponseReceived(mock(HttpResponse.class));
+    consumer.onByteReceived(ByteBuffer.wrap("hello".getBytes()), ioControl);
+    verify(ioControl).suspendInput();
+    verify(ioControl, never()).requestInput();
+    verify(ioControl, timeout(5000)).requestInput();
+  }
+
+  @Test
+  public void onByteReceived_keepsReadingWithoutPause() throws IOException {
+    StreamingResponseHandler handler = mock(StreamingResponseHandler.class);
+    when(handler.start(any(HttpResponse.class))).thenReturn(true);
+    when(handler.write(any(ByteBuffer.class))).thenReturn(0L);
+    IOControl ioControl = mock(IOControl.class);
+    StreamingResponseConsumer consumer = new StreamingResponseConsumer(handler, inputResumer);
+
+    consumer.onResponseReceived(mock(HttpResponse.class));
+    consumer.onByteReceived(ByteBuffer.wrap("hello".getBytes()), ioControl);
+    verify(handler).write(any(ByteBuffer.class));
+    verifyZeroInteractions(ioControl);
+  }
+}
@@ -0,0 +1,61 @@
+package edu.stanford.dlss.was;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestThroughputHistory {
+  private static final String HISTORY_FILE_PATH = "test" + File.separatorChar + "testThroughputHistory.properties";
+  private static final long SECOND_NANOS = 1000000000L;
+
+  @After
+  public void tearDown() {
+    new File(HISTORY_FILE_PATH).delete();
+  }
+
+  @Test
+  public void estimatedSeconds_unknownWithoutHistory() {
+    ThroughputHistory history = new ThroughputHistory(HISTORY_FILE_PATH);
+    assertEquals(0, history.bytesPerSecond(), 0);
+    assertEquals(-1, history.estimatedSeconds(1000));
+  }
+
+  @Test
+  public void record_sumsRunsAndKeepsThemForLaterRuns() {
+    ThroughputHistory history = new ThroughputHistory(HISTORY_FILE_PATH);
+    history.record(1000, SECOND_NANOS);
+    history.record(3000, SECOND_NANOS);
+    assertEquals(2000, history.bytesPerSecond(), 0.001);
+
+    ThroughputHistory nextRun = new ThroughputHistory(HISTORY_FILE_PATH);
+    assertEquals(2000, nextRun.bytesPerSecond(), 0.001);
+    assertEquals(5, nextRun.estimatedSeconds(10000));
+    assertEquals("rounds up", 6, nextRun.estimatedSeconds(10001));
+  }
+
+  @Test
+  public void record_ignoresRunsThatDownloadedNothing() {
+    ThroughputHistory history = new ThroughputHistory(HISTORY_FILE_PATH);
+    history.record(0, SECOND_NANOS);
+    assertFalse("nothing saved", new File(HISTORY_FILE_PATH).exists());
+    assertEquals(-1, history.estimatedSeconds(1000));
+  }
+
+  @Test
+  public void constructor_warnsAboutUnreadableFile() throws IOException {
+    Files.write(Paths.get(HISTORY_FILE_PATH), "bytes=lots\n".getBytes(StandardCharsets.UTF_8));
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+
+    ThroughputHistory history = new ThroughputHistory(HISTORY_FILE_PATH);
+    assertEquals(-1, history.estimatedSeconds(1000));
+    assertTrue(errContent.toString().startsWith("WARNING: unable to read download throughput history"));
+  }
+}
@@ -0,0 +1,52 @@
+package edu.stanford.dlss.was;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestVirtualThreads {
+  @Test
+  public void isSupported_fromJava21() {
+    String specVersion = System.getProperty("java.specification.version");
+    boolean java21OrLater = !specVersion.startsWith("1.") && Integer.parseInt(specVersion) >= 21;
+    assertEquals(java21OrLater, VirtualThreads.isSupported());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void factory_throwsWhenUnsupported() {
+    Assume.assumeFalse(VirtualThreads.isSupported());
+    VirtualThreads.factory();
+  }
+
+  @Test
+  public void factory_makesVirtualThreads() throws Exception {
+    Assume.assumeTrue(VirtualThreads.isSupported());
+    ThreadFactory factory = VirtualThreads.factory();
+    Thread thread = factory.newThread(new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+    assertTrue("virtual thread", (Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+  }
+
+  @Test
+  public void newThreadPerTaskExecutor_runsTasksOnVirtualThreads() throws Exception {
+    Assume.assumeTrue(VirtualThreads.isSupported());
+    ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor();
+    try {
+      Boolean isVirtual = executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+        }
+      }).get();
+      assertTrue("task ran on a virtual thread", isVirtual);
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -1,14 +1,32 @@
 package edu.stanford.dlss.was;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 
 import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.containsString;
 import org.junit.*;
 import static org.mockito.Mockito.*;
+import org.mockito.ArgumentCaptor;
 
+@SuppressWarnings("checkstyle:ClassFanOutComplexity")
 public class TestWasapiClient {
   @Test
   public void constructorInitializesCorrectly() throws IOException, SettingsLoadException {
@@ -43,6 +61,201 @@ public class TestWasapiClient {
 
     testClient.execute(mockRequest, mockHandler);
 
-    verify(mockHttpClient, times(1)).execute(mockRequest, mockHandler, testClient.wasapiContext);
+    ArgumentCaptor<HttpContext> contextCaptor = ArgumentCaptor.forClass(HttpContext.class);
+    verify(mockHttpClient, times(1)).execute(same(mockRequest), same(mockHandler), contextCaptor.capture());
+    assertSame("request context should share the client's cookie store",
+        testClient.cookieStore, contextCaptor.getValue().getAttribute(HttpClientContext.COOKIE_STORE));
+  }
+
+  @Test
+  public void executeUsesSeparateContextPerRequest() throws IOException, SettingsLoadException {
+    WasapiClient testClient = new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    CloseableHttpClient mockHttpClient = mock(CloseableHttpClient.class);
+    testClient.wasapiClient = mockHttpClient;
+    JsonResponseHandler mockHandler = mock(JsonResponseHandler.class);
+    HttpGet mockRequest = mock(HttpGet.class);
+
+    testClient.execute(mockRequest, mockHandler);
+    testClient.execute(mockRequest, mockHandler);
+
+    ArgumentCaptor<HttpContext> contextCaptor = ArgumentCaptor.forClass(HttpContext.class);
+    verify(mockHttpClient, times(2)).execute(same(mockRequest), same(mockHandler), contextCaptor.capture());
+    assertNotSame("concurrent requests should not share per-request state",
+        contextCaptor.getAllValues().get(0), contextCaptor.getAllValues().get(1));
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void loginReusesSavedCookies() throws IOException, SettingsLoadException {
+    String cookieFilePath = "test" + File.separatorChar + "testWasapiClient.cookies";
+    BasicCookieStore savedStore = new BasicCookieStore();
+    BasicClientCookie cookie = new BasicClientCookie("sessionid", "abc123");
+    cookie.setDomain("example.org");
+    savedStore.addCookie(cookie);
+    new CookieFile(cookieFilePath).save(savedStore);
+    try {
+      String[] args = { "--cookieFile=" + cookieFilePath };
+      WasapiClient testClient = new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+      CloseableHttpClient mockHttpClient = mock(CloseableHttpClient.class);
+      testClient.wasapiClient = mockHttpClient;
+
+      testClient.login();
+      verify(mockHttpClient, never()).execute(any(HttpPost.class));
+      assertEquals("abc123", testClient.cookieStore.getCookies().get(0).getValue());
+    } finally {
+      new File(cookieFilePath).delete();
+    }
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void loginOnlyWarnsWhenCookiesCantBeSaved() throws IOException, SettingsLoadException {
+    String cookieFilePath = "test" + File.separatorChar + "testWasapiClient.cookies";
+    String[] args = { "--cookieFile=" + cookieFilePath };
+    WasapiClient testClient = spy(new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, args)));
+    doNothing().when(testClient).sendLoginRequest();
+    testClient.cookieFile = mock(CookieFile.class);
+    doThrow(new IOException("disk full")).when(testClient.cookieFile).save(testClient.cookieStore);
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+
+    testClient.login();
+    verify(testClient, times(1)).sendLoginRequest();
+    assertThat(errContent.toString(), containsString("WARNING: unable to save cookies: " + cookieFilePath + " (disk full)"));
+  }
+
+  @Test
+  public void executeLogsInAgainWhenSessionIsRejected() throws IOException, SettingsLoadException {
+    WasapiClient testClient = spy(new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, null)));
+    CloseableHttpClient mockHttpClient = mock(CloseableHttpClient.class);
+    testClient.wasapiClient = mockHttpClient;
+    doNothing().when(testClient).sendLoginRequest();
+    JsonResponseHandler mockHandler = mock(JsonResponseHandler.class);
+    HttpGet mockRequest = mock(HttpGet.class);
+    WasapiResponse page = new WasapiResponse();
+    when(mockHttpClient.execute(same(mockRequest), same(mockHandler), any(HttpContext.class)))
+        .thenThrow(new HttpResponseException(401, "Unauthorized")).thenReturn(page);
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+
+    assertSame(page, testClient.execute(mockRequest, mockHandler));
+    verify(testClient, times(1)).sendLoginRequest();
+  }
+
+  @Test
+  public void reloginIsSharedByRequestsRejectedTogether() throws IOException, SettingsLoadException {
+    WasapiClient testClient = spy(new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, null)));
+    doNothing().when(testClient).sendLoginRequest();
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+
+    testClient.relogin(0);
+    testClient.relogin(0); // a second worker whose request was sent with the same session
+    verify(testClient, times(1)).sendLoginRequest();
+    testClient.relogin(1);
+    verify(testClient, times(2)).sendLoginRequest();
+  }
+
+  @Test
+  public void executeDoesNotLogInAgainForOtherErrors() throws IOException, SettingsLoadException {
+    WasapiClient testClient = spy(new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, null)));
+    CloseableHttpClient mockHttpClient = mock(CloseableHttpClient.class);
+    testClient.wasapiClient = mockHttpClient;
+    JsonResponseHandler mockHandler = mock(JsonResponseHandler.class);
+    HttpGet mockRequest = mock(HttpGet.class);
+    when(mockHttpClient.execute(same(mockRequest), same(mockHandler), any(HttpContext.class)))
+        .thenThrow(new HttpResponseException(404, "Not Found"));
+
+    try {
+      testClient.execute(mockRequest, mockHandler);
+      fail("expected HttpResponseException");
+    } catch (HttpResponseException e) {
+      assertEquals(404, e.getStatusCode());
+    }
+    verify(testClient, never()).sendLoginRequest();
+  }
+
+  @Test
+  public void executeTellsRateControllerWhenThrottled() throws IOException, SettingsLoadException {
+    WasapiClient testClient = new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    CloseableHttpClient mockHttpClient = mock(CloseableHttpClient.class);
+    testClient.wasapiClient = mockHttpClient;
+    JsonResponseHandler mockHandler = mock(JsonResponseHandler.class);
+    HttpGet mockRequest = mock(HttpGet.class);
+    when(mockHttpClient.execute(same(mockRequest), same(mockHandler), any(HttpContext.class)))
+        .thenThrow(new ThrottledResponseException(429, "Too Many Requests", 0)).thenReturn(null);
+
+    try {
+      testClient.execute(mockRequest, mockHandler);
+      fail("expected ThrottledResponseException");
+    } catch (ThrottledResponseException e) {
+      assertEquals("requests are spaced out once throttled", RateController.MIN_GAP_NANOS, testClient.rateController.gapNanos());
+    }
+    testClient.execute(mockRequest, mockHandler);
+    assertTrue("a successful request narrows the gap", testClient.rateController.gapNanos() < RateController.MIN_GAP_NANOS);
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void connectionPool_defaultsToEnoughForDownloadThreads() throws IOException, SettingsLoadException {
+    String[] args = { "--downloadThreads=30" };
+    WasapiClient testClient = new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+
+    assertEquals("one connection per worker, plus one for listing pages", 31, testClient.connManager.getDefaultMaxPerRoute());
+    assertEquals("total connections should allow all per-host connections", 31, testClient.connManager.getMaxTotal());
+  }
+
+  @Test
+  public void connectionPool_defaultsToHttpClientDefaultsForOneThread() throws IOException, SettingsLoadException {
+    WasapiClient testClient = new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+
+    assertEquals(2, testClient.connManager.getDefaultMaxPerRoute());
+    assertEquals(20, testClient.connManager.getMaxTotal());
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void connectionPool_usesSettings() throws IOException, SettingsLoadException {
+    String[] args = { "--downloadThreads=30", "--maxConnections=8", "--maxConnectionsPerHost=4" };
+    WasapiClient testClient = new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+
+    assertEquals(4, testClient.connManager.getDefaultMaxPerRoute());
+    assertEquals(8, testClient.connManager.getMaxTotal());
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void connectionPool_defaultsToEnoughForSegmentedDownloads() throws IOException, SettingsLoadException {
+    String[] args = { "--downloadThreads=3", "--segmentThresholdMB=100", "--segmentsPerFile=5" };
+    WasapiClient testClient = new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+
+    assertEquals("one connection per segment of each worker's download, plus one for listing pages", 16, testClient.connManager.getDefaultMaxPerRoute());
+  }
+
+  @Test
+  public void requestConfig_usesTimeoutSettings() throws IOException, SettingsLoadException {
+    WasapiClient testClient = new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    RequestConfig requestConfig = testClient.buildRequestConfig();
+
+    assertEquals("connectTimeoutSeconds from settings file, in millis", 30000, requestConfig.getConnectTimeout());
+    assertEquals("socketTimeoutSeconds from settings file, in millis", 300000, requestConfig.getSocketTimeout());
+  }
+
+  @Test
+  public void keepAliveStrategy_capsServerKeepAlive() throws IOException, SettingsLoadException {
+    WasapiClient testClient = new WasapiClient(new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    ConnectionKeepAliveStrategy keepAliveStrategy = testClient.buildKeepAliveStrategy();
+
+    assertEquals("no Keep-Alive header: keepAliveSeconds from settings file",
+        60000, keepAliveStrategy.getKeepAliveDuration(keepAliveResponse(null), new BasicHttpContext()));
+    assertEquals("shorter Keep-Alive header: server's value",
+        5000, keepAliveStrategy.getKeepAliveDuration(keepAliveResponse("timeout=5"), new BasicHttpContext()));
+    assertEquals("longer Keep-Alive header: keepAliveSeconds from settings file",
+        60000, keepAliveStrategy.getKeepAliveDuration(keepAliveResponse("timeout=600"), new BasicHttpContext()));
+  }
+
+  private HttpResponse keepAliveResponse(String keepAliveHeader) {
+    HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+    if (keepAliveHeader != null)
+      response.addHeader("Keep-Alive", keepAliveHeader);
+    return response;
   }
 }
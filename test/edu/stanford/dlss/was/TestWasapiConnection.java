@@ -1,13 +1,21 @@
 package edu.stanford.dlss.was;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.methods.HttpGet;
 
 import org.junit.*;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 
 public class TestWasapiConnection {
@@ -17,6 +25,12 @@ public class TestWasapiConnection {
   private static final String JSON_QUERY = "http://example.com/example.json";
   // private static final String DOWNLOAD_QUERY = "http://example.com/download?file=example.warc";
   private static final String OUTPUT_PATH = "/dev/null";
+  private static final String PARTIAL_FILE_PATH = "test" + File.separatorChar + "testWasapiConnection.partial";
+
+  @After
+  public void tearDown() {
+    new File(PARTIAL_FILE_PATH).delete();
+  }
 
   @Test
   public void constructorCallsLogin() throws IOException {
@@ -36,6 +50,59 @@ public class TestWasapiConnection {
                                          ArgumentMatchers.<JsonResponseHandler>any(JsonResponseHandler.class));
   }
 
+  @Test
+  public void jsonQuery_withListingCache_sendsValidatorsOfCachedPage() throws IOException {
+    String cacheDir = "test" + File.separatorChar + "testWasapiConnectionCache";
+    new File(cacheDir).mkdir();
+    ListingCache listingCache = new ListingCache(cacheDir);
+    try {
+      listingCache.put(JSON_QUERY, "\"abc123\"", null, "{}".getBytes(StandardCharsets.UTF_8));
+      WasapiClient mockClient = mock(WasapiClient.class);
+      WasapiConnection testConnection = new WasapiConnection(mockClient);
+      testConnection.setListingCache(listingCache);
+      testConnection.jsonQuery(JSON_QUERY);
+
+      ArgumentCaptor<HttpGet> requestCaptor = ArgumentCaptor.forClass(HttpGet.class);
+      verify(mockClient).execute(requestCaptor.capture(), ArgumentMatchers.<CachingJsonResponseHandler>any(CachingJsonResponseHandler.class));
+      assertEquals("\"abc123\"", requestCaptor.getValue().getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+    } finally {
+      listingCache.pathFor(JSON_QUERY).toFile().delete();
+      new File(cacheDir).delete();
+    }
+  }
+
+  @Test
+  public void jsonQuery_recordsPageFetch() throws IOException {
+    WasapiClient mockClient = mock(WasapiClient.class);
+    DownloadMetrics metrics = new DownloadMetrics();
+    WasapiConnection testConnection = new WasapiConnection(mockClient, new FileChannelWriter(), metrics);
+    testConnection.jsonQuery(JSON_QUERY);
+    testConnection.jsonQuery(null);
+
+    assertEquals("only the request made should be counted", 1, metrics.getPageFetches());
+  }
+
+  @Test
+  public void jsonQuery_retriesThrottledPage() throws IOException {
+    WasapiClient mockClient = mock(WasapiClient.class);
+    WasapiResponse page = new WasapiResponse();
+    when(mockClient.execute(ArgumentMatchers.<HttpGet>any(HttpGet.class), ArgumentMatchers.<JsonResponseHandler>any(JsonResponseHandler.class)))
+        .thenThrow(new ThrottledResponseException(429, "Too Many Requests", 0)).thenReturn(page);
+    WasapiConnection testConnection = new WasapiConnection(mockClient);
+
+    assertSame(page, testConnection.jsonQuery(JSON_QUERY));
+    verify(mockClient, times(2)).execute(ArgumentMatchers.<HttpGet>any(HttpGet.class),
+                                         ArgumentMatchers.<JsonResponseHandler>any(JsonResponseHandler.class));
+  }
+
+  @Test(expected = ThrottledResponseException.class)
+  public void jsonQuery_givesUpAfterMaxThrottledRetries() throws IOException {
+    WasapiClient mockClient = mock(WasapiClient.class);
+    when(mockClient.execute(ArgumentMatchers.<HttpGet>any(HttpGet.class), ArgumentMatchers.<JsonResponseHandler>any(JsonResponseHandler.class)))
+        .thenThrow(new ThrottledResponseException(429, "Too Many Requests", 0));
+    new WasapiConnection(mockClient).jsonQuery(JSON_QUERY);
+  }
+
   @Test
   public void jsonQuery_handlesNullRequestUrl() throws IOException {
     WasapiClient mockClient = mock(WasapiClient.class);
@@ -85,15 +152,114 @@ public class TestWasapiConnection {
   }
 
   @Test
-  public void downloadQueryCallsExecute() throws IOException {
+  public void pagedJsonPager_returnsPagesInOrder() throws IOException {
+    WasapiClient mockClient = mock(WasapiClient.class);
+    WasapiConnection spyConnection = spy(new WasapiConnection(mockClient));
+
+    WasapiResponse[] responses = {
+      mockResponseNotLast(),
+      mockResponseLast()
+    };
+    doReturn(responses[0]).when(spyConnection).jsonQuery(ORIG_QUERY_URL);
+    doReturn(responses[1]).when(spyConnection).jsonQuery(NEXT_URL);
+
+    WasapiResponsePager pager = spyConnection.pagedJsonPager(ORIG_QUERY_URL);
+    assertEquals("pager's first page should be first response", responses[0], pager.nextPage());
+    assertEquals("pager's second page should be second response", responses[1], pager.nextPage());
+    assertNull("pager should return null after the last page", pager.nextPage());
+  }
+
+  @Test
+  public void downloadQueryCallsExecute() throws IOException, NoSuchAlgorithmException {
     WasapiClient mockClient = mock(WasapiClient.class);
     WasapiConnection testConnection = new WasapiConnection(mockClient);
-    testConnection.downloadQuery(JSON_QUERY, OUTPUT_PATH);
+    testConnection.downloadQuery(JSON_QUERY, OUTPUT_PATH, MessageDigest.getInstance("MD5"));
 
     verify(mockClient, times(1)).execute(ArgumentMatchers.<HttpGet>any(HttpGet.class),
                                          ArgumentMatchers.<DownloadResponseHandler>any(DownloadResponseHandler.class));
   }
 
+  @Test
+  public void resumeDownloadQuery_requestsRestOfPartialFile() throws IOException, NoSuchAlgorithmException {
+    writePartialFile(3);
+    WasapiClient mockClient = mock(WasapiClient.class);
+    WasapiConnection testConnection = new WasapiConnection(mockClient);
+    testConnection.resumeDownloadQuery(JSON_QUERY, PARTIAL_FILE_PATH, MessageDigest.getInstance("MD5"));
+
+    ArgumentCaptor<HttpGet> requestCaptor = ArgumentCaptor.forClass(HttpGet.class);
+    verify(mockClient, times(1)).execute(requestCaptor.capture(),
+                                         ArgumentMatchers.<DownloadResponseHandler>any(DownloadResponseHandler.class));
+    assertEquals("should request bytes past end of partial file", "bytes=3-", requestCaptor.getValue().getFirstHeader(HttpHeaders.RANGE).getValue());
+  }
+
+  @Test
+  public void resumeDownloadQuery_withoutPartialFileDownloadsWholeFile() throws IOException, NoSuchAlgorithmException {
+    WasapiClient mockClient = mock(WasapiClient.class);
+    WasapiConnection spyConnection = spy(new WasapiConnection(mockClient));
+    MessageDigest digest = MessageDigest.getInstance("MD5");
+    spyConnection.resumeDownloadQuery(JSON_QUERY, PARTIAL_FILE_PATH, digest);
+
+    verify(spyConnection, times(1)).downloadQuery(JSON_QUERY, PARTIAL_FILE_PATH, digest);
+  }
+
+  @Test
+  public void resumeDownloadQuery_whenRangeNotSatisfiableDownloadsWholeFile() throws IOException, NoSuchAlgorithmException {
+    writePartialFile(3);
+    WasapiClient mockClient = mock(WasapiClient.class);
+    WasapiConnection spyConnection = spy(new WasapiConnection(mockClient));
+    MessageDigest digest = MessageDigest.getInstance("MD5");
+    when(mockClient.execute(ArgumentMatchers.<HttpGet>any(HttpGet.class), ArgumentMatchers.<DownloadResponseHandler>any(DownloadResponseHandler.class)))
+        .thenThrow(new HttpResponseException(416, "Requested Range Not Satisfiable")).thenReturn(true);
+
+    assertTrue(spyConnection.resumeDownloadQuery(JSON_QUERY, PARTIAL_FILE_PATH, digest));
+    verify(spyConnection, times(1)).downloadQuery(JSON_QUERY, PARTIAL_FILE_PATH, digest);
+  }
+
+  @Test(expected = HttpResponseException.class)
+  public void resumeDownloadQuery_rethrowsOtherHttpErrors() throws IOException, NoSuchAlgorithmException {
+    writePartialFile(3);
+    WasapiClient mockClient = mock(WasapiClient.class);
+    WasapiConnection testConnection = new WasapiConnection(mockClient);
+    when(mockClient.execute(ArgumentMatchers.<HttpGet>any(HttpGet.class), ArgumentMatchers.<DownloadResponseHandler>any(DownloadResponseHandler.class)))
+        .thenThrow(new HttpResponseException(404, "Not Found"));
+
+    testConnection.resumeDownloadQuery(JSON_QUERY, PARTIAL_FILE_PATH, MessageDigest.getInstance("MD5"));
+  }
+
+  @Test
+  public void segmentedDownloadQuery_assemblesSegmentsAndDigestsWholeFile() throws IOException, NoSuchAlgorithmException {
+    WasapiClient mockClient = mock(WasapiClient.class);
+    when(mockClient.execute(ArgumentMatchers.<HttpGet>any(HttpGet.class), ArgumentMatchers.<SegmentResponseHandler>any(SegmentResponseHandler.class)))
+        .thenAnswer(TestSegmentedDownload.serveRanges("hello world".getBytes()));
+    WasapiConnection testConnection = new WasapiConnection(mockClient);
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+
+    assertTrue(testConnection.segmentedDownloadQuery(JSON_QUERY, PARTIAL_FILE_PATH, 11, 3, md5));
+    assertEquals("hello world", new String(java.nio.file.Files.readAllBytes(new File(PARTIAL_FILE_PATH).toPath())));
+    assertTrue("md5 should cover the assembled file", WasapiValidator.validateDigest("5eb63bbbe01eeed093cb22bb8f5acdc3", md5));
+  }
+
+  @Test
+  public void segmentedDownloadQuery_whenServerIgnoresRangeDownloadsWholeFileOnce() throws IOException, NoSuchAlgorithmException {
+    WasapiClient mockClient = mock(WasapiClient.class);
+    when(mockClient.execute(ArgumentMatchers.<HttpGet>any(HttpGet.class), ArgumentMatchers.<SegmentResponseHandler>any(SegmentResponseHandler.class)))
+        .thenAnswer(TestSegmentedDownload.serveWholeFile("hello world".getBytes()));
+    when(mockClient.execute(ArgumentMatchers.<HttpGet>any(HttpGet.class), ArgumentMatchers.<DownloadResponseHandler>any(DownloadResponseHandler.class)))
+        .thenAnswer(TestSegmentedDownload.serveWholeFile("hello world".getBytes()));
+    WasapiConnection spyConnection = spy(new WasapiConnection(mockClient));
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+
+    assertTrue(spyConnection.segmentedDownloadQuery(JSON_QUERY, PARTIAL_FILE_PATH, 11, 3, md5));
+    verify(spyConnection, times(1)).downloadQuery(JSON_QUERY, PARTIAL_FILE_PATH, md5);
+    assertEquals("hello world", new String(java.nio.file.Files.readAllBytes(new File(PARTIAL_FILE_PATH).toPath())));
+    assertTrue("md5 should cover the whole file", WasapiValidator.validateDigest("5eb63bbbe01eeed093cb22bb8f5acdc3", md5));
+  }
+
+  private void writePartialFile(int length) throws IOException {
+    FileOutputStream fouts = new FileOutputStream(PARTIAL_FILE_PATH);
+    fouts.write(new byte[length]);
+    fouts.close();
+  }
 
   private WasapiResponse mockResponseNotLast() {
     WasapiResponse mockResp = mock(WasapiResponse.class);
@@ -107,4 +107,17 @@ public class TestWasapiCrawlSelector {
     List<WasapiFile> files = selector.getFilesForCrawl(0);
     assertNull("list should be null for non-existent crawl", files);
   }
+
+  @Test
+  public void getSelectedCrawlIds_keepsListingOrder() {
+    WasapiFile[] outOfOrderFiles = {file3, file1, file2};
+    WasapiCrawlSelector selector = new WasapiCrawlSelector(outOfOrderFiles);
+    assertEquals(java.util.Arrays.asList(333, 111, 222), selector.getSelectedCrawlIds(0));
+  }
+
+  @Test
+  public void getCrawlStartDateStr_returnsCrawlsStartDate() {
+    WasapiCrawlSelector selector = new WasapiCrawlSelector(candidateFiles);
+    assertEquals("2016-12-31T23:59:59Z", selector.getCrawlStartDateStr(222));
+  }
 }
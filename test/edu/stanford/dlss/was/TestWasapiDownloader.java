@@ -8,18 +8,26 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.*;
 import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * Tests for WasapiDownloader that do NOT require PowerMock
  *   We split out the PowerMock tets because jacoco at this time (2017-05-31) is unable to record coverage for
  *   PowerMock tests.  Thus, this splitting lets us get coverage stats for WasapiDownloader for those tests that don't need PowerMock
  */
+@SuppressWarnings({"checkstyle:ClassFanOutComplexity", "checkstyle:MethodCount"})
 public class TestWasapiDownloader {
 
   @Test
@@ -38,13 +46,236 @@ public class TestWasapiDownloader {
   @Test
   public void downloadSelectedWarcs_requestsFileSetResponse() throws Exception {
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.pagedJsonQuery(anyString())).thenReturn(null);
+    WasapiResponsePager pager = pager();
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
 
     downloaderSpy.downloadSelectedWarcs();
     WasapiDownloaderSettings mySettings = new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, null);
-    verify(mockConn).pagedJsonQuery(ArgumentMatchers.startsWith(mySettings.baseUrlString()));
+    verify(mockConn).pagedJsonPager(ArgumentMatchers.startsWith(mySettings.baseUrlString()));
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void downloadSelectedWarcs_downloadsEveryFileWithWorkerPool() throws Exception {
+    String[] args = { "--downloadThreads=3" };
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    WasapiFile[] files = { wasapiFile(1, "a.warc.gz"), wasapiFile(1, "b.warc.gz"), wasapiFile(2, "c.warc.gz"), wasapiFile(2, "d.warc.gz") };
+    WasapiResponsePager pager = pager(wasapiResponse(files));
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doNothing().when(downloaderSpy).downloadAndValidateFile(any(WasapiFile.class));
+
+    downloaderSpy.downloadSelectedWarcs();
+    for (WasapiFile file : files)
+      verify(downloaderSpy).downloadAndValidateFile(file);
+  }
+
+  @Test
+  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:MethodLength"})
+  public void downloadSelectedWarcs_virtualThreadsDownloadAtMostDownloadThreadsAtOnce() throws Exception {
+    Assume.assumeTrue("virtual threads need Java 21", VirtualThreads.isSupported());
+    String[] args = { "--downloadThreads=2", "--virtualThreads" };
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    WasapiFile[] files = { wasapiFile(1, "a.warc.gz"), wasapiFile(1, "b.warc.gz"), wasapiFile(2, "c.warc.gz"), wasapiFile(2, "d.warc.gz"), wasapiFile(2, "e.warc.gz") };
+    WasapiResponsePager pager = pager(wasapiResponse(files));
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger mostRunning = new AtomicInteger();
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws InterruptedException {
+        mostRunning.set(Math.max(mostRunning.get(), running.incrementAndGet()));
+        Thread.sleep(50);
+        running.decrementAndGet();
+        return null;
+      }
+    }).when(downloaderSpy).downloadAndValidateFile(any(WasapiFile.class));
+
+    downloaderSpy.downloadSelectedWarcs();
+    for (WasapiFile file : files)
+      verify(downloaderSpy).downloadAndValidateFile(file);
+    assertTrue("no more than downloadThreads downloads at once", mostRunning.get() <= 2);
+  }
+
+  @Test
+  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:MethodLength"})
+  public void downloadSelectedWarcs_virtualThreadsValidateEveryDownload() throws Exception {
+    Assume.assumeTrue("virtual threads need Java 21", VirtualThreads.isSupported());
+    String[] args = { "--downloadThreads=2", "--virtualThreads", "--retries=0" };
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    WasapiFile[] files = { wasapiFile(1, "a.warc.gz"), wasapiFile(1, "b.warc.gz"), wasapiFile(2, "c.warc.gz") };
+    for (WasapiFile file : files) {
+      HashMap<String, String> checksums = new HashMap<String, String>();
+      checksums.put("md5", "5d41402abc4b2a76b9719d911017c592"); // md5 of "hello"
+      file.setChecksums(checksums);
+    }
+    WasapiResponsePager pager = pager(wasapiResponse(files));
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
+    Mockito.when(mockConn.downloadQuery(anyString(), anyString(), any(MessageDigest.class))).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) {
+        ((MessageDigest) invocation.getArgument(2)).update("hello".getBytes());
+        return true;
+      }
+    });
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doNothing().when(downloaderSpy).moveIntoPlace(anyString(), anyString());
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+
+    downloaderSpy.downloadSelectedWarcs();
+    verify(downloaderSpy, Mockito.times(files.length)).moveIntoPlace(anyString(), anyString());
+    assertEquals("every file validated", "", errContent.toString());
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void planSelectedWarcs_totalsFilesWithoutDownloading() throws Exception {
+    String fixturePath = "test" + File.separatorChar + "fixtures" + File.separatorChar + "small-file.warc.gz";
+    String[] args = { "--plan" };
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    WasapiFile presentFile = wasapiFile(1, "a.warc.gz");
+    presentFile.setSize(new File(fixturePath).length());
+    WasapiFile missingFile = wasapiFile(2, "b.warc.gz");
+    missingFile.setSize(1000);
+    WasapiResponsePager pager = pager(wasapiResponse(presentFile), wasapiResponse(missingFile));
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doReturn(fixturePath).when(downloaderSpy).outputFilePath(presentFile);
+
+    DownloadPlan plan = downloaderSpy.planSelectedWarcs();
+    assertEquals(2, plan.getNumFiles());
+    assertEquals(presentFile.getSize(), plan.getPresentBytes());
+    assertEquals(1000, plan.getBytesToDownload());
+    verify(downloaderSpy, Mockito.never()).downloadAndValidateFile(any(WasapiFile.class));
+  }
+
+  @Test
+  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:MethodLength"})
+  public void verifySelectedWarcs_auditsFilesFromEveryPageWithoutDownloading() throws Exception {
+    String fixturePath = "test" + File.separatorChar + "fixtures" + File.separatorChar + "small-file.warc.gz";
+    String[] args = { "--verifyOnly" };
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    WasapiFile presentFile = wasapiFile(1, "a.warc.gz");
+    presentFile.setSize(new File(fixturePath).length());
+    HashMap<String, String> checksums = new HashMap<String, String>();
+    checksums.put("md5", "f08b0bf60733b61216e288cb7620bd4a");
+    presentFile.setChecksums(checksums);
+    WasapiFile missingFile = wasapiFile(2, "b.warc.gz");
+    WasapiResponsePager pager = pager(wasapiResponse(presentFile), wasapiResponse(missingFile));
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doReturn(fixturePath).when(downloaderSpy).outputFilePath(presentFile);
+
+    FixityReport report = downloaderSpy.verifySelectedWarcs();
+    assertEquals("present file matched", 1, report.getNumMatched());
+    assertEquals("missing file reported", 1, report.getMissing().size());
+    assertTrue(report.getMissing().first().endsWith("b.warc.gz"));
+    verify(downloaderSpy, Mockito.never()).downloadAndValidateFile(any(WasapiFile.class));
+    verify(downloaderSpy, Mockito.never()).prepareOutputLocation(any(WasapiFile.class));
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void downloadSelectedWarcs_downloadsFilesFromEveryPage() throws Exception {
+    String[] args = { "--downloadThreads=1" };
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    WasapiFile[] firstPageFiles = { wasapiFile(1, "a.warc.gz"), wasapiFile(1, "b.warc.gz"), wasapiFile(1, "c.warc.gz") };
+    WasapiFile[] secondPageFiles = { wasapiFile(2, "d.warc.gz"), wasapiFile(3, "e.warc.gz") };
+    WasapiResponsePager pager = pager(wasapiResponse(firstPageFiles), wasapiResponse(secondPageFiles));
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doNothing().when(downloaderSpy).downloadAndValidateFile(any(WasapiFile.class));
+
+    downloaderSpy.downloadSelectedWarcs();
+    for (WasapiFile file : firstPageFiles)
+      verify(downloaderSpy).downloadAndValidateFile(file);
+    for (WasapiFile file : secondPageFiles)
+      verify(downloaderSpy).downloadAndValidateFile(file);
+    verify(pager).close();
+  }
+
+  @Test
+  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:MethodLength"})
+  public void downloadSelectedWarcs_ordersFilesFromEveryPageBySchedulingPolicy() throws Exception {
+    String[] args = { "--downloadThreads=1", "--schedulingPolicy=largest-first" };
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    WasapiFile small = wasapiFile(1, "small.warc.gz");
+    small.setSize(10);
+    WasapiFile medium = wasapiFile(1, "medium.warc.gz");
+    medium.setSize(20);
+    WasapiFile large = wasapiFile(2, "large.warc.gz");
+    large.setSize(30);
+    WasapiResponsePager pager = pager(wasapiResponse(new WasapiFile[] { small, medium }), wasapiResponse(new WasapiFile[] { large }));
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doNothing().when(downloaderSpy).downloadAndValidateFile(any(WasapiFile.class));
+
+    downloaderSpy.downloadSelectedWarcs();
+    InOrder inOrder = Mockito.inOrder(downloaderSpy);
+    inOrder.verify(downloaderSpy).downloadAndValidateFile(large);
+    inOrder.verify(downloaderSpy).downloadAndValidateFile(medium);
+    inOrder.verify(downloaderSpy).downloadAndValidateFile(small);
+  }
+
+  @Test
+  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:MethodLength"})
+  public void downloadSelectedWarcs_printsFailureSummary() throws Exception {
+    String[] args = { "--downloadThreads=2", "--retries=0" };
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    WasapiFile[] files = { wasapiFile(1, "good.warc.gz"), wasapiFile(1, "bad.warc.gz") };
+    WasapiResponsePager pager = pager(wasapiResponse(files));
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(anyString(), any(WasapiFile.class), any(MessageDigest.class));
+    Mockito.doNothing().when(downloaderSpy).moveIntoPlace(anyString(), anyString());
+    Mockito.when(mockConn.downloadQuery(ArgumentMatchers.endsWith("good.warc.gz"), anyString(), any(MessageDigest.class))).thenReturn(true);
+    Mockito.when(mockConn.downloadQuery(ArgumentMatchers.endsWith("bad.warc.gz"), anyString(), any(MessageDigest.class))).thenReturn(false);
+
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+
+    downloaderSpy.downloadSelectedWarcs();
+    String errOutput = errContent.toString();
+    assertThat(errOutput, org.hamcrest.CoreMatchers.containsString("1 of 2 files not retrieved or unable to validate checksum:\n  https://example.org/bad.warc.gz\n"));
+    assertThat(errOutput, org.hamcrest.CoreMatchers.not(org.hamcrest.CoreMatchers.containsString("good.warc.gz")));
+  }
+
+  @Test
+  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:MethodLength"})
+  public void downloadSelectedWarcs_incrementalAdvancesWatermarkForNextRun() throws Exception {
+    String[] args = { "--downloadThreads=1", "--incremental" };
+    File watermarkFile = new File("test" + File.separatorChar + "outputBaseDir", CrawlWatermark.fileName("1", null));
+    try {
+      WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+      WasapiFile january = wasapiFile(5, "january.warc.gz");
+      january.setCrawlStartDateStr("2017-01-01T10:00:00Z");
+      WasapiFile february = wasapiFile(3, "february.warc.gz");
+      february.setCrawlStartDateStr("2017-02-01T10:00:00Z");
+      WasapiResponsePager pager = pager(wasapiResponse(january, february));
+      Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
+      WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+      Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+      Mockito.doNothing().when(downloaderSpy).downloadAndValidateFile(any(WasapiFile.class));
+      assertNull("no watermark yet", downloaderSpy.crawlStartAfter());
+
+      downloaderSpy.downloadSelectedWarcs();
+      WasapiDownloader nextRun = new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args);
+      assertEquals("the day before the newest crawl downloaded", "2017-01-31", nextRun.crawlStartAfter());
+    } finally {
+      watermarkFile.delete();
+    }
   }
 
   @Test
@@ -107,23 +338,95 @@ public class TestWasapiDownloader {
     System.setErr(new PrintStream(errContent));
 
     WasapiDownloader wd = new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null);
-    assertFalse("result of checksumValidate for missing checksum should be false", wd.checksumValidate("md5", wfile, "fullFilePath"));
+    assertFalse("result of checksumValidate for missing checksum should be false", wd.checksumValidate("md5", wfile, MessageDigest.getInstance("MD5")));
     assertEquals("Wrong SYSERR output", "No checksum of type: md5 available: {sha1=666}\n", errContent.toString());
   }
 
   @Test
-  public void checksumValidate_unsupportedAlgorithmReturnsFalse() throws SettingsLoadException, NoSuchAlgorithmException, IOException {
+  public void checksumValidate_withComputedDigest() throws SettingsLoadException, NoSuchAlgorithmException {
     WasapiFile wfile = new WasapiFile();
-    String expectedChecksum = "666";
     HashMap<String, String> checksumsMap = new HashMap<String, String>();
-    checksumsMap.put("foo", expectedChecksum);
+    checksumsMap.put("md5", "5d41402abc4b2a76b9719d911017c592"); // md5 of "hello"
     wfile.setChecksums(checksumsMap);
+    WasapiDownloader wd = new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null);
 
-    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
-    System.setErr(new PrintStream(errContent));
+    MessageDigest digest = MessageDigest.getInstance("MD5");
+    digest.update("hello".getBytes());
+    assertTrue("computed digest should validate against expected md5", wd.checksumValidate("md5", wfile, digest));
+    digest.update("goodbye".getBytes());
+    assertFalse("computed digest should not validate against wrong md5", wd.checksumValidate("md5", wfile, digest));
+  }
+
+  @Test
+  public void checksumsValidate_needsEveryGivenChecksumToMatch() throws SettingsLoadException, NoSuchAlgorithmException {
+    WasapiFile wfile = new WasapiFile();
+    HashMap<String, String> checksumsMap = new HashMap<String, String>();
+    checksumsMap.put("md5", "5d41402abc4b2a76b9719d911017c592"); // md5 of "hello"
+    checksumsMap.put("sha1", "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d"); // sha1 of "hello"
+    wfile.setChecksums(checksumsMap);
+    WasapiDownloader wd = new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null);
+
+    FileDigests digests = new FileDigests(Arrays.asList("md5", "sha1"));
+    for (MessageDigest digest : digests.toArray())
+      digest.update("hello".getBytes());
+    assertTrue("both checksums match", wd.checksumsValidate(wfile, digests));
+    assertTrue("validating doesn't reset the digests", wd.checksumsValidate(wfile, digests));
+
+    checksumsMap.put("sha1", "666");
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+    assertFalse("sha1 doesn't match", wd.checksumsValidate(wfile, digests));
+  }
 
+  @Test
+  public void checksumsValidate_failsWhenConfiguredChecksumIsMissing() throws SettingsLoadException, NoSuchAlgorithmException {
+    WasapiFile wfile = new WasapiFile();
+    HashMap<String, String> checksumsMap = new HashMap<String, String>();
+    checksumsMap.put("md5", "5d41402abc4b2a76b9719d911017c592"); // md5 of "hello"
+    wfile.setChecksums(checksumsMap);
     WasapiDownloader wd = new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null);
-    assertFalse("result of checksumValidate for unsupported algorithm should be false", wd.checksumValidate("foo", wfile, "fullFilePath"));
-    assertEquals("Wrong SYSERR output", "Unsupported checksum algorithm: foo.  Options are 'md5' or 'sha1'\n", errContent.toString());
+
+    FileDigests digests = FileDigests.forFile(Arrays.asList("md5", "sha1"), checksumsMap);
+    for (MessageDigest digest : digests.toArray())
+      digest.update("hello".getBytes());
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+    assertFalse("no sha1 from WASAPI, though it's configured", wd.checksumsValidate(wfile, digests));
+  }
+
+  @Test
+  public void checksumsValidate_ignoresUnsupportedAlgorithmsFromWasapi() throws SettingsLoadException, NoSuchAlgorithmException {
+    WasapiFile wfile = new WasapiFile();
+    HashMap<String, String> checksumsMap = new HashMap<String, String>();
+    checksumsMap.put("md5", "5d41402abc4b2a76b9719d911017c592"); // md5 of "hello"
+    checksumsMap.put("foo", "666");
+    wfile.setChecksums(checksumsMap);
+    WasapiDownloader wd = new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null);
+
+    FileDigests digests = FileDigests.forFile(Collections.singletonList("md5"), checksumsMap);
+    for (MessageDigest digest : digests.toArray())
+      digest.update("hello".getBytes());
+    assertTrue("foo can't be computed, so only md5 is checked", wd.checksumsValidate(wfile, digests));
+  }
+
+  private WasapiFile wasapiFile(int crawlId, String filename) {
+    WasapiFile wfile = new WasapiFile();
+    wfile.setCrawlId(crawlId);
+    wfile.setFilename(filename);
+    wfile.setLocations(new String[]{"https://example.org/" + filename});
+    return wfile;
+  }
+
+  private WasapiResponse wasapiResponse(WasapiFile... files) {
+    WasapiResponse resp = new WasapiResponse();
+    resp.setFiles(files);
+    return resp;
+  }
+
+  // a pager that returns the given pages, then null
+  static WasapiResponsePager pager(WasapiResponse... pages) throws IOException {
+    WasapiResponse[] pagesThenNull = java.util.Arrays.copyOf(pages, pages.length + 1);
+    WasapiResponsePager pager = Mockito.mock(WasapiResponsePager.class);
+    Mockito.when(pager.nextPage()).thenReturn(pagesThenNull[0],
+        java.util.Arrays.copyOfRange(pagesThenNull, 1, pagesThenNull.length));
+    return pager;
   }
 }
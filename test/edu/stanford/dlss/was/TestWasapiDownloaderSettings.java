@@ -3,6 +3,7 @@ package edu.stanford.dlss.was;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Properties;
@@ -19,7 +20,7 @@ public class TestWasapiDownloaderSettings {
   private static final String EMPTY_SETTINGS_FILE_LOCATION = "test/fixtures/empty-settings.properties";
 
   @Test
-  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:MethodLength"})
+  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:MethodLength", "checkstyle:ExecutableStatementCount"})
   public void constructor_readsPropertiesFileAndArgs() throws SettingsLoadException {
     // args is a String array, in the style of the `String[] args` param taken by the main method of a Java class.
     // JVM splits the whole command line argument string on whitespace, and passes the resultant String array into main, so
@@ -37,6 +38,31 @@ public class TestWasapiDownloaderSettings {
     assertEquals("outputBaseDir value should have come from settings file", "test/outputBaseDir/", settings.outputBaseDir());
     assertEquals("checksumAlgorithm value should have come from settings file", "md5", settings.checksumAlgorithm());
     assertEquals("retries value should have come from settings file", "3", settings.retries());
+    assertEquals("downloadThreads value should have come from settings file", "1", settings.downloadThreads());
+    assertFalse("shouldSkipExisting value should have come from settings file", settings.shouldSkipExisting());
+    assertEquals("writeBufferKB value should have come from settings file", "1024", settings.writeBufferKB());
+    assertEquals("connectTimeoutSeconds value should have come from settings file", "30", settings.connectTimeoutSeconds());
+    assertEquals("socketTimeoutSeconds value should have come from settings file", "300", settings.socketTimeoutSeconds());
+    assertEquals("keepAliveSeconds value should have come from settings file", "60", settings.keepAliveSeconds());
+    assertEquals("idleConnectionSeconds value should have come from settings file", "60", settings.idleConnectionSeconds());
+    assertEquals("httpTransport value should have come from settings file", "blocking", settings.httpTransport());
+    assertFalse("virtualThreads value should have come from settings file", settings.shouldUseVirtualThreads());
+    assertNull("circuitBreakerErrorPercent is not set in settings file", settings.circuitBreakerErrorPercent());
+    assertNull("circuitBreakerPauseSeconds is not set in settings file", settings.circuitBreakerPauseSeconds());
+    assertNull("cookieFile is not set in settings file", settings.cookieFile());
+    assertNull("incrementalSettleDays is not set in settings file", settings.incrementalSettleDays());
+    assertNull("maxBytesPerSecond is not set in settings file", settings.maxBytesPerSecond());
+    assertNull("maxConnections is not set in settings file", settings.maxConnections());
+    assertNull("maxRetryAfterSeconds is not set in settings file", settings.maxRetryAfterSeconds());
+    assertNull("maxRetryBackoffMillis is not set in settings file", settings.maxRetryBackoffMillis());
+    assertNull("metricsFile is not set in settings file", settings.metricsFile());
+    assertNull("retryBackoffMillis is not set in settings file", settings.retryBackoffMillis());
+    assertNull("maxConnectionsPerHost is not set in settings file", settings.maxConnectionsPerHost());
+    assertNull("schedulingPolicy is not set in settings file", settings.schedulingPolicy());
+    assertNull("segmentThresholdMB is not set in settings file", settings.segmentThresholdMB());
+    assertNull("segmentsPerFile is not set in settings file", settings.segmentsPerFile());
+    assertNull("verifyThreadsPerVolume is not set in settings file", settings.verifyThreadsPerVolume());
+    assertNull("listingCacheDir is not set in settings file", settings.listingCacheDir());
 
     assertEquals("collectionId value should have come from args", "123", settings.collectionId());
     assertEquals("crawlId value should have come from args", "456", settings.crawlId());
@@ -46,7 +72,8 @@ public class TestWasapiDownloaderSettings {
   }
 
   @Test
-  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:MethodLength", "checkstyle:ExecutableStatementCount"})
+  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:MethodLength", "checkstyle:ExecutableStatementCount",
+      "checkstyle:JavaNCSS"})
   public void getHelpAndSettingsMessage_containsUsageAndSettingsInfo() throws SettingsLoadException {
     //TODO: if settings validation flags possibly nonsensical/redundant combos like crawlId and crawlIdLowerBound,
     // then this test might have to be broken up a bit.
@@ -68,11 +95,38 @@ public class TestWasapiDownloaderSettings {
     assertThat("helpAndSettingsMsg lists crawlIdLowerBound arg", helpAndSettingsMsg, containsString("--crawlIdLowerBound <arg>"));
     assertThat("helpAndSettingsMsg lists crawlStartAfter arg", helpAndSettingsMsg, containsString("--crawlStartAfter <arg>"));
     assertThat("helpAndSettingsMsg lists crawlStartBefore arg", helpAndSettingsMsg, containsString("--crawlStartBefore <arg>"));
+    assertThat("helpAndSettingsMsg lists connectTimeoutSeconds arg", helpAndSettingsMsg, containsString("--connectTimeoutSeconds <arg>"));
+    assertThat("helpAndSettingsMsg lists circuitBreakerErrorPercent arg", helpAndSettingsMsg, containsString("--circuitBreakerErrorPercent <arg>"));
+    assertThat("helpAndSettingsMsg lists circuitBreakerPauseSeconds arg", helpAndSettingsMsg, containsString("--circuitBreakerPauseSeconds <arg>"));
+    assertThat("helpAndSettingsMsg lists cookieFile arg", helpAndSettingsMsg, containsString("--cookieFile <arg>"));
+    assertThat("helpAndSettingsMsg lists downloadThreads arg", helpAndSettingsMsg, containsString("--downloadThreads <arg>"));
     assertThat("helpAndSettingsMsg lists filename arg", helpAndSettingsMsg, containsString("--filename <arg>"));
     assertThat("helpAndSettingsMsg lists help flag", helpAndSettingsMsg, containsString("-h,--help"));
+    assertThat("helpAndSettingsMsg lists httpTransport arg", helpAndSettingsMsg, containsString("--httpTransport <arg>"));
+    assertThat("helpAndSettingsMsg lists virtualThreads arg", helpAndSettingsMsg, containsString("--virtualThreads"));
+    assertThat("helpAndSettingsMsg lists verifyOnly flag", helpAndSettingsMsg, containsString("--verifyOnly "));
+    assertThat("helpAndSettingsMsg lists plan flag", helpAndSettingsMsg, containsString("--plan "));
+    assertThat("helpAndSettingsMsg lists listingCacheDir arg", helpAndSettingsMsg, containsString("--listingCacheDir <arg>"));
+    assertThat("helpAndSettingsMsg lists verifyThreadsPerVolume arg", helpAndSettingsMsg, containsString("--verifyThreadsPerVolume <arg>"));
+    assertThat("helpAndSettingsMsg lists idleConnectionSeconds arg", helpAndSettingsMsg, containsString("--idleConnectionSeconds <arg>"));
+    assertThat("helpAndSettingsMsg lists incremental flag", helpAndSettingsMsg, containsString("--incremental "));
+    assertThat("helpAndSettingsMsg lists keepAliveSeconds arg", helpAndSettingsMsg, containsString("--keepAliveSeconds <arg>"));
+    assertThat("helpAndSettingsMsg lists maxBytesPerSecond arg", helpAndSettingsMsg, containsString("--maxBytesPerSecond <arg>"));
+    assertThat("helpAndSettingsMsg lists maxConnections arg", helpAndSettingsMsg, containsString("--maxConnections <arg>"));
+    assertThat("helpAndSettingsMsg lists maxConnectionsPerHost arg", helpAndSettingsMsg, containsString("--maxConnectionsPerHost <arg>"));
+    assertThat("helpAndSettingsMsg lists maxRetryAfterSeconds arg", helpAndSettingsMsg, containsString("--maxRetryAfterSeconds <arg>"));
+    assertThat("helpAndSettingsMsg lists maxRetryBackoffMillis arg", helpAndSettingsMsg, containsString("--maxRetryBackoffMillis <arg>"));
+    assertThat("helpAndSettingsMsg lists metricsFile arg", helpAndSettingsMsg, containsString("--metricsFile <arg>"));
     assertThat("helpAndSettingsMsg lists password arg", helpAndSettingsMsg, containsString("--password <arg>"));
     assertThat("helpAndSettingsMsg lists retries arg", helpAndSettingsMsg, containsString("--retries <arg>"));
+    assertThat("helpAndSettingsMsg lists retryBackoffMillis arg", helpAndSettingsMsg, containsString("--retryBackoffMillis <arg>"));
+    assertThat("helpAndSettingsMsg lists schedulingPolicy arg", helpAndSettingsMsg, containsString("--schedulingPolicy <arg>"));
+    assertThat("helpAndSettingsMsg lists segmentThresholdMB arg", helpAndSettingsMsg, containsString("--segmentThresholdMB <arg>"));
+    assertThat("helpAndSettingsMsg lists segmentsPerFile arg", helpAndSettingsMsg, containsString("--segmentsPerFile <arg>"));
+    assertThat("helpAndSettingsMsg lists skipExisting flag", helpAndSettingsMsg, containsString("--skipExisting "));
+    assertThat("helpAndSettingsMsg lists socketTimeoutSeconds arg", helpAndSettingsMsg, containsString("--socketTimeoutSeconds <arg>"));
     assertThat("helpAndSettingsMsg lists username arg", helpAndSettingsMsg, containsString("--username <arg>"));
+    assertThat("helpAndSettingsMsg lists writeBufferKB arg", helpAndSettingsMsg, containsString("--writeBufferKB <arg>"));
 
     // values
     assertThat("helpAndSettingsMsg lists accountId value", helpAndSettingsMsg, containsString("accountId : 1"));
@@ -84,10 +138,19 @@ public class TestWasapiDownloaderSettings {
     assertThat("helpAndSettingsMsg lists crawlIdLowerBound value", helpAndSettingsMsg, containsString("crawlIdLowerBound : 400"));
     assertThat("helpAndSettingsMsg lists crawlStartAfter value", helpAndSettingsMsg, containsString("crawlStartAfter : 2014-03-14"));
     assertThat("helpAndSettingsMsg lists crawlStartBefore value", helpAndSettingsMsg, containsString("crawlStartBefore : 2017-03-14"));
+    assertThat("helpAndSettingsMsg lists connectTimeoutSeconds value", helpAndSettingsMsg, containsString("connectTimeoutSeconds : 30"));
+    assertThat("helpAndSettingsMsg lists downloadThreads value", helpAndSettingsMsg, containsString("downloadThreads : 1"));
+    assertThat("helpAndSettingsMsg lists httpTransport value", helpAndSettingsMsg, containsString("httpTransport : blocking"));
+    assertThat("helpAndSettingsMsg lists virtualThreads value", helpAndSettingsMsg, containsString("virtualThreads : false"));
+    assertThat("helpAndSettingsMsg lists idleConnectionSeconds value", helpAndSettingsMsg, containsString("idleConnectionSeconds : 60"));
+    assertThat("helpAndSettingsMsg lists keepAliveSeconds value", helpAndSettingsMsg, containsString("keepAliveSeconds : 60"));
     assertThat("helpAndSettingsMsg lists filename value", helpAndSettingsMsg, containsString("filename : filename.warc.gz"));
     assertThat("helpAndSettingsMsg lists help flag value", helpAndSettingsMsg, containsString("help : true"));
     assertThat("helpAndSettingsMsg hides password value", helpAndSettingsMsg, containsString("password : [password hidden]"));
     assertThat("helpAndSettingsMsg lists retries value", helpAndSettingsMsg, containsString("retries : 3"));
+    assertThat("helpAndSettingsMsg lists skipExisting value", helpAndSettingsMsg, containsString("skipExisting : false"));
+    assertThat("helpAndSettingsMsg lists socketTimeoutSeconds value", helpAndSettingsMsg, containsString("socketTimeoutSeconds : 300"));
+    assertThat("helpAndSettingsMsg lists writeBufferKB value", helpAndSettingsMsg, containsString("writeBufferKB : 1024"));
     assertThat("helpAndSettingsMsg lists username value", helpAndSettingsMsg, containsString("username : user"));
   }
 
@@ -100,6 +163,18 @@ public class TestWasapiDownloaderSettings {
     assertEquals("the outputBaseDir from the .properties file should get overridden by the command-line arg", "test/outputBaseDir2", settings.outputBaseDir());
   }
 
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void flagArgsOverrideSettings() throws SettingsLoadException {
+    String[] args = { "--skipExisting" };
+    WasapiDownloaderSettings settings = new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, args);
+    assertTrue("the skipExisting flag should turn on the setting from the .properties file", settings.shouldSkipExisting());
+    assertFalse("flags that aren't given should not be turned on", settings.shouldDisplayHelp());
+    assertFalse("flags that aren't given should not be turned on", settings.shouldVerifyOnly());
+    assertFalse("flags that aren't given should not be turned on", settings.shouldPlan());
+    assertFalse("flags that aren't given should not be turned on", settings.shouldDownloadIncrementally());
+  }
+
   @Test
   @SuppressWarnings("checkstyle:NoWhitespaceAfter")
   public void toString_aliasesGetHelpAndSettingsMessage() throws SettingsLoadException {
@@ -143,7 +218,7 @@ public class TestWasapiDownloaderSettings {
   }
 
   @Test
-  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:LineLength", "checkstyle:MethodLength"})
+  @SuppressWarnings({"checkstyle:NoWhitespaceAfter", "checkstyle:LineLength", "checkstyle:MethodLength", "checkstyle:ExecutableStatementCount"})
   public void getSettingsErrorMessages_listsAllErrors() {
     // use the no arg constructor, so that validateSettings() doesn't get called, so we can test the method it relies on
     WasapiDownloaderSettings wdSettings = new WasapiDownloaderSettings();
@@ -159,27 +234,133 @@ public class TestWasapiDownloaderSettings {
     internalSettings.setProperty(WasapiDownloaderSettings.CRAWL_ID_LOWER_BOUND_PARAM_NAME, "c3");
     internalSettings.setProperty(WasapiDownloaderSettings.CRAWL_START_AFTER_PARAM_NAME, "12/31/2010");
     internalSettings.setProperty(WasapiDownloaderSettings.CRAWL_START_BEFORE_PARAM_NAME, "01/01/2001");
+    internalSettings.setProperty(WasapiDownloaderSettings.DOWNLOAD_THREADS_PARAM_NAME, "0");
     internalSettings.setProperty(WasapiDownloaderSettings.OUTPUT_BASE_DIR_PARAM_NAME, "does/not/exist");
     internalSettings.setProperty(WasapiDownloaderSettings.PASSWORD_PARAM_NAME, "");
     internalSettings.setProperty(WasapiDownloaderSettings.RETRIES_PARAM_NAME, "-1");
+    internalSettings.setProperty(WasapiDownloaderSettings.SKIP_EXISTING_PARAM_NAME, "sometimes");
+    internalSettings.setProperty(WasapiDownloaderSettings.VERIFY_ONLY_PARAM_NAME, "sometimes");
+    internalSettings.setProperty(WasapiDownloaderSettings.PLAN_PARAM_NAME, "maybe");
+    internalSettings.setProperty(WasapiDownloaderSettings.INCREMENTAL_PARAM_NAME, "often");
     internalSettings.setProperty(WasapiDownloaderSettings.USERNAME_PARAM_NAME, "");
 
     List<String> errMsgs = wdSettings.getSettingsErrorMessages();
     assertThat("error messages has entry for invalid account ID", errMsgs, hasItem("accountId must be an integer (if specified)"));
     assertThat("error messages has entry for invalid auth URL", errMsgs, hasItem("authurl is required, and must be a valid URL"));
     assertThat("error messages has entry for invalid base URL", errMsgs, hasItem("baseurl is required, and must be a valid URL"));
-    assertThat("error messages has entry for invalid checksumAlgorithm", errMsgs, hasItem("checksumAlgorithm is required and must be md5 or sha1"));
+    assertThat("error messages has entry for invalid checksumAlgorithm", errMsgs, hasItem("checksumAlgorithm is required and must be md5, sha1, or md5,sha1"));
     assertThat("error messages has entry for invalid collectionId", errMsgs, hasItem("collectionId must be an integer (if specified)"));
     assertThat("error messages has entry for invalid crawlId", errMsgs, hasItem("crawlId must be an integer (if specified)"));
     assertThat("error messages has entry for invalid crawlIdLowerBound", errMsgs, hasItem("crawlIdLowerBound must be an integer (if specified)"));
     assertThat("error messages has entry for invalid crawlStartAfter", errMsgs, hasItem("crawlStartAfter must be a valid ISO 8601 date string (if specified)"));
     assertThat("error messages has entry for invalid crawlStartBefore", errMsgs, hasItem("crawlStartBefore must be a valid ISO 8601 date string (if specified)"));
+    assertThat("error messages has entry for invalid downloadThreads", errMsgs, hasItem("downloadThreads must be an integer >= 1 (if specified)"));
     assertThat("error messages has entry for invalid outputBaseDir", errMsgs, hasItem("outputBaseDir is required (and must be an extant, writable directory)"));
     assertThat("error messages has entry for invalid password", errMsgs, hasItem("password is required"));
     assertThat("error messages has entry for invalid retries", errMsgs, hasItem("retries is required and must be an integer >= 0"));
+    assertThat("error messages has entry for invalid skipExisting", errMsgs, hasItem("skipExisting must be true or false (if specified)"));
+    assertThat("error messages has entry for invalid verifyOnly", errMsgs, hasItem("verifyOnly must be true or false (if specified)"));
+    assertThat("error messages has entry for invalid plan", errMsgs, hasItem("plan must be true or false (if specified)"));
+    assertThat("error messages has entry for invalid incremental", errMsgs, hasItem("incremental must be true or false (if specified)"));
     assertThat("error messages has entry for invalid username", errMsgs, hasItem("username is required"));
   }
 
+  @Test
+  @SuppressWarnings({"checkstyle:LineLength", "checkstyle:MethodLength", "checkstyle:ExecutableStatementCount",
+      "checkstyle:JavaNCSS"})
+  public void getSettingsErrorMessages_listsOptionalIntegerErrors() {
+    WasapiDownloaderSettings wdSettings = new WasapiDownloaderSettings();
+
+    Properties internalSettings = new Properties();
+    wdSettings.settings = internalSettings;
+    internalSettings.setProperty(WasapiDownloaderSettings.CIRCUIT_BREAKER_ERROR_PERCENT_PARAM_NAME, "101");
+    internalSettings.setProperty(WasapiDownloaderSettings.CIRCUIT_BREAKER_PAUSE_PARAM_NAME, "0");
+    internalSettings.setProperty(WasapiDownloaderSettings.CONNECT_TIMEOUT_PARAM_NAME, "-1");
+    internalSettings.setProperty(WasapiDownloaderSettings.COOKIE_FILE_PARAM_NAME, "no/such/dir/cookies.txt");
+    internalSettings.setProperty(WasapiDownloaderSettings.HTTP_TRANSPORT_PARAM_NAME, "nio");
+    internalSettings.setProperty(WasapiDownloaderSettings.IDLE_CONNECTION_TIMEOUT_PARAM_NAME, "0");
+    internalSettings.setProperty(WasapiDownloaderSettings.INCREMENTAL_SETTLE_DAYS_PARAM_NAME, "-1");
+    internalSettings.setProperty(WasapiDownloaderSettings.KEEP_ALIVE_PARAM_NAME, "forever");
+    internalSettings.setProperty(WasapiDownloaderSettings.MAX_BYTES_PER_SECOND_PARAM_NAME, "0");
+    internalSettings.setProperty(WasapiDownloaderSettings.MAX_CONNECTIONS_PARAM_NAME, "0");
+    internalSettings.setProperty(WasapiDownloaderSettings.MAX_CONNECTIONS_PER_HOST_PARAM_NAME, "lots");
+    internalSettings.setProperty(WasapiDownloaderSettings.MAX_RETRY_AFTER_PARAM_NAME, "-1");
+    internalSettings.setProperty(WasapiDownloaderSettings.MAX_RETRY_BACKOFF_PARAM_NAME, "0");
+    internalSettings.setProperty(WasapiDownloaderSettings.METRICS_FILE_PARAM_NAME, "metrics.txt");
+    internalSettings.setProperty(WasapiDownloaderSettings.RETRY_BACKOFF_PARAM_NAME, "-5");
+    internalSettings.setProperty(WasapiDownloaderSettings.SCHEDULING_POLICY_PARAM_NAME, "biggest-first");
+    internalSettings.setProperty(WasapiDownloaderSettings.SEGMENT_THRESHOLD_PARAM_NAME, "0");
+    internalSettings.setProperty(WasapiDownloaderSettings.SEGMENTS_PER_FILE_PARAM_NAME, "1");
+    internalSettings.setProperty(WasapiDownloaderSettings.SOCKET_TIMEOUT_PARAM_NAME, "1.5");
+    internalSettings.setProperty(WasapiDownloaderSettings.VERIFY_THREADS_PER_VOLUME_PARAM_NAME, "0");
+    internalSettings.setProperty(WasapiDownloaderSettings.LISTING_CACHE_DIR_PARAM_NAME, "does/not/exist");
+    internalSettings.setProperty(WasapiDownloaderSettings.VIRTUAL_THREADS_PARAM_NAME, "yes");
+    internalSettings.setProperty(WasapiDownloaderSettings.WRITE_BUFFER_KB_PARAM_NAME, "1");
+
+    List<String> errMsgs = wdSettings.getSettingsErrorMessages();
+    assertThat("error messages has entry for invalid circuitBreakerErrorPercent", errMsgs, hasItem("circuitBreakerErrorPercent must be an integer from 1 to 100 (if specified)"));
+    assertThat("error messages has entry for invalid circuitBreakerPauseSeconds", errMsgs, hasItem("circuitBreakerPauseSeconds must be an integer >= 1 (if specified)"));
+    assertThat("error messages has entry for invalid cookieFile", errMsgs, hasItem("cookieFile must be in a writable directory (if specified)"));
+    assertThat("error messages has entry for invalid connectTimeoutSeconds", errMsgs, hasItem("connectTimeoutSeconds must be an integer >= 0 (if specified)"));
+    assertThat("error messages has entry for invalid httpTransport", errMsgs, hasItem("httpTransport must be blocking or async (if specified)"));
+    assertThat("error messages has entry for invalid idleConnectionSeconds", errMsgs, hasItem("idleConnectionSeconds must be an integer >= 1 (if specified)"));
+    assertThat("error messages has entry for invalid incrementalSettleDays", errMsgs, hasItem("incrementalSettleDays must be an integer >= 0 (if specified)"));
+    assertThat("error messages has entry for invalid keepAliveSeconds", errMsgs, hasItem("keepAliveSeconds must be an integer >= 1 (if specified)"));
+    assertThat("error messages has entry for invalid maxBytesPerSecond", errMsgs, hasItem("maxBytesPerSecond must be an integer >= 1 (if specified)"));
+    assertThat("error messages has entry for invalid maxConnections", errMsgs, hasItem("maxConnections must be an integer >= 1 (if specified)"));
+    assertThat("error messages has entry for invalid maxConnectionsPerHost", errMsgs, hasItem("maxConnectionsPerHost must be an integer >= 1 (if specified)"));
+    assertThat("error messages has entry for invalid maxRetryAfterSeconds", errMsgs, hasItem("maxRetryAfterSeconds must be an integer >= 0 (if specified)"));
+    assertThat("error messages has entry for invalid maxRetryBackoffMillis", errMsgs, hasItem("maxRetryBackoffMillis must be an integer >= 1 (if specified)"));
+    assertThat("error messages has entry for invalid metricsFile", errMsgs, hasItem("metricsFile must end in .prom, for node-exporter's textfile collector (if specified)"));
+    assertThat("error messages has entry for invalid retryBackoffMillis", errMsgs, hasItem("retryBackoffMillis must be an integer >= 0 (if specified)"));
+    assertThat("error messages has entry for invalid schedulingPolicy", errMsgs, hasItem("schedulingPolicy must be one of listing, smallest-first, largest-first, round-robin, oldest-crawl-first (if specified)"));
+    assertThat("error messages has entry for invalid segmentThresholdMB", errMsgs, hasItem("segmentThresholdMB must be an integer >= 1 (if specified)"));
+    assertThat("error messages has entry for invalid segmentsPerFile", errMsgs, hasItem("segmentsPerFile must be an integer >= 2 (if specified)"));
+    assertThat("error messages has entry for invalid socketTimeoutSeconds", errMsgs, hasItem("socketTimeoutSeconds must be an integer >= 0 (if specified)"));
+    assertThat("error messages has entry for invalid listingCacheDir", errMsgs, hasItem("listingCacheDir must be an extant, writable directory (if specified)"));
+    assertThat("error messages has entry for invalid verifyThreadsPerVolume", errMsgs, hasItem("verifyThreadsPerVolume must be an integer >= 1 (if specified)"));
+    assertThat("error messages has entry for invalid virtualThreads", errMsgs, hasItem("virtualThreads must be true or false (if specified)"));
+    assertThat("error messages has entry for invalid writeBufferKB", errMsgs, hasItem("writeBufferKB must be an integer >= 4 (if specified)"));
+  }
+
+  @Test
+  public void getSettingsErrorMessages_incrementalNeedsWholeCollection() {
+    WasapiDownloaderSettings wdSettings = new WasapiDownloaderSettings();
+    wdSettings.settings = new Properties();
+    wdSettings.settings.setProperty(WasapiDownloaderSettings.INCREMENTAL_PARAM_NAME, "true");
+    String expected = "incremental can't be used with filename or crawlId";
+    assertFalse(wdSettings.getSettingsErrorMessages().contains(expected));
+
+    wdSettings.settings.setProperty(WasapiDownloaderSettings.CRAWL_ID_PARAM_NAME, "456");
+    assertTrue(wdSettings.getSettingsErrorMessages().contains(expected));
+  }
+
+  @Test
+  public void getSettingsErrorMessages_virtualThreadsNeedJava21() {
+    WasapiDownloaderSettings wdSettings = new WasapiDownloaderSettings();
+    wdSettings.settings = new Properties();
+    wdSettings.settings.setProperty(WasapiDownloaderSettings.VIRTUAL_THREADS_PARAM_NAME, "true");
+
+    String expected = "virtualThreads needs Java 21 or later (running on Java " + System.getProperty("java.version") + ")";
+    assertEquals("only an error where virtual threads are missing", !VirtualThreads.isSupported(), wdSettings.getSettingsErrorMessages().contains(expected));
+  }
+
+  @Test
+  public void checksumAlgorithms_listsEachAlgorithm() {
+    WasapiDownloaderSettings wdSettings = new WasapiDownloaderSettings();
+    wdSettings.settings = new Properties();
+    wdSettings.settings.setProperty(WasapiDownloaderSettings.CHECKSUM_ALGORITHM_PARAM_NAME, "md5, sha1");
+    assertEquals(Arrays.asList("md5", "sha1"), wdSettings.checksumAlgorithms());
+
+    String errMsg = "checksumAlgorithm is required and must be md5, sha1, or md5,sha1";
+    assertThat("md5,sha1 is valid", wdSettings.getSettingsErrorMessages(), not(hasItem(errMsg)));
+    wdSettings.settings.setProperty(WasapiDownloaderSettings.CHECKSUM_ALGORITHM_PARAM_NAME, "sha1");
+    assertThat("sha1 is valid", wdSettings.getSettingsErrorMessages(), not(hasItem(errMsg)));
+    wdSettings.settings.setProperty(WasapiDownloaderSettings.CHECKSUM_ALGORITHM_PARAM_NAME, "md5,md5");
+    assertThat("duplicates are invalid", wdSettings.getSettingsErrorMessages(), hasItem(errMsg));
+  }
+
+
   @Test
   @SuppressWarnings("checkstyle:MethodLength")
   public void normalizeIso8601Setting_behavesCorrectly() {
@@ -232,6 +413,21 @@ public class TestWasapiDownloaderSettings {
     assertFalse("isNullOrEmpty returns false on a non-empty string", WasapiDownloaderSettings.isNullOrEmpty("stuff"));
   }
 
+  @Test
+  public void intValueOrDefault_behavesCorrectly() {
+    assertEquals("intValueOrDefault returns default on null", 5, WasapiDownloaderSettings.intValueOrDefault(null, 5));
+    assertEquals("intValueOrDefault returns default on empty string", 5, WasapiDownloaderSettings.intValueOrDefault("", 5));
+    assertEquals("intValueOrDefault returns parsed value when specified", 3, WasapiDownloaderSettings.intValueOrDefault("3", 5));
+  }
+
+  @Test
+  public void isBooleanString_behavesCorrectly() {
+    assertTrue("isBooleanString returns true for true", WasapiDownloaderSettings.isBooleanString("true"));
+    assertTrue("isBooleanString returns true for FALSE", WasapiDownloaderSettings.isBooleanString("FALSE"));
+    assertFalse("isBooleanString returns false for other strings", WasapiDownloaderSettings.isBooleanString("yes"));
+    assertFalse("isBooleanString returns false on null", WasapiDownloaderSettings.isBooleanString(null));
+  }
+
   @Test
   public void isDirWritable_behavesCorrectly() {
     assertFalse("isDirWritable returns false if path doesn't exist", WasapiDownloaderSettings.isDirWritable("does/not/exist"));
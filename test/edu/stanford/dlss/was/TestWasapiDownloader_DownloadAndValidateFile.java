@@ -5,20 +5,28 @@ import static org.mockito.Mockito.*;
 import static org.hamcrest.CoreMatchers.*;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
 
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpResponseException;
 import org.hamcrest.core.StringStartsWith;
 import org.junit.*;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * WasapiDownloader tests for downloadAndValidateFile() method
  */
-@SuppressWarnings({"TypeName", "MethodLength"})
+@SuppressWarnings({"TypeName", "MethodLength", "MethodCount"})
 public class TestWasapiDownloader_DownloadAndValidateFile {
 
   @Test
@@ -51,16 +59,17 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     String[] locations = new String[]{firstLocation, "another location"};
     wfile.setLocations(locations);
     String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.downloadQuery(firstLocation, fullFilePath)).thenReturn(false);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenReturn(false);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
     Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
 
     downloaderSpy.downloadAndValidateFile(wfile);
-    verify(mockConn, atLeastOnce()).downloadQuery(firstLocation, fullFilePath);
+    verify(mockConn, atLeastOnce()).downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
   }
 
   @Test
@@ -70,17 +79,18 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     String[] locations = new String[]{firstLocation};
     wfile.setLocations(locations);
     String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.downloadQuery(firstLocation, fullFilePath)).thenReturn(true);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenReturn(true);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
     Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
-    Mockito.doReturn(false).when(downloaderSpy).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    Mockito.doReturn(false).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
 
     downloaderSpy.downloadAndValidateFile(wfile);
-    verify(downloaderSpy, atLeastOnce()).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    verify(downloaderSpy, atLeastOnce()).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
   }
 
   @Test
@@ -90,14 +100,16 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     String[] locations = new String[]{firstLocation};
     wfile.setLocations(locations);
     String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.downloadQuery(firstLocation, fullFilePath)).thenReturn(true);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenReturn(true);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
     Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
-    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
+    Mockito.doNothing().when(downloaderSpy).moveIntoPlace(anyString(), anyString());
 
     ByteArrayOutputStream outContent = new ByteArrayOutputStream();
     System.setOut(new PrintStream(outContent));
@@ -105,9 +117,9 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     System.setErr(new PrintStream(errContent));
 
     downloaderSpy.downloadAndValidateFile(wfile);
-    verify(mockConn, times(1)).downloadQuery(firstLocation, fullFilePath);
-    verify(downloaderSpy, times(1)).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
-    assertEquals("Wrong SYSOUT output", "file retrieved successfully: " + firstLocation + "\n", outContent.toString());
+    verify(mockConn, times(1)).downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy, times(1)).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
+    assertEquals("Wrong SYSOUT output", "file retrieved successfully: " + firstLocation + " (md5: " + EMPTY_MD5 + ")\n", outContent.toString());
     assertEquals("No SYSERR output for success", "", errContent.toString());
   }
 
@@ -118,18 +130,47 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     String[] locations = new String[]{firstLocation};
     wfile.setLocations(locations);
     String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.downloadQuery(firstLocation, fullFilePath)).thenReturn(false, false, false, true);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenReturn(false, false, false, true);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
     Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
-    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
+    Mockito.doNothing().when(downloaderSpy).moveIntoPlace(anyString(), anyString());
 
     downloaderSpy.downloadAndValidateFile(wfile);
-    verify(mockConn, times(defaultNumRetries() + 1)).downloadQuery(firstLocation, fullFilePath);
-    verify(downloaderSpy, times(1)).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    verify(mockConn, times(defaultNumRetries() + 1)).downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy, times(1)).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
+  }
+
+  @Test
+  public void downloadAndValidateFile_recordsMetrics() throws Exception {
+    WasapiFile wfile = new WasapiFile();
+    wfile.setLocations(new String[]{"out there"});
+    wfile.setSize(5);
+    WasapiFile failingFile = new WasapiFile();
+    failingFile.setLocations(new String[]{"nowhere"});
+
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    Mockito.when(mockConn.downloadQuery(eq("out there"), eq("somewhere.part"), Mockito.any(MessageDigest.class))).thenReturn(false, true);
+    Mockito.when(mockConn.downloadQuery(eq("nowhere"), eq("somewhere.part"), Mockito.any(MessageDigest.class))).thenReturn(false);
+
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    Mockito.doReturn("somewhere").when(downloaderSpy).prepareOutputLocation(Mockito.any(WasapiFile.class));
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), Mockito.any(WasapiFile.class), Mockito.any(MessageDigest.class));
+    Mockito.doNothing().when(downloaderSpy).moveIntoPlace(anyString(), anyString());
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+
+    downloaderSpy.downloadAndValidateFile(wfile);
+    downloaderSpy.downloadAndValidateFile(failingFile);
+    DownloadMetrics metrics = downloaderSpy.getMetrics();
+    assertEquals("files downloaded", 1, metrics.getFilesDownloaded());
+    assertEquals("files failed", 1, metrics.getFilesFailed());
+    assertEquals("one retry for the first file, then all retries for the second", 1 + defaultNumRetries(), metrics.getRetries());
   }
 
   @Test
@@ -139,18 +180,19 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     String[] locations = new String[]{firstLocation};
     wfile.setLocations(locations);
     String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.downloadQuery(firstLocation, fullFilePath)).thenReturn(true);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenReturn(true);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
     Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
-    Mockito.doReturn(false, false, false, true).when(downloaderSpy).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    Mockito.doReturn(false, false, false, true).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
 
     downloaderSpy.downloadAndValidateFile(wfile);
-    verify(mockConn, times(defaultNumRetries() + 1)).downloadQuery(firstLocation, fullFilePath);
-    verify(downloaderSpy, times(defaultNumRetries() + 1)).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    verify(mockConn, times(defaultNumRetries() + 1)).downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy, times(defaultNumRetries() + 1)).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
   }
 
   @Test
@@ -161,18 +203,19 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     String[] locations = new String[]{firstLocation};
     wfile.setLocations(locations);
     String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.downloadQuery(firstLocation, fullFilePath)).thenReturn(true, false, true);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenReturn(true, false, true);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
     Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
-    Mockito.doReturn(false, true).when(downloaderSpy).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    Mockito.doReturn(false, true).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
 
     downloaderSpy.downloadAndValidateFile(wfile);
-    verify(mockConn, times(3)).downloadQuery(firstLocation, fullFilePath);
-    verify(downloaderSpy, times(2)).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    verify(mockConn, times(3)).downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy, times(2)).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
   }
 
   @Test
@@ -182,9 +225,10 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     String[] locations = new String[]{firstLocation};
     wfile.setLocations(locations);
     String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.downloadQuery(firstLocation, fullFilePath)).thenReturn(false, false, false, false);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenReturn(false, false, false, false);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
@@ -194,8 +238,8 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     System.setErr(new PrintStream(errContent));
 
     downloaderSpy.downloadAndValidateFile(wfile);
-    verify(mockConn, times(defaultNumRetries() + 1)).downloadQuery(firstLocation, fullFilePath);
-    verify(downloaderSpy, never()).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    verify(mockConn, times(defaultNumRetries() + 1)).downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy, never()).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
     assertEquals("Wrong SYSERR output", "file not retrieved or unable to validate checksum: " + firstLocation + "\n", errContent.toString());
   }
 
@@ -206,21 +250,22 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     String[] locations = new String[]{firstLocation};
     wfile.setLocations(locations);
     String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.downloadQuery(firstLocation, fullFilePath)).thenReturn(true, true, true, true);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenReturn(true, true, true, true);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
     Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
-    Mockito.doReturn(false).when(downloaderSpy).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    Mockito.doReturn(false).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
 
     ByteArrayOutputStream errContent = new ByteArrayOutputStream();
     System.setErr(new PrintStream(errContent));
 
     downloaderSpy.downloadAndValidateFile(wfile);
-    verify(mockConn, times(defaultNumRetries() + 1)).downloadQuery(firstLocation, fullFilePath);
-    verify(downloaderSpy, times(defaultNumRetries() + 1)).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    verify(mockConn, times(defaultNumRetries() + 1)).downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy, times(defaultNumRetries() + 1)).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
     assertEquals("Wrong SYSERR output", "file not retrieved or unable to validate checksum: " + firstLocation + "\n", errContent.toString());
   }
 
@@ -231,10 +276,11 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     String[] locations = new String[]{firstLocation};
     wfile.setLocations(locations);
     String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
     HttpResponseException hre = new HttpResponseException(666, "reason");
-    Mockito.when(mockConn.downloadQuery(firstLocation, fullFilePath)).thenThrow(hre);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenThrow(hre);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
@@ -244,8 +290,8 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     System.setErr(new PrintStream(errContent));
 
     downloaderSpy.downloadAndValidateFile(wfile);
-    verify(mockConn, times(1)).downloadQuery(firstLocation, fullFilePath);
-    verify(downloaderSpy, never()).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    verify(mockConn, times(1)).downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy, never()).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
     String expected = "ERROR: HttpResponseException (reason) downloading file (will not retry): " + firstLocation;
     assertThat("SYSERR should indicate HttpResponseException", errContent.toString(), StringStartsWith.startsWith(expected));
     assertThat("SYSERR should indicate Http ResponseCode", errContent.toString(), containsString("HTTP ResponseCode was 666"));
@@ -259,10 +305,11 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     String[] locations = new String[]{firstLocation};
     wfile.setLocations(locations);
     String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
     ClientProtocolException cpe = new ClientProtocolException("reason");
-    Mockito.when(mockConn.downloadQuery(firstLocation, fullFilePath)).thenThrow(cpe);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenThrow(cpe);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
@@ -272,8 +319,8 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     System.setErr(new PrintStream(errContent));
 
     downloaderSpy.downloadAndValidateFile(wfile);
-    verify(mockConn, times(1)).downloadQuery(firstLocation, fullFilePath);
-    verify(downloaderSpy, never()).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    verify(mockConn, times(1)).downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy, never()).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
     String expected = "ERROR: ClientProtocolException (reason) downloading file (will not retry): " + firstLocation;
     assertThat("SYSERR should indicate ClientProtocolException", errContent.toString(), StringStartsWith.startsWith(expected));
     assertThat("SYSERR should not have stacktrace", errContent.toString(), not(containsString(".ClientProtocolException")));
@@ -286,10 +333,11 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     String[] locations = new String[]{firstLocation};
     wfile.setLocations(locations);
     String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
     IOException ioe = new IOException("reason");
-    Mockito.when(mockConn.downloadQuery(firstLocation, fullFilePath)).thenThrow(ioe).thenReturn(false, false, false);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenThrow(ioe).thenReturn(false, false, false);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
@@ -299,13 +347,331 @@ public class TestWasapiDownloader_DownloadAndValidateFile {
     System.setErr(new PrintStream(errContent));
 
     downloaderSpy.downloadAndValidateFile(wfile);
-    verify(mockConn, times(defaultNumRetries() + 1)).downloadQuery(firstLocation, fullFilePath);
-    verify(downloaderSpy, never()).checksumValidate(defaultSettings().checksumAlgorithm(), wfile, fullFilePath);
+    // the attempt after the exception resumes the partial download, later attempts start over
+    verify(mockConn, times(defaultNumRetries())).downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(mockConn, times(1)).resumeDownloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy, never()).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
     String expected = "WARNING: exception downloading file (will retry): " + firstLocation;
     assertThat("SYSERR should indicate IOException", errContent.toString(), StringStartsWith.startsWith(expected));
     assertThat("SYSERR should have stacktrace", errContent.toString(), containsString("java.io.IOException: reason"));
   }
 
+  @Test
+  public void downloadAndValidateFile_IOException_resumesPartialDownload() throws Exception {
+    WasapiFile wfile = new WasapiFile();
+    String firstLocation = "out there";
+    String[] locations = new String[]{firstLocation};
+    wfile.setLocations(locations);
+    String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
+
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    Mockito.when(mockConn.downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenThrow(new IOException("reason"));
+    Mockito.when(mockConn.resumeDownloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class))).thenReturn(true);
+
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
+    Mockito.doNothing().when(downloaderSpy).moveIntoPlace(anyString(), anyString());
+
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+
+    downloaderSpy.downloadAndValidateFile(wfile);
+    verify(mockConn, times(1)).downloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(mockConn, times(1)).resumeDownloadQuery(eq(firstLocation), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy, times(1)).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
+  }
+
+  @Test
+  public void downloadAndValidateFile_IOException_triesNextLocation() throws Exception {
+    WasapiFile wfile = new WasapiFile();
+    wfile.setLocations(new String[]{"out there", "over here"});
+    String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
+
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    Mockito.when(mockConn.downloadQuery(eq("out there"), eq(partFilePath), Mockito.any(MessageDigest.class))).thenThrow(new IOException("reason"));
+    Mockito.when(mockConn.resumeDownloadQuery(eq("over here"), eq(partFilePath), Mockito.any(MessageDigest.class))).thenReturn(true);
+
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
+    Mockito.doNothing().when(downloaderSpy).moveIntoPlace(anyString(), anyString());
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+
+    downloaderSpy.downloadAndValidateFile(wfile);
+    verify(mockConn, times(1)).downloadQuery(eq("out there"), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(mockConn, times(1)).resumeDownloadQuery(eq("over here"), eq(partFilePath), Mockito.any(MessageDigest.class));
+    assertEquals("Wrong SYSOUT output", "file retrieved successfully: over here (md5: " + EMPTY_MD5 + ")\n", outContent.toString());
+  }
+
+  @Test
+  public void downloadAndValidateFile_HttpResponseException_triesOtherLocationsOnly() throws Exception {
+    WasapiFile wfile = new WasapiFile();
+    wfile.setLocations(new String[]{"out there", "over here"});
+    String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
+
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    Mockito.when(mockConn.downloadQuery(eq("out there"), eq(partFilePath), Mockito.any(MessageDigest.class))).thenThrow(new HttpResponseException(404, "Not Found"));
+    Mockito.when(mockConn.downloadQuery(eq("over here"), eq(partFilePath), Mockito.any(MessageDigest.class))).thenReturn(false);
+
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+
+    downloaderSpy.downloadAndValidateFile(wfile);
+    verify(mockConn, times(1)).downloadQuery(eq("out there"), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(mockConn, times(defaultNumRetries())).downloadQuery(eq("over here"), eq(partFilePath), Mockito.any(MessageDigest.class));
+    assertThat(errContent.toString(), StringStartsWith.startsWith("ERROR: HttpResponseException (Not Found) downloading file (will try another location): out there"));
+  }
+
+  @Test
+  public void downloadAndValidateFile_serverErrorRetriesLocation() throws Exception {
+    WasapiFile wfile = new WasapiFile();
+    wfile.setLocations(new String[]{"out there"});
+    String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
+
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    Mockito.when(mockConn.downloadQuery(eq("out there"), eq(partFilePath), Mockito.any(MessageDigest.class)))
+        .thenThrow(new HttpResponseException(502, "Bad Gateway")).thenReturn(true);
+
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
+    Mockito.doNothing().when(downloaderSpy).moveIntoPlace(anyString(), anyString());
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+
+    downloaderSpy.downloadAndValidateFile(wfile);
+    verify(mockConn, times(2)).downloadQuery(eq("out there"), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy).moveIntoPlace(partFilePath, fullFilePath);
+    assertThat(errContent.toString(), StringStartsWith.startsWith("ERROR: HttpResponseException (Bad Gateway) downloading file (will retry): out there"));
+  }
+
+  @Test
+  public void downloadAndValidateFile_throttledAttemptsDontUseUpRetries() throws Exception {
+    WasapiFile wfile = new WasapiFile();
+    wfile.setLocations(new String[]{"out there"});
+    String fullFilePath = "somewhere";
+    String partFilePath = fullFilePath + WasapiDownloader.PART_FILE_SUFFIX;
+
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    ThrottledResponseException throttled = new ThrottledResponseException(429, "Too Many Requests", 0);
+    Mockito.when(mockConn.downloadQuery(eq("out there"), eq(partFilePath), Mockito.any(MessageDigest.class)))
+        .thenThrow(throttled, throttled, throttled, throttled, throttled).thenReturn(true);
+
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    Mockito.doReturn(fullFilePath).when(downloaderSpy).prepareOutputLocation(wfile);
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
+    Mockito.doNothing().when(downloaderSpy).moveIntoPlace(anyString(), anyString());
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+
+    downloaderSpy.downloadAndValidateFile(wfile);
+    assertTrue("more throttled attempts than retries", 5 > defaultNumRetries());
+    verify(mockConn, times(6)).downloadQuery(eq("out there"), eq(partFilePath), Mockito.any(MessageDigest.class));
+    verify(downloaderSpy).moveIntoPlace(partFilePath, fullFilePath);
+    assertThat(errContent.toString(), StringStartsWith.startsWith("WARNING: server is throttling downloads (will retry): out there"));
+  }
+
+  @Test
+  public void downloadAndValidateFile_givesUpAfterMaxThrottledRetries() throws Exception {
+    WasapiFile wfile = new WasapiFile();
+    wfile.setLocations(new String[]{"out there"});
+    String partFilePath = "somewhere" + WasapiDownloader.PART_FILE_SUFFIX;
+
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    Mockito.when(mockConn.downloadQuery(eq("out there"), eq(partFilePath), Mockito.any(MessageDigest.class)))
+        .thenThrow(new ThrottledResponseException(429, "Too Many Requests", 0));
+
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    Mockito.doReturn("somewhere").when(downloaderSpy).prepareOutputLocation(wfile);
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+
+    downloaderSpy.downloadAndValidateFile(wfile);
+    int expectedAttempts = defaultNumRetries() + RateController.MAX_THROTTLED_RETRIES + 1;
+    verify(mockConn, times(expectedAttempts)).downloadQuery(eq("out there"), eq(partFilePath), Mockito.any(MessageDigest.class));
+  }
+
+  @Test
+  public void downloadAndValidateFile_prefersFastestLocation() throws Exception {
+    WasapiFile firstFile = fixtureWasapiFile(1000, FIXTURE_MD5);
+    firstFile.setLocations(new String[]{"https://slow.example.org/1", "https://fast.example.org/1"});
+    WasapiFile secondFile = fixtureWasapiFile(1000, FIXTURE_MD5);
+    secondFile.setLocations(new String[]{"https://slow.example.org/2", "https://fast.example.org/2"});
+
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    Mockito.when(mockConn.downloadQuery(eq("https://slow.example.org/1"), anyString(), Mockito.any(MessageDigest.class))).thenThrow(new IOException("timed out"));
+    Mockito.when(mockConn.resumeDownloadQuery(eq("https://fast.example.org/1"), anyString(), Mockito.any(MessageDigest.class))).thenReturn(true);
+    Mockito.when(mockConn.downloadQuery(eq("https://fast.example.org/2"), anyString(), Mockito.any(MessageDigest.class))).thenReturn(true);
+
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    Mockito.doReturn("somewhere").when(downloaderSpy).prepareOutputLocation(Mockito.any(WasapiFile.class));
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(anyString(), Mockito.any(WasapiFile.class), Mockito.any(MessageDigest.class));
+    Mockito.doNothing().when(downloaderSpy).moveIntoPlace(anyString(), anyString());
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+
+    downloaderSpy.downloadAndValidateFile(firstFile);
+    downloaderSpy.downloadAndValidateFile(secondFile);
+    verify(mockConn, never()).downloadQuery(eq("https://slow.example.org/2"), anyString(), Mockito.any(MessageDigest.class));
+    verify(mockConn, times(1)).downloadQuery(eq("https://fast.example.org/2"), anyString(), Mockito.any(MessageDigest.class));
+  }
+
+  private static final String FIXTURE_WARC_PATH = "test" + File.separatorChar + "fixtures" + File.separatorChar + "small-file.warc.gz";
+  private static final String FIXTURE_MD5 = "f08b0bf60733b61216e288cb7620bd4a";
+  // the mock connections write nothing, so the computed digest is that of empty content
+  private static final String EMPTY_MD5 = "d41d8cd98f00b204e9800998ecf8427e";
+
+  private WasapiFile fixtureWasapiFile(long size, String md5) {
+    WasapiFile wfile = new WasapiFile();
+    wfile.setLocations(new String[]{"out there"});
+    wfile.setSize(size);
+    HashMap<String, String> checksumsMap = new HashMap<String, String>();
+    checksumsMap.put("md5", md5);
+    wfile.setChecksums(checksumsMap);
+    return wfile;
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void downloadAndValidateFile_skipExisting_skipsVerifiedFile() throws Exception {
+    WasapiFile wfile = fixtureWasapiFile(new File(FIXTURE_WARC_PATH).length(), FIXTURE_MD5);
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    String[] args = { "--skipExisting" };
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+    Mockito.doReturn(FIXTURE_WARC_PATH).when(downloaderSpy).prepareOutputLocation(wfile);
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+
+    downloaderSpy.downloadAndValidateFile(wfile);
+    verify(mockConn, never()).downloadQuery(anyString(), anyString(), Mockito.any(MessageDigest.class));
+    assertEquals("Wrong SYSOUT output", "file already retrieved and validated, skipping: out there\n", outContent.toString());
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void isAlreadyDownloaded_checksSizeAndChecksum() throws Exception {
+    long fixtureSize = new File(FIXTURE_WARC_PATH).length();
+    String[] args = { "--skipExisting" };
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+
+    assertTrue("file with expected size and checksum", downloaderSpy.isAlreadyDownloaded(fixtureWasapiFile(fixtureSize, FIXTURE_MD5), FIXTURE_WARC_PATH));
+    assertFalse("missing file", downloaderSpy.isAlreadyDownloaded(fixtureWasapiFile(fixtureSize, FIXTURE_MD5), FIXTURE_WARC_PATH + ".missing"));
+    assertFalse("file with wrong checksum", downloaderSpy.isAlreadyDownloaded(fixtureWasapiFile(fixtureSize, "666"), FIXTURE_WARC_PATH));
+
+    WasapiFile wrongSizeFile = fixtureWasapiFile(fixtureSize + 1, FIXTURE_MD5);
+    assertFalse("file with wrong size", downloaderSpy.isAlreadyDownloaded(wrongSizeFile, FIXTURE_WARC_PATH));
+    verify(downloaderSpy, never()).checksumsValidate(eq(wrongSizeFile), Mockito.any(FileDigests.class));
+  }
+
+  @Test
+  public void downloadAndValidateFile_withoutSkipExisting_downloadsExistingFile() throws Exception {
+    WasapiFile wfile = fixtureWasapiFile(new File(FIXTURE_WARC_PATH).length(), FIXTURE_MD5);
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    Mockito.doReturn("somewhere").when(downloaderSpy).prepareOutputLocation(wfile);
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+
+    downloaderSpy.downloadAndValidateFile(wfile);
+    verify(downloaderSpy, never()).isAlreadyDownloaded(wfile, "somewhere");
+    verify(mockConn, atLeastOnce()).downloadQuery(eq("out there"), eq("somewhere.part"), Mockito.any(MessageDigest.class));
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void downloadAndValidateFile_segmentsFilesOverThreshold() throws Exception {
+    WasapiFile wfile = fixtureWasapiFile(3L * 1024 * 1024, FIXTURE_MD5);
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    Mockito.when(mockConn.segmentedDownloadQuery(eq("out there"), eq("somewhere.part"), eq(3L * 1024 * 1024), eq(3), Mockito.any(MessageDigest.class))).thenReturn(true);
+    String[] args = { "--segmentThresholdMB=2", "--segmentsPerFile=3" };
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
+    Mockito.doReturn("somewhere").when(downloaderSpy).prepareOutputLocation(wfile);
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
+    Mockito.doNothing().when(downloaderSpy).moveIntoPlace(anyString(), anyString());
+
+    downloaderSpy.downloadAndValidateFile(wfile);
+    verify(mockConn, times(1)).segmentedDownloadQuery(eq("out there"), eq("somewhere.part"), eq(3L * 1024 * 1024), eq(3), Mockito.any(MessageDigest.class));
+    verify(mockConn, never()).downloadQuery(anyString(), anyString(), Mockito.any(MessageDigest.class));
+  }
+
+  private static final String OUTPUT_FILE_PATH = "test" + File.separatorChar + "downloadAndValidateFile.warc.gz";
+
+  @Test
+  public void downloadAndValidateFile_movesValidatedPartFileIntoPlace() throws Exception {
+    WasapiFile wfile = fixtureWasapiFile(new File(FIXTURE_WARC_PATH).length(), FIXTURE_MD5);
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    Mockito.when(mockConn.downloadQuery(eq("out there"), eq(OUTPUT_FILE_PATH + ".part"), Mockito.any(MessageDigest.class))).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws IOException {
+        assertFalse("nothing at the final path while downloading", new File(OUTPUT_FILE_PATH).exists());
+        Files.copy(Paths.get(FIXTURE_WARC_PATH), Paths.get(OUTPUT_FILE_PATH + ".part"));
+        return true;
+      }
+    });
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    Mockito.doReturn(OUTPUT_FILE_PATH).when(downloaderSpy).prepareOutputLocation(wfile);
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    Mockito.doReturn(true).when(downloaderSpy).checksumValidate(eq(defaultSettings().checksumAlgorithm()), eq(wfile), Mockito.any(MessageDigest.class));
+    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+
+    try {
+      downloaderSpy.downloadAndValidateFile(wfile);
+      assertEquals("validated file at its final path", new File(FIXTURE_WARC_PATH).length(), new File(OUTPUT_FILE_PATH).length());
+      assertFalse("part file renamed", new File(OUTPUT_FILE_PATH + ".part").exists());
+    } finally {
+      new File(OUTPUT_FILE_PATH).delete();
+    }
+  }
+
+  @Test
+  public void downloadAndValidateFile_failedValidationLeavesNothingAtFinalPath() throws Exception {
+    WasapiFile wfile = fixtureWasapiFile(new File(FIXTURE_WARC_PATH).length(), "666");
+    WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
+    Mockito.when(mockConn.downloadQuery(eq("out there"), eq(OUTPUT_FILE_PATH + ".part"), Mockito.any(MessageDigest.class))).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws IOException {
+        Files.copy(Paths.get(FIXTURE_WARC_PATH), Paths.get(OUTPUT_FILE_PATH + ".part"), StandardCopyOption.REPLACE_EXISTING);
+        return true;
+      }
+    });
+    WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
+    Mockito.doReturn(OUTPUT_FILE_PATH).when(downloaderSpy).prepareOutputLocation(wfile);
+    Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+
+    downloaderSpy.downloadAndValidateFile(wfile);
+    assertFalse("unvalidated download not at final path", new File(OUTPUT_FILE_PATH).exists());
+    assertFalse("part file of failed download removed", new File(OUTPUT_FILE_PATH + ".part").exists());
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:NoWhitespaceAfter")
+  public void shouldSegment_comparesSizeToThreshold() throws Exception {
+    String[] args = { "--segmentThresholdMB=2" };
+    WasapiDownloader segmentingDownloader = new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args);
+    assertTrue("file at threshold", segmentingDownloader.shouldSegment(fixtureWasapiFile(2L * 1024 * 1024, FIXTURE_MD5)));
+    assertFalse("file under threshold", segmentingDownloader.shouldSegment(fixtureWasapiFile(2L * 1024 * 1024 - 1, FIXTURE_MD5)));
+
+    WasapiDownloader defaultDownloader = new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null);
+    assertFalse("segmenting is off unless segmentThresholdMB is set", defaultDownloader.shouldSegment(fixtureWasapiFile(Long.MAX_VALUE, FIXTURE_MD5)));
+  }
+
   private WasapiDownloaderSettings defaultSettings() throws SettingsLoadException {
     return new WasapiDownloaderSettings(WasapiDownloader.SETTINGS_FILE_LOCATION, null);
   }
@@ -3,7 +3,7 @@ package edu.stanford.dlss.was;
 import static org.mockito.Mockito.verify;
 import static org.mockito.ArgumentMatchers.*;
 
-import java.io.IOException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -14,11 +14,13 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({WasapiDownloader.class, WasapiValidator.class})
+@PowerMockIgnore("javax.management.*") // main registers DownloadMetrics with the platform MBean server
 @SuppressWarnings("TypeName")
 /**
  * Tests for WasapiDownloader that require PowerMock
@@ -41,72 +43,76 @@ public class TestWasapiDownloader_PowerMock {
     String[] args = {"--collectionId", "123", "--crawlId=456",
         "--crawlStartAfter", "2014-03-14", "--crawlStartBefore=2017-03-14", "--username=Fred" };
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.pagedJsonQuery(anyString())).thenReturn(null);
+    WasapiResponsePager pager = TestWasapiDownloader.pager();
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
     WasapiDownloader downloaderSpy = PowerMockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
     PowerMockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
     PowerMockito.whenNew(WasapiDownloader.class).withAnyArguments().thenReturn(downloaderSpy);
 
     WasapiDownloader.main(args);
-    verify(mockConn).pagedJsonQuery(ArgumentMatchers.contains("collection=123"));
-    verify(mockConn).pagedJsonQuery(ArgumentMatchers.contains("crawl=456"));
-    verify(mockConn).pagedJsonQuery(ArgumentMatchers.contains("crawl-start-after=2014-03-14"));
-    verify(mockConn).pagedJsonQuery(ArgumentMatchers.contains("crawl-start-before=2017-03-14"));
+    verify(mockConn).pagedJsonPager(ArgumentMatchers.contains("collection=123"));
+    verify(mockConn).pagedJsonPager(ArgumentMatchers.contains("crawl=456"));
+    verify(mockConn).pagedJsonPager(ArgumentMatchers.contains("crawl-start-after=2014-03-14"));
+    verify(mockConn).pagedJsonPager(ArgumentMatchers.contains("crawl-start-before=2017-03-14"));
     // username is used in login request
-    verify(mockConn, Mockito.never()).pagedJsonQuery(ArgumentMatchers.contains("username=Fred"));
+    verify(mockConn, Mockito.never()).pagedJsonPager(ArgumentMatchers.contains("username=Fred"));
     // output directory is not part of wasapi request
-    verify(mockConn, Mockito.never()).pagedJsonQuery(ArgumentMatchers.contains(WasapiDownloaderSettings.OUTPUT_BASE_DIR_PARAM_NAME));
+    verify(mockConn, Mockito.never()).pagedJsonPager(ArgumentMatchers.contains(WasapiDownloaderSettings.OUTPUT_BASE_DIR_PARAM_NAME));
   }
 
   @Test
   public void main_executesFileSetRequest_onlyUsesArgsSettings() throws Exception {
     String[] args = {"--collectionId", "123" };
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.pagedJsonQuery(anyString())).thenReturn(null);
+    WasapiResponsePager pager = TestWasapiDownloader.pager();
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
     WasapiDownloader downloaderSpy = PowerMockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
     PowerMockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
     PowerMockito.whenNew(WasapiDownloader.class).withAnyArguments().thenReturn(downloaderSpy);
 
     WasapiDownloader.main(args);
-    verify(mockConn).pagedJsonQuery(ArgumentMatchers.contains("collection=123"));
-    verify(mockConn, Mockito.never()).pagedJsonQuery(ArgumentMatchers.contains("crawl="));
-    verify(mockConn, Mockito.never()).pagedJsonQuery(ArgumentMatchers.contains("crawl-start-after="));
-    verify(mockConn, Mockito.never()).pagedJsonQuery(ArgumentMatchers.contains("crawl-start-before="));
+    verify(mockConn).pagedJsonPager(ArgumentMatchers.contains("collection=123"));
+    verify(mockConn, Mockito.never()).pagedJsonPager(ArgumentMatchers.contains("crawl="));
+    verify(mockConn, Mockito.never()).pagedJsonPager(ArgumentMatchers.contains("crawl-start-after="));
+    verify(mockConn, Mockito.never()).pagedJsonPager(ArgumentMatchers.contains("crawl-start-before="));
   }
 
   @Test
   public void main_singleFileDownload_onlyUsesFilename() throws Exception {
     String[] args = {"--collectionId", "123", "--filename", "ARCHIVEIT-5425-MONTHLY-JOB302671-20170526114117181-00049.warc.gz" };
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.pagedJsonQuery(anyString())).thenReturn(null);
+    WasapiResponsePager pager = TestWasapiDownloader.pager();
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
     WasapiDownloader downloaderSpy = PowerMockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
     PowerMockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
     PowerMockito.whenNew(WasapiDownloader.class).withAnyArguments().thenReturn(downloaderSpy);
 
     WasapiDownloader.main(args);
-    verify(mockConn).pagedJsonQuery(ArgumentMatchers.contains("filename=ARCHIVEIT-5425-MONTHLY-JOB302671-20170526114117181-00049.warc.gz"));
-    verify(mockConn, Mockito.never()).pagedJsonQuery(ArgumentMatchers.contains("crawl="));
-    verify(mockConn, Mockito.never()).pagedJsonQuery(ArgumentMatchers.contains("crawl-start-after="));
-    verify(mockConn, Mockito.never()).pagedJsonQuery(ArgumentMatchers.contains("crawl-start-before="));
-    verify(mockConn, Mockito.never()).pagedJsonQuery(ArgumentMatchers.contains("collection="));
+    verify(mockConn).pagedJsonPager(ArgumentMatchers.contains("filename=ARCHIVEIT-5425-MONTHLY-JOB302671-20170526114117181-00049.warc.gz"));
+    verify(mockConn, Mockito.never()).pagedJsonPager(ArgumentMatchers.contains("crawl="));
+    verify(mockConn, Mockito.never()).pagedJsonPager(ArgumentMatchers.contains("crawl-start-after="));
+    verify(mockConn, Mockito.never()).pagedJsonPager(ArgumentMatchers.contains("crawl-start-before="));
+    verify(mockConn, Mockito.never()).pagedJsonPager(ArgumentMatchers.contains("collection="));
   }
 
-  private List<WasapiResponse> getWasapiRespList() {
-    List<WasapiResponse> wasapiRespList = new ArrayList<WasapiResponse>();
-    wasapiRespList.add(new WasapiResponse());
-    return wasapiRespList;
+  private WasapiResponse getWasapiResponse() {
+    WasapiResponse wasapiResponse = new WasapiResponse();
+    wasapiResponse.setFiles(new WasapiFile[0]);
+    return wasapiResponse;
   }
 
   @Test
   public void downloadSelectedWarcs_usesCrawlSelector() throws Exception {
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    List<WasapiResponse> wasapiRespList = getWasapiRespList();
-    Mockito.when(mockConn.pagedJsonQuery(anyString())).thenReturn(wasapiRespList);
+    WasapiResponse wasapiResponse = getWasapiResponse();
+    WasapiResponsePager pager = TestWasapiDownloader.pager(wasapiResponse);
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
 
     WasapiCrawlSelector mockCrawlSelector = PowerMockito.mock(WasapiCrawlSelector.class);
     List<Integer> desiredCrawlIds = new ArrayList<Integer>();
     desiredCrawlIds.add(Integer.valueOf("666"));
     PowerMockito.when(mockCrawlSelector.getSelectedCrawlIds(0)).thenReturn(desiredCrawlIds);
-    PowerMockito.whenNew(WasapiCrawlSelector.class).withArguments(wasapiRespList).thenReturn(mockCrawlSelector);
+    PowerMockito.whenNew(WasapiCrawlSelector.class).withArguments((Object) wasapiResponse.getFiles()).thenReturn(mockCrawlSelector);
 
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null));
     Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
@@ -120,8 +126,9 @@ public class TestWasapiDownloader_PowerMock {
   @SuppressWarnings("checkstyle:MethodLength")
   public void downloadSelectedWarcs_callsDownloadAndValidateFile() throws Exception {
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    List<WasapiResponse> wasapiRespList = getWasapiRespList();
-    Mockito.when(mockConn.pagedJsonQuery(anyString())).thenReturn(wasapiRespList);
+    WasapiResponse wasapiResponse = getWasapiResponse();
+    WasapiResponsePager pager = TestWasapiDownloader.pager(wasapiResponse);
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
 
     WasapiCrawlSelector mockCrawlSelector = PowerMockito.mock(WasapiCrawlSelector.class);
     List<Integer> desiredCrawlIds = new ArrayList<Integer>();
@@ -150,11 +157,12 @@ public class TestWasapiDownloader_PowerMock {
     String[] args = { "--crawlIdLowerBound=" + argValue };
 
     WasapiCrawlSelector mockCrawlSelector = PowerMockito.mock(WasapiCrawlSelector.class);
-    List<WasapiResponse> wasapiRespList = getWasapiRespList();
-    PowerMockito.whenNew(WasapiCrawlSelector.class).withArguments(wasapiRespList).thenReturn(mockCrawlSelector);
+    WasapiResponse wasapiResponse = getWasapiResponse();
+    PowerMockito.whenNew(WasapiCrawlSelector.class).withArguments((Object) wasapiResponse.getFiles()).thenReturn(mockCrawlSelector);
 
     WasapiConnection mockConn = Mockito.mock(WasapiConnection.class);
-    Mockito.when(mockConn.pagedJsonQuery(anyString())).thenReturn(wasapiRespList);
+    WasapiResponsePager pager = TestWasapiDownloader.pager(wasapiResponse);
+    Mockito.when(mockConn.pagedJsonPager(anyString())).thenReturn(pager);
     WasapiDownloader downloaderSpy = Mockito.spy(new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, args));
     Mockito.doReturn(mockConn).when(downloaderSpy).getWasapiConn();
 
@@ -163,38 +171,21 @@ public class TestWasapiDownloader_PowerMock {
   }
 
   @Test
-  public void checksumValidate_md5_calls_wasapiValidator_validateMd5() throws SettingsLoadException, NoSuchAlgorithmException, IOException {
-    WasapiFile wfile = new WasapiFile();
-    String expectedChecksum = "666";
-    HashMap<String, String> checksumsMap = new HashMap<String, String>();
-    checksumsMap.put("md5", expectedChecksum);
-    wfile.setChecksums(checksumsMap);
-
-    PowerMockito.mockStatic(WasapiValidator.class);
-    Mockito.when(WasapiValidator.validateMd5(eq(expectedChecksum), anyString())).thenReturn(anyBoolean());
-
-    WasapiDownloader wd = new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null);
-    wd.checksumValidate("md5", wfile, anyString());
-
-    PowerMockito.verifyStatic();
-    WasapiValidator.validateMd5(expectedChecksum, "");
-  }
-
-  @Test
-  public void checksumValidate_sha1_calls_wasapiValidator_validateSha1() throws SettingsLoadException, NoSuchAlgorithmException, IOException {
+  public void checksumValidate_calls_wasapiValidator_validateDigest() throws SettingsLoadException, NoSuchAlgorithmException {
     WasapiFile wfile = new WasapiFile();
     String expectedChecksum = "666";
     HashMap<String, String> checksumsMap = new HashMap<String, String>();
     checksumsMap.put("sha1", expectedChecksum);
     wfile.setChecksums(checksumsMap);
+    MessageDigest digest = MessageDigest.getInstance("SHA-1");
 
     PowerMockito.mockStatic(WasapiValidator.class);
-    Mockito.when(WasapiValidator.validateSha1(eq(expectedChecksum), anyString())).thenReturn(anyBoolean());
+    Mockito.when(WasapiValidator.validateDigest(expectedChecksum, digest)).thenReturn(true);
 
     WasapiDownloader wd = new WasapiDownloader(WasapiDownloader.SETTINGS_FILE_LOCATION, null);
-    wd.checksumValidate("sha1", wfile, anyString());
+    wd.checksumValidate("sha1", wfile, digest);
 
-    PowerMockito.verifyStatic();
-    WasapiValidator.validateSha1(expectedChecksum, "");
+    PowerMockito.verifyStatic(WasapiValidator.class);
+    WasapiValidator.validateDigest(expectedChecksum, digest);
   }
 }
@@ -0,0 +1,66 @@
+package edu.stanford.dlss.was;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+public class TestWasapiLocationSelector {
+  private static final String FAST = "https://fast.example.org/file.warc.gz";
+  private static final String SLOW = "https://slow.example.org/file.warc.gz";
+  private static final String UNTRIED = "https://untried.example.org/file.warc.gz";
+  private static final String FAILED = "https://failed.example.org/file.warc.gz";
+
+  @Test
+  public void orderLocations_keepsOriginalOrderWithNoHistory() {
+    WasapiLocationSelector selector = new WasapiLocationSelector();
+    assertEquals(Arrays.asList(SLOW, FAST, UNTRIED), selector.orderLocations(new String[]{SLOW, FAST, UNTRIED}));
+  }
+
+  @Test
+  public void orderLocations_fastestHealthyFirstThenUntriedThenFailed() {
+    WasapiLocationSelector selector = new WasapiLocationSelector();
+    selector.recordSuccess(SLOW, 1000, TimeUnit.SECONDS.toNanos(10));
+    selector.recordSuccess(FAST, 1000, TimeUnit.SECONDS.toNanos(1));
+    selector.recordFailure(FAILED);
+
+    assertEquals(Arrays.asList(FAST, SLOW, UNTRIED, FAILED), selector.orderLocations(new String[]{FAILED, UNTRIED, SLOW, FAST}));
+  }
+
+  @Test
+  public void orderLocations_failedHostRecoversAfterSuccess() {
+    WasapiLocationSelector selector = new WasapiLocationSelector();
+    selector.recordSuccess(FAST, 1000, TimeUnit.SECONDS.toNanos(1));
+    selector.recordFailure(FAST);
+    assertEquals(Arrays.asList(UNTRIED, FAST), selector.orderLocations(new String[]{FAST, UNTRIED}));
+
+    selector.recordSuccess(FAST, 1000, TimeUnit.SECONDS.toNanos(1));
+    assertEquals(Arrays.asList(FAST, UNTRIED), selector.orderLocations(new String[]{UNTRIED, FAST}));
+  }
+
+  @Test
+  public void statsAreKeptPerHost() {
+    WasapiLocationSelector selector = new WasapiLocationSelector();
+    selector.recordSuccess(FAST, 1000, TimeUnit.SECONDS.toNanos(1));
+    assertEquals(1000, selector.bytesPerSecond("https://fast.example.org/another-file.warc.gz"), 0.001);
+    assertEquals(0, selector.bytesPerSecond(SLOW), 0.001);
+  }
+
+  @Test
+  public void bytesPerSecond_smoothsMeasurements() {
+    WasapiLocationSelector selector = new WasapiLocationSelector();
+    selector.recordSuccess(FAST, 1000, TimeUnit.SECONDS.toNanos(1));
+    selector.recordSuccess(FAST, 2000, TimeUnit.SECONDS.toNanos(1));
+    double bytesPerSecond = selector.bytesPerSecond(FAST);
+    assertTrue("estimate should move toward the newest measurement", bytesPerSecond > 1000 && bytesPerSecond < 2000);
+  }
+
+  @Test
+  public void locationsWithoutHostAreTheirOwnHost() {
+    WasapiLocationSelector selector = new WasapiLocationSelector();
+    selector.recordFailure("out there");
+    assertEquals(Arrays.asList("somewhere else", "out there"), selector.orderLocations(new String[]{"out there", "somewhere else"}));
+  }
+}
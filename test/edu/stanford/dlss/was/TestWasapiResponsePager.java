@@ -0,0 +1,129 @@
+package edu.stanford.dlss.was;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestWasapiResponsePager {
+  private static final String FIRST_URL = "https://example.org/query";
+  private static final String SECOND_URL = "https://example.org/query?page=2";
+  private static final String THIRD_URL = "https://example.org/query?page=3";
+
+  @Test
+  public void nextPage_followsNextLinks() throws IOException {
+    WasapiConnection mockConn = mock(WasapiConnection.class);
+    WasapiResponse first = response(SECOND_URL);
+    WasapiResponse second = response(null);
+    when(mockConn.jsonQuery(FIRST_URL)).thenReturn(first);
+    when(mockConn.jsonQuery(SECOND_URL)).thenReturn(second);
+
+    WasapiResponsePager pager = new WasapiResponsePager(mockConn, FIRST_URL, 1);
+    assertSame(first, pager.nextPage());
+    assertSame(second, pager.nextPage());
+    assertNull(pager.nextPage());
+    assertNull("end of pages should be sticky", pager.nextPage());
+  }
+
+  @Test
+  @SuppressWarnings("checkstyle:MethodLength")
+  public void constructor_fetchesOnThreadFromFactory() throws IOException {
+    WasapiConnection mockConn = mock(WasapiConnection.class);
+    final Thread[] fetchThread = new Thread[1];
+    when(mockConn.jsonQuery(FIRST_URL)).thenAnswer(new Answer<WasapiResponse>() {
+      @Override
+      public WasapiResponse answer(InvocationOnMock invocation) {
+        fetchThread[0] = Thread.currentThread();
+        return null;
+      }
+    });
+    ThreadFactory factory = new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable task) {
+        return new Thread(task, "test-page-fetcher");
+      }
+    };
+
+    WasapiResponsePager pager = new WasapiResponsePager(mockConn, FIRST_URL, 1, factory);
+    assertNull(pager.nextPage());
+    assertEquals("test-page-fetcher", fetchThread[0].getName());
+  }
+
+  @Test
+  public void nextPage_nullFirstResponse() throws IOException {
+    WasapiConnection mockConn = mock(WasapiConnection.class);
+    when(mockConn.jsonQuery(FIRST_URL)).thenReturn(null);
+
+    WasapiResponsePager pager = new WasapiResponsePager(mockConn, FIRST_URL, 1);
+    assertNull(pager.nextPage());
+  }
+
+  @Test
+  public void nextPage_returnsFetchedPagesBeforeThrowingFetchException() throws IOException {
+    WasapiConnection mockConn = mock(WasapiConnection.class);
+    WasapiResponse first = response(SECOND_URL);
+    when(mockConn.jsonQuery(FIRST_URL)).thenReturn(first);
+    when(mockConn.jsonQuery(SECOND_URL)).thenThrow(new IOException("connection reset"));
+
+    WasapiResponsePager pager = new WasapiResponsePager(mockConn, FIRST_URL, 1);
+    assertSame(first, pager.nextPage());
+    try {
+      pager.nextPage();
+      fail("expected IOException from failed page fetch");
+    } catch (IOException e) {
+      assertEquals("connection reset", e.getMessage());
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void nextPage_rethrowsRuntimeExceptionFromFetch() throws IOException {
+    WasapiConnection mockConn = mock(WasapiConnection.class);
+    WasapiResponse first = response("not a url");
+    when(mockConn.jsonQuery(FIRST_URL)).thenReturn(first);
+    when(mockConn.jsonQuery("not a url")).thenThrow(new IllegalArgumentException("Illegal character in path"));
+
+    WasapiResponsePager pager = new WasapiResponsePager(mockConn, FIRST_URL, 1);
+    assertSame(first, pager.nextPage());
+    try {
+      pager.nextPage();
+      fail("expected IllegalArgumentException from failed page fetch");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Illegal character in path", e.getMessage());
+    }
+  }
+
+  @Test
+  public void pager_doesNotFetchMoreThanBufferSizeAhead() throws Exception {
+    WasapiConnection mockConn = mock(WasapiConnection.class);
+    final CountDownLatch thirdPageRequested = new CountDownLatch(1);
+    when(mockConn.jsonQuery(FIRST_URL)).thenReturn(response(SECOND_URL));
+    when(mockConn.jsonQuery(SECOND_URL)).thenReturn(response(THIRD_URL));
+    when(mockConn.jsonQuery(THIRD_URL)).thenAnswer(new Answer<WasapiResponse>() {
+      @Override
+      public WasapiResponse answer(InvocationOnMock invocation) {
+        thirdPageRequested.countDown();
+        return response(null);
+      }
+    });
+
+    WasapiResponsePager pager = new WasapiResponsePager(mockConn, FIRST_URL, 1);
+    // one page buffered, one page waiting to be buffered: third page not requested until the caller takes a page
+    assertFalse(thirdPageRequested.await(200, TimeUnit.MILLISECONDS));
+    assertNotNull(pager.nextPage());
+    assertTrue(thirdPageRequested.await(5, TimeUnit.SECONDS));
+    pager.close();
+  }
+
+  private WasapiResponse response(String next) {
+    WasapiResponse resp = new WasapiResponse();
+    resp.setNext(next);
+    return resp;
+  }
+}
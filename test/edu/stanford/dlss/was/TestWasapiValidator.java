@@ -1,17 +1,27 @@
 package edu.stanford.dlss.was;
 
+import org.apache.http.HttpResponse;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.message.BasicStatusLine;
 
 import org.junit.*;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Calendar;
+import java.util.Date;
 
 public class TestWasapiValidator {
 
@@ -42,32 +52,149 @@ public class TestWasapiValidator {
     assertTrue(WasapiValidator.validateResponse(validStatusLine, false));
   }
 
+  @Test
+  public void validateResponse_throttledFor429() throws ClientProtocolException {
+    HttpResponse response = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), 429, "Too Many Requests");
+    response.setHeader("Retry-After", "120");
+    try {
+      WasapiValidator.validateResponse(response);
+      fail("expected ThrottledResponseException");
+    } catch (ThrottledResponseException e) {
+      assertEquals(429, e.getStatusCode());
+      assertEquals(120000, e.getRetryAfterMillis());
+    } catch (HttpResponseException e) {
+      fail("expected ThrottledResponseException, got " + e);
+    }
+  }
+
+  @Test
+  public void validateResponse_throttledFor503WithRetryAfter() throws ClientProtocolException {
+    HttpResponse response = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), 503, "Service Unavailable");
+    response.setHeader("Retry-After", "5");
+    try {
+      WasapiValidator.validateResponse(response);
+      fail("expected ThrottledResponseException");
+    } catch (HttpResponseException e) {
+      assertTrue("503 with Retry-After is throttling", e instanceof ThrottledResponseException);
+    }
+  }
+
+  @Test
+  public void validateResponse_503WithoutRetryAfterIsServerError() throws ClientProtocolException {
+    HttpResponse response = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), 503, "Service Unavailable");
+    try {
+      WasapiValidator.validateResponse(response);
+      fail("expected HttpResponseException");
+    } catch (HttpResponseException e) {
+      assertFalse("503 without Retry-After isn't throttling", e instanceof ThrottledResponseException);
+      assertTrue(WasapiValidator.isServerError(e.getStatusCode()));
+    }
+  }
+
+  @Test
+  public void validateResponse_okResponse() throws ClientProtocolException, HttpResponseException {
+    HttpResponse response = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), 200, "OK");
+    response.setEntity(new StringEntity("{}", "UTF-8"));
+    assertTrue(WasapiValidator.validateResponse(response));
+  }
+
+  @Test
+  public void retryAfterMillis_parsesSecondsAndDates() {
+    HttpResponse response = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), 429, "Too Many Requests");
+    assertEquals("no header", -1, WasapiValidator.retryAfterMillis(response));
+    response.setHeader("Retry-After", "0");
+    assertEquals(0, WasapiValidator.retryAfterMillis(response));
+    response.setHeader("Retry-After", "soon");
+    assertEquals("unparseable", -1, WasapiValidator.retryAfterMillis(response));
+    response.setHeader("Retry-After", DateUtils.formatDate(new Date(System.currentTimeMillis() + 60000)));
+    long millis = WasapiValidator.retryAfterMillis(response);
+    assertTrue("about a minute from now: " + millis, millis > 55000 && millis <= 60000);
+    response.setHeader("Retry-After", DateUtils.formatDate(new Date(System.currentTimeMillis() - 60000)));
+    assertEquals("date in the past", 0, WasapiValidator.retryAfterMillis(response));
+  }
+
+  @Test
+  public void isServerError_only5xx() {
+    assertTrue(WasapiValidator.isServerError(500));
+    assertTrue(WasapiValidator.isServerError(504));
+    assertFalse(WasapiValidator.isServerError(404));
+    assertFalse(WasapiValidator.isServerError(666));
+  }
+
   private static final char SEP = File.separatorChar;
   private static final String FIXTURE_WARC_PATH = "test" + SEP + "fixtures" + SEP + "small-file.warc.gz";
   private static final String FIXTURE_MD5 = "f08b0bf60733b61216e288cb7620bd4a";
   private static final String FIXTURE_SHA1 = "c7dff430d5d725c3d2b786d5b247eb5a8d53b228";
 
   @Test
-  public void validateMd5Checksum_withValidChecksum() throws NoSuchAlgorithmException, IOException {
-    assertTrue("md5 checksum expected to validate for small-file.warc.gz", WasapiValidator.validateMd5(FIXTURE_MD5, FIXTURE_WARC_PATH));
+  public void bytesToHex_lowerCaseTwoDigitsPerByte() {
+    assertEquals("00017f80ff", WasapiValidator.bytesToHex(new byte[] {0, 1, 127, -128, -1}));
+    assertEquals("", WasapiValidator.bytesToHex(new byte[0]));
+  }
+
+  @Test
+  public void parseIso8601_datesAndDateTimes() {
+    Calendar dateTime = WasapiValidator.parseIso8601("2017-02-01T10:00:00Z");
+    assertEquals("2017-02-01T10:00:00Z", 1485943200000L, dateTime.getTimeInMillis());
+    Calendar date = WasapiValidator.parseIso8601("2017-02-01");
+    assertEquals(2017, date.get(Calendar.YEAR));
+    assertEquals(Calendar.FEBRUARY, date.get(Calendar.MONTH));
+    assertEquals(1, date.get(Calendar.DAY_OF_MONTH));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void parseIso8601_rejectsOtherFormats() {
+    WasapiValidator.parseIso8601("02/01/2017");
+  }
+
+  @Test
+  public void validateDigest_md5OfFileWithValidChecksum() throws NoSuchAlgorithmException, IOException {
+    assertTrue("md5 checksum expected to validate for small-file.warc.gz", WasapiValidator.validateDigest(FIXTURE_MD5, fixtureDigest("md5")));
   }
 
   @Test
   @SuppressWarnings("checkstyle:LineLength")
-  public void validateMd5Checksum_withInvalidChecksum() throws NoSuchAlgorithmException, IOException {
-    assertFalse("md5 checksum NOT expected to validate for small-file.warc.gz", WasapiValidator.validateMd5(FIXTURE_MD5 + "9", FIXTURE_WARC_PATH));
-    assertFalse("md5 checksum NOT expected to validate for small-file.warc.gz", WasapiValidator.validateMd5(FIXTURE_SHA1, FIXTURE_WARC_PATH));
+  public void validateDigest_md5OfFileWithInvalidChecksum() throws NoSuchAlgorithmException, IOException {
+    assertFalse("md5 checksum NOT expected to validate for small-file.warc.gz", WasapiValidator.validateDigest(FIXTURE_MD5 + "9", fixtureDigest("md5")));
+    assertFalse("md5 checksum NOT expected to validate for small-file.warc.gz", WasapiValidator.validateDigest(FIXTURE_SHA1, fixtureDigest("md5")));
   }
 
   @Test
-  public void validateSha1Checksum_withValidChecksum() throws NoSuchAlgorithmException, IOException {
-    assertTrue("sha1 checksum expected to validate for small-file.warc.gz", WasapiValidator.validateSha1(FIXTURE_SHA1, FIXTURE_WARC_PATH));
+  public void validateDigest_sha1OfFileWithValidChecksum() throws NoSuchAlgorithmException, IOException {
+    assertTrue("sha1 checksum expected to validate for small-file.warc.gz", WasapiValidator.validateDigest(FIXTURE_SHA1, fixtureDigest("sha1")));
   }
 
   @Test
-  public void validateSha1Checksum_withInvalidChecksum() throws NoSuchAlgorithmException, IOException {
+  public void validateDigest_sha1OfFileWithInvalidChecksum() throws NoSuchAlgorithmException, IOException {
     String expectationErrorMsg = "sha1 checksum NOT expected to validate for small-file.warc.gz";
-    assertFalse(expectationErrorMsg, WasapiValidator.validateSha1(FIXTURE_SHA1 + "9", FIXTURE_WARC_PATH));
-    assertFalse(expectationErrorMsg, WasapiValidator.validateSha1(FIXTURE_MD5, FIXTURE_WARC_PATH));
+    assertFalse(expectationErrorMsg, WasapiValidator.validateDigest(FIXTURE_SHA1 + "9", fixtureDigest("sha1")));
+    assertFalse(expectationErrorMsg, WasapiValidator.validateDigest(FIXTURE_MD5, fixtureDigest("sha1")));
+  }
+
+  // the digest of the fixture WARC, read the way already downloaded files are checked
+  private static MessageDigest fixtureDigest(String algorithm) throws NoSuchAlgorithmException, IOException {
+    MessageDigest digest = WasapiValidator.newMessageDigest(algorithm);
+    WasapiValidator.checksumInputStream(new FileInputStream(FIXTURE_WARC_PATH), digest);
+    return digest;
+  }
+
+  @Test
+  public void validateDigest_comparesComputedDigestToExpectedChecksum() throws NoSuchAlgorithmException, IOException {
+    MessageDigest digest = MessageDigest.getInstance("MD5");
+    digest.update(Files.readAllBytes(Paths.get(FIXTURE_WARC_PATH)));
+    assertTrue("computed md5 expected to validate for small-file.warc.gz", WasapiValidator.validateDigest(FIXTURE_MD5.toUpperCase(), digest));
+    digest.update("some other content".getBytes());
+    assertFalse("computed md5 of other content NOT expected to validate", WasapiValidator.validateDigest(FIXTURE_MD5, digest));
+  }
+
+  @Test
+  public void newMessageDigest_mapsWasapiAlgorithmNames() throws NoSuchAlgorithmException {
+    assertEquals("MD5", WasapiValidator.newMessageDigest("md5").getAlgorithm());
+    assertEquals("SHA-1", WasapiValidator.newMessageDigest("sha1").getAlgorithm());
+  }
+
+  @Test(expected = NoSuchAlgorithmException.class)
+  public void newMessageDigest_throwsOnUnknownAlgorithm() throws NoSuchAlgorithmException {
+    WasapiValidator.newMessageDigest("foo");
   }
 }